@@ -0,0 +1,35 @@
+/**
+ * Response to a batch update or delete - no mountains, but the outcome of each
+ * item in the batch, in the order they were sent
+ *
+ * @Author Ewan Lewis
+ */
+
+package com.example.MountainClient;
+
+import java.net.http.HttpResponse;
+import java.util.ArrayList;
+import java.util.List;
+
+public class BatchResponse extends Response {
+
+    private final List<BatchResult> RESULTS;
+
+    /**
+     * Constructor
+     * @param results  Outcome of each item in the batch
+     * @param response The "raw" response object
+     */
+    public BatchResponse(List<BatchResult> results, HttpResponse<String> response) {
+        super(new ArrayList<>(), response);
+        RESULTS = results;
+    }
+
+    /**
+     * Gets the outcome of each item in the batch
+     * @return the outcomes, in the order the items were sent
+     */
+    public List<BatchResult> getResults() {
+        return RESULTS;
+    }
+}
@@ -0,0 +1,11 @@
+/**
+ * Outcome of one item of a batch update or delete, as the server reports it -
+ * the ID the item was for, and the HTTP status code it would have got had it
+ * been sent on its own
+ *
+ * @Author Ewan Lewis
+ */
+
+package com.example.MountainClient;
+
+public record BatchResult(int id, int status) {}
@@ -0,0 +1,11 @@
+/**
+ * Statistics of one group of mountains, as the server reports them - the
+ * country, range or hemisphere the group shares, how many mountains are in it,
+ * and their lowest, highest and mean altitude
+ *
+ * @Author Ewan Lewis
+ */
+
+package com.example.MountainClient;
+
+public record GroupStatistics(String group, long count, int minAltitude, int maxAltitude, double averageAltitude) {}
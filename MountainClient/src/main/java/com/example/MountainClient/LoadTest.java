@@ -0,0 +1,250 @@
+/**
+ * Load test comparing how the server holds up with its requests handled on
+ * platform threads and on virtual threads.
+ * <p>
+ * Each level keeps a fixed number of connections busy - every one is a client
+ * on its own virtual thread that sends a request, waits for the answer and sends
+ * the next, so the server always has that many requests in flight. Four in five
+ * requests get the mountains in a country and the rest update one. After a warm
+ * up the requests answered each second and the latency percentiles are reported,
+ * along with how many threads the server was running.
+ * <p>
+ * Run it twice against the same data, once with the server started with
+ * --spring.threads.virtual.enabled=false and once with it true, and compare the
+ * tables - e.g. java -jar MountainServer.jar --mountain.wal.mode=batched
+ * --spring.threads.virtual.enabled=true, then java -cp (client classpath)
+ * com.example.MountainClient.LoadTest [levels] [seconds] [base URI]. The client
+ * needs a file limit above the most connections, and to be on a different
+ * machine from the server for the numbers to mean much.
+ *
+ * @Author Ewan Lewis
+ */
+
+package com.example.MountainClient;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import java.io.IOException;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicLong;
+
+public class LoadTest {
+
+    private static final ObjectMapper MAPPER = new ObjectMapper();
+
+    /**
+     * Mountains loaded before the first level, spread over COUNTRIES countries
+     */
+    private static final int MOUNTAINS = 10_000;
+    private static final int COUNTRIES = 100;
+
+    /**
+     * How long each level runs before its requests are counted
+     */
+    private static final Duration WARM_UP = Duration.ofSeconds(5);
+
+    /**
+     * Longest a request is waited for before it's counted as an error
+     */
+    private static final Duration TIMEOUT = Duration.ofSeconds(30);
+
+    /**
+     * One in this many requests is an update
+     */
+    private static final int UPDATE_EVERY = 5;
+
+    /**
+     * Latencies seen by one connection, in nanoseconds
+     */
+    private static class Latencies {
+        private long[] nanos = new long[1_024];
+        private int size;
+
+        void add(long latency) {
+            if (size == nanos.length) {
+                nanos = Arrays.copyOf(nanos, size * 2);
+            }
+            nanos[size++] = latency;
+        }
+    }
+
+    public static void main(String[] args) throws Exception {
+        int[] levels = Arrays.stream((args.length > 0 ? args[0] : "1000,2500,5000,10000").split(","))
+                .mapToInt(Integer::parseInt).toArray();
+        Duration measured = Duration.ofSeconds(args.length > 1 ? Integer.parseInt(args[1]) : 20);
+        String baseUri = args.length > 2 ? args[2] : SharedResources.BASE_URI;
+
+        List<Integer> ids = load(baseUri);
+        System.out.printf("%,d mountains, %s measured per level after %s warm up%n", ids.size(),
+                measured, WARM_UP);
+        System.out.printf("%8s %10s %9s %9s %9s %9s %8s %8s%n", "conns", "req/s", "p50 ms", "p99 ms",
+                "p99.9 ms", "max ms", "errors", "threads");
+        for (int connections : levels) {
+            run(baseUri, ids, connections, measured);
+        }
+    }
+
+    /**
+     * Adds the mountains the load runs against, unless an earlier run already has
+     * @return the IDs of the mountains
+     */
+    private static List<Integer> load(String baseUri) {
+        MountainConnector connector = new MountainConnector(baseUri);
+        List<Mountain> mountains = new ArrayList<>(MOUNTAINS);
+        for (int i = 0; i < MOUNTAINS; i++) {
+            mountains.add(mountain(i, i % 9_000));
+        }
+        if (connector.addMountains(mountains).isEmpty()) {
+            throw new IllegalStateException("Couldn't add the mountains to " + baseUri);
+        }
+        List<Integer> ids = new ArrayList<>(MOUNTAINS);
+        for (int country = 0; country < COUNTRIES; country++) {
+            connector.getByCountry("LoadCountry" + country).orElseThrow()
+                    .getMountains().forEach(mountain -> ids.add(mountain.getId()));
+        }
+        return ids;
+    }
+
+    private static Mountain mountain(int i, int altitude) {
+        return new Mountain("LoadPeak" + i, altitude, "LoadRange" + i % 7, "LoadCountry" + i % COUNTRIES,
+                i % 2 == 0);
+    }
+
+    /**
+     * Runs one level - keeps the connections busy through the warm up and the
+     * measured time, then prints what was seen during the measured time
+     */
+    private static void run(String baseUri, List<Integer> ids, int connections, Duration measured)
+            throws Exception {
+        AtomicLong errors = new AtomicLong();
+        List<Latencies> latencies = new ArrayList<>(connections);
+        long start = System.nanoTime();
+        long from = start + WARM_UP.toNanos();
+        long until = from + measured.toNanos();
+        long threads;
+
+        // The connections finish at the end of the measured time, and are waited
+        // for before the client is closed
+        try (HttpClient http = HttpClient.newBuilder()
+                .version(HttpClient.Version.HTTP_1_1)
+                .connectTimeout(TIMEOUT)
+                .build();
+             ExecutorService clients = Executors.newVirtualThreadPerTaskExecutor()) {
+            for (int c = 0; c < connections; c++) {
+                Latencies seen = new Latencies();
+                latencies.add(seen);
+                Random random = new Random(c);
+                // Spread the connections being opened over the warm up
+                long opens = start + WARM_UP.toNanos() / 2 * c / connections;
+                clients.submit(() -> {
+                    sleepUntil(opens);
+                    long now;
+                    while ((now = System.nanoTime()) < until) {
+                        try {
+                            HttpRequest request = request(baseUri, ids, random);
+                            HttpResponse<Void> response = http.send(request,
+                                    HttpResponse.BodyHandlers.discarding());
+                            long latency = System.nanoTime() - now;
+                            if (now >= from) {
+                                if (response.statusCode() == 200) {
+                                    seen.add(latency);
+                                } else {
+                                    errors.incrementAndGet();
+                                }
+                            }
+                        } catch (InterruptedException e) {
+                            return;
+                        } catch (Exception e) {
+                            if (now >= from) {
+                                errors.incrementAndGet();
+                            }
+                        }
+                    }
+                });
+            }
+            sleepUntil(from + measured.toNanos() / 2);
+            threads = serverThreads(http, baseUri);
+        }
+
+        long[] all = new long[latencies.stream().mapToInt(seen -> seen.size).sum()];
+        int size = 0;
+        for (Latencies seen : latencies) {
+            System.arraycopy(seen.nanos, 0, all, size, seen.size);
+            size += seen.size;
+        }
+        Arrays.sort(all);
+        System.out.printf("%,8d %,10.0f %9.1f %9.1f %9.1f %9.1f %,8d %8s%n", connections,
+                all.length / (measured.toNanos() / 1e9), percentile(all, 50), percentile(all, 99),
+                percentile(all, 99.9), percentile(all, 100), errors.get(), threads < 0 ? "-" : threads);
+    }
+
+    /**
+     * Picks the next request a connection sends
+     */
+    private static HttpRequest request(String baseUri, List<Integer> ids, Random random) throws IOException {
+        HttpRequest.Builder builder = HttpRequest.newBuilder().timeout(TIMEOUT);
+        if (random.nextInt(UPDATE_EVERY) == 0) {
+            int i = random.nextInt(ids.size());
+            String json = MAPPER.writeValueAsString(mountain(i, random.nextInt(9_000)));
+            return builder.uri(URI.create(baseUri + "mountains/update/" + ids.get(i)))
+                    .header("Content-Type", "application/json")
+                    .PUT(HttpRequest.BodyPublishers.ofString(json))
+                    .build();
+        }
+        return builder.uri(URI.create(baseUri + "mountains?country=LoadCountry"
+                        + random.nextInt(COUNTRIES) + "&limit=20"))
+                .GET()
+                .build();
+    }
+
+    /**
+     * Gets how many threads the server has running, from its metrics
+     * @return the threads, or -1 if the server doesn't say
+     */
+    private static long serverThreads(HttpClient http, String baseUri) {
+        try {
+            HttpResponse<String> response = http.send(HttpRequest.newBuilder()
+                    .uri(URI.create(baseUri + "actuator/metrics/jvm.threads.live")).timeout(TIMEOUT).build(),
+                    HttpResponse.BodyHandlers.ofString());
+            return response.statusCode() == 200
+                    ? MAPPER.readTree(response.body()).path("measurements").path(0).path("value").asLong(-1)
+                    : -1;
+        } catch (Exception e) {
+            return -1;
+        }
+    }
+
+    /**
+     * @param sorted Latencies in nanoseconds, in order
+     * @return the latency the given percentage of requests were answered within,
+     * in milliseconds
+     */
+    private static double percentile(long[] sorted, double percent) {
+        if (sorted.length == 0) {
+            return Double.NaN;
+        }
+        int index = (int) Math.ceil(percent / 100 * sorted.length) - 1;
+        return sorted[Math.clamp(index, 0, sorted.length - 1)] / 1e6;
+    }
+
+    private static void sleepUntil(long nanoTime) {
+        long wait = nanoTime - System.nanoTime();
+        if (wait > 0) {
+            try {
+                Thread.sleep(Duration.ofNanos(wait));
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+}
@@ -1,5 +1,7 @@
 package com.example.MountainClient;
 
+import com.fasterxml.jackson.annotation.JsonInclude;
+
 import java.util.Objects;
 
 /**
@@ -27,13 +29,21 @@ public final class Mountain {
     private static final String NORTH = "Northern";
     private static final String SOUTH = "Southern";
     private int id;
-    private static int tid = 0;
     private String name;
     private int altitude;
     private String range;
     private String country;
     private boolean isNorthern;
 
+    /**
+     * Where the mountain is, in degrees north of the equator and east of Greenwich -
+     * null if not known, and only a location when both are given
+     */
+    @JsonInclude(JsonInclude.Include.NON_NULL)
+    private Double latitude;
+    @JsonInclude(JsonInclude.Include.NON_NULL)
+    private Double longitude;
+
     /**
      * Create an empty Mountain object
      */
@@ -49,8 +59,6 @@ public final class Mountain {
      */
     public Mountain(final String name, final int altitude, final String range, final String country,
                      final boolean isNorthern) {
-        tid++;
-        this.id = tid;
         this.setName(name);
         this.setAltitude(altitude);
         this.setRange(range);
@@ -106,6 +114,30 @@ public final class Mountain {
         return isNorthern;
     }
 
+    /**
+     * The Mountain's latitude
+     * @return degrees north of the equator, negative for south, or null if not known
+     */
+    public Double getLatitude() {
+        return latitude;
+    }
+
+    /**
+     * The Mountain's longitude
+     * @return degrees east of Greenwich, negative for west, or null if not known
+     */
+    public Double getLongitude() {
+        return longitude;
+    }
+
+    /**
+     * Whether the Mountain's location is known
+     * @return true if it has both a latitude and a longitude
+     */
+    public boolean hasLocation() {
+        return latitude != null && longitude != null;
+    }
+
     /**
      * Set the Mountain's ID - note this may be needed when Mountain data is downloaded in JSON (or whatever)
      * format from the server and turned into Mountain objects on the client
@@ -155,6 +187,22 @@ public final class Mountain {
         isNorthern = northern;
     }
 
+    /**
+     * Set the Mountain's latitude
+     * @param latitude degrees north of the equator, from -90 to 90, or null if not known
+     */
+    public void setLatitude(Double latitude) {
+        this.latitude = latitude;
+    }
+
+    /**
+     * Set the Mountain's longitude
+     * @param longitude degrees east of Greenwich, from -180 to 180, or null if not known
+     */
+    public void setLongitude(Double longitude) {
+        this.longitude = longitude;
+    }
+
     /**
      * Generate a readable string representation of a Mountain. Note this is uesd to check that your code is correct,
      * and it does not include the ID because how you choose to generate that is up to you
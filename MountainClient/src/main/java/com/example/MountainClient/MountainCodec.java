@@ -0,0 +1,261 @@
+/**
+ * Compact binary encoding of a list of mountains, sent to and asked of the server
+ * as application/x-mountain instead of JSON when the connector is made with
+ * Format.BINARY
+ * <p>
+ * After a version byte and the number of mountains, each mountain is its ID and
+ * altitude as varints, a byte of flags for its hemisphere and which of latitude
+ * and longitude it has, its UTF-8 name, its range and country, then whichever
+ * of latitude and longitude it has as 8 byte doubles. Ranges and countries
+ * repeat, so each one is written out in full only the first time it appears in
+ * a message and after that as a varint back reference to it. This is a copy of
+ * the server's MountainCodec, and the two must agree.
+ *
+ * @Author Ewan Lewis
+ */
+
+package com.example.MountainClient;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+public final class MountainCodec {
+
+    /**
+     * Media type for the encoding
+     */
+    public static final String MEDIA_TYPE = "application/x-mountain";
+
+    /**
+     * Version 2 added locations, in flag bits version 1 never set - so a version 1
+     * message decodes the same way
+     */
+    private static final byte FORMAT_VERSION = 2;
+
+    private static final int NORTHERN = 1;
+    private static final int LATITUDE = 2;
+    private static final int LONGITUDE = 4;
+
+    private MountainCodec() {
+
+    }
+
+    /**
+     * Encodes mountains
+     *
+     * @param mountains Mountains to encode
+     * @return the encoded mountains
+     */
+    public static byte[] encode(List<Mountain> mountains) {
+        Writer out = new Writer(16 + mountains.size() * 24);
+        Map<String, Integer> seen = new HashMap<>();
+        out.writeByte(FORMAT_VERSION);
+        out.writeVarint(mountains.size());
+        for (Mountain mountain : mountains) {
+            out.writeVarint(mountain.getId());
+            // Zigzag, so an altitude below sea level is still short
+            out.writeVarint((mountain.getAltitude() << 1) ^ (mountain.getAltitude() >> 31));
+            out.writeByte((mountain.getIsNorthern() ? NORTHERN : 0)
+                    | (mountain.getLatitude() != null ? LATITUDE : 0)
+                    | (mountain.getLongitude() != null ? LONGITUDE : 0));
+            out.writeString(mountain.getName());
+            writeRepeated(out, mountain.getRange(), seen);
+            writeRepeated(out, mountain.getCountry(), seen);
+            if (mountain.getLatitude() != null) {
+                out.writeDouble(mountain.getLatitude());
+            }
+            if (mountain.getLongitude() != null) {
+                out.writeDouble(mountain.getLongitude());
+            }
+        }
+        return out.toByteArray();
+    }
+
+    /**
+     * Decodes mountains
+     *
+     * @param bytes Encoded mountains
+     * @return the mountains
+     * @throws IllegalArgumentException if the bytes aren't mountains in this encoding
+     */
+    public static List<Mountain> decode(byte[] bytes) {
+        Reader in = new Reader(bytes);
+        if (!isKnownVersion(in.readByte())) {
+            throw new IllegalArgumentException("Unknown mountain encoding version");
+        }
+        int count = in.readVarint();
+        List<Mountain> mountains = new ArrayList<>(Math.min(count, bytes.length));
+        List<String> seen = new ArrayList<>();
+        for (int i = 0; i < count; i++) {
+            int id = in.readVarint();
+            int zigzag = in.readVarint();
+            int flags = in.readByte();
+            String name = in.readString();
+            String range = readRepeated(in, seen);
+            String country = readRepeated(in, seen);
+            Mountain mountain = new Mountain(name, (zigzag >>> 1) ^ -(zigzag & 1), range, country,
+                    (flags & NORTHERN) != 0);
+            mountain.setId(id);
+            if ((flags & LATITUDE) != 0) {
+                mountain.setLatitude(in.readDouble());
+            }
+            if ((flags & LONGITUDE) != 0) {
+                mountain.setLongitude(in.readDouble());
+            }
+            mountains.add(mountain);
+        }
+        return mountains;
+    }
+
+    private static boolean isKnownVersion(int version) {
+        return version >= 1 && version <= FORMAT_VERSION;
+    }
+
+    /**
+     * Writes a string that's likely to have been written already - 0 and then the
+     * string the first time, and its position among the new strings plus one after that
+     */
+    private static void writeRepeated(Writer out, String value, Map<String, Integer> seen) {
+        Integer index = seen.get(value);
+        if (index != null) {
+            out.writeVarint(index + 1);
+            return;
+        }
+        seen.put(value, seen.size());
+        out.writeVarint(0);
+        out.writeString(value);
+    }
+
+    private static String readRepeated(Reader in, List<String> seen) {
+        int reference = in.readVarint();
+        if (reference == 0) {
+            String value = in.readString();
+            seen.add(value);
+            return value;
+        }
+        if (reference > seen.size()) {
+            throw new IllegalArgumentException("Bad back reference in mountain encoding");
+        }
+        return seen.get(reference - 1);
+    }
+
+    /**
+     * Growable buffer of encoded bytes
+     */
+    private static final class Writer {
+
+        private byte[] bytes;
+        private int size;
+
+        Writer(int capacity) {
+            bytes = new byte[capacity];
+        }
+
+        void writeByte(int value) {
+            ensure(1);
+            bytes[size++] = (byte) value;
+        }
+
+        void writeVarint(int value) {
+            ensure(5);
+            while ((value & ~0x7F) != 0) {
+                bytes[size++] = (byte) ((value & 0x7F) | 0x80);
+                value >>>= 7;
+            }
+            bytes[size++] = (byte) value;
+        }
+
+        /**
+         * Writes a double as its 8 bytes, lowest first
+         */
+        void writeDouble(double value) {
+            ensure(8);
+            long bits = Double.doubleToLongBits(value);
+            for (int i = 0; i < 8; i++) {
+                bytes[size++] = (byte) (bits >>> (i * 8));
+            }
+        }
+
+        /**
+         * Writes a string as its UTF-8 length plus one, 0 for null, then its bytes
+         */
+        void writeString(String value) {
+            if (value == null) {
+                writeVarint(0);
+                return;
+            }
+            byte[] utf8 = value.getBytes(StandardCharsets.UTF_8);
+            writeVarint(utf8.length + 1);
+            ensure(utf8.length);
+            System.arraycopy(utf8, 0, bytes, size, utf8.length);
+            size += utf8.length;
+        }
+
+        private void ensure(int extra) {
+            if (size + extra > bytes.length) {
+                bytes = Arrays.copyOf(bytes, Math.max(bytes.length * 2, size + extra));
+            }
+        }
+
+        byte[] toByteArray() {
+            return Arrays.copyOf(bytes, size);
+        }
+    }
+
+    /**
+     * Cursor over encoded bytes
+     */
+    private static final class Reader {
+
+        private final byte[] bytes;
+        private int position;
+
+        Reader(byte[] bytes) {
+            this.bytes = bytes;
+        }
+
+        int readByte() {
+            if (position >= bytes.length) {
+                throw new IllegalArgumentException("Mountain encoding ends early");
+            }
+            return bytes[position++];
+        }
+
+        double readDouble() {
+            long bits = 0;
+            for (int i = 0; i < 8; i++) {
+                bits |= (readByte() & 0xFFL) << (i * 8);
+            }
+            return Double.longBitsToDouble(bits);
+        }
+
+        int readVarint() {
+            int value = 0;
+            for (int shift = 0; shift < 35; shift += 7) {
+                int b = readByte();
+                value |= (b & 0x7F) << shift;
+                if ((b & 0x80) == 0) {
+                    return value;
+                }
+            }
+            throw new IllegalArgumentException("Varint too long in mountain encoding");
+        }
+
+        String readString() {
+            int length = readVarint() - 1;
+            if (length < 0) {
+                return null;
+            }
+            if (length > bytes.length - position) {
+                throw new IllegalArgumentException("Mountain encoding ends early");
+            }
+            String value = new String(bytes, position, length, StandardCharsets.UTF_8);
+            position += length;
+            return value;
+        }
+    }
+}
@@ -13,11 +13,15 @@ import org.springframework.http.HttpStatus;
 import java.io.IOException;
 import java.net.URI;
 import java.net.URISyntaxException;
+import java.net.URLEncoder;
 import java.net.http.HttpClient;
 import java.net.http.HttpRequest;
 import java.net.http.HttpResponse;
+import java.nio.charset.StandardCharsets;
 import java.util.ArrayList;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.Optional;
 
 public class MountainConnector {
@@ -35,11 +39,137 @@ public class MountainConnector {
     private static final ObjectMapper MAPPER = new ObjectMapper();
 
     /**
-     * Constructor for the "client"
+     * Format lists of mountains are sent and asked for in
+     */
+    private final Format FORMAT;
+
+    /**
+     * Most responses to keep validators and bodies of, to ask again conditionally
+     */
+    private static final int MAX_VALIDATED = 256;
+
+    /**
+     * Entity tag and body of the last response from each URI got, least recently
+     * used first
+     */
+    private final LinkedHashMap<URI, Validated> VALIDATED = new LinkedHashMap<>(16, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<URI, Validated> eldest) {
+            return size() > MAX_VALIDATED;
+        }
+    };
+
+    /**
+     * A response body kept with the entity tag the server gave it
+     * @param eTag Entity tag, quoted as the server sent it
+     * @param body Body of the response
+     */
+    private record Validated(String eTag, String body) {}
+
+    /**
+     * Formats lists of mountains can be sent to and from the server in
+     */
+    public enum Format {
+        /**
+         * JSON text
+         */
+        JSON("application/json"),
+        /**
+         * The compact binary encoding in MountainCodec
+         */
+        BINARY(MountainCodec.MEDIA_TYPE);
+
+        private final String MEDIA_TYPE;
+
+        Format(String mediaType) {
+            this.MEDIA_TYPE = mediaType;
+        }
+    }
+
+    /**
+     * Constructor for the "client", sending and asking for JSON
      * @param baseUri URI to be used for the server
      */
     public MountainConnector(String baseUri) {
+        this(baseUri, Format.JSON);
+    }
+
+    /**
+     * Constructor for the "client"
+     * @param baseUri URI to be used for the server
+     * @param format  Format to send and ask for lists of mountains in
+     */
+    public MountainConnector(String baseUri, Format format) {
         BASE_URI = baseUri;
+        FORMAT = format;
+    }
+
+    /**
+     * Gets the handler for responses holding mountains. Response bodies are always
+     * Strings, so binary ones are read as ISO-8859-1, which maps every byte to one
+     * char and back without changing it
+     * @return the handler
+     */
+    private HttpResponse.BodyHandler<String> bodyHandler() {
+        return FORMAT == Format.BINARY
+                ? HttpResponse.BodyHandlers.ofString(StandardCharsets.ISO_8859_1)
+                : HttpResponse.BodyHandlers.ofString();
+    }
+
+    /**
+     * Reads the mountains out of a response body
+     * @param body Body of a response from the server
+     * @return the mountains
+     * @throws IOException if the body isn't mountains in the connector's format
+     */
+    private List<Mountain> readMountains(String body) throws IOException {
+        if (FORMAT == Format.JSON) {
+            return MAPPER.readValue(body, new TypeReference<>() {});
+        }
+        try {
+            return MountainCodec.decode(body.getBytes(StandardCharsets.ISO_8859_1));
+        } catch (IllegalArgumentException e) {
+            throw new IOException(e);
+        }
+    }
+
+    /**
+     * Gets mountains, asking the server to send them only if they've changed since
+     * the last time they were got from the same URI. If they haven't, the server
+     * answers Not Modified without a body, and the copy kept from last time is used
+     * @param uri URI to get
+     * @return Response containing the mountains, or empty if the server refused
+     * @throws IOException if the request fails or the body isn't mountains
+     * @throws InterruptedException if interrupted while waiting for the response
+     */
+    private Optional<Response> fetch(URI uri) throws IOException, InterruptedException {
+        Validated cached;
+        synchronized (VALIDATED) {
+            cached = VALIDATED.get(uri);
+        }
+        HttpRequest.Builder builder = HttpRequest.newBuilder().uri(uri).header("Accept", FORMAT.MEDIA_TYPE);
+        if (cached != null) {
+            builder.header("If-None-Match", cached.eTag());
+        }
+
+        HttpResponse<String> response = CLIENT.send(builder.GET().build(), bodyHandler());
+
+        if (response.statusCode() == HttpStatus.NOT_MODIFIED.value() && cached != null) {
+            return Optional.of(new Response(readMountains(cached.body()), response));
+        } else if (response.statusCode() == HttpStatus.OK.value()) {
+            List<Mountain> mountains = readMountains(response.body());
+            Optional<String> eTag = response.headers().firstValue("ETag");
+            synchronized (VALIDATED) {
+                if (eTag.isPresent()) {
+                    VALIDATED.put(uri, new Validated(eTag.get(), response.body()));
+                } else {
+                    VALIDATED.remove(uri);
+                }
+            }
+            return Optional.of(new Response(mountains, response));
+        } else {
+            return Optional.empty();
+        }
     }
 
     /**
@@ -50,13 +180,15 @@ public class MountainConnector {
     public Optional<Response> addMountains(List<Mountain> mountains) {
         try {
 
-            // JSON string to be passed through the body of the request
-            String json = MAPPER.writeValueAsString(mountains);
+            // Mountains to be passed through the body of the request, in the connector's format
+            HttpRequest.BodyPublisher body = FORMAT == Format.BINARY
+                    ? HttpRequest.BodyPublishers.ofByteArray(MountainCodec.encode(mountains))
+                    : HttpRequest.BodyPublishers.ofString(MAPPER.writeValueAsString(mountains));
 
             HttpRequest request = HttpRequest.newBuilder()
                     .uri(URI.create(BASE_URI))
-                    .header("Content-Type", "application/json")
-                    .POST(HttpRequest.BodyPublishers.ofString(json))
+                    .header("Content-Type", FORMAT.MEDIA_TYPE)
+                    .POST(body)
                     .build();
 
             HttpResponse<String> response = CLIENT.send(request, HttpResponse.BodyHandlers.ofString());
@@ -80,16 +212,25 @@ public class MountainConnector {
     public Optional<Response> getAll() {
         try {
             URI getUri = new URI(BASE_URI + "mountains");
-            HttpRequest request = HttpRequest.newBuilder().uri(getUri).GET().build();
+            return fetch(getUri);
 
-            HttpResponse<String> response = CLIENT.send(request, HttpResponse.BodyHandlers.ofString());
+        } catch (IOException | InterruptedException | URISyntaxException e) {
+            return Optional.empty();
+        }
+    }
 
-            if (response.statusCode() == HttpStatus.OK.value()) {
-                List<Mountain> mountains = MAPPER.readValue(response.body(), new TypeReference<>() {});
-                return Optional.of(new Response(mountains, response));
-            } else {
-                return Optional.empty();
-            }
+    /**
+     * Requests one page of mountains, in ID order - the cursor for the page after
+     * it is in the response's Next-Cursor header, which is missing on the last page
+     * @param limit  Most mountains to return
+     * @param cursor Cursor from the previous page, or null for the first page
+     * @return Response containing the page of mountains
+     */
+    public Optional<Response> getPage(int limit, String cursor) {
+        try {
+            String query = "mountains?limit=" + limit + (cursor == null ? "" : "&cursor=" + cursor);
+            URI getUri = new URI(BASE_URI + query);
+            return fetch(getUri);
 
         } catch (IOException | InterruptedException | URISyntaxException e) {
             return Optional.empty();
@@ -105,17 +246,7 @@ public class MountainConnector {
         try {
 
             URI getUri = new URI(BASE_URI + "mountains?country=" + param1);
-
-            HttpRequest request = HttpRequest.newBuilder().uri(getUri).GET().build();
-
-            HttpResponse<String> response = CLIENT.send(request, HttpResponse.BodyHandlers.ofString());
-
-            if (response.statusCode() == HttpStatus.OK.value()) {
-                List<Mountain> mountains = MAPPER.readValue(response.body(), new TypeReference<>() {});
-                return Optional.of(new Response(mountains, response));
-            } else {
-                return Optional.empty();
-            }
+            return fetch(getUri);
 
         } catch (IOException | InterruptedException | URISyntaxException e) {
             return Optional.empty();
@@ -132,18 +263,7 @@ public class MountainConnector {
         try {
 
             URI getUri = new URI(BASE_URI + "mountains?country=" + param1 + "&range=" + param2);
-
-            HttpRequest request = HttpRequest.newBuilder().uri(getUri).GET().build();
-
-            HttpResponse<String> response = CLIENT.send(request, HttpResponse.BodyHandlers.ofString());
-
-            if (response.statusCode() == HttpStatus.OK.value()) {
-                List<Mountain> mountains = MAPPER.readValue(response.body(), new TypeReference<>() {
-                });
-                return Optional.of(new Response(mountains, response));
-            } else {
-                return Optional.empty();
-            }
+            return fetch(getUri);
 
         } catch (IOException | InterruptedException | URISyntaxException e) {
             return Optional.empty();
@@ -159,18 +279,7 @@ public class MountainConnector {
         try {
 
             URI getUri = new URI(BASE_URI + "mountains?north=" + param1.toString());
-
-            HttpRequest request = HttpRequest.newBuilder().uri(getUri).GET().build();
-
-            HttpResponse<String> response = CLIENT.send(request, HttpResponse.BodyHandlers.ofString());
-
-            if (response.statusCode() == HttpStatus.OK.value()) {
-                List<Mountain> mountains = MAPPER.readValue(response.body(), new TypeReference<>() {
-                });
-                return Optional.of(new Response(mountains, response));
-            } else {
-                return Optional.empty();
-            }
+            return fetch(getUri);
 
         } catch (IOException | InterruptedException | URISyntaxException e) {
             return Optional.empty();
@@ -187,18 +296,7 @@ public class MountainConnector {
         try {
 
             URI getUri = new URI(BASE_URI + "mountains?country=" + param1 + "&alt=" + param2);
-
-            HttpRequest request = HttpRequest.newBuilder().uri(getUri).GET().build();
-
-            HttpResponse<String> response = CLIENT.send(request, HttpResponse.BodyHandlers.ofString());
-
-            if (response.statusCode() == HttpStatus.OK.value()) {
-                List<Mountain> mountains = MAPPER.readValue(response.body(), new TypeReference<>() {
-                });
-                return Optional.of(new Response(mountains, response));
-            } else {
-                return Optional.empty();
-            }
+            return fetch(getUri);
 
         } catch (IOException | InterruptedException | URISyntaxException e) {
             return Optional.empty();
@@ -216,18 +314,7 @@ public class MountainConnector {
         try {
 
             URI getUri = new URI(BASE_URI + "mountains?country=" + param1 + "&range=" + param2 + "&name=" + param3);
-
-            HttpRequest request = HttpRequest.newBuilder().uri(getUri).GET().build();
-
-            HttpResponse<String> response = CLIENT.send(request, HttpResponse.BodyHandlers.ofString());
-
-            if (response.statusCode() == HttpStatus.OK.value()) {
-                List<Mountain> mountains = MAPPER.readValue(response.body(), new TypeReference<>() {
-                });
-                return Optional.of(new Response(mountains, response));
-            } else {
-                return Optional.empty();
-            }
+            return fetch(getUri);
 
         } catch (IOException | InterruptedException | URISyntaxException e) {
             return Optional.empty();
@@ -243,15 +330,102 @@ public class MountainConnector {
         try {
 
             URI getUri = new URI(BASE_URI + "mountains?id=" + param1);
+            return fetch(getUri);
+
+        } catch (IOException | InterruptedException | URISyntaxException e) {
+            return Optional.empty();
+        }
+    }
+
+    /**
+     * Gets the first mountains in an order, worked out by the server - the ten
+     * tallest in a range is getSorted(null, range, "-altitude", 10)
+     * @param country Country the mountains are in, or null for any
+     * @param range   Range the mountains are in, or null for any
+     * @param sort    altitude or name, with a - in front for descending
+     * @param limit   Most mountains to get, from 1 to 10000
+     * @return Response, containing the mountains in order
+     */
+    public Optional<Response> getSorted(String country, String range, String sort, int limit){
+        try {
+
+            StringBuilder query = new StringBuilder("mountains?sort=").append(sort).append("&limit=").append(limit);
+            if (country != null) {
+                query.append("&country=").append(URLEncoder.encode(country, StandardCharsets.UTF_8));
+            }
+            if (range != null) {
+                query.append("&range=").append(URLEncoder.encode(range, StandardCharsets.UTF_8));
+            }
+            URI getUri = new URI(BASE_URI + query);
+            return fetch(getUri);
+
+        } catch (IOException | InterruptedException | URISyntaxException e) {
+            return Optional.empty();
+        }
+    }
+
+    /**
+     * Searches mountain names for type-ahead, ignoring case, accents and
+     * punctuation and allowing for typos
+     * @param query What's been typed so far
+     * @param limit Most mountains to find, from 1 to 100
+     * @return Response, containing the mountains best matching first
+     */
+    public Optional<Response> searchByName(String query, int limit){
+        try {
+
+            URI getUri = new URI(BASE_URI + "mountains/search?q=" + URLEncoder.encode(query, StandardCharsets.UTF_8)
+                    + "&limit=" + limit);
+            return fetch(getUri);
+
+        } catch (IOException | InterruptedException | URISyntaxException e) {
+            return Optional.empty();
+        }
+    }
+
+    /**
+     * Finds the mountains nearest a point, of those with a location
+     * @param latitude  Latitude of the point
+     * @param longitude Longitude of the point
+     * @param radiusKm  Furthest a mountain can be from the point in kilometres, or
+     *                  null for anywhere
+     * @param limit     Most mountains to find, from 1 to 10000
+     * @return Response, containing the mountains nearest first
+     */
+    public Optional<Response> findNear(double latitude, double longitude, Double radiusKm, int limit){
+        try {
 
-            HttpRequest request = HttpRequest.newBuilder().uri(getUri).GET().build();
+            URI getUri = new URI(BASE_URI + "mountains/near?lat=" + latitude + "&lon=" + longitude
+                    + (radiusKm == null ? "" : "&radius=" + radiusKm) + "&limit=" + limit);
+            return fetch(getUri);
+
+        } catch (IOException | InterruptedException | URISyntaxException e) {
+            return Optional.empty();
+        }
+    }
+
+    /**
+     * Gets the number of mountains and their lowest, highest and mean altitude
+     * for each country, range or hemisphere
+     * @param by "country", "range" or "hemisphere"
+     * @return Response with the statistics of each group, or empty if the server
+     * refused the request
+     */
+    public Optional<StatisticsResponse> getStatistics(String by) {
+        try {
+
+            URI getUri = new URI(BASE_URI + "mountains/stats?by=" + URLEncoder.encode(by, StandardCharsets.UTF_8));
+            HttpRequest request = HttpRequest.newBuilder()
+                    .uri(getUri)
+                    .header("Accept", "application/json")
+                    .GET()
+                    .build();
 
             HttpResponse<String> response = CLIENT.send(request, HttpResponse.BodyHandlers.ofString());
 
             if (response.statusCode() == HttpStatus.OK.value()) {
-                List<Mountain> mountains = MAPPER.readValue(response.body(), new TypeReference<>() {
-                });
-                return Optional.of(new Response(mountains, response));
+                List<GroupStatistics> groups = MAPPER.readValue(response.body(), new TypeReference<>() {});
+                return Optional.of(new StatisticsResponse(groups, response));
             } else {
                 return Optional.empty();
             }
@@ -322,4 +496,63 @@ public class MountainConnector {
         }
     }
 
+    /**
+     * Updates many mountains' information in one request, each the mountain with
+     * the ID it carries
+     * @param mountains New mountain information, with the IDs of the mountains to update
+     * @return Response with whether each mountain was found and updated
+     */
+    public Optional<BatchResponse> updateMountains(List<Mountain> mountains) {
+        try {
+            HttpRequest.BodyPublisher body = FORMAT == Format.BINARY
+                    ? HttpRequest.BodyPublishers.ofByteArray(MountainCodec.encode(mountains))
+                    : HttpRequest.BodyPublishers.ofString(MAPPER.writeValueAsString(mountains));
+            return sendBatch(new URI(BASE_URI + "mountains/batch/update"), body, FORMAT.MEDIA_TYPE);
+        } catch (IOException | InterruptedException | URISyntaxException e) {
+            return Optional.empty();
+        }
+    }
+
+    /**
+     * Deletes many mountains in one request
+     * @param ids IDs of the mountains to be deleted
+     * @return Response with whether each mountain was found and deleted
+     */
+    public Optional<BatchResponse> deleteMountains(List<Integer> ids) {
+        try {
+            HttpRequest.BodyPublisher body = HttpRequest.BodyPublishers.ofString(MAPPER.writeValueAsString(ids));
+            return sendBatch(new URI(BASE_URI + "mountains/batch/delete"), body, "application/json");
+        } catch (IOException | InterruptedException | URISyntaxException e) {
+            return Optional.empty();
+        }
+    }
+
+    /**
+     * Sends a batch and reads the outcome of each item out of the response
+     * @param uri         URI of the batch endpoint
+     * @param body        Items in the batch
+     * @param contentType Media type of the items
+     * @return Response with the outcomes, or empty if the server refused the batch
+     * @throws IOException if the request fails or the outcomes can't be read
+     * @throws InterruptedException if interrupted while waiting for the response
+     */
+    private Optional<BatchResponse> sendBatch(URI uri, HttpRequest.BodyPublisher body, String contentType)
+            throws IOException, InterruptedException {
+        HttpRequest request = HttpRequest.newBuilder()
+                .uri(uri)
+                .header("Content-Type", contentType)
+                .header("Accept", "application/json")
+                .PUT(body)
+                .build();
+
+        HttpResponse<String> response = CLIENT.send(request, HttpResponse.BodyHandlers.ofString());
+
+        if (response.statusCode() == HttpStatus.OK.value()) {
+            List<BatchResult> results = MAPPER.readValue(response.body(), new TypeReference<>() {});
+            return Optional.of(new BatchResponse(results, response));
+        } else {
+            return Optional.empty();
+        }
+    }
+
 }
@@ -0,0 +1,35 @@
+/**
+ * Response to a statistics request - no mountains, but the statistics of each
+ * group of them
+ *
+ * @Author Ewan Lewis
+ */
+
+package com.example.MountainClient;
+
+import java.net.http.HttpResponse;
+import java.util.ArrayList;
+import java.util.List;
+
+public class StatisticsResponse extends Response {
+
+    private final List<GroupStatistics> GROUPS;
+
+    /**
+     * Constructor
+     * @param groups   Statistics of each group
+     * @param response The "raw" response object
+     */
+    public StatisticsResponse(List<GroupStatistics> groups, HttpResponse<String> response) {
+        super(new ArrayList<>(), response);
+        GROUPS = groups;
+    }
+
+    /**
+     * Gets the statistics of each group
+     * @return the statistics, in order of the group
+     */
+    public List<GroupStatistics> getGroups() {
+        return GROUPS;
+    }
+}
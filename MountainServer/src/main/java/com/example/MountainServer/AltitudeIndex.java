@@ -0,0 +1,265 @@
+/**
+ * Altitude-ordered index of rows, for "mountains between X and Y metres" queries
+ * <p>
+ * Each entry packs an altitude and a row into one long (altitude in the high half,
+ * row in the low half), so entries sort by altitude and then by row. Entries are
+ * kept in a list of small sorted blocks rather than one big array, so adding or
+ * removing an entry only shifts the inside of one block, while a range query is a
+ * binary search followed by a walk along neighbouring entries.
+ *
+ * @Author Ewan Lewis
+ */
+
+package com.example.MountainServer;
+
+import java.util.Arrays;
+import java.util.function.IntPredicate;
+
+public class AltitudeIndex {
+
+    /**
+     * Most entries a block holds before it's split in two
+     */
+    private static final int BLOCK_SIZE = 512;
+
+    private long[][] blocks = new long[4][];
+
+    private int[] blockSizes = new int[4];
+
+    private int blockCount = 0;
+
+    private int size = 0;
+
+    /**
+     * Adds a row
+     *
+     * @param altitude Altitude of the mountain in the row
+     * @param row      Row to add
+     */
+    public void add(int altitude, int row) {
+        long entry = entry(altitude, row);
+        if (blockCount == 0) {
+            insertBlock(0, new long[BLOCK_SIZE], 0);
+        }
+        int b = blockFor(entry);
+        long[] block = blocks[b];
+        int at = Arrays.binarySearch(block, 0, blockSizes[b], entry);
+        if (at >= 0) {
+            return;
+        }
+        at = -at - 1;
+        if (blockSizes[b] == BLOCK_SIZE) {
+            // Move the top half into a new block, then insert into whichever half it belongs in
+            int half = BLOCK_SIZE / 2;
+            long[] upper = new long[BLOCK_SIZE];
+            System.arraycopy(block, half, upper, 0, BLOCK_SIZE - half);
+            blockSizes[b] = half;
+            insertBlock(b + 1, upper, BLOCK_SIZE - half);
+            if (at > half) {
+                b++;
+                at -= half;
+                block = upper;
+            }
+        }
+        System.arraycopy(block, at, block, at + 1, blockSizes[b] - at);
+        block[at] = entry;
+        blockSizes[b]++;
+        size++;
+    }
+
+    /**
+     * Removes a row
+     *
+     * @param altitude Altitude the row was added with
+     * @param row      Row to remove
+     */
+    public void remove(int altitude, int row) {
+        if (blockCount == 0) {
+            return;
+        }
+        long entry = entry(altitude, row);
+        int b = blockFor(entry);
+        int at = Arrays.binarySearch(blocks[b], 0, blockSizes[b], entry);
+        if (at < 0) {
+            return;
+        }
+        System.arraycopy(blocks[b], at + 1, blocks[b], at, blockSizes[b] - at - 1);
+        blockSizes[b]--;
+        size--;
+        if (blockSizes[b] == 0) {
+            removeBlock(b);
+        }
+    }
+
+    /**
+     * Gets every row whose altitude is within a range
+     *
+     * @param min Lowest altitude, inclusive
+     * @param max Highest altitude, inclusive
+     * @return the rows, in ascending row order
+     */
+    public int[] rowsBetween(int min, int max) {
+        if (blockCount == 0 || min > max) {
+            return new int[0];
+        }
+        long low = entry(min, 0);
+        long high = entry(max, -1);
+        int b = blockFor(low);
+        int at = Arrays.binarySearch(blocks[b], 0, blockSizes[b], low);
+        at = at >= 0 ? at : -at - 1;
+
+        int[] found = new int[16];
+        int count = 0;
+        for (; b < blockCount; b++, at = 0) {
+            long[] block = blocks[b];
+            for (; at < blockSizes[b]; at++) {
+                if (block[at] > high) {
+                    b = blockCount;
+                    break;
+                }
+                if (count == found.length) {
+                    found = Arrays.copyOf(found, count << 1);
+                }
+                found[count++] = (int) block[at];
+            }
+        }
+        found = Arrays.copyOf(found, count);
+        Arrays.sort(found);
+        return found;
+    }
+
+    /**
+     * Walks the rows whose altitude is within a range in altitude order, rows of
+     * the same altitude in row order - or all of it backwards, highest first
+     *
+     * @param min        Lowest altitude, inclusive
+     * @param max        Highest altitude, inclusive
+     * @param descending true to walk from the highest altitude down
+     * @param action     Called with each row, returning false to stop the walk
+     */
+    public void forEachBetween(int min, int max, boolean descending, IntPredicate action) {
+        if (blockCount == 0 || min > max) {
+            return;
+        }
+        long low = entry(min, 0);
+        long high = entry(max, -1);
+        if (!descending) {
+            int b = blockFor(low);
+            int at = Arrays.binarySearch(blocks[b], 0, blockSizes[b], low);
+            at = at >= 0 ? at : -at - 1;
+            for (; b < blockCount; b++, at = 0) {
+                for (; at < blockSizes[b]; at++) {
+                    long entry = blocks[b][at];
+                    if (entry > high || !action.test((int) entry)) {
+                        return;
+                    }
+                }
+            }
+            return;
+        }
+        int b = blockFor(high);
+        int at = Arrays.binarySearch(blocks[b], 0, blockSizes[b], high);
+        at = at >= 0 ? at : -at - 2;
+        while (b >= 0) {
+            for (; at >= 0; at--) {
+                long entry = blocks[b][at];
+                if (entry < low || !action.test((int) entry)) {
+                    return;
+                }
+            }
+            if (--b >= 0) {
+                at = blockSizes[b] - 1;
+            }
+        }
+    }
+
+    /**
+     * Counts the rows whose altitude is within a range, without collecting them
+     *
+     * @param min Lowest altitude, inclusive
+     * @param max Highest altitude, inclusive
+     * @return the number of rows
+     */
+    public int countBetween(int min, int max) {
+        if (blockCount == 0 || min > max) {
+            return 0;
+        }
+        // No row is -1, so nothing sits exactly at the high end
+        return countBelow(entry(max, -1)) - countBelow(entry(min, 0));
+    }
+
+    /**
+     * Counts the entries below one, a binary search within its block after
+     * adding up the sizes of the blocks before it
+     */
+    private int countBelow(long entry) {
+        int b = blockFor(entry);
+        int at = Arrays.binarySearch(blocks[b], 0, blockSizes[b], entry);
+        int count = at >= 0 ? at : -at - 1;
+        for (int i = 0; i < b; i++) {
+            count += blockSizes[i];
+        }
+        return count;
+    }
+
+    /**
+     * Gets the number of rows in the index
+     *
+     * @return number of rows
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * Removes every row
+     */
+    public void clear() {
+        Arrays.fill(blocks, null);
+        blockCount = 0;
+        size = 0;
+    }
+
+    /**
+     * Finds the block an entry belongs in - the last block starting at or below it
+     *
+     * @param entry Entry to place
+     * @return block number
+     */
+    private int blockFor(long entry) {
+        int low = 0;
+        int high = blockCount - 1;
+        while (low < high) {
+            int mid = (low + high + 1) >>> 1;
+            if (blocks[mid][0] <= entry) {
+                low = mid;
+            } else {
+                high = mid - 1;
+            }
+        }
+        return low;
+    }
+
+    private void insertBlock(int b, long[] block, int blockSize) {
+        if (blockCount == blocks.length) {
+            blocks = Arrays.copyOf(blocks, blockCount << 1);
+            blockSizes = Arrays.copyOf(blockSizes, blockCount << 1);
+        }
+        System.arraycopy(blocks, b, blocks, b + 1, blockCount - b);
+        System.arraycopy(blockSizes, b, blockSizes, b + 1, blockCount - b);
+        blocks[b] = block;
+        blockSizes[b] = blockSize;
+        blockCount++;
+    }
+
+    private void removeBlock(int b) {
+        System.arraycopy(blocks, b + 1, blocks, b, blockCount - b - 1);
+        System.arraycopy(blockSizes, b + 1, blockSizes, b, blockCount - b - 1);
+        blockCount--;
+        blocks[blockCount] = null;
+    }
+
+    private static long entry(int altitude, int row) {
+        return ((long) altitude << 32) | (row & 0xFFFFFFFFL);
+    }
+}
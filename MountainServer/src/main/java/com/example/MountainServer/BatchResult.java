@@ -0,0 +1,10 @@
+/**
+ * Outcome of one item of a batch update or delete, with the status the item
+ * would have got had it been sent on its own - its ID, and the HTTP status code
+ *
+ * @Author Ewan Lewis
+ */
+
+package com.example.MountainServer;
+
+public record BatchResult(int id, int status) {}
@@ -0,0 +1,110 @@
+/**
+ * Writes a snapshot of the store every so often, and once more on shutdown, then
+ * drops the write-ahead log records the snapshot covers
+ * <p>
+ * The store keeps taking changes while a snapshot is written. The log position is
+ * read first, so everything before it is already in the store and in the
+ * snapshot, and replaying from it at start up fills in whatever the snapshot
+ * missed after that.
+ *
+ * @Author Ewan Lewis
+ */
+
+package com.example.MountainServer;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.nio.file.Path;
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantLock;
+
+public final class Checkpointer implements AutoCloseable {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(Checkpointer.class);
+
+    private final MountainStore STORE;
+
+    /**
+     * Log the snapshots cover, or null if there isn't one
+     */
+    private final WriteAheadLog LOG;
+
+    private final Path FILE;
+
+    private final ScheduledExecutorService TIMER;
+
+    /**
+     * Lock taken while checkpointing, so only one runs at a time
+     */
+    private final Lock lock = new ReentrantLock();
+
+    /**
+     * Constructor
+     *
+     * @param store           Store to snapshot
+     * @param log             Log the snapshots cover, or null if there isn't one
+     * @param file            File to write snapshots to
+     * @param intervalSeconds Seconds between snapshots
+     */
+    public Checkpointer(MountainStore store, WriteAheadLog log, Path file, long intervalSeconds) {
+        STORE = store;
+        LOG = log;
+        FILE = file;
+        TIMER = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "mountain-checkpoint");
+            thread.setDaemon(true);
+            return thread;
+        });
+        TIMER.scheduleWithFixedDelay(this::scheduledCheckpoint, intervalSeconds, intervalSeconds, TimeUnit.SECONDS);
+    }
+
+    /**
+     * Checkpoints from the timer - a failure is logged rather than thrown, which
+     * would cancel the timer and leave the log to grow forever, and the next run
+     * tries again
+     */
+    private void scheduledCheckpoint() {
+        try {
+            checkpoint();
+        } catch (RuntimeException e) {
+            LOGGER.error("Couldn't checkpoint the store, will try again in the next interval", e);
+        }
+    }
+
+    /**
+     * Writes a snapshot of the store and drops the log records it covers
+     */
+    public void checkpoint() {
+        lock.lock();
+        try {
+            long position = LOG == null ? 0 : LOG.position();
+            List<Mountain> mountains = STORE.getAll();
+            SnapshotFile.write(FILE, mountains, position);
+            if (LOG != null) {
+                LOG.truncateBefore(position);
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Stops the timer and writes a last snapshot, so the next start up has no log
+     * to replay
+     */
+    @Override
+    public void close() {
+        TIMER.shutdown();
+        try {
+            TIMER.awaitTermination(1, TimeUnit.MINUTES);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        checkpoint();
+    }
+}
@@ -0,0 +1,624 @@
+/**
+ * Store that keeps each field of the mountains in its own primitive column rather
+ * than as Mountain objects
+ * <p>
+ * IDs and altitudes are int columns, the hemisphere is a bit column, countries
+ * and ranges are stored as codes into a StringDictionary, and names are packed as
+ * UTF-8 into one shared byte array. That's roughly 30-40 bytes a mountain against
+ * a couple of hundred for a Mountain and its three Strings, and a filter query
+ * becomes a tight loop over a few int arrays. Mountain objects are only built for
+ * the rows a query returns.
+ * <p>
+ * The columns themselves sit behind MountainColumns, so they can be kept in Java
+ * arrays or outside the heap altogether.
+ *
+ * @Author Ewan Lewis
+ */
+
+package com.example.MountainServer;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+public class ColumnarMountainStore implements MountainStore, AutoCloseable {
+
+    /**
+     * Smallest row count at which deleted rows are compacted away
+     */
+    private static final int COMPACT_THRESHOLD = 1024;
+
+    /**
+     * Smallest amount of wasted name space, in bytes, that's compacted away
+     */
+    private static final int NAME_COMPACT_THRESHOLD = 64 * 1024;
+
+    /**
+     * Where the columns themselves are kept
+     */
+    private final MountainColumns COLUMNS;
+
+    private int rowCount = 0;
+    private int liveCount = 0;
+
+    private final StringDictionary COUNTRIES = new StringDictionary();
+    private final StringDictionary RANGES = new StringDictionary();
+
+    /**
+     * Primary-key index, from mountain ID to row
+     */
+    private final IntIntMap ID_INDEX = new IntIntMap();
+
+    /**
+     * Open-addressing hash table of row + 1 (0 marks a free slot), hashed on the
+     * name, range and country columns, used to find duplicates
+     */
+    private int[] identityTable = new int[32];
+    private int identityCount = 0;
+
+    /**
+     * Where new mountains get their IDs from
+     */
+    private final IdAllocator IDS;
+
+    /**
+     * Told about every change, while the write lock is held
+     */
+    private MountainStoreListener listener = MountainStoreListener.NONE;
+
+    /**
+     * Data version, counted up after every change
+     */
+    private final AtomicLong VERSION = new AtomicLong();
+
+    private final ReadWriteLock lock = new ReentrantReadWriteLock();
+
+    /**
+     * Constructor, keeping the columns in Java arrays, with IDs that are only
+     * unique to this store
+     */
+    public ColumnarMountainStore() {
+        this(new HeapMountainColumns(), new IdAllocator());
+    }
+
+    /**
+     * Constructor
+     *
+     * @param columns Where to keep the columns
+     * @param ids     Where new mountains get their IDs from
+     */
+    public ColumnarMountainStore(MountainColumns columns, IdAllocator ids) {
+        COLUMNS = columns;
+        IDS = ids;
+        COLUMNS.grow(16);
+    }
+
+    @Override
+    public boolean addAll(List<Mountain> newMountains) {
+        lock.writeLock().lock();
+        try {
+            Set<MountainKey> newKeys = new HashSet<>();
+            for (Mountain newMountain : newMountains) {
+                if (!newKeys.add(MountainKey.of(newMountain)) || findIdentity(newMountain) >= 0) {
+                    return false; // Found a duplicate
+                }
+            }
+            int id = IDS.allocate(newMountains.size());
+            for (Mountain newMountain : newMountains) {
+                newMountain.setId(id++);
+                appendRow(newMountain);
+            }
+            try {
+                listener.added(newMountains);
+            } finally {
+                VERSION.incrementAndGet();
+            }
+            return true;
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    @Override
+    public boolean[] addDistinct(List<Mountain> newMountains) {
+        boolean[] added = new boolean[newMountains.size()];
+        lock.writeLock().lock();
+        try {
+            Set<MountainKey> newKeys = new HashSet<>();
+            List<Mountain> accepted = new ArrayList<>(added.length);
+            for (int i = 0; i < added.length; i++) {
+                Mountain newMountain = newMountains.get(i);
+                added[i] = newKeys.add(MountainKey.of(newMountain)) && findIdentity(newMountain) < 0;
+                if (added[i]) {
+                    accepted.add(newMountain);
+                }
+            }
+            if (!accepted.isEmpty()) {
+                int id = IDS.allocate(accepted.size());
+                for (Mountain newMountain : accepted) {
+                    newMountain.setId(id++);
+                    appendRow(newMountain);
+                }
+                try {
+                    listener.added(accepted);
+                } finally {
+                    VERSION.incrementAndGet();
+                }
+            }
+            return added;
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    @Override
+    public List<Mountain> getAll() {
+        lock.readLock().lock();
+        try {
+            List<Mountain> returningMountains = new ArrayList<>(liveCount);
+            for (int row = 0; row < rowCount; row++) {
+                if (COLUMNS.isLive(row)) {
+                    returningMountains.add(materialize(row));
+                }
+            }
+            return returningMountains;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Searches for mountains matching every filter in a query, with one pass over
+     * the columns the query filters on
+     *
+     * @param query Filters to apply
+     * @return List of all mountains matching the query
+     */
+    @Override
+    public List<Mountain> find(MountainQuery query) {
+        lock.readLock().lock();
+        try {
+            List<Mountain> returningMountains = new ArrayList<>();
+            QueryPlan plan = plan(query);
+            if (plan.access() != QueryPlan.Access.FULL_SCAN) {
+                // The ID and identity indexes give at most one row
+                int row = rowFor(plan.access(), query);
+                if (row >= 0 && COLUMNS.id(row) > query.getAfterId() && query.getLimit() > 0) {
+                    Mountain mountain = materialize(row);
+                    if (query.matches(mountain)) {
+                        returningMountains.add(mountain);
+                    }
+                }
+                return returningMountains;
+            }
+
+            int country = query.getCountry() == null ? StringDictionary.MISSING : COUNTRIES.lookup(query.getCountry());
+            int range = query.getRange() == null ? StringDictionary.MISSING : RANGES.lookup(query.getRange());
+            if ((query.getCountry() != null && country == StringDictionary.MISSING)
+                    || (query.getRange() != null && range == StringDictionary.MISSING)) {
+                return returningMountains; // A value that's never been stored matches nothing
+            }
+            byte[] name = query.getName() == null ? null : query.getName().getBytes(StandardCharsets.UTF_8);
+            int northern = query.getNorthern() == null ? -1 : query.getNorthern() ? 1 : 0;
+            int min = query.getMinAltitude() == null ? Integer.MIN_VALUE : query.getMinAltitude();
+            int max = query.getMaxAltitude() == null ? Integer.MAX_VALUE : query.getMaxAltitude();
+
+            // Sorted, every match is offered to a TopK instead of stopping at the limit
+            TopK top = plan.ordering() == QueryPlan.Ordering.TOP_K
+                    ? new TopK(query.getSort().comparator(), query.getLimit()) : null;
+            int limit = top == null ? query.getLimit() : Integer.MAX_VALUE;
+            int start = top == null ? firstRowAfter(query.getAfterId()) : 0;
+            for (int row = start; row < rowCount && returningMountains.size() < limit; row++) {
+                if (COLUMNS.isLive(row)
+                        && (country == StringDictionary.MISSING || COLUMNS.country(row) == country)
+                        && (range == StringDictionary.MISSING || COLUMNS.range(row) == range)
+                        && (northern < 0 || COLUMNS.isNorthern(row) == (northern == 1))
+                        && COLUMNS.altitude(row) >= min && COLUMNS.altitude(row) <= max
+                        && (name == null || COLUMNS.nameEquals(row, name))) {
+                    if (top == null) {
+                        returningMountains.add(materialize(row));
+                    } else {
+                        top.offer(materialize(row));
+                    }
+                }
+            }
+            return top == null ? returningMountains : top.sorted();
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    @Override
+    public QueryPlan explain(MountainQuery query) {
+        lock.readLock().lock();
+        try {
+            return plan(query);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Plans a query - the only indexes are on ID and identity, and anything else
+     * is a scan over the columns, must hold the read lock
+     *
+     * @param query Filters to plan for
+     * @return the plan
+     */
+    private QueryPlan plan(MountainQuery query) {
+        return QueryPlanner.plan(query, liveCount, access -> switch (access) {
+            case ID, IDENTITY -> rowFor(access, query) < 0 ? 0 : 1;
+            default -> QueryPlanner.NO_INDEX;
+        });
+    }
+
+    /**
+     * Gets the row the ID or identity index gives for a query, must hold the read lock
+     *
+     * @param access ID or IDENTITY
+     * @param query  Query with the filters the index answers set
+     * @return the row, or -1 if there isn't one
+     */
+    private int rowFor(QueryPlan.Access access, MountainQuery query) {
+        if (access == QueryPlan.Access.ID) {
+            int row = ID_INDEX.get(query.getId());
+            return row == IntIntMap.MISSING ? -1 : row;
+        }
+        return findIdentity(new Mountain(query.getName(), 0, query.getRange(), query.getCountry(), true));
+    }
+
+    @Override
+    public Mountain get(int id) {
+        lock.readLock().lock();
+        try {
+            int row = ID_INDEX.get(id);
+            return row == IntIntMap.MISSING ? null : materialize(row);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    @Override
+    public boolean update(int id, Mountain mountain) {
+        lock.writeLock().lock();
+        try {
+            if (!replace(id, mountain)) {
+                return false;
+            }
+            compactIfSparse();
+            return true;
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    @Override
+    public boolean delete(int id) {
+        lock.writeLock().lock();
+        try {
+            if (!remove(id)) {
+                return false;
+            }
+            compactIfSparse();
+            return true;
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    @Override
+    public boolean[] updateAll(List<Mountain> mountains) {
+        boolean[] updated = new boolean[mountains.size()];
+        lock.writeLock().lock();
+        try {
+            boolean changed = false;
+            for (int i = 0; i < updated.length; i++) {
+                Mountain mountain = mountains.get(i);
+                updated[i] = replace(mountain.getId(), mountain);
+                changed |= updated[i];
+            }
+            if (changed) {
+                compactIfSparse();
+            }
+            return updated;
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    @Override
+    public boolean[] deleteAll(int[] ids) {
+        boolean[] deleted = new boolean[ids.length];
+        lock.writeLock().lock();
+        try {
+            boolean changed = false;
+            for (int i = 0; i < ids.length; i++) {
+                deleted[i] = remove(ids[i]);
+                changed |= deleted[i];
+            }
+            if (changed) {
+                compactIfSparse();
+            }
+            return deleted;
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Overwrites a mountain's row, must hold the write lock
+     *
+     * @param id       ID of mountain to update
+     * @param mountain New data of mountain
+     * @return if there was a mountain with the ID
+     */
+    private boolean replace(int id, Mountain mountain) {
+        int row = ID_INDEX.get(id);
+        if (row == IntIntMap.MISSING) {
+            return false;
+        }
+        // The replacement keeps the ID of the mountain it replaces
+        mountain.setId(id);
+        Mountain old = materialize(row);
+        removeIdentity(row);
+        writeRow(row, mountain);
+        insertIdentity(row);
+        try {
+            listener.updated(old, mountain);
+        } finally {
+            VERSION.incrementAndGet();
+        }
+        return true;
+    }
+
+    /**
+     * Marks a mountain's row deleted, must hold the write lock
+     *
+     * @param id ID of mountain to delete
+     * @return if there was a mountain with the ID
+     */
+    private boolean remove(int id) {
+        int row = ID_INDEX.remove(id);
+        if (row == IntIntMap.MISSING) {
+            return false;
+        }
+        Mountain old = materialize(row);
+        removeIdentity(row);
+        COLUMNS.setLive(row, false);
+        liveCount--;
+        try {
+            listener.deleted(old);
+        } finally {
+            VERSION.incrementAndGet();
+        }
+        return true;
+    }
+
+    /**
+     * Compacts the rows if deleted ones make up most of them, or if most of the
+     * names' space is left over from deleted rows and renames, must hold the write
+     * lock
+     */
+    private void compactIfSparse() {
+        long wasted = COLUMNS.wastedNameBytes();
+        if ((rowCount >= COMPACT_THRESHOLD && liveCount < rowCount / 2)
+                || (wasted >= NAME_COMPACT_THRESHOLD && wasted > COLUMNS.nameBytes() / 2)) {
+            compact();
+        }
+    }
+
+    @Override
+    public void restore(List<Mountain> mountains) {
+        lock.writeLock().lock();
+        try {
+            for (Mountain mountain : mountains) {
+                appendRow(mountain);
+            }
+            VERSION.incrementAndGet();
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    @Override
+    public void setListener(MountainStoreListener listener) {
+        this.listener = listener;
+    }
+
+    @Override
+    public long version() {
+        return VERSION.get();
+    }
+
+    /**
+     * Finds where the mountains after an ID start - deleted rows keep their ID
+     * until compaction, so the ID column is sorted all the way through
+     *
+     * @param id ID to start after
+     * @return the first row with a higher ID
+     */
+    private int firstRowAfter(int id) {
+        int low = 0;
+        int high = rowCount;
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            if (COLUMNS.id(mid) > id) {
+                high = mid;
+            } else {
+                low = mid + 1;
+            }
+        }
+        return low;
+    }
+
+    /**
+     * Adds a mountain in a new row at the end of the columns, must hold the write lock
+     *
+     * @param mountain Mountain to add
+     */
+    private void appendRow(Mountain mountain) {
+        if (rowCount == COLUMNS.capacity()) {
+            COLUMNS.grow(rowCount << 1);
+        }
+        int row = rowCount++;
+        writeRow(row, mountain);
+        COLUMNS.setLive(row, true);
+        liveCount++;
+        ID_INDEX.put(mountain.getId(), row);
+        insertIdentity(row);
+    }
+
+    /**
+     * Writes a mountain's fields into a row's columns, must hold the write lock
+     *
+     * @param row      Row to write
+     * @param mountain Mountain to write
+     */
+    private void writeRow(int row, Mountain mountain) {
+        byte[] name = mountain.getName() == null ? null : mountain.getName().getBytes(StandardCharsets.UTF_8);
+        COLUMNS.write(row, mountain.getId(), mountain.getAltitude(), COUNTRIES.encode(mountain.getCountry()),
+                RANGES.encode(mountain.getRange()), mountain.getIsNorthern(), name,
+                mountain.getLatitude() == null ? Double.NaN : mountain.getLatitude(),
+                mountain.getLongitude() == null ? Double.NaN : mountain.getLongitude());
+    }
+
+    /**
+     * Builds a Mountain from a row's columns, must hold the read lock. It's new
+     * every time, so unlike the other stores' mountains it has no JSON fragment
+     * kept from before, and MountainJson encodes its fields as it writes them
+     *
+     * @param row Row to read
+     * @return the mountain
+     */
+    private Mountain materialize(int row) {
+        Mountain mountain = new Mountain();
+        mountain.setId(COLUMNS.id(row));
+        mountain.setName(COLUMNS.name(row));
+        mountain.setAltitude(COLUMNS.altitude(row));
+        mountain.setRange(RANGES.decode(COLUMNS.range(row)));
+        mountain.setCountry(COUNTRIES.decode(COLUMNS.country(row)));
+        mountain.setNorthern(COLUMNS.isNorthern(row));
+        double latitude = COLUMNS.latitude(row);
+        double longitude = COLUMNS.longitude(row);
+        mountain.setLatitude(Double.isNaN(latitude) ? null : latitude);
+        mountain.setLongitude(Double.isNaN(longitude) ? null : longitude);
+        return mountain;
+    }
+
+    /**
+     * Finds a stored row with the same name, range and country as a mountain
+     *
+     * @param mountain Mountain to look for
+     * @return the row, or -1 if there isn't one
+     */
+    private int findIdentity(Mountain mountain) {
+        int country = COUNTRIES.lookup(mountain.getCountry());
+        int range = RANGES.lookup(mountain.getRange());
+        if (country == StringDictionary.MISSING || range == StringDictionary.MISSING) {
+            return -1;
+        }
+        byte[] name = mountain.getName() == null ? null : mountain.getName().getBytes(StandardCharsets.UTF_8);
+        int nameHash = MountainColumns.nameHash(name);
+        int mask = identityTable.length - 1;
+        for (int slot = identityHash(nameHash, country, range) & mask; identityTable[slot] != 0; slot = (slot + 1) & mask) {
+            int row = identityTable[slot] - 1;
+            if (COLUMNS.country(row) == country && COLUMNS.range(row) == range && COLUMNS.nameEquals(row, name)) {
+                return row;
+            }
+        }
+        return -1;
+    }
+
+    private void insertIdentity(int row) {
+        if ((identityCount + 1) * 2 > identityTable.length) {
+            rebuildIdentity(identityTable.length << 1);
+        }
+        int mask = identityTable.length - 1;
+        int slot = identityHash(row) & mask;
+        while (identityTable[slot] != 0) {
+            slot = (slot + 1) & mask;
+        }
+        identityTable[slot] = row + 1;
+        identityCount++;
+    }
+
+    /**
+     * Removes a row from the identity table, shifting back later entries in its
+     * probe chain so they stay reachable
+     *
+     * @param row Row to remove, whose columns must still hold what it was added with
+     */
+    private void removeIdentity(int row) {
+        int mask = identityTable.length - 1;
+        int gap = identityHash(row) & mask;
+        while (identityTable[gap] != row + 1) {
+            gap = (gap + 1) & mask;
+        }
+        int slot = gap;
+        while (true) {
+            slot = (slot + 1) & mask;
+            if (identityTable[slot] == 0) {
+                break;
+            }
+            int home = identityHash(identityTable[slot] - 1) & mask;
+            boolean movable = gap <= slot ? (home <= gap || home > slot) : (home <= gap && home > slot);
+            if (movable) {
+                identityTable[gap] = identityTable[slot];
+                gap = slot;
+            }
+        }
+        identityTable[gap] = 0;
+        identityCount--;
+    }
+
+    private void rebuildIdentity(int capacity) {
+        identityTable = new int[capacity];
+        identityCount = 0;
+        for (int row = 0; row < rowCount; row++) {
+            if (COLUMNS.isLive(row)) {
+                insertIdentity(row);
+            }
+        }
+    }
+
+    private int identityHash(int row) {
+        return identityHash(COLUMNS.nameHash(row), COLUMNS.country(row), COLUMNS.range(row));
+    }
+
+    private static int identityHash(int nameHash, int country, int range) {
+        int h = (nameHash * 31 + country) * 31 + range;
+        h *= 0x9E3779B9;
+        return h ^ (h >>> 16);
+    }
+
+    /**
+     * Slides the live rows down over the deleted ones and rebuilds the indexes,
+     * must hold the write lock
+     */
+    private void compact() {
+        rowCount = COLUMNS.compact(rowCount);
+        ID_INDEX.clear();
+        for (int row = 0; row < rowCount; row++) {
+            ID_INDEX.put(COLUMNS.id(row), row);
+        }
+        rebuildIdentity(Math.max(32, Integer.highestOneBit(Math.max(1, rowCount)) << 2));
+    }
+
+    /**
+     * Releases the storage held by the columns
+     */
+    @Override
+    public void close() {
+        lock.writeLock().lock();
+        try {
+            COLUMNS.close();
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+}
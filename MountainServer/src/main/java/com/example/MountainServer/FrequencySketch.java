@@ -0,0 +1,93 @@
+/**
+ * Approximate count of how often each key has been seen recently, used by
+ * QueryCache to decide which of two entries is worth keeping
+ * <p>
+ * A count-min sketch: four rows of small counters, each key counted in one
+ * counter per row and its frequency taken as the smallest of the four, so
+ * collisions can only make a key look more popular than it is. Counters stop
+ * at 15, and once enough keys have been counted every counter is halved, so
+ * keys that were popular a long time ago fade out.
+ *
+ * @Author Ewan Lewis
+ */
+
+package com.example.MountainServer;
+
+public class FrequencySketch {
+
+    private static final int ROWS = 4;
+
+    private static final int MAX_COUNT = 15;
+
+    private static final int[] SEEDS = {0x97CB3127, 0xB37C5D2F, 0xC2B2AE35, 0x85EBCA6B};
+
+    private final byte[][] COUNTERS;
+
+    private final int MASK;
+
+    /**
+     * Keys counted before every counter is halved
+     */
+    private final int SAMPLE_SIZE;
+
+    private int counted;
+
+    /**
+     * Constructor
+     *
+     * @param expectedKeys Roughly how many distinct keys are worth telling apart
+     */
+    public FrequencySketch(int expectedKeys) {
+        int width = Integer.highestOneBit(Math.max(16, expectedKeys - 1) << 1);
+        COUNTERS = new byte[ROWS][width];
+        MASK = width - 1;
+        SAMPLE_SIZE = 10 * Math.max(16, expectedKeys);
+    }
+
+    /**
+     * Counts a key once more
+     *
+     * @param hash Hash of the key
+     */
+    public void increment(int hash) {
+        boolean added = false;
+        for (int row = 0; row < ROWS; row++) {
+            int index = index(hash, row);
+            if (COUNTERS[row][index] < MAX_COUNT) {
+                COUNTERS[row][index]++;
+                added = true;
+            }
+        }
+        if (added && ++counted == SAMPLE_SIZE) {
+            halve();
+        }
+    }
+
+    /**
+     * Estimates how often a key has been seen recently
+     *
+     * @param hash Hash of the key
+     * @return the estimate, from 0 to 15
+     */
+    public int frequency(int hash) {
+        int frequency = MAX_COUNT;
+        for (int row = 0; row < ROWS; row++) {
+            frequency = Math.min(frequency, COUNTERS[row][index(hash, row)]);
+        }
+        return frequency;
+    }
+
+    private int index(int hash, int row) {
+        int h = hash * SEEDS[row];
+        return (h ^ (h >>> 16)) & MASK;
+    }
+
+    private void halve() {
+        for (byte[] counters : COUNTERS) {
+            for (int i = 0; i < counters.length; i++) {
+                counters[i] >>= 1;
+            }
+        }
+        counted /= 2;
+    }
+}
@@ -0,0 +1,16 @@
+/**
+ * Statistics of one group of mountains, as returned by GET /mountains/stats
+ *
+ * @Author Ewan Lewis
+ */
+
+package com.example.MountainServer;
+
+/**
+ * @param group           Country, range or hemisphere the mountains share
+ * @param count           Number of mountains in the group
+ * @param minAltitude     Altitude of the lowest
+ * @param maxAltitude     Altitude of the highest
+ * @param averageAltitude Mean altitude
+ */
+public record GroupStatistics(String group, long count, int minAltitude, int maxAltitude, double averageAltitude) {}
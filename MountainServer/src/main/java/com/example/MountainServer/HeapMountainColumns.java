@@ -0,0 +1,232 @@
+/**
+ * Column storage in plain Java arrays, one array per field
+ *
+ * @Author Ewan Lewis
+ */
+
+package com.example.MountainServer;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+public class HeapMountainColumns implements MountainColumns {
+
+    /**
+     * Name length stored for a mountain with no name
+     */
+    private static final int NO_NAME = -1;
+
+    private int[] ids = new int[0];
+    private int[] altitudes = new int[0];
+    private int[] countryCodes = new int[0];
+    private int[] rangeCodes = new int[0];
+    private double[] latitudes = new double[0];
+    private double[] longitudes = new double[0];
+
+    /**
+     * Where each row's name starts in the name bytes, and how long it is
+     */
+    private int[] nameOffsets = new int[0];
+    private int[] nameLengths = new int[0];
+
+    /**
+     * Bit per row, set if the mountain is in the Northern hemisphere
+     */
+    private long[] northernBits = new long[0];
+
+    /**
+     * Bit per row, set if the row hasn't been deleted
+     */
+    private long[] liveBits = new long[0];
+
+    /**
+     * Every row's name, one after another - deleted rows, and rows overwritten
+     * with a longer name, leave their old name behind until the next compaction
+     */
+    private byte[] names = new byte[256];
+    private int namesLength = 0;
+    private long wastedNameBytes = 0;
+
+    @Override
+    public int capacity() {
+        return ids.length;
+    }
+
+    @Override
+    public void grow(int capacity) {
+        ids = Arrays.copyOf(ids, capacity);
+        altitudes = Arrays.copyOf(altitudes, capacity);
+        countryCodes = Arrays.copyOf(countryCodes, capacity);
+        rangeCodes = Arrays.copyOf(rangeCodes, capacity);
+        latitudes = Arrays.copyOf(latitudes, capacity);
+        longitudes = Arrays.copyOf(longitudes, capacity);
+        nameOffsets = Arrays.copyOf(nameOffsets, capacity);
+        nameLengths = Arrays.copyOf(nameLengths, capacity);
+        northernBits = Arrays.copyOf(northernBits, (capacity + 63) >>> 6);
+        liveBits = Arrays.copyOf(liveBits, (capacity + 63) >>> 6);
+    }
+
+    @Override
+    public void write(int row, int id, int altitude, int country, int range, boolean northern, byte[] name,
+                      double latitude, double longitude) {
+        ids[row] = id;
+        altitudes[row] = altitude;
+        countryCodes[row] = country;
+        rangeCodes[row] = range;
+        latitudes[row] = latitude;
+        longitudes[row] = longitude;
+        setBit(northernBits, row, northern);
+        int oldLength = isLive(row) ? Math.max(nameLengths[row], 0) : 0;
+        if (name == null) {
+            wastedNameBytes += oldLength;
+            nameLengths[row] = NO_NAME;
+            return;
+        }
+        if (name.length <= oldLength) {
+            System.arraycopy(name, 0, names, nameOffsets[row], name.length);
+            wastedNameBytes += oldLength - name.length;
+        } else {
+            wastedNameBytes += oldLength;
+            nameOffsets[row] = appendName(name, 0, name.length);
+        }
+        nameLengths[row] = name.length;
+    }
+
+    @Override
+    public int id(int row) {
+        return ids[row];
+    }
+
+    @Override
+    public int altitude(int row) {
+        return altitudes[row];
+    }
+
+    @Override
+    public int country(int row) {
+        return countryCodes[row];
+    }
+
+    @Override
+    public int range(int row) {
+        return rangeCodes[row];
+    }
+
+    @Override
+    public boolean isNorthern(int row) {
+        return (northernBits[row >>> 6] & (1L << row)) != 0;
+    }
+
+    @Override
+    public double latitude(int row) {
+        return latitudes[row];
+    }
+
+    @Override
+    public double longitude(int row) {
+        return longitudes[row];
+    }
+
+    @Override
+    public boolean isLive(int row) {
+        return (liveBits[row >>> 6] & (1L << row)) != 0;
+    }
+
+    @Override
+    public void setLive(int row, boolean live) {
+        if (!live && isLive(row)) {
+            wastedNameBytes += Math.max(nameLengths[row], 0);
+        }
+        setBit(liveBits, row, live);
+    }
+
+    @Override
+    public String name(int row) {
+        return nameLengths[row] == NO_NAME ? null
+                : new String(names, nameOffsets[row], nameLengths[row], StandardCharsets.UTF_8);
+    }
+
+    @Override
+    public boolean nameEquals(int row, byte[] name) {
+        if (name == null) {
+            return nameLengths[row] == NO_NAME;
+        }
+        return nameLengths[row] == name.length
+                && Arrays.equals(names, nameOffsets[row], nameOffsets[row] + name.length, name, 0, name.length);
+    }
+
+    @Override
+    public int nameHash(int row) {
+        if (nameLengths[row] == NO_NAME) {
+            return 0;
+        }
+        int h = 1;
+        for (int i = nameOffsets[row]; i < nameOffsets[row] + nameLengths[row]; i++) {
+            h = 31 * h + names[i];
+        }
+        return h;
+    }
+
+    @Override
+    public long nameBytes() {
+        return namesLength;
+    }
+
+    @Override
+    public long wastedNameBytes() {
+        return wastedNameBytes;
+    }
+
+    @Override
+    public int compact(int rowCount) {
+        byte[] oldNames = names;
+        names = new byte[(int) Math.max(256, namesLength - wastedNameBytes)];
+        namesLength = 0;
+        wastedNameBytes = 0;
+        int live = 0;
+        for (int row = 0; row < rowCount; row++) {
+            if (!isLive(row)) {
+                continue;
+            }
+            ids[live] = ids[row];
+            altitudes[live] = altitudes[row];
+            countryCodes[live] = countryCodes[row];
+            rangeCodes[live] = rangeCodes[row];
+            latitudes[live] = latitudes[row];
+            longitudes[live] = longitudes[row];
+            if (nameLengths[row] != NO_NAME) {
+                nameOffsets[live] = appendName(oldNames, nameOffsets[row], nameLengths[row]);
+            }
+            nameLengths[live] = nameLengths[row];
+            setBit(northernBits, live, isNorthern(row));
+            live++;
+        }
+        Arrays.fill(liveBits, 0);
+        for (int row = 0; row < live; row++) {
+            setBit(liveBits, row, true);
+        }
+        return live;
+    }
+
+    @Override
+    public void close() {
+        // Nothing to release, the arrays go with the garbage collector
+    }
+
+    private int appendName(byte[] source, int offset, int length) {
+        if (namesLength + length > names.length) {
+            names = Arrays.copyOf(names, Math.max(names.length << 1, namesLength + length));
+        }
+        System.arraycopy(source, offset, names, namesLength, length);
+        namesLength += length;
+        return namesLength - length;
+    }
+
+    private static void setBit(long[] bits, int row, boolean value) {
+        if (value) {
+            bits[row >>> 6] |= 1L << row;
+        } else {
+            bits[row >>> 6] &= ~(1L << row);
+        }
+    }
+}
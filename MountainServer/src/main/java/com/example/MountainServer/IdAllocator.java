@@ -0,0 +1,134 @@
+/**
+ * Hands out mountain IDs, unique for the life of the server and, when given a
+ * file, across restarts too
+ * <p>
+ * IDs come from one atomic counter, and a store reserves a whole batch's worth
+ * in a single step, so concurrent adds never lock or queue on it. To survive a
+ * restart the allocator writes a high-water mark to its file that's always ahead
+ * of every ID handed out - it's only moved on once every LEASE IDs, and on start
+ * up counting carries on from it, skipping whatever was left of the last lease.
+ *
+ * @Author Ewan Lewis
+ */
+
+package com.example.MountainServer;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantLock;
+
+public class IdAllocator {
+
+    /**
+     * Number of IDs the high-water mark is moved on by each time it's written
+     */
+    private static final int LEASE = 1 << 16;
+
+    /**
+     * Last ID handed out
+     */
+    private final AtomicInteger LAST_ID;
+
+    /**
+     * File holding the high-water mark, or null if it isn't kept
+     */
+    private final Path FILE;
+
+    /**
+     * Highest ID that can be handed out before the mark has to be written again
+     */
+    private volatile int leasedUpTo;
+
+    /**
+     * Lock taken while writing the mark
+     */
+    private final Lock lock = new ReentrantLock();
+
+    /**
+     * Constructor, for IDs that only need to be unique until the server stops
+     */
+    public IdAllocator() {
+        FILE = null;
+        LAST_ID = new AtomicInteger();
+        leasedUpTo = Integer.MAX_VALUE;
+    }
+
+    /**
+     * Constructor, carrying on from the high-water mark in a file if there is one
+     *
+     * @param file File to keep the high-water mark in
+     */
+    public IdAllocator(Path file) {
+        FILE = file;
+        int mark = 0;
+        try {
+            if (Files.exists(file)) {
+                mark = Integer.parseInt(Files.readString(file, StandardCharsets.UTF_8).trim());
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException("Couldn't read ID high-water mark from " + file, e);
+        }
+        LAST_ID = new AtomicInteger(mark);
+        leasedUpTo = mark;
+    }
+
+    /**
+     * Reserves a run of consecutive IDs
+     *
+     * @param count Number of IDs needed
+     * @return the first ID of the run
+     */
+    public int allocate(int count) {
+        int last = LAST_ID.addAndGet(count);
+        if (last > leasedUpTo) {
+            extendLease(last);
+        }
+        return last - count + 1;
+    }
+
+    /**
+     * Makes sure an ID that's already in use, such as one recovered at start up,
+     * is never handed out again
+     *
+     * @param id ID in use
+     */
+    public void advancePast(int id) {
+        LAST_ID.accumulateAndGet(id, Math::max);
+        if (id > leasedUpTo) {
+            extendLease(id);
+        }
+    }
+
+    /**
+     * Writes a new high-water mark covering an ID, unless another thread already has
+     *
+     * @param last ID the mark has to cover
+     */
+    private void extendLease(int last) {
+        lock.lock();
+        try {
+            if (last <= leasedUpTo) {
+                return;
+            }
+            int mark = (int) Math.min(Integer.MAX_VALUE, (long) last + LEASE);
+            Path parent = FILE.toAbsolutePath().getParent();
+            Files.createDirectories(parent);
+            Path temp = parent.resolve(FILE.getFileName() + ".tmp");
+            Files.writeString(temp, Integer.toString(mark), StandardCharsets.UTF_8, StandardOpenOption.CREATE,
+                    StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE, StandardOpenOption.DSYNC);
+            Files.move(temp, FILE, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            leasedUpTo = mark;
+        } catch (IOException e) {
+            throw new UncheckedIOException("Couldn't write ID high-water mark to " + FILE, e);
+        } finally {
+            lock.unlock();
+        }
+    }
+}
@@ -0,0 +1,741 @@
+/**
+ * Store that keeps mountains in an array of rows behind one read/write lock
+ * <p>
+ * Every lookup the controller can make is backed by an index over the rows - a
+ * primary-key map for IDs, compressed bitmaps for country, range and hemisphere,
+ * and altitude-ordered indexes - all updated together under the write lock.
+ *
+ * @Author Ewan Lewis
+ */
+
+package com.example.MountainServer;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+public class IndexedMountainStore implements MountainStore {
+
+    /**
+     * Smallest row count at which deleted rows are compacted away
+     */
+    private static final int COMPACT_THRESHOLD = 1024;
+
+    /**
+     * Rows of mountains in insertion order, deleted rows are left as null
+     */
+    private Mountain[] rows = new Mountain[16];
+
+    /**
+     * Number of rows used, including deleted ones
+     */
+    private int rowCount = 0;
+
+    /**
+     * Number of rows still holding a mountain
+     */
+    private int liveCount = 0;
+
+    /**
+     * Primary-key index, from mountain ID to row
+     */
+    private final IntIntMap ID_INDEX = new IntIntMap();
+
+    /**
+     * Secondary index, from country to its rows
+     */
+    private final Map<String, RowSet> COUNTRY_INDEX = new HashMap<>();
+
+    /**
+     * Secondary index, from country and then range to their rows
+     */
+    private final Map<String, Map<String, RowSet>> COUNTRY_RANGE_INDEX = new HashMap<>();
+
+    /**
+     * Secondary index, from range to its rows across every country
+     */
+    private final Map<String, RowSet> RANGE_INDEX = new HashMap<>();
+
+    /**
+     * Rows of mountains in the Northern hemisphere
+     */
+    private final RowSet NORTHERN_ROWS = new RowSet();
+
+    /**
+     * Rows of mountains in the Southern hemisphere
+     */
+    private final RowSet SOUTHERN_ROWS = new RowSet();
+
+    /**
+     * Identity index, from name, range and country to their rows - used to find
+     * duplicates, and usually holds a single row per key
+     */
+    private final Map<MountainKey, RowSet> IDENTITY_INDEX = new HashMap<>();
+
+    /**
+     * Altitude index over every row
+     */
+    private final AltitudeIndex ALTITUDE_INDEX = new AltitudeIndex();
+
+    /**
+     * Altitude indexes, one per country
+     */
+    private final Map<String, AltitudeIndex> COUNTRY_ALTITUDE_INDEX = new HashMap<>();
+
+    /**
+     * Where new mountains get their IDs from
+     */
+    private final IdAllocator IDS;
+
+    /**
+     * Told about every change, while the write lock is held
+     */
+    private MountainStoreListener listener = MountainStoreListener.NONE;
+
+    /**
+     * Data version, counted up after every change
+     */
+    private final AtomicLong VERSION = new AtomicLong();
+
+    private final ReadWriteLock lock = new ReentrantReadWriteLock();
+
+    /**
+     * Constructor, with IDs that are only unique to this store
+     */
+    public IndexedMountainStore() {
+        this(new IdAllocator());
+    }
+
+    /**
+     * Constructor
+     *
+     * @param ids Where new mountains get their IDs from
+     */
+    public IndexedMountainStore(IdAllocator ids) {
+        IDS = ids;
+    }
+
+    @Override
+    public boolean addAll(List<Mountain> newMountains) {
+        lock.writeLock().lock();
+        try {
+            Set<MountainKey> newKeys = new HashSet<>();
+            for (Mountain newMountain : newMountains) {
+                MountainKey key = MountainKey.of(newMountain);
+                if (!newKeys.add(key) || IDENTITY_INDEX.containsKey(key)) {
+                    return false; // Found a duplicate
+                }
+            }
+            int id = IDS.allocate(newMountains.size());
+            for (Mountain newMountain : newMountains) {
+                newMountain.setId(id++);
+                appendRow(newMountain);
+            }
+            try {
+                listener.added(newMountains);
+            } finally {
+                VERSION.incrementAndGet();
+            }
+            return true;
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    @Override
+    public boolean[] addDistinct(List<Mountain> newMountains) {
+        boolean[] added = new boolean[newMountains.size()];
+        lock.writeLock().lock();
+        try {
+            Set<MountainKey> newKeys = new HashSet<>();
+            List<Mountain> accepted = new ArrayList<>(added.length);
+            for (int i = 0; i < added.length; i++) {
+                Mountain newMountain = newMountains.get(i);
+                added[i] = newKeys.add(MountainKey.of(newMountain)) && !IDENTITY_INDEX.containsKey(MountainKey.of(newMountain));
+                if (added[i]) {
+                    accepted.add(newMountain);
+                }
+            }
+            if (!accepted.isEmpty()) {
+                int id = IDS.allocate(accepted.size());
+                for (Mountain newMountain : accepted) {
+                    newMountain.setId(id++);
+                    appendRow(newMountain);
+                }
+                try {
+                    listener.added(accepted);
+                } finally {
+                    VERSION.incrementAndGet();
+                }
+            }
+            return added;
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Checks if a mountain with the same name, range and country is already stored
+     *
+     * @param key Identity to look for
+     * @return if present or not
+     */
+    boolean contains(MountainKey key) {
+        lock.readLock().lock();
+        try {
+            return IDENTITY_INDEX.containsKey(key);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Adds mountains that already have IDs, without checking for duplicates - the
+     * IDs must be higher than any already in the store so rows stay in ID order
+     *
+     * @param newMountains Mountains to be added
+     */
+    void insertAll(List<Mountain> newMountains) {
+        lock.writeLock().lock();
+        try {
+            for (Mountain newMountain : newMountains) {
+                appendRow(newMountain);
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Adds a mountain that already has an ID, without checking for duplicates, in
+     * its place in ID order - in a deleted row where it falls if there is one,
+     * otherwise by compacting the rows with it in its place
+     *
+     * @param mountain Mountain to be added
+     */
+    void insert(Mountain mountain) {
+        lock.writeLock().lock();
+        try {
+            int row = firstRowAfter(mountain.getId());
+            if (row == rowCount) {
+                appendRow(mountain);
+            } else if (rows[row] == null) {
+                fillRow(mountain, row);
+            } else if (row > 0 && rows[row - 1] == null) {
+                fillRow(mountain, row - 1);
+            } else {
+                compact(mountain);
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    @Override
+    public void restore(List<Mountain> mountains) {
+        insertAll(mountains);
+        VERSION.incrementAndGet();
+    }
+
+    @Override
+    public void setListener(MountainStoreListener listener) {
+        this.listener = listener;
+    }
+
+    @Override
+    public long version() {
+        return VERSION.get();
+    }
+
+    /**
+     * Gets the write lock, so a store built from several of these can hold the locks
+     * of every part a change touches at the same time
+     *
+     * @return the write lock
+     */
+    Lock writeLock() {
+        return lock.writeLock();
+    }
+
+    /**
+     * Gets the read lock, so a store built from several of these can check where a
+     * mountain is while its part can't change
+     *
+     * @return the read lock
+     */
+    Lock readLock() {
+        return lock.readLock();
+    }
+
+    @Override
+    public List<Mountain> getAll() {
+        lock.readLock().lock();
+        try {
+            List<Mountain> returningMountains = new ArrayList<>(liveCount);
+            for (int row = 0; row < rowCount; row++) {
+                if (rows[row] != null) {
+                    returningMountains.add(rows[row]);
+                }
+            }
+            return returningMountains;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Searches for mountains matching every filter in a query, by walking the rows
+     * of the index the planner expects to give the fewest and checking the rest of
+     * the filters on each
+     *
+     * @param query Filters to apply
+     * @return List of all mountains matching the query
+     */
+    @Override
+    public List<Mountain> find(MountainQuery query) {
+        lock.readLock().lock();
+        try {
+            QueryPlan plan = plan(query);
+            if (plan.ordering() != QueryPlan.Ordering.ID) {
+                return findSorted(query, plan);
+            }
+            List<Mountain> returningMountains = new ArrayList<>();
+            int limit = query.getLimit();
+            int start = firstRowAfter(query.getAfterId());
+            boolean checkAll = !plan.residual().isEmpty();
+            if (plan.access() == QueryPlan.Access.FULL_SCAN) {
+                for (int row = start; row < rowCount && returningMountains.size() < limit; row++) {
+                    if (rows[row] != null && (!checkAll || query.matches(rows[row]))) {
+                        returningMountains.add(rows[row]);
+                    }
+                }
+                return returningMountains;
+            }
+            rowsFor(plan.access(), query).forEachFrom(start, row -> {
+                if (!checkAll || query.matches(rows[row])) {
+                    returningMountains.add(rows[row]);
+                }
+                return returningMountains.size() < limit;
+            });
+            return returningMountains;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Finds the first mountains in a sorted query's order, either by walking an
+     * altitude index in that order until the limit is found, or by keeping the
+     * first of everything the plan's index gives in a TopK, must hold the read lock
+     *
+     * @param query Filters, order and limit
+     * @param plan  Plan for the query
+     * @return the mountains, in order
+     */
+    private List<Mountain> findSorted(MountainQuery query, QueryPlan plan) {
+        boolean checkAll = !plan.residual().isEmpty();
+        if (plan.ordering() == QueryPlan.Ordering.INDEX) {
+            List<Mountain> returningMountains = new ArrayList<>();
+            AltitudeIndex index = altitudeIndexFor(plan.access(), query);
+            if (index != null) {
+                boolean descending = query.getSort() == MountainQuery.Sort.ALTITUDE_DESC;
+                index.forEachBetween(minAltitude(query), maxAltitude(query), descending, row -> {
+                    if (!checkAll || query.matches(rows[row])) {
+                        returningMountains.add(rows[row]);
+                    }
+                    return returningMountains.size() < query.getLimit();
+                });
+            }
+            return returningMountains;
+        }
+        TopK top = new TopK(query.getSort().comparator(), query.getLimit());
+        if (plan.access() == QueryPlan.Access.FULL_SCAN) {
+            for (int row = 0; row < rowCount; row++) {
+                if (rows[row] != null && (!checkAll || query.matches(rows[row]))) {
+                    top.offer(rows[row]);
+                }
+            }
+        } else {
+            rowsFor(plan.access(), query).forEach(row -> {
+                if (!checkAll || query.matches(rows[row])) {
+                    top.offer(rows[row]);
+                }
+            });
+        }
+        return top.sorted();
+    }
+
+    @Override
+    public QueryPlan explain(MountainQuery query) {
+        lock.readLock().lock();
+        try {
+            return plan(query);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Plans a query from the sizes of the index entries it could use, must hold
+     * the read lock. Sorted by altitude, walking the altitude index of the
+     * query's country, or of every country, is weighed against the best index
+     *
+     * @param query Filters to plan for
+     * @return the plan
+     */
+    private QueryPlan plan(MountainQuery query) {
+        QueryPlan plan = QueryPlanner.plan(query, liveCount, access -> switch (access) {
+            case ALTITUDE, COUNTRY_ALTITUDE -> altitudeRows(access, query);
+            case FULL_SCAN, PARTS -> QueryPlanner.NO_INDEX;
+            default -> rowsFor(access, query).size();
+        });
+        if (!query.getSort().byAltitude()) {
+            return plan;
+        }
+        QueryPlan.Access ordered = query.getCountry() == null
+                ? QueryPlan.Access.ALTITUDE : QueryPlan.Access.COUNTRY_ALTITUDE;
+        return QueryPlanner.inOrder(plan, query, ordered, altitudeRows(ordered, query));
+    }
+
+    /**
+     * Gets the altitude index of the query's country, or of every country
+     *
+     * @param access COUNTRY_ALTITUDE or ALTITUDE
+     * @param query  Query with the country set for COUNTRY_ALTITUDE
+     * @return the index, or null if the country isn't in the store
+     */
+    private AltitudeIndex altitudeIndexFor(QueryPlan.Access access, MountainQuery query) {
+        return access == QueryPlan.Access.ALTITUDE ? ALTITUDE_INDEX : COUNTRY_ALTITUDE_INDEX.get(query.getCountry());
+    }
+
+    private long altitudeRows(QueryPlan.Access access, MountainQuery query) {
+        AltitudeIndex index = altitudeIndexFor(access, query);
+        return index == null ? 0 : index.countBetween(minAltitude(query), maxAltitude(query));
+    }
+
+    /**
+     * Gets the rows an index gives for a query, must hold the read lock
+     *
+     * @param access Index to look in
+     * @param query  Query with the filters the index answers set
+     * @return the rows, empty if the filter values aren't in the index
+     */
+    private RowSet rowsFor(QueryPlan.Access access, MountainQuery query) {
+        RowSet found = switch (access) {
+            case ID -> {
+                int row = ID_INDEX.get(query.getId());
+                yield row == IntIntMap.MISSING ? null : RowSet.of(new int[] {row});
+            }
+            case IDENTITY -> IDENTITY_INDEX.get(new MountainKey(query.getName(), query.getRange(), query.getCountry()));
+            case COUNTRY_RANGE -> {
+                Map<String, RowSet> ranges = COUNTRY_RANGE_INDEX.get(query.getCountry());
+                yield ranges == null ? null : ranges.get(query.getRange());
+            }
+            case COUNTRY -> COUNTRY_INDEX.get(query.getCountry());
+            case RANGE -> RANGE_INDEX.get(query.getRange());
+            case HEMISPHERE -> query.getNorthern() ? NORTHERN_ROWS : SOUTHERN_ROWS;
+            case ALTITUDE, COUNTRY_ALTITUDE -> {
+                AltitudeIndex index = altitudeIndexFor(access, query);
+                yield index == null ? null : RowSet.of(index.rowsBetween(minAltitude(query), maxAltitude(query)));
+            }
+            case FULL_SCAN, PARTS -> throw new IllegalArgumentException("Not an index: " + access);
+        };
+        return found == null ? new RowSet() : found;
+    }
+
+    private static int minAltitude(MountainQuery query) {
+        return query.getMinAltitude() == null ? Integer.MIN_VALUE : query.getMinAltitude();
+    }
+
+    private static int maxAltitude(MountainQuery query) {
+        return query.getMaxAltitude() == null ? Integer.MAX_VALUE : query.getMaxAltitude();
+    }
+
+    @Override
+    public Mountain get(int id) {
+        lock.readLock().lock();
+        try {
+            int row = ID_INDEX.get(id);
+            return row == IntIntMap.MISSING ? null : rows[row];
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    @Override
+    public boolean update(int id, Mountain mountain) {
+        lock.writeLock().lock();
+        try {
+            if (!replace(id, mountain)) {
+                return false;
+            }
+            return true;
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    @Override
+    public boolean delete(int id) {
+        lock.writeLock().lock();
+        try {
+            if (!remove(id)) {
+                return false;
+            }
+            compactIfSparse();
+            return true;
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    @Override
+    public boolean[] updateAll(List<Mountain> mountains) {
+        boolean[] updated = new boolean[mountains.size()];
+        lock.writeLock().lock();
+        try {
+            for (int i = 0; i < updated.length; i++) {
+                Mountain mountain = mountains.get(i);
+                updated[i] = replace(mountain.getId(), mountain);
+            }
+            return updated;
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    @Override
+    public boolean[] deleteAll(int[] ids) {
+        boolean[] deleted = new boolean[ids.length];
+        lock.writeLock().lock();
+        try {
+            boolean changed = false;
+            for (int i = 0; i < ids.length; i++) {
+                deleted[i] = remove(ids[i]);
+                changed |= deleted[i];
+            }
+            if (changed) {
+                compactIfSparse();
+            }
+            return deleted;
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Replaces the mountain in a row and re-indexes it, must hold the write lock
+     *
+     * @param id       ID of mountain to update
+     * @param mountain New data of mountain
+     * @return if there was a mountain with the ID
+     */
+    private boolean replace(int id, Mountain mountain) {
+        int row = ID_INDEX.get(id);
+        if (row == IntIntMap.MISSING) {
+            return false;
+        }
+        // The replacement keeps the ID of the mountain it replaces
+        mountain.setId(id);
+        Mountain old = rows[row];
+        unindex(old, row);
+        rows[row] = mountain;
+        index(mountain, row);
+        try {
+            listener.updated(old, mountain);
+        } finally {
+            VERSION.incrementAndGet();
+        }
+        return true;
+    }
+
+    /**
+     * Empties a mountain's row and unindexes it, must hold the write lock
+     *
+     * @param id ID of mountain to delete
+     * @return if there was a mountain with the ID
+     */
+    private boolean remove(int id) {
+        int row = ID_INDEX.remove(id);
+        if (row == IntIntMap.MISSING) {
+            return false;
+        }
+        Mountain old = rows[row];
+        unindex(old, row);
+        rows[row] = null;
+        liveCount--;
+        try {
+            listener.deleted(old);
+        } finally {
+            VERSION.incrementAndGet();
+        }
+        return true;
+    }
+
+    /**
+     * Compacts the rows if deleted ones make up most of them, must hold the write lock
+     */
+    private void compactIfSparse() {
+        if (rowCount >= COMPACT_THRESHOLD && liveCount < rowCount / 2) {
+            compact();
+        }
+    }
+
+    /**
+     * Finds where the mountains after an ID start - rows are in ID order, so this
+     * is a binary search, stepping over deleted rows
+     *
+     * @param id ID to start after
+     * @return the first row that could hold a higher ID
+     */
+    private int firstRowAfter(int id) {
+        int low = 0;
+        int high = rowCount;
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            int row = mid;
+            while (row < high && rows[row] == null) {
+                row++;
+            }
+            if (row == high || rows[row].getId() > id) {
+                high = mid;
+            } else {
+                low = row + 1;
+            }
+        }
+        return low;
+    }
+
+    /**
+     * Adds a mountain to the end of the rows and indexes it, must hold the write lock
+     *
+     * @param mountain Mountain to add
+     */
+    private void appendRow(Mountain mountain) {
+        if (rowCount == rows.length) {
+            rows = Arrays.copyOf(rows, rows.length << 1);
+        }
+        rows[rowCount] = mountain;
+        ID_INDEX.put(mountain.getId(), rowCount);
+        index(mountain, rowCount);
+        rowCount++;
+        liveCount++;
+    }
+
+    /**
+     * Puts a mountain in a deleted row and indexes it, must hold the write lock
+     *
+     * @param mountain Mountain to add
+     * @param row      Deleted row to put it in
+     */
+    private void fillRow(Mountain mountain, int row) {
+        rows[row] = mountain;
+        ID_INDEX.put(mountain.getId(), row);
+        index(mountain, row);
+        liveCount++;
+    }
+
+    /**
+     * Squeezes out deleted rows once they make up most of the table, and re-indexes
+     * the rows that moved, must hold the write lock
+     */
+    private void compact() {
+        compact(null);
+    }
+
+    /**
+     * Squeezes out deleted rows and re-indexes the rows that moved, must hold the
+     * write lock
+     *
+     * @param inserted Mountain to put in its place in ID order as the rows are
+     *                 copied, or null for none
+     */
+    private void compact(Mountain inserted) {
+        Mountain[] oldRows = rows;
+        int oldCount = rowCount;
+        rows = new Mountain[Math.max(16, (liveCount + 1) << 1)];
+        rowCount = 0;
+        liveCount = 0;
+        ID_INDEX.clear();
+        COUNTRY_INDEX.clear();
+        COUNTRY_RANGE_INDEX.clear();
+        IDENTITY_INDEX.clear();
+        RANGE_INDEX.clear();
+        NORTHERN_ROWS.clear();
+        SOUTHERN_ROWS.clear();
+        ALTITUDE_INDEX.clear();
+        COUNTRY_ALTITUDE_INDEX.clear();
+        for (int row = 0; row < oldCount; row++) {
+            if (oldRows[row] != null) {
+                if (inserted != null && inserted.getId() < oldRows[row].getId()) {
+                    appendRow(inserted);
+                    inserted = null;
+                }
+                appendRow(oldRows[row]);
+            }
+        }
+        if (inserted != null) {
+            appendRow(inserted);
+        }
+    }
+
+    /**
+     * Adds a row to the secondary indexes, must hold the write lock
+     *
+     * @param mountain Mountain in the row
+     * @param row      Row to add
+     */
+    private void index(Mountain mountain, int row) {
+        COUNTRY_INDEX.computeIfAbsent(mountain.getCountry(), k -> new RowSet()).add(row);
+        COUNTRY_RANGE_INDEX.computeIfAbsent(mountain.getCountry(), k -> new HashMap<>())
+                .computeIfAbsent(mountain.getRange(), k -> new RowSet()).add(row);
+        IDENTITY_INDEX.computeIfAbsent(MountainKey.of(mountain), k -> new RowSet()).add(row);
+        RANGE_INDEX.computeIfAbsent(mountain.getRange(), k -> new RowSet()).add(row);
+        (mountain.getIsNorthern() ? NORTHERN_ROWS : SOUTHERN_ROWS).add(row);
+        ALTITUDE_INDEX.add(mountain.getAltitude(), row);
+        COUNTRY_ALTITUDE_INDEX.computeIfAbsent(mountain.getCountry(), k -> new AltitudeIndex())
+                .add(mountain.getAltitude(), row);
+    }
+
+    /**
+     * Removes a row from the secondary indexes, dropping any keys left with no
+     * rows, must hold the write lock
+     *
+     * @param mountain Mountain in the row
+     * @param row      Row to remove
+     */
+    private void unindex(Mountain mountain, int row) {
+        removeRow(COUNTRY_INDEX, mountain.getCountry(), row);
+        Map<String, RowSet> ranges = COUNTRY_RANGE_INDEX.get(mountain.getCountry());
+        removeRow(ranges, mountain.getRange(), row);
+        if (ranges.isEmpty()) {
+            COUNTRY_RANGE_INDEX.remove(mountain.getCountry());
+        }
+        removeRow(IDENTITY_INDEX, MountainKey.of(mountain), row);
+        removeRow(RANGE_INDEX, mountain.getRange(), row);
+        (mountain.getIsNorthern() ? NORTHERN_ROWS : SOUTHERN_ROWS).remove(row);
+        ALTITUDE_INDEX.remove(mountain.getAltitude(), row);
+        AltitudeIndex countryAltitudes = COUNTRY_ALTITUDE_INDEX.get(mountain.getCountry());
+        countryAltitudes.remove(mountain.getAltitude(), row);
+        if (countryAltitudes.size() == 0) {
+            COUNTRY_ALTITUDE_INDEX.remove(mountain.getCountry());
+        }
+    }
+
+    private static <K> void removeRow(Map<K, RowSet> index, K key, int row) {
+        RowSet keyRows = index.get(key);
+        keyRows.remove(row);
+        if (keyRows.isEmpty()) {
+            index.remove(key);
+        }
+    }
+}
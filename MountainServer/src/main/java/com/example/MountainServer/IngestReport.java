@@ -0,0 +1,48 @@
+/**
+ * Running count of what a streaming ingest has stored so far - the mountains
+ * added, and the ones skipped as duplicates of a mountain already stored
+ *
+ * @Author Ewan Lewis
+ */
+
+package com.example.MountainServer;
+
+public class IngestReport {
+
+    private long accepted;
+
+    private long duplicates;
+
+    /**
+     * Gets the number of mountains added
+     *
+     * @return the number added
+     */
+    public long getAccepted() {
+        return accepted;
+    }
+
+    /**
+     * Gets the number of mountains skipped as duplicates
+     *
+     * @return the number skipped
+     */
+    public long getDuplicates() {
+        return duplicates;
+    }
+
+    /**
+     * Counts a committed chunk
+     *
+     * @param added For each mountain in the chunk, whether it was added
+     */
+    void count(boolean[] added) {
+        for (boolean add : added) {
+            if (add) {
+                accepted++;
+            } else {
+                duplicates++;
+            }
+        }
+    }
+}
@@ -0,0 +1,230 @@
+/**
+ * Open-addressing hash map from int keys to int values
+ * <p>
+ * Used for the primary-key index so ID lookups don't box every key into an Integer.
+ * Collisions are resolved by linear probing, and removals shift the following
+ * entries back so there are never any tombstones to skip over.
+ *
+ * @Author Ewan Lewis
+ */
+
+package com.example.MountainServer;
+
+import java.util.Arrays;
+
+public class IntIntMap {
+
+    /**
+     * Value returned when a key isn't present
+     */
+    public static final int MISSING = -1;
+
+    private static final int FREE = 0;
+
+    private static final float LOAD_FACTOR = 0.5f;
+
+    /**
+     * Slots for keys, 0 marks a free slot (key 0 is held separately)
+     */
+    private int[] keys;
+
+    private int[] values;
+
+    private int mask;
+
+    private int size;
+
+    private int resizeAt;
+
+    private boolean hasZeroKey;
+
+    private int zeroValue;
+
+    /**
+     * Constructor
+     */
+    public IntIntMap() {
+        this(16);
+    }
+
+    /**
+     * Constructor
+     *
+     * @param expected Number of entries expected
+     */
+    public IntIntMap(int expected) {
+        allocate(tableSizeFor(expected));
+    }
+
+    /**
+     * Gets the value stored against a key
+     *
+     * @param key Key to look up
+     * @return Value, or MISSING if not present
+     */
+    public int get(int key) {
+        if (key == FREE) {
+            return hasZeroKey ? zeroValue : MISSING;
+        }
+        int slot = mix(key) & mask;
+        while (keys[slot] != FREE) {
+            if (keys[slot] == key) {
+                return values[slot];
+            }
+            slot = (slot + 1) & mask;
+        }
+        return MISSING;
+    }
+
+    /**
+     * Checks if a key is present
+     *
+     * @param key Key to look up
+     * @return if present or not
+     */
+    public boolean containsKey(int key) {
+        return get(key) != MISSING;
+    }
+
+    /**
+     * Stores a value against a key, replacing any existing value
+     *
+     * @param key   Key to store against
+     * @param value Value to store, must not be negative
+     */
+    public void put(int key, int value) {
+        if (key == FREE) {
+            if (!hasZeroKey) {
+                size++;
+            }
+            hasZeroKey = true;
+            zeroValue = value;
+            return;
+        }
+        int slot = mix(key) & mask;
+        while (keys[slot] != FREE) {
+            if (keys[slot] == key) {
+                values[slot] = value;
+                return;
+            }
+            slot = (slot + 1) & mask;
+        }
+        keys[slot] = key;
+        values[slot] = value;
+        if (++size >= resizeAt) {
+            rehash(keys.length << 1);
+        }
+    }
+
+    /**
+     * Removes a key
+     *
+     * @param key Key to remove
+     * @return Value that was stored, or MISSING if not present
+     */
+    public int remove(int key) {
+        if (key == FREE) {
+            if (!hasZeroKey) {
+                return MISSING;
+            }
+            hasZeroKey = false;
+            size--;
+            return zeroValue;
+        }
+        int slot = mix(key) & mask;
+        while (keys[slot] != FREE) {
+            if (keys[slot] == key) {
+                int removed = values[slot];
+                shiftBack(slot);
+                size--;
+                return removed;
+            }
+            slot = (slot + 1) & mask;
+        }
+        return MISSING;
+    }
+
+    /**
+     * Removes every entry
+     */
+    public void clear() {
+        Arrays.fill(keys, FREE);
+        hasZeroKey = false;
+        size = 0;
+    }
+
+    /**
+     * Gets the number of entries
+     *
+     * @return number of entries
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * Closes the gap left by a removed slot, moving back any entry further along
+     * the probe chain that would otherwise become unreachable
+     *
+     * @param gap Slot that has just been emptied
+     */
+    private void shiftBack(int gap) {
+        int slot = gap;
+        while (true) {
+            slot = (slot + 1) & mask;
+            int key = keys[slot];
+            if (key == FREE) {
+                keys[gap] = FREE;
+                return;
+            }
+            int home = mix(key) & mask;
+            // Only move the entry if its home slot doesn't sit between the gap and where it is now
+            boolean movable = gap <= slot ? (home <= gap || home > slot) : (home <= gap && home > slot);
+            if (movable) {
+                keys[gap] = key;
+                values[gap] = values[slot];
+                gap = slot;
+            }
+        }
+    }
+
+    private void rehash(int capacity) {
+        int[] oldKeys = keys;
+        int[] oldValues = values;
+        allocate(capacity);
+        for (int i = 0; i < oldKeys.length; i++) {
+            int key = oldKeys[i];
+            if (key != FREE) {
+                int slot = mix(key) & mask;
+                while (keys[slot] != FREE) {
+                    slot = (slot + 1) & mask;
+                }
+                keys[slot] = key;
+                values[slot] = oldValues[i];
+            }
+        }
+    }
+
+    private void allocate(int capacity) {
+        keys = new int[capacity];
+        values = new int[capacity];
+        mask = capacity - 1;
+        resizeAt = (int) (capacity * LOAD_FACTOR);
+    }
+
+    private static int tableSizeFor(int expected) {
+        int capacity = Integer.highestOneBit(Math.max(8, (int) (expected / LOAD_FACTOR)) - 1) << 1;
+        return Math.max(16, capacity);
+    }
+
+    /**
+     * Spreads sequential IDs over the table so they don't all probe into one run
+     *
+     * @param key Key to hash
+     * @return mixed hash
+     */
+    private static int mix(int key) {
+        int h = key * 0x9E3779B9;
+        return h ^ (h >>> 16);
+    }
+}
@@ -0,0 +1,314 @@
+/**
+ * Index of where mountains are, for finding those within a distance of a point
+ * or nearest to it, kept up to date by listening to the store
+ * <p>
+ * The globe is cut into a grid of cells half a degree of latitude and longitude
+ * across, and each mountain with a location is kept in the cell it's in. Only
+ * cells holding mountains are kept. A search within a radius works out the box
+ * of latitudes and longitudes the circle fits in - wrapping round the
+ * antimeridian, and taking in every longitude if it reaches a pole - and only
+ * measures the distance to the mountains in the cells the box covers. If the box
+ * covers more cells than hold mountains it looks through those instead, so no
+ * search costs more than one pass over the index.
+ * <p>
+ * A cell keeps only the ID and location of each of its mountains, in primitive
+ * arrays, so the index costs the same few bytes a mountain whichever way the
+ * store holds them - a search looks the mountains it finds up in the store.
+ * <p>
+ * The nearest mountains are found by searching a small radius, and widening it
+ * until at least as many mountains as wanted are inside it - no mountain outside
+ * the circle can be nearer than one in it.
+ *
+ * @Author Ewan Lewis
+ */
+
+package com.example.MountainServer;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.PriorityQueue;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+public class LocationIndex implements MountainStoreListener {
+
+    /**
+     * Mean radius of the Earth
+     */
+    public static final double EARTH_RADIUS_KM = 6_371.0088;
+
+    /**
+     * Furthest apart two places on the Earth can be
+     */
+    public static final double MAX_DISTANCE_KM = Math.PI * EARTH_RADIUS_KM;
+
+    private static final double CELL_DEGREES = 0.5;
+    private static final int ROWS = (int) (180 / CELL_DEGREES);
+    private static final int COLUMNS = (int) (360 / CELL_DEGREES);
+
+    /**
+     * Radius the search for the nearest mountains starts at, and how much it's
+     * widened by each time too few are inside it
+     */
+    private static final double FIRST_RADIUS_KM = 25;
+    private static final double WIDENING = 4;
+
+    /**
+     * Mountains with a location in each cell that has any, by row times COLUMNS
+     * plus column
+     */
+    private final Map<Integer, Cell> CELLS = new HashMap<>();
+
+    /**
+     * Guards the cells - changes come in under the store's lock, which for a
+     * sharded store is one of many
+     */
+    private final ReadWriteLock lock = new ReentrantReadWriteLock();
+
+    /**
+     * The IDs and locations of the mountains in a cell, in no order, the first
+     * count of each used
+     */
+    private static final class Cell {
+
+        private int[] ids = new int[1];
+
+        private double[] latitudes = new double[1];
+
+        private double[] longitudes = new double[1];
+
+        private int count;
+
+        void add(int id, double latitude, double longitude) {
+            if (count == ids.length) {
+                ids = Arrays.copyOf(ids, count * 2);
+                latitudes = Arrays.copyOf(latitudes, count * 2);
+                longitudes = Arrays.copyOf(longitudes, count * 2);
+            }
+            ids[count] = id;
+            latitudes[count] = latitude;
+            longitudes[count] = longitude;
+            count++;
+        }
+
+        void remove(int id) {
+            for (int i = 0; i < count; i++) {
+                if (ids[i] == id) {
+                    // Order within a cell doesn't matter, so fill the gap from the end
+                    count--;
+                    ids[i] = ids[count];
+                    latitudes[i] = latitudes[count];
+                    longitudes[i] = longitudes[count];
+                    return;
+                }
+            }
+        }
+    }
+
+    /**
+     * The ID of a mountain found, and how far it is from the point searched from
+     */
+    private record Found(int id, double distanceKm) {}
+
+    /**
+     * Nearest first, then lowest ID
+     */
+    private static final Comparator<Found> NEAREST = Comparator.comparingDouble(Found::distanceKm)
+            .thenComparingInt(Found::id);
+
+    @Override
+    public void added(List<Mountain> mountains) {
+        lock.writeLock().lock();
+        try {
+            for (Mountain mountain : mountains) {
+                add(mountain);
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    @Override
+    public void updated(Mountain old, Mountain mountain) {
+        if (Objects.equals(old.getLatitude(), mountain.getLatitude())
+                && Objects.equals(old.getLongitude(), mountain.getLongitude())) {
+            return; // Same ID in the same place
+        }
+        lock.writeLock().lock();
+        try {
+            remove(old);
+            add(mountain);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    @Override
+    public void deleted(Mountain old) {
+        lock.writeLock().lock();
+        try {
+            remove(old);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Finds the mountains nearest a point, out to a distance
+     *
+     * @param latitude   Latitude of the point
+     * @param longitude  Longitude of the point
+     * @param radiusKm   Furthest a mountain can be from the point, in kilometres -
+     *                   MAX_DISTANCE_KM or more for anywhere
+     * @param limit      Most mountains to find
+     * @param store      Store to get the mountains found from
+     * @return the mountains, nearest first and then by ID
+     */
+    public List<Mountain> nearest(double latitude, double longitude, double radiusKm, int limit,
+                                  MountainStore store) {
+        // Looked up once the index is unlocked, as the store holds its own lock
+        // while it tells the index about a change
+        int[] ids = nearestIds(latitude, longitude, radiusKm, limit);
+        List<Mountain> mountains = new ArrayList<>(ids.length);
+        for (int id : ids) {
+            Mountain mountain = store.get(id);
+            if (mountain != null) {
+                mountains.add(mountain); // Unless deleted since it was found
+            }
+        }
+        return mountains;
+    }
+
+    private int[] nearestIds(double latitude, double longitude, double radiusKm, int limit) {
+        lock.readLock().lock();
+        try {
+            double radius = Math.min(radiusKm, FIRST_RADIUS_KM);
+            while (true) {
+                PriorityQueue<Found> nearest = new PriorityQueue<>(NEAREST.reversed());
+                int inside = within(latitude, longitude, radius, limit, nearest);
+                if (inside >= limit || radius >= radiusKm || radius >= MAX_DISTANCE_KM) {
+                    int[] ids = new int[nearest.size()];
+                    for (int i = ids.length - 1; i >= 0; i--) {
+                        ids[i] = nearest.poll().id();
+                    }
+                    return ids;
+                }
+                radius = Math.min(radiusKm, radius * WIDENING);
+            }
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Gets the distance between two points along the surface of the Earth
+     *
+     * @param latitude1  Latitude of the first point
+     * @param longitude1 Longitude of the first point
+     * @param latitude2  Latitude of the second point
+     * @param longitude2 Longitude of the second point
+     * @return the distance in kilometres
+     */
+    public static double distanceKm(double latitude1, double longitude1, double latitude2, double longitude2) {
+        double sinLatitude = Math.sin(Math.toRadians(latitude2 - latitude1) / 2);
+        double sinLongitude = Math.sin(Math.toRadians(longitude2 - longitude1) / 2);
+        double a = sinLatitude * sinLatitude + Math.cos(Math.toRadians(latitude1))
+                * Math.cos(Math.toRadians(latitude2)) * sinLongitude * sinLongitude;
+        return 2 * EARTH_RADIUS_KM * Math.asin(Math.min(1, Math.sqrt(a)));
+    }
+
+    /**
+     * Keeps the nearest mountains within a radius of a point, must hold the lock
+     *
+     * @param nearest Heap to keep them in, furthest on top
+     * @return how many mountains are within the radius, including those not kept
+     */
+    private int within(double latitude, double longitude, double radiusKm, int limit, PriorityQueue<Found> nearest) {
+        double angle = radiusKm / EARTH_RADIUS_KM;
+        double latitudeSpan = Math.toDegrees(angle);
+        int firstRow = rowOf(latitude - latitudeSpan);
+        int lastRow = rowOf(latitude + latitudeSpan);
+        int firstColumn = 0;
+        int columns = COLUMNS;
+        // Past a pole, or far enough round, the circle takes in every longitude
+        if (latitude - latitudeSpan > -90 && latitude + latitudeSpan < 90
+                && Math.sin(angle) < Math.cos(Math.toRadians(latitude))) {
+            double longitudeSpan = Math.toDegrees(Math.asin(Math.sin(angle) / Math.cos(Math.toRadians(latitude))));
+            firstColumn = columnOf(longitude - longitudeSpan);
+            columns = Math.floorMod(columnOf(longitude + longitudeSpan) - firstColumn, COLUMNS) + 1;
+        }
+
+        int inside = 0;
+        if ((long) (lastRow - firstRow + 1) * columns > CELLS.size()) {
+            for (Cell cell : CELLS.values()) {
+                inside += keep(cell, latitude, longitude, radiusKm, limit, nearest);
+            }
+            return inside;
+        }
+        for (int row = firstRow; row <= lastRow; row++) {
+            for (int i = 0; i < columns; i++) {
+                Cell cell = CELLS.get(row * COLUMNS + (firstColumn + i) % COLUMNS);
+                if (cell != null) {
+                    inside += keep(cell, latitude, longitude, radiusKm, limit, nearest);
+                }
+            }
+        }
+        return inside;
+    }
+
+    private static int keep(Cell cell, double latitude, double longitude, double radiusKm, int limit,
+                            PriorityQueue<Found> nearest) {
+        int inside = 0;
+        for (int i = 0; i < cell.count; i++) {
+            double distance = distanceKm(latitude, longitude, cell.latitudes[i], cell.longitudes[i]);
+            if (distance > radiusKm) {
+                continue;
+            }
+            inside++;
+            Found found = new Found(cell.ids[i], distance);
+            if (nearest.size() < limit) {
+                nearest.add(found);
+            } else if (limit > 0 && NEAREST.compare(found, nearest.peek()) < 0) {
+                nearest.poll();
+                nearest.add(found);
+            }
+        }
+        return inside;
+    }
+
+    private void add(Mountain mountain) {
+        if (mountain.hasLocation()) {
+            CELLS.computeIfAbsent(cellOf(mountain), c -> new Cell())
+                    .add(mountain.getId(), mountain.getLatitude(), mountain.getLongitude());
+        }
+    }
+
+    private void remove(Mountain mountain) {
+        if (!mountain.hasLocation()) {
+            return;
+        }
+        int key = cellOf(mountain);
+        Cell cell = CELLS.get(key);
+        cell.remove(mountain.getId());
+        if (cell.count == 0) {
+            CELLS.remove(key);
+        }
+    }
+
+    private static int cellOf(Mountain mountain) {
+        return rowOf(mountain.getLatitude()) * COLUMNS + columnOf(mountain.getLongitude());
+    }
+
+    private static int rowOf(double latitude) {
+        return Math.clamp((long) Math.floor((latitude + 90) / CELL_DEGREES), 0, ROWS - 1);
+    }
+
+    private static int columnOf(double longitude) {
+        return Math.floorMod((int) Math.floor((longitude + 180) / CELL_DEGREES), COLUMNS);
+    }
+}
@@ -1,5 +1,7 @@
 package com.example.MountainServer;
 
+import com.fasterxml.jackson.annotation.JsonInclude;
+
 import java.util.Objects;
 
 /**
@@ -27,13 +29,27 @@ public final class Mountain {
     private static final String NORTH = "Northern";
     private static final String SOUTH = "Southern";
     private int id;
-    private static int tid = 0;
     private String name;
     private int altitude;
     private String range;
     private String country;
     private boolean isNorthern;
 
+    /**
+     * Where the mountain is, in degrees north of the equator and east of Greenwich -
+     * null if not known, and only a location when both are given
+     */
+    @JsonInclude(JsonInclude.Include.NON_NULL)
+    private Double latitude;
+    @JsonInclude(JsonInclude.Include.NON_NULL)
+    private Double longitude;
+
+    /**
+     * Every field but the ID as JSON, built when first needed and dropped whenever
+     * one of those fields changes
+     */
+    private volatile byte[] jsonFields;
+
     /**
      * Create an empty Mountain object
      */
@@ -49,8 +65,6 @@ public final class Mountain {
      */
     public Mountain(final String name, final int altitude, final String range, final String country,
                      final boolean isNorthern) {
-        tid++;
-        this.id = tid;
         this.setName(name);
         this.setAltitude(altitude);
         this.setRange(range);
@@ -106,6 +120,30 @@ public final class Mountain {
         return isNorthern;
     }
 
+    /**
+     * The Mountain's latitude
+     * @return degrees north of the equator, negative for south, or null if not known
+     */
+    public Double getLatitude() {
+        return latitude;
+    }
+
+    /**
+     * The Mountain's longitude
+     * @return degrees east of Greenwich, negative for west, or null if not known
+     */
+    public Double getLongitude() {
+        return longitude;
+    }
+
+    /**
+     * Whether the Mountain's location is known
+     * @return true if it has both a latitude and a longitude
+     */
+    public boolean hasLocation() {
+        return latitude != null && longitude != null;
+    }
+
     /**
      * Set the Mountain's ID - note this may be needed when Mountain data is downloaded in JSON (or whatever)
      * format from the server and turned into Mountain objects on the client
@@ -121,6 +159,7 @@ public final class Mountain {
      */
     public void setName(String name) {
         this.name = name;
+        jsonFields = null;
     }
 
     /**
@@ -129,6 +168,7 @@ public final class Mountain {
      */
     public void setAltitude(int altitude) {
         this.altitude = altitude;
+        jsonFields = null;
     }
 
     /**
@@ -137,6 +177,7 @@ public final class Mountain {
      */
     public void setRange(String range) {
         this.range = range;
+        jsonFields = null;
     }
 
     /**
@@ -145,6 +186,7 @@ public final class Mountain {
      */
     public void setCountry(String country) {
         this.country = country;
+        jsonFields = null;
     }
 
     /**
@@ -153,6 +195,46 @@ public final class Mountain {
      */
     public void setNorthern(boolean northern) {
         isNorthern = northern;
+        jsonFields = null;
+    }
+
+    /**
+     * Set the Mountain's latitude
+     * @param latitude degrees north of the equator, from -90 to 90, or null if not known
+     * @throws IllegalArgumentException if it's off the globe
+     */
+    public void setLatitude(Double latitude) {
+        if (latitude != null && !(latitude >= -90 && latitude <= 90)) {
+            throw new IllegalArgumentException("Latitude out of range: " + latitude);
+        }
+        this.latitude = latitude;
+        jsonFields = null;
+    }
+
+    /**
+     * Set the Mountain's longitude
+     * @param longitude degrees east of Greenwich, from -180 to 180, or null if not known
+     * @throws IllegalArgumentException if it's off the globe
+     */
+    public void setLongitude(Double longitude) {
+        if (longitude != null && !(longitude >= -180 && longitude <= 180)) {
+            throw new IllegalArgumentException("Longitude out of range: " + longitude);
+        }
+        this.longitude = longitude;
+        jsonFields = null;
+    }
+
+    /**
+     * Get every field but the ID encoded as JSON, for MountainJson to write out
+     * @return the fragment, which mustn't be changed
+     */
+    public byte[] jsonFields() {
+        byte[] fields = jsonFields;
+        if (fields == null) {
+            fields = MountainJson.fields(this);
+            jsonFields = fields;
+        }
+        return fields;
     }
 
     /**
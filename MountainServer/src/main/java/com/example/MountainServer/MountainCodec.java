@@ -0,0 +1,427 @@
+/**
+ * Compact binary encoding of a list of mountains, sent instead of JSON when the
+ * client asks for application/x-mountain
+ * <p>
+ * After a version byte and the number of mountains, each mountain is its ID and
+ * altitude as varints, a byte of flags for its hemisphere and which of latitude
+ * and longitude it has, its UTF-8 name, its range and country, then whichever
+ * of latitude and longitude it has as 8 byte doubles. Ranges and countries
+ * repeat, so each one is written out in full only the first time it appears in
+ * a message and after that as a varint back reference to it. The client has a
+ * copy of this class, and the two must agree.
+ * <p>
+ * A stream of mountains too big to encode in one go is a run of messages one
+ * after the other, each with its own back references, read by decodeStream.
+ *
+ * @Author Ewan Lewis
+ */
+
+package com.example.MountainServer;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+
+public final class MountainCodec {
+
+    /**
+     * Media type for the encoding
+     */
+    public static final String MEDIA_TYPE = "application/x-mountain";
+
+    /**
+     * Version 2 added locations, in flag bits version 1 never set - so a version 1
+     * message decodes the same way
+     */
+    private static final byte FORMAT_VERSION = 2;
+
+    private static final int NORTHERN = 1;
+    private static final int LATITUDE = 2;
+    private static final int LONGITUDE = 4;
+
+    /**
+     * Longest string a stream may hold, so a bad length can't make the reader
+     * allocate without bound
+     */
+    private static final int MAX_STREAMED_STRING = 1 << 16;
+
+    /**
+     * Most characters of ranges and countries one message of a stream may refer
+     * back to, so a message that's all new strings can't make the reader hold
+     * them without bound - a sender splits anything bigger into more messages
+     */
+    private static final int MAX_STREAMED_REFERENCES = 1 << 20;
+
+    private MountainCodec() {
+
+    }
+
+    /**
+     * Encodes mountains
+     *
+     * @param mountains Mountains to encode
+     * @return the encoded mountains
+     */
+    public static byte[] encode(List<Mountain> mountains) {
+        Writer out = new Writer(16 + mountains.size() * 24);
+        Map<String, Integer> seen = new HashMap<>();
+        out.writeByte(FORMAT_VERSION);
+        out.writeVarint(mountains.size());
+        for (Mountain mountain : mountains) {
+            out.writeVarint(mountain.getId());
+            // Zigzag, so an altitude below sea level is still short
+            out.writeVarint((mountain.getAltitude() << 1) ^ (mountain.getAltitude() >> 31));
+            out.writeByte((mountain.getIsNorthern() ? NORTHERN : 0)
+                    | (mountain.getLatitude() != null ? LATITUDE : 0)
+                    | (mountain.getLongitude() != null ? LONGITUDE : 0));
+            out.writeString(mountain.getName());
+            writeRepeated(out, mountain.getRange(), seen);
+            writeRepeated(out, mountain.getCountry(), seen);
+            if (mountain.getLatitude() != null) {
+                out.writeDouble(mountain.getLatitude());
+            }
+            if (mountain.getLongitude() != null) {
+                out.writeDouble(mountain.getLongitude());
+            }
+        }
+        return out.toByteArray();
+    }
+
+    /**
+     * Decodes mountains
+     *
+     * @param bytes Encoded mountains
+     * @return the mountains
+     * @throws IllegalArgumentException if the bytes aren't mountains in this encoding
+     */
+    public static List<Mountain> decode(byte[] bytes) {
+        Reader in = new Reader(bytes);
+        if (!isKnownVersion(in.readByte())) {
+            throw new IllegalArgumentException("Unknown mountain encoding version");
+        }
+        int count = in.readVarint();
+        List<Mountain> mountains = new ArrayList<>(Math.min(count, bytes.length));
+        List<String> seen = new ArrayList<>();
+        for (int i = 0; i < count; i++) {
+            mountains.add(readMountain(in, seen));
+        }
+        return mountains;
+    }
+
+    /**
+     * Decodes a stream of messages one mountain at a time, so only the mountain
+     * being read and the strings its message can refer back to are held - those
+     * are dropped at the end of each message, and capped within one
+     *
+     * @param stream Encoded messages, one after the other
+     * @return the mountains, in the order they were encoded - the iterator throws
+     * IllegalArgumentException if the stream isn't mountains in this encoding, and
+     * UncheckedIOException if it can't be read
+     */
+    public static Iterator<Mountain> decodeStream(InputStream stream) {
+        StreamReader in = new StreamReader(stream);
+        return new Iterator<>() {
+
+            private final List<String> seen = new ArrayList<>();
+
+            /**
+             * Characters held in seen
+             */
+            private int seenLength;
+
+            private int remaining;
+
+            @Override
+            public boolean hasNext() {
+                while (remaining == 0) {
+                    int version = in.readByteOrEnd();
+                    if (version < 0) {
+                        return false;
+                    }
+                    if (!isKnownVersion(version)) {
+                        throw new IllegalArgumentException("Unknown mountain encoding version");
+                    }
+                    remaining = in.readVarint();
+                    seen.clear();
+                    seenLength = 0;
+                }
+                return true;
+            }
+
+            @Override
+            public Mountain next() {
+                if (!hasNext()) {
+                    throw new NoSuchElementException();
+                }
+                remaining--;
+                int held = seen.size();
+                Mountain mountain = readMountain(in, seen);
+                for (int i = held; i < seen.size(); i++) {
+                    seenLength += seen.get(i) == null ? 0 : seen.get(i).length();
+                }
+                if (seenLength > MAX_STREAMED_REFERENCES) {
+                    throw new IllegalArgumentException("Mountain encoding message refers back to too many strings");
+                }
+                return mountain;
+            }
+        };
+    }
+
+    private static Mountain readMountain(Input in, List<String> seen) {
+        int id = in.readVarint();
+        int zigzag = in.readVarint();
+        int flags = in.readByte();
+        String name = in.readString();
+        String range = readRepeated(in, seen);
+        String country = readRepeated(in, seen);
+        Mountain mountain = new Mountain(name, (zigzag >>> 1) ^ -(zigzag & 1), range, country,
+                (flags & NORTHERN) != 0);
+        mountain.setId(id);
+        if ((flags & LATITUDE) != 0) {
+            mountain.setLatitude(in.readDouble());
+        }
+        if ((flags & LONGITUDE) != 0) {
+            mountain.setLongitude(in.readDouble());
+        }
+        return mountain;
+    }
+
+    private static boolean isKnownVersion(int version) {
+        return version >= 1 && version <= FORMAT_VERSION;
+    }
+
+    /**
+     * Writes a string that's likely to have been written already - 0 and then the
+     * string the first time, and its position among the new strings plus one after that
+     */
+    private static void writeRepeated(Writer out, String value, Map<String, Integer> seen) {
+        Integer index = seen.get(value);
+        if (index != null) {
+            out.writeVarint(index + 1);
+            return;
+        }
+        seen.put(value, seen.size());
+        out.writeVarint(0);
+        out.writeString(value);
+    }
+
+    private static String readRepeated(Input in, List<String> seen) {
+        int reference = in.readVarint();
+        if (reference == 0) {
+            String value = in.readString();
+            seen.add(value);
+            return value;
+        }
+        if (reference > seen.size()) {
+            throw new IllegalArgumentException("Bad back reference in mountain encoding");
+        }
+        return seen.get(reference - 1);
+    }
+
+    /**
+     * Growable buffer of encoded bytes
+     */
+    private static final class Writer {
+
+        private byte[] bytes;
+        private int size;
+
+        Writer(int capacity) {
+            bytes = new byte[capacity];
+        }
+
+        void writeByte(int value) {
+            ensure(1);
+            bytes[size++] = (byte) value;
+        }
+
+        void writeVarint(int value) {
+            ensure(5);
+            while ((value & ~0x7F) != 0) {
+                bytes[size++] = (byte) ((value & 0x7F) | 0x80);
+                value >>>= 7;
+            }
+            bytes[size++] = (byte) value;
+        }
+
+        /**
+         * Writes a double as its 8 bytes, lowest first
+         */
+        void writeDouble(double value) {
+            ensure(8);
+            long bits = Double.doubleToLongBits(value);
+            for (int i = 0; i < 8; i++) {
+                bytes[size++] = (byte) (bits >>> (i * 8));
+            }
+        }
+
+        /**
+         * Writes a string as its UTF-8 length plus one, 0 for null, then its bytes
+         */
+        void writeString(String value) {
+            if (value == null) {
+                writeVarint(0);
+                return;
+            }
+            byte[] utf8 = value.getBytes(StandardCharsets.UTF_8);
+            writeVarint(utf8.length + 1);
+            ensure(utf8.length);
+            System.arraycopy(utf8, 0, bytes, size, utf8.length);
+            size += utf8.length;
+        }
+
+        private void ensure(int extra) {
+            if (size + extra > bytes.length) {
+                bytes = Arrays.copyOf(bytes, Math.max(bytes.length * 2, size + extra));
+            }
+        }
+
+        byte[] toByteArray() {
+            return Arrays.copyOf(bytes, size);
+        }
+    }
+
+    /**
+     * Source of encoded bytes
+     */
+    private abstract static class Input {
+
+        abstract int readByte();
+
+        /**
+         * Reads a UTF-8 string of a given length in bytes
+         */
+        abstract String readUtf8(int length);
+
+        double readDouble() {
+            long bits = 0;
+            for (int i = 0; i < 8; i++) {
+                bits |= (readByte() & 0xFFL) << (i * 8);
+            }
+            return Double.longBitsToDouble(bits);
+        }
+
+        int readVarint() {
+            int value = 0;
+            for (int shift = 0; shift < 35; shift += 7) {
+                int b = readByte();
+                value |= (b & 0x7F) << shift;
+                if ((b & 0x80) == 0) {
+                    return value;
+                }
+            }
+            throw new IllegalArgumentException("Varint too long in mountain encoding");
+        }
+
+        String readString() {
+            int length = readVarint() - 1;
+            return length < 0 ? null : readUtf8(length);
+        }
+    }
+
+    /**
+     * Cursor over encoded bytes
+     */
+    private static final class Reader extends Input {
+
+        private final byte[] bytes;
+        private int position;
+
+        Reader(byte[] bytes) {
+            this.bytes = bytes;
+        }
+
+        @Override
+        int readByte() {
+            if (position >= bytes.length) {
+                throw new IllegalArgumentException("Mountain encoding ends early");
+            }
+            return bytes[position++];
+        }
+
+        @Override
+        String readUtf8(int length) {
+            if (length > bytes.length - position) {
+                throw new IllegalArgumentException("Mountain encoding ends early");
+            }
+            String value = new String(bytes, position, length, StandardCharsets.UTF_8);
+            position += length;
+            return value;
+        }
+    }
+
+    /**
+     * Reads encoded bytes from a stream, a buffer at a time
+     */
+    private static final class StreamReader extends Input {
+
+        private final InputStream stream;
+        private final byte[] buffer = new byte[8_192];
+        private int position;
+        private int limit;
+
+        StreamReader(InputStream stream) {
+            this.stream = stream;
+        }
+
+        /**
+         * Reads the next byte, or -1 if the stream has ended
+         */
+        int readByteOrEnd() {
+            if (position == limit && !fill()) {
+                return -1;
+            }
+            return buffer[position++] & 0xFF;
+        }
+
+        @Override
+        int readByte() {
+            int b = readByteOrEnd();
+            if (b < 0) {
+                throw new IllegalArgumentException("Mountain encoding ends early");
+            }
+            return b;
+        }
+
+        @Override
+        String readUtf8(int length) {
+            if (length > MAX_STREAMED_STRING) {
+                throw new IllegalArgumentException("String too long in mountain encoding");
+            }
+            byte[] utf8 = new byte[length];
+            int read = 0;
+            while (read < length) {
+                if (position == limit && !fill()) {
+                    throw new IllegalArgumentException("Mountain encoding ends early");
+                }
+                int n = Math.min(length - read, limit - position);
+                System.arraycopy(buffer, position, utf8, read, n);
+                position += n;
+                read += n;
+            }
+            return new String(utf8, StandardCharsets.UTF_8);
+        }
+
+        private boolean fill() {
+            try {
+                int n = stream.read(buffer);
+                if (n <= 0) {
+                    return false;
+                }
+                position = 0;
+                limit = n;
+                return true;
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
+    }
+}
@@ -0,0 +1,49 @@
+/**
+ * Lets controllers read and write lists of mountains in the MountainCodec
+ * encoding, picked by content negotiation whenever a request's Content-Type or
+ * Accept header is application/x-mountain
+ * <p>
+ * WebConfiguration registers it after the JSON converter, so JSON stays the
+ * default for requests that accept anything.
+ *
+ * @Author Ewan Lewis
+ */
+
+package com.example.MountainServer;
+
+import org.springframework.http.HttpInputMessage;
+import org.springframework.http.HttpOutputMessage;
+import org.springframework.http.MediaType;
+import org.springframework.http.converter.HttpMessageNotReadableException;
+
+import java.io.IOException;
+import java.lang.reflect.Type;
+import java.util.List;
+
+public class MountainCodecHttpMessageConverter extends MountainListHttpMessageConverter {
+
+    /**
+     * Constructor
+     */
+    public MountainCodecHttpMessageConverter() {
+        super(MediaType.parseMediaType(MountainCodec.MEDIA_TYPE));
+    }
+
+    @Override
+    protected List<Mountain> readInternal(Class<? extends List<Mountain>> clazz, HttpInputMessage inputMessage)
+            throws IOException {
+        try {
+            return MountainCodec.decode(inputMessage.getBody().readAllBytes());
+        } catch (IllegalArgumentException e) {
+            throw new HttpMessageNotReadableException(e.getMessage(), e, inputMessage);
+        }
+    }
+
+    @Override
+    protected void writeInternal(List<Mountain> mountains, Type type, HttpOutputMessage outputMessage)
+            throws IOException {
+        byte[] bytes = MountainCodec.encode(mountains);
+        outputMessage.getHeaders().setContentLength(bytes.length);
+        outputMessage.getBody().write(bytes);
+    }
+}
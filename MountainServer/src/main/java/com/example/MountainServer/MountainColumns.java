@@ -0,0 +1,155 @@
+/**
+ * Column storage for ColumnarMountainStore - one row per mountain, holding its
+ * ID, altitude, dictionary codes for country and range, hemisphere, name and
+ * location
+ * <p>
+ * Rows are only ever accessed while the store holds its lock, so implementations
+ * don't need to be thread-safe.
+ *
+ * @Author Ewan Lewis
+ */
+
+package com.example.MountainServer;
+
+public interface MountainColumns extends AutoCloseable {
+
+    /**
+     * Gets the number of rows there's currently room for
+     *
+     * @return number of rows
+     */
+    int capacity();
+
+    /**
+     * Makes room for more rows, keeping the ones already written
+     *
+     * @param capacity Number of rows to make room for
+     */
+    void grow(int capacity);
+
+    /**
+     * Writes a mountain into a row, leaving whether the row is live unchanged. A
+     * live row's name is overwritten where it is if the new one fits there, and
+     * any space the old name no longer uses counts as wasted
+     *
+     * @param row       Row to write
+     * @param id        Mountain's ID
+     * @param altitude  Mountain's altitude
+     * @param country   Dictionary code of the mountain's country
+     * @param range     Dictionary code of the mountain's range
+     * @param northern  true if in the Northern hemisphere
+     * @param name      Mountain's name as UTF-8, or null if it has no name
+     * @param latitude  Mountain's latitude, or NaN if not known
+     * @param longitude Mountain's longitude, or NaN if not known
+     */
+    void write(int row, int id, int altitude, int country, int range, boolean northern, byte[] name,
+               double latitude, double longitude);
+
+    int id(int row);
+
+    int altitude(int row);
+
+    int country(int row);
+
+    int range(int row);
+
+    boolean isNorthern(int row);
+
+    /**
+     * Gets a row's latitude
+     *
+     * @param row Row to read
+     * @return the latitude, or NaN if not known
+     */
+    double latitude(int row);
+
+    /**
+     * Gets a row's longitude
+     *
+     * @param row Row to read
+     * @return the longitude, or NaN if not known
+     */
+    double longitude(int row);
+
+    boolean isLive(int row);
+
+    /**
+     * Marks a row as holding a mountain or as deleted
+     *
+     * @param row  Row to mark
+     * @param live true if the row holds a mountain
+     */
+    void setLive(int row, boolean live);
+
+    /**
+     * Gets a row's name
+     *
+     * @param row Row to read
+     * @return the name, or null if it has no name
+     */
+    String name(int row);
+
+    /**
+     * Checks a row's name against a UTF-8 encoded name
+     *
+     * @param row  Row to check
+     * @param name Name to compare with, or null to check the row has no name
+     * @return true if they match
+     */
+    boolean nameEquals(int row, byte[] name);
+
+    /**
+     * Hashes a row's name the same way as nameHash(byte[])
+     *
+     * @param row Row to hash
+     * @return the hash
+     */
+    int nameHash(int row);
+
+    /**
+     * Gets how much space the names take up, including wasted space
+     *
+     * @return number of bytes
+     */
+    long nameBytes();
+
+    /**
+     * Gets how much of the names' space is held by names of deleted rows, or left
+     * behind when a row's name was overwritten, until the next compaction
+     *
+     * @return number of bytes
+     */
+    long wastedNameBytes();
+
+    /**
+     * Slides the live rows down over the deleted ones, keeping their order, and
+     * throws away any space held by the names of deleted or overwritten rows
+     *
+     * @param rowCount Number of rows in use
+     * @return number of rows in use afterwards
+     */
+    int compact(int rowCount);
+
+    /**
+     * Releases the storage held by the columns
+     */
+    @Override
+    void close();
+
+    /**
+     * Hashes a UTF-8 encoded name
+     *
+     * @param name Name to hash, or null for no name
+     * @return the hash
+     */
+    static int nameHash(byte[] name) {
+        if (name == null) {
+            return 0;
+        }
+        int h = 1;
+        for (byte b : name) {
+            h = 31 * h + b;
+        }
+        return h;
+    }
+}
@@ -9,17 +9,67 @@
 package com.example.MountainServer;
 
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
 
+import java.io.InputStream;
+import java.io.UncheckedIOException;
 import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.ThreadLocalRandom;
 
 @RestController
 public class MountainController {
 
+    /**
+     * Header holding the cursor for the next page, left off the last page
+     */
+    public static final String NEXT_CURSOR_HEADER = "Next-Cursor";
+
+    /**
+     * Media type for newline-delimited JSON, one mountain per line
+     */
+    public static final String NDJSON = "application/x-ndjson";
+
+    /**
+     * Page size used when a cursor is given without a limit
+     */
+    private static final int DEFAULT_PAGE_SIZE = 100;
+
+    /**
+     * Largest page that can be asked for
+     */
+    private static final int MAX_PAGE_SIZE = 10_000;
+
+    /**
+     * Number of matches a search finds when no limit is given
+     */
+    private static final int DEFAULT_SEARCH_LIMIT = 10;
+
+    /**
+     * Most matches a search can ask for
+     */
+    private static final int MAX_SEARCH_LIMIT = 100;
+
+    /**
+     * Number of mountains a nearest-mountain search finds when given no limit or
+     * radius - with a radius, it finds them all up to MAX_PAGE_SIZE
+     */
+    private static final int DEFAULT_NEAR_LIMIT = 10;
+
+    /**
+     * Most mountains a streaming ingest adds in one go
+     */
+    private final int INGEST_CHUNK_SIZE;
+
     /**
      * Mountain Service, that all methods within controller access
      * to update mountain information
@@ -27,16 +77,25 @@ public class MountainController {
     @Autowired
     private final MountainService MOUNTAIN_SERVICE;
 
+    /**
+     * Random start of every entity tag, so tags from before a restart, when the
+     * data version started again from nothing, never match
+     */
+    private final String EPOCH = Long.toHexString(ThreadLocalRandom.current().nextLong());
+
     /**
      * Constructor for MountainController
      * @param ms this
+     * @param ingestChunkSize Most mountains a streaming ingest adds in one go
      */
-    public MountainController(MountainService ms) {
+    public MountainController(MountainService ms, @Value("${mountain.ingest.chunk-size:1000}") int ingestChunkSize) {
         this.MOUNTAIN_SERVICE = ms;
+        this.INGEST_CHUNK_SIZE = Math.max(1, ingestChunkSize);
     }
 
     /**
-     * Adds mountains to list of mountains
+     * Adds mountains to list of mountains, sent as JSON or, with a Content-Type of
+     * application/x-mountain, in the MountainCodec binary encoding
      * @param mountains List of mountains
      * @return Response with status
      */
@@ -48,6 +107,29 @@ public class MountainController {
         return ResponseEntity.ok().build();
     }
 
+    /**
+     * Adds mountains streamed as newline-delimited JSON or MountainCodec messages,
+     * reading and committing them a chunk at a time so an upload of any size is
+     * never held whole. Duplicates are skipped rather than failing the upload
+     * @param contentType Content-Type of the upload
+     * @param body        The upload
+     * @return Response with the numbers added and skipped as duplicates, or bad
+     * request with the numbers so far if the upload breaks off or isn't mountains
+     */
+    @PostMapping(value = "/mountains/ingest", consumes = {NDJSON, MountainCodec.MEDIA_TYPE})
+    public ResponseEntity<IngestReport> ingestMountains(@RequestHeader(HttpHeaders.CONTENT_TYPE) String contentType,
+                                                       InputStream body) {
+        boolean ndjson = MediaType.parseMediaType(contentType).isCompatibleWith(MediaType.parseMediaType(NDJSON));
+        Iterator<Mountain> mountains = ndjson ? MountainJson.readLines(body) : MountainCodec.decodeStream(body);
+        IngestReport report = new IngestReport();
+        try {
+            MOUNTAIN_SERVICE.ingest(mountains, INGEST_CHUNK_SIZE, report);
+        } catch (IllegalArgumentException | UncheckedIOException e) {
+            return ResponseEntity.badRequest().body(report);
+        }
+        return ResponseEntity.ok().body(report);
+    }
+
     /**
      * Updates mountain information
      * @param id ID of mountain
@@ -83,14 +165,308 @@ public class MountainController {
     }
 
     /**
-     * Gets information on mountains
-     * @param allParams Queries being passed through the URL
+     * Updates many mountains' information at once, each the mountain with the ID
+     * it carries, with one acquisition of the store's lock for the whole batch
+     * @param mountains New mountain information, with IDs
+     * @return Response with the status of each mountain - OK, or not found - in the
+     * order they were sent, or bad request if the batch holds a null
+     */
+    @PutMapping("/mountains/batch/update")
+    public ResponseEntity<List<BatchResult>> updateMountains(@RequestBody List<Mountain> mountains) {
+        if (mountains.contains(null)) {
+            return ResponseEntity.badRequest().build();
+        }
+        int[] ids = new int[mountains.size()];
+        for (int i = 0; i < ids.length; i++) {
+            ids[i] = mountains.get(i).getId();
+        }
+        return ResponseEntity.ok().body(batchResults(ids, MOUNTAIN_SERVICE.updateMountains(mountains)));
+    }
+
+    /**
+     * Deletes many mountains at once, with one acquisition of the store's lock for
+     * the whole batch
+     * @param ids IDs of mountains
+     * @return Response with the status of each ID - OK, or not found - in the order
+     * they were sent
+     */
+    @PutMapping("/mountains/batch/delete")
+    public ResponseEntity<List<BatchResult>> deleteMountains(@RequestBody int[] ids) {
+        return ResponseEntity.ok().body(batchResults(ids, MOUNTAIN_SERVICE.deleteMountains(ids)));
+    }
+
+    private static List<BatchResult> batchResults(int[] ids, boolean[] succeeded) {
+        List<BatchResult> results = new ArrayList<>(ids.length);
+        for (int i = 0; i < ids.length; i++) {
+            HttpStatus status = succeeded[i] ? HttpStatus.OK : HttpStatus.NOT_FOUND;
+            results.add(new BatchResult(ids[i], status.value()));
+        }
+        return results;
+    }
+
+    /**
+     * Gets information on mountains - given a limit or a cursor, just one page of
+     * them in ID order, with the cursor for the next page in the Next-Cursor header.
+     * Given a sort (altitude or name, with a - in front for descending) just the
+     * first page in that order, without a cursor - sort=-altitude with limit=10 gets
+     * the ten tallest.
+     * They're sent as JSON, or in the MountainCodec binary encoding if the Accept
+     * header asks for application/x-mountain. Responses carry an ETag, and asking
+     * again with it in If-None-Match gets Not Modified if nothing has changed since
+     * @param allParams   Queries being passed through the URL
+     * @param accept      Accept header, if any
+     * @param ifNoneMatch If-None-Match header, if any
      * @return Response with status
      */
     @GetMapping("/mountains")
-    public ResponseEntity<List<Mountain>> getMountain(@RequestParam Map<String, String> allParams) {
+    public ResponseEntity<List<Mountain>> getMountain(@RequestParam Map<String, String> allParams,
+                                                      @RequestHeader(value = HttpHeaders.ACCEPT, required = false) String accept,
+                                                      @RequestHeader(value = HttpHeaders.IF_NONE_MATCH, required = false) String ifNoneMatch) {
+        String eTag = currentETag(accept != null && accept.contains(MountainCodec.MEDIA_TYPE) ? "bin" : "json");
+        if (allParams.containsKey("limit") || allParams.containsKey("cursor") || allParams.containsKey("sort")) {
+            return fetchPage(allParams, eTag, ifNoneMatch);
+        }
+        if (matches(ifNoneMatch, eTag)) {
+            return notModified(eTag);
+        }
         List<Mountain> mountains = parseParamsAndFetch(allParams);
-        return ResponseEntity.ok().body(mountains);
+        return okWithETag(eTag).body(mountains);
+    }
+
+    /**
+     * Shows how the mountains the other parameters pick out would be looked up,
+     * instead of looking them up - the index the planner picked, how many
+     * mountains it expects that index to give, the filters left to check on each,
+     * and every index it could have used
+     * @param allParams Queries being passed through the URL, with explain
+     * @return Response with the plan
+     */
+    @GetMapping(value = "/mountains", params = "explain")
+    public ResponseEntity<QueryPlan> explainMountains(@RequestParam Map<String, String> allParams) {
+        Map<String, String> params = new HashMap<>(allParams);
+        params.remove("explain");
+        MountainQuery query = parsePagedQuery(params, Integer.MAX_VALUE, Integer.MAX_VALUE);
+        if (query == null) {
+            return ResponseEntity.badRequest().build();
+        }
+        return ResponseEntity.ok().body(MOUNTAIN_SERVICE.explain(query));
+    }
+
+    /**
+     * Searches mountain names for type-ahead - names equal to what's been typed
+     * first, then names starting with it, names with a later word starting with it,
+     * and names close to it allowing for typos. Case, accents and punctuation
+     * are ignored
+     * @param q     What's been typed
+     * @param limit Most mountains to find, 10 if not given
+     * @return Response with the mountains, best match first, or bad request for a
+     * bad limit
+     */
+    @GetMapping("/mountains/search")
+    public ResponseEntity<List<Mountain>> searchMountains(@RequestParam("q") String q,
+                                                          @RequestParam(value = "limit", required = false) Integer limit) {
+        int most = limit == null ? DEFAULT_SEARCH_LIMIT : limit;
+        if (most < 1 || most > MAX_SEARCH_LIMIT) {
+            return ResponseEntity.badRequest().build();
+        }
+        return ResponseEntity.ok().body(MOUNTAIN_SERVICE.search(q, most));
+    }
+
+    /**
+     * Gets the number of mountains and their lowest, highest and mean altitude
+     * for each country, range or hemisphere
+     * @param by country, range or hemisphere
+     * @return Response with the statistics of each group, in order of the group,
+     * or bad request for anything else to group by
+     */
+    @GetMapping("/mountains/stats")
+    public ResponseEntity<List<GroupStatistics>> getStatistics(@RequestParam("by") String by) {
+        MountainStatistics.Grouping grouping;
+        try {
+            grouping = MountainStatistics.Grouping.parse(by);
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.badRequest().build();
+        }
+        return ResponseEntity.ok().body(MOUNTAIN_SERVICE.getStatistics(grouping));
+    }
+
+    /**
+     * Finds the mountains nearest a point, of those with a location - the limit
+     * nearest, or with a radius every one within it up to the limit
+     * @param lat    Latitude of the point, from -90 to 90
+     * @param lon    Longitude of the point, from -180 to 180
+     * @param radius Furthest a mountain can be from the point in kilometres, or
+     *               anywhere if not given
+     * @param limit  Most mountains to find, 10 if not given without a radius
+     * @return Response with the mountains, nearest first, or bad request for a
+     * point off the globe, a negative radius or a bad limit
+     */
+    @GetMapping("/mountains/near")
+    public ResponseEntity<List<Mountain>> findNear(@RequestParam("lat") double lat,
+                                                   @RequestParam("lon") double lon,
+                                                   @RequestParam(value = "radius", required = false) Double radius,
+                                                   @RequestParam(value = "limit", required = false) Integer limit) {
+        int most = limit != null ? limit : radius != null ? MAX_PAGE_SIZE : DEFAULT_NEAR_LIMIT;
+        if (!(lat >= -90 && lat <= 90) || !(lon >= -180 && lon <= 180)
+                || (radius != null && !(radius >= 0)) || most < 1 || most > MAX_PAGE_SIZE) {
+            return ResponseEntity.badRequest().build();
+        }
+        double within = radius != null ? radius : LocationIndex.MAX_DISTANCE_KM;
+        return ResponseEntity.ok().body(MOUNTAIN_SERVICE.findNear(lat, lon, within, most));
+    }
+
+    /**
+     * Streams the mountains the parameters pick out as newline-delimited JSON, one
+     * mountain per line, written out as they're read from the store rather than
+     * collected into one list first. A sorted stream is looked up in one go, so
+     * it needs a limit no bigger than MountainService.MAX_SORTED_STREAM
+     * @param allParams   Queries being passed through the URL, optionally with a
+     *                    cursor to start after and a limit on how many to send
+     * @param ifNoneMatch If-None-Match header, if any
+     * @return Response streaming the mountains, or bad request for a bad limit or
+     * cursor, or a sort without a small enough limit
+     */
+    @GetMapping(value = "/mountains", produces = NDJSON)
+    public ResponseEntity<StreamingResponseBody> streamMountains(@RequestParam Map<String, String> allParams,
+                                                                 @RequestHeader(value = HttpHeaders.IF_NONE_MATCH, required = false) String ifNoneMatch) {
+        String eTag = currentETag("ndjson");
+        Map<String, String> params = new HashMap<>(allParams);
+        MountainQuery query = parsePagedQuery(params, Integer.MAX_VALUE, Integer.MAX_VALUE);
+        if (query == null || (query.getSort() != MountainQuery.Sort.ID
+                && query.getLimit() > MountainService.MAX_SORTED_STREAM)) {
+            return ResponseEntity.badRequest().build();
+        }
+        if (matches(ifNoneMatch, eTag)) {
+            return notModified(eTag);
+        }
+
+        StreamingResponseBody body;
+        if (!params.isEmpty() && !query.hasFilters()) {
+            body = out -> { };
+        } else {
+            body = out -> MountainJson.writeLines(action -> MOUNTAIN_SERVICE.stream(query, action), out);
+        }
+        return okWithETag(eTag).contentType(MediaType.parseMediaType(NDJSON)).body(body);
+    }
+
+    /**
+     * Makes the strong entity tag for the data as it is now, in a format. It's the
+     * store's data version, so it changes whenever the store does, behind an epoch
+     * so a restarted server never repeats a tag from before
+     * @param format Short name of the format the response is in
+     * @return the entity tag, quoted
+     */
+    private String currentETag(String format) {
+        return "\"" + EPOCH + "-" + MOUNTAIN_SERVICE.version() + "-" + format + "\"";
+    }
+
+    /**
+     * Checks an If-None-Match header against an entity tag, using the weak comparison
+     * it calls for
+     * @param ifNoneMatch If-None-Match header, or null if there isn't one
+     * @param eTag        Entity tag of the current data
+     * @return true if the client already has the current data
+     */
+    private static boolean matches(String ifNoneMatch, String eTag) {
+        if (ifNoneMatch == null) {
+            return false;
+        }
+        for (String tag : ifNoneMatch.split(",")) {
+            tag = tag.trim();
+            if (tag.equals("*") || (tag.startsWith("W/") ? tag.substring(2) : tag).equals(eTag)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Makes a Not Modified response, without a body
+     * @param eTag Entity tag of the current data
+     * @return the response
+     */
+    private static <T> ResponseEntity<T> notModified(String eTag) {
+        return ResponseEntity.status(HttpStatus.NOT_MODIFIED).eTag(eTag)
+                .header(HttpHeaders.VARY, HttpHeaders.ACCEPT).build();
+    }
+
+    /**
+     * Starts an OK response, tagged with the entity tag of the data it holds
+     * @param eTag Entity tag of the data, from before it was looked up
+     * @return the response builder
+     */
+    private static ResponseEntity.BodyBuilder okWithETag(String eTag) {
+        return ResponseEntity.ok().eTag(eTag).header(HttpHeaders.VARY, HttpHeaders.ACCEPT);
+    }
+
+    /**
+     * Fetches one page of the mountains the other parameters pick out
+     * @param allParams   Parameters in URL, including limit and/or cursor
+     * @param eTag        Entity tag of the data as it is now
+     * @param ifNoneMatch If-None-Match header, if any
+     * @return Response with the page, not modified if the client already has it, or
+     * bad request for a bad limit or cursor
+     */
+    private ResponseEntity<List<Mountain>> fetchPage(Map<String, String> allParams, String eTag, String ifNoneMatch) {
+        Map<String, String> params = new HashMap<>(allParams);
+        MountainQuery query = parsePagedQuery(params, DEFAULT_PAGE_SIZE, MAX_PAGE_SIZE);
+        if (query == null) {
+            return ResponseEntity.badRequest().build();
+        }
+        if (matches(ifNoneMatch, eTag)) {
+            return notModified(eTag);
+        }
+
+        if (!params.isEmpty() && !query.hasFilters()) {
+            return okWithETag(eTag).body(new ArrayList<>());
+        }
+        if (query.getSort() != MountainQuery.Sort.ID) {
+            return okWithETag(eTag).body(MOUNTAIN_SERVICE.find(query));
+        }
+        // Ask for one more than the page, to find out if there's a page after it
+        int limit = query.getLimit();
+        query.setLimit(limit + 1);
+        List<Mountain> mountains = MOUNTAIN_SERVICE.find(query);
+        if (mountains.size() <= limit) {
+            return okWithETag(eTag).body(mountains);
+        }
+        return okWithETag(eTag)
+                .header(NEXT_CURSOR_HEADER, PageCursor.encode(mountains.get(limit - 1).getId()))
+                .body(mountains.subList(0, limit));
+    }
+
+    /**
+     * Builds a query from the filters in the URL, in its sort order, starting
+     * after its cursor and stopping at its limit, taking all three out of the
+     * parameters
+     * @param params       Parameters in URL
+     * @param defaultLimit Limit if none is given
+     * @param maxLimit     Largest limit allowed
+     * @return the query, or null if the limit, cursor, sort or a filter is bad,
+     * or there's a cursor for anything but ID order
+     */
+    private MountainQuery parsePagedQuery(Map<String, String> params, int defaultLimit, int maxLimit) {
+        String limitParam = params.remove("limit");
+        String cursor = params.remove("cursor");
+        String sort = params.remove("sort");
+        MountainQuery query;
+        try {
+            query = parseQuery(params);
+            query.setLimit(limitParam == null ? defaultLimit : Integer.parseInt(limitParam));
+            if (sort != null) {
+                query.setSort(MountainQuery.Sort.parse(sort));
+            }
+            if (cursor != null) {
+                query.setAfterId(PageCursor.decode(cursor));
+            }
+        } catch (IllegalArgumentException e) {
+            return null;
+        }
+        if (query.getLimit() < 1 || query.getLimit() > maxLimit
+                || (cursor != null && query.getSort() != MountainQuery.Sort.ID)) {
+            return null;
+        }
+        return query;
     }
 
     /**
@@ -105,41 +481,42 @@ public class MountainController {
             return MOUNTAIN_SERVICE.getAllMountains();
         }
 
-        // If looking for just ID
-        if (params.containsKey("id")) {
-            int id = Integer.parseInt(params.get("id"));
-            return MOUNTAIN_SERVICE.getById(id);
-        }
-
-        // If looking for country & range
-        if (params.containsKey("country") && params.containsKey("range") && params.containsKey("name")) {
-            return MOUNTAIN_SERVICE.getByName(params.get("country"), params.get("range"), params.get("name"));
+        // Otherwise combine every filter given into one query
+        MountainQuery query = parseQuery(params);
+        if (query.hasFilters()) {
+            return MOUNTAIN_SERVICE.find(query);
         }
 
-        // If looking for country & altitude
-        if (params.containsKey("country") && params.containsKey("alt")) {
-            int altitude = Integer.parseInt(params.get("alt"));
-            return MOUNTAIN_SERVICE.getByCountryAltitude(params.get("country"), altitude);
-        }
+        // Return empty ArrayList of Mountains if nothing found
+        return new ArrayList<Mountain>();
+    }
 
-        // If looking for country & range & name
-        if (params.containsKey("country") && params.containsKey("range")) {
-            return MOUNTAIN_SERVICE.getByCountryAndRange(params.get("country"), params.get("range"));
+    /**
+     * Builds a query from the filters in the URL
+     * @param params Parameters in URL
+     * @return Query with every filter given
+     */
+    private MountainQuery parseQuery(Map<String, String> params) {
+        MountainQuery query = new MountainQuery();
+        if (params.containsKey("id")) {
+            query.setId(Integer.parseInt(params.get("id")));
         }
-
-        // If looking for specific hemisphere
+        query.setCountry(params.get("country"));
+        query.setRange(params.get("range"));
+        query.setName(params.get("name"));
         if (params.containsKey("north")) {
-            boolean isNorthern = Boolean.parseBoolean(params.get("north"));
-            return MOUNTAIN_SERVICE.getByHemisphere(isNorthern);
+            query.setNorthern(Boolean.parseBoolean(params.get("north")));
         }
-
-        // If looking for specific country
-        if (params.containsKey("country")) {
-            return MOUNTAIN_SERVICE.getMountainsByCountry(params.get("country"));
+        if (params.containsKey("alt")) {
+            query.setMinAltitude(Integer.parseInt(params.get("alt")));
         }
-
-        // Return empty ArrayList of Mountains if nothing found
-        return new ArrayList<Mountain>();
+        if (params.containsKey("minAlt")) {
+            query.setMinAltitude(Integer.parseInt(params.get("minAlt")));
+        }
+        if (params.containsKey("maxAlt")) {
+            query.setMaxAltitude(Integer.parseInt(params.get("maxAlt")));
+        }
+        return query;
     }
 }
 
@@ -0,0 +1,247 @@
+/**
+ * Writes mountains as JSON from the fragments each one keeps of itself
+ * <p>
+ * A mountain's fragment is every field but its ID, already encoded as UTF-8 JSON
+ * and built when the mountain is added or updated. Writing one out only has to
+ * put the ID in front of it, so reads copy bytes rather than run Jackson over
+ * mountains that haven't changed. The output is the same as Jackson's.
+ * <p>
+ * It also reads newline-delimited JSON a mountain at a time, for uploads too
+ * big to bind in one go.
+ *
+ * @Author Ewan Lewis
+ */
+
+package com.example.MountainServer;
+
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.DeserializationFeature;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectReader;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.function.Consumer;
+
+public final class MountainJson {
+
+    private static final JsonFactory FACTORY = new JsonFactory();
+
+    /**
+     * Binds one mountain, ignoring fields it doesn't have like the request body
+     * binding does
+     */
+    private static final ObjectReader MOUNTAIN_READER = new ObjectMapper()
+            .configure(DeserializationFeature.FAIL_ON_UNKNOWN_PROPERTIES, false)
+            .readerFor(Mountain.class);
+
+    private static final byte[] ID_PREFIX = {'{', '"', 'i', 'd', '"', ':'};
+
+    private static final int BUFFER_SIZE = 8_192;
+
+    private MountainJson() {
+
+    }
+
+    /**
+     * Encodes every field of a mountain but its ID - the fields and closing brace
+     * of its JSON object, without the opening brace
+     *
+     * @param mountain Mountain to encode
+     * @return the fragment
+     */
+    public static byte[] fields(Mountain mountain) {
+        ByteArrayOutputStream out = new ByteArrayOutputStream(128);
+        try (JsonGenerator generator = FACTORY.createGenerator(out)) {
+            generator.writeStartObject();
+            generator.writeStringField("name", mountain.getName());
+            generator.writeNumberField("altitude", mountain.getAltitude());
+            generator.writeStringField("range", mountain.getRange());
+            generator.writeStringField("country", mountain.getCountry());
+            generator.writeBooleanField("isNorthern", mountain.getIsNorthern());
+            if (mountain.getLatitude() != null) {
+                generator.writeNumberField("latitude", mountain.getLatitude());
+            }
+            if (mountain.getLongitude() != null) {
+                generator.writeNumberField("longitude", mountain.getLongitude());
+            }
+            generator.writeEndObject();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        byte[] object = out.toByteArray();
+        return Arrays.copyOfRange(object, 1, object.length);
+    }
+
+    /**
+     * Writes mountains as a JSON array
+     *
+     * @param mountains Mountains to write
+     * @param out       Stream to write to
+     * @throws IOException if the stream can't be written to
+     */
+    public static void writeArray(List<Mountain> mountains, OutputStream out) throws IOException {
+        Buffer buffer = new Buffer(out);
+        buffer.put((byte) '[');
+        for (int i = 0; i < mountains.size(); i++) {
+            if (i > 0) {
+                buffer.put((byte) ',');
+            }
+            buffer.put(mountains.get(i));
+        }
+        buffer.put((byte) ']');
+        buffer.flush();
+    }
+
+    /**
+     * Writes mountains as newline-delimited JSON, one per line
+     *
+     * @param source Gives each mountain to write to the action it's passed
+     * @param out    Stream to write to
+     * @throws IOException if the stream can't be written to
+     */
+    public static void writeLines(Consumer<Consumer<Mountain>> source, OutputStream out) throws IOException {
+        Buffer buffer = new Buffer(out);
+        try {
+            source.accept(mountain -> {
+                try {
+                    buffer.put(mountain);
+                    buffer.put((byte) '\n');
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            });
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
+        }
+        buffer.flush();
+    }
+
+    /**
+     * Reads newline-delimited JSON one mountain at a time, so only the mountain
+     * being read is held
+     *
+     * @param in Stream to read from
+     * @return the mountains, in the order they were written - the iterator throws
+     * IllegalArgumentException if a line isn't a mountain, and UncheckedIOException
+     * if the stream can't be read
+     */
+    public static Iterator<Mountain> readLines(InputStream in) {
+        JsonParser parser;
+        try {
+            parser = FACTORY.createParser(in);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return new Iterator<>() {
+
+            private Mountain next;
+
+            @Override
+            public boolean hasNext() {
+                if (next != null) {
+                    return true;
+                }
+                try {
+                    if (parser.nextToken() == null) {
+                        return false;
+                    }
+                    next = MOUNTAIN_READER.readValue(parser);
+                } catch (JsonProcessingException e) {
+                    throw new IllegalArgumentException(e.getOriginalMessage(), e);
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+                if (next == null) {
+                    throw new IllegalArgumentException("Expected a mountain, got null");
+                }
+                return true;
+            }
+
+            @Override
+            public Mountain next() {
+                if (!hasNext()) {
+                    throw new NoSuchElementException();
+                }
+                Mountain mountain = next;
+                next = null;
+                return mountain;
+            }
+        };
+    }
+
+    /**
+     * Batches small writes into one write to the stream per few KB
+     */
+    private static final class Buffer {
+
+        private final OutputStream OUT;
+        private final byte[] BYTES = new byte[BUFFER_SIZE];
+        private int size;
+
+        Buffer(OutputStream out) {
+            OUT = out;
+        }
+
+        void put(Mountain mountain) throws IOException {
+            put(ID_PREFIX);
+            putInt(mountain.getId());
+            put((byte) ',');
+            put(mountain.jsonFields());
+        }
+
+        void put(byte b) throws IOException {
+            if (size == BYTES.length) {
+                flush();
+            }
+            BYTES[size++] = b;
+        }
+
+        void put(byte[] bytes) throws IOException {
+            if (bytes.length > BYTES.length - size) {
+                flush();
+                if (bytes.length > BYTES.length) {
+                    OUT.write(bytes);
+                    return;
+                }
+            }
+            System.arraycopy(bytes, 0, BYTES, size, bytes.length);
+            size += bytes.length;
+        }
+
+        void putInt(int value) throws IOException {
+            if (value < 0) {
+                put(Integer.toString(value).getBytes());
+                return;
+            }
+            if (BYTES.length - size < 10) {
+                flush();
+            }
+            int digits = 1;
+            for (int rest = value / 10; rest != 0; rest /= 10) {
+                digits++;
+            }
+            int end = size + digits;
+            size = end;
+            do {
+                BYTES[--end] = (byte) ('0' + value % 10);
+                value /= 10;
+            } while (value != 0);
+        }
+
+        void flush() throws IOException {
+            OUT.write(BYTES, 0, size);
+            size = 0;
+        }
+    }
+}
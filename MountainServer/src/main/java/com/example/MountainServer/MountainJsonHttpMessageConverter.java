@@ -0,0 +1,81 @@
+/**
+ * Writes JSON responses holding lists of mountains with MountainJson, stitching
+ * together the fragments the mountains already keep instead of serializing them
+ * again
+ * <p>
+ * It only writes - canRead is always false, so request bodies go on to Jackson.
+ *
+ * @Author Ewan Lewis
+ */
+
+package com.example.MountainServer;
+
+import org.springframework.http.HttpInputMessage;
+import org.springframework.http.HttpOutputMessage;
+import org.springframework.http.MediaType;
+import org.springframework.http.converter.GenericHttpMessageConverter;
+import org.springframework.http.converter.HttpMessageNotReadableException;
+
+import java.io.IOException;
+import java.lang.reflect.Type;
+import java.util.List;
+
+public class MountainJsonHttpMessageConverter implements GenericHttpMessageConverter<List<Mountain>> {
+
+    private static final List<MediaType> MEDIA_TYPES = List.of(MediaType.APPLICATION_JSON);
+
+    @Override
+    public List<MediaType> getSupportedMediaTypes() {
+        return MEDIA_TYPES;
+    }
+
+    @Override
+    public boolean canRead(Class<?> clazz, MediaType mediaType) {
+        return false;
+    }
+
+    @Override
+    public boolean canRead(Type type, Class<?> contextClass, MediaType mediaType) {
+        return false;
+    }
+
+    /**
+     * Needs the element type to tell a list of mountains from any other list, so
+     * only the generic canWrite says yes
+     */
+    @Override
+    public boolean canWrite(Class<?> clazz, MediaType mediaType) {
+        return false;
+    }
+
+    @Override
+    public boolean canWrite(Type type, Class<?> clazz, MediaType mediaType) {
+        return type != null && MountainListHttpMessageConverter.isMountainList(type)
+                && (mediaType == null || mediaType.isWildcardType() || MediaType.APPLICATION_JSON.isCompatibleWith(mediaType));
+    }
+
+    @Override
+    public List<Mountain> read(Class<? extends List<Mountain>> clazz, HttpInputMessage inputMessage) {
+        throw new HttpMessageNotReadableException("Mountains are only written as JSON here", inputMessage);
+    }
+
+    @Override
+    public List<Mountain> read(Type type, Class<?> contextClass, HttpInputMessage inputMessage) {
+        throw new HttpMessageNotReadableException("Mountains are only written as JSON here", inputMessage);
+    }
+
+    @Override
+    public void write(List<Mountain> mountains, MediaType contentType, HttpOutputMessage outputMessage)
+            throws IOException {
+        write(mountains, null, contentType, outputMessage);
+    }
+
+    @Override
+    public void write(List<Mountain> mountains, Type type, MediaType contentType, HttpOutputMessage outputMessage)
+            throws IOException {
+        outputMessage.getHeaders().setContentType(contentType == null || !contentType.isConcrete()
+                ? MediaType.APPLICATION_JSON : contentType);
+        MountainJson.writeArray(mountains, outputMessage.getBody());
+        outputMessage.getBody().flush();
+    }
+}
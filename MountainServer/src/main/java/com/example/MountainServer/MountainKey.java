@@ -0,0 +1,24 @@
+/**
+ * Identity of a mountain - the name, range and country that Mountain.equals
+ * and Mountain.hashCode compare on
+ * <p>
+ * Used as the key of the identity index rather than the Mountain itself, since
+ * stored mountains can still have their fields changed through the setters.
+ *
+ * @Author Ewan Lewis
+ */
+
+package com.example.MountainServer;
+
+public record MountainKey(String name, String range, String country) {
+
+    /**
+     * Gets the identity of a mountain
+     *
+     * @param mountain Mountain to take the identity of
+     * @return the mountain's identity
+     */
+    public static MountainKey of(Mountain mountain) {
+        return new MountainKey(mountain.getName(), mountain.getRange(), mountain.getCountry());
+    }
+}
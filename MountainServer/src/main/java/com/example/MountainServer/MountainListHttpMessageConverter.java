@@ -0,0 +1,58 @@
+/**
+ * Base for message converters that only handle lists of mountains, leaving any
+ * other type to the converters after them
+ *
+ * @Author Ewan Lewis
+ */
+
+package com.example.MountainServer;
+
+import org.springframework.core.ResolvableType;
+import org.springframework.http.HttpInputMessage;
+import org.springframework.http.MediaType;
+import org.springframework.http.converter.AbstractGenericHttpMessageConverter;
+
+import java.io.IOException;
+import java.lang.reflect.Type;
+import java.util.List;
+
+public abstract class MountainListHttpMessageConverter extends AbstractGenericHttpMessageConverter<List<Mountain>> {
+
+    /**
+     * Constructor
+     *
+     * @param mediaType Media type the converter reads and writes
+     */
+    protected MountainListHttpMessageConverter(MediaType mediaType) {
+        super(mediaType);
+    }
+
+    @Override
+    protected boolean supports(Class<?> clazz) {
+        return List.class.isAssignableFrom(clazz);
+    }
+
+    @Override
+    public boolean canRead(Type type, Class<?> contextClass, MediaType mediaType) {
+        return isMountainList(type) && canRead(mediaType);
+    }
+
+    @Override
+    public boolean canWrite(Type type, Class<?> clazz, MediaType mediaType) {
+        return type != null && isMountainList(type) && canWrite(mediaType);
+    }
+
+    /**
+     * Checks a type is a list of mountains, rather than any other list
+     */
+    static boolean isMountainList(Type type) {
+        ResolvableType resolved = ResolvableType.forType(type);
+        return List.class.isAssignableFrom(resolved.toClass())
+                && resolved.asCollection().getGeneric(0).toClass() == Mountain.class;
+    }
+
+    @Override
+    public List<Mountain> read(Type type, Class<?> contextClass, HttpInputMessage inputMessage) throws IOException {
+        return readInternal(null, inputMessage);
+    }
+}
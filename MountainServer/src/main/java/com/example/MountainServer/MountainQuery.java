@@ -0,0 +1,336 @@
+/**
+ * Filters for a search of the mountains
+ * <p>
+ * Every filter is optional - a null field places no restriction on the results,
+ * and a mountain must pass every filter that is set to be returned.
+ * <p>
+ * Results come back in ID order unless the query asks to sort them by altitude or
+ * name, and stop at the query's limit. In ID order a query can also ask for one
+ * page of them - the matching mountains with IDs after a given one, up to the
+ * limit. Sorted, the limit makes it a top-K query, like the ten tallest in a range.
+ *
+ * @Author Ewan Lewis
+ */
+
+package com.example.MountainServer;
+
+import java.util.Comparator;
+import java.util.Objects;
+
+public class MountainQuery {
+
+    /**
+     * Orders results can come back in - ties are broken by ID, and a descending
+     * order is exactly its ascending order backwards
+     */
+    public enum Sort {
+        ID("id", Comparator.comparingInt(Mountain::getId), false),
+        ALTITUDE("altitude", Comparator.comparingInt(Mountain::getAltitude), false),
+        ALTITUDE_DESC("-altitude", Comparator.comparingInt(Mountain::getAltitude), true),
+        NAME("name", Comparator.comparing(Mountain::getName, Comparator.nullsFirst(Comparator.naturalOrder())), false),
+        NAME_DESC("-name", Comparator.comparing(Mountain::getName, Comparator.nullsFirst(Comparator.naturalOrder())),
+                true);
+
+        private final String PARAM;
+
+        private final Comparator<Mountain> COMPARATOR;
+
+        Sort(String param, Comparator<Mountain> key, boolean descending) {
+            PARAM = param;
+            Comparator<Mountain> ascending = key.thenComparingInt(Mountain::getId);
+            COMPARATOR = descending ? ascending.reversed() : ascending;
+        }
+
+        /**
+         * Gets the comparator putting mountains in this order
+         *
+         * @return the comparator
+         */
+        public Comparator<Mountain> comparator() {
+            return COMPARATOR;
+        }
+
+        /**
+         * Checks if this order is by altitude, either way
+         *
+         * @return true if it's by altitude
+         */
+        public boolean byAltitude() {
+            return this == ALTITUDE || this == ALTITUDE_DESC;
+        }
+
+        /**
+         * Parses the sort parameter of a URL
+         *
+         * @param param Field to sort by, with a - in front for descending
+         * @return the order
+         * @throws IllegalArgumentException if it isn't a field results sort by
+         */
+        public static Sort parse(String param) {
+            for (Sort sort : values()) {
+                if (sort.PARAM.equals(param)) {
+                    return sort;
+                }
+            }
+            throw new IllegalArgumentException("Can't sort by " + param);
+        }
+    }
+
+    private Integer id;
+    private String country;
+    private String range;
+    private String name;
+    private Boolean northern;
+    private Integer minAltitude;
+    private Integer maxAltitude;
+    private int afterId = 0;
+    private int limit = Integer.MAX_VALUE;
+    private Sort sort = Sort.ID;
+
+    /**
+     * Create a query with no filters, which matches every mountain
+     */
+    public MountainQuery() {}
+
+    /**
+     * Copies a query, so the copy can be changed without changing the original
+     *
+     * @return a query with the same filters, start, limit and order
+     */
+    public MountainQuery copy() {
+        MountainQuery copy = new MountainQuery();
+        copy.id = id;
+        copy.country = country;
+        copy.range = range;
+        copy.name = name;
+        copy.northern = northern;
+        copy.minAltitude = minAltitude;
+        copy.maxAltitude = maxAltitude;
+        copy.afterId = afterId;
+        copy.limit = limit;
+        copy.sort = sort;
+        return copy;
+    }
+
+    /**
+     * Checks if a mountain passes every filter
+     *
+     * @param mountain Mountain to check
+     * @return true if the mountain matches
+     */
+    public boolean matches(Mountain mountain) {
+        return (id == null || id == mountain.getId())
+                && (country == null || country.equals(mountain.getCountry()))
+                && (range == null || range.equals(mountain.getRange()))
+                && (name == null || name.equals(mountain.getName()))
+                && (northern == null || northern == mountain.getIsNorthern())
+                && (minAltitude == null || mountain.getAltitude() >= minAltitude)
+                && (maxAltitude == null || mountain.getAltitude() <= maxAltitude);
+    }
+
+    /**
+     * Checks if any filter is set
+     *
+     * @return true if at least one filter is set
+     */
+    public boolean hasFilters() {
+        return id != null || country != null || range != null || name != null || northern != null
+                || hasAltitudeFilter();
+    }
+
+    /**
+     * Checks if either altitude bound is set
+     *
+     * @return true if there's a minimum or maximum altitude
+     */
+    public boolean hasAltitudeFilter() {
+        return minAltitude != null || maxAltitude != null;
+    }
+
+    /**
+     * Gets the ID filter
+     * @return the ID, or null if not filtering on ID
+     */
+    public Integer getId() {
+        return id;
+    }
+
+    /**
+     * Sets the ID filter
+     * @param id the ID, or null to not filter on ID
+     */
+    public void setId(Integer id) {
+        this.id = id;
+    }
+
+    /**
+     * Gets the country filter
+     * @return the country, or null if not filtering on country
+     */
+    public String getCountry() {
+        return country;
+    }
+
+    /**
+     * Sets the country filter
+     * @param country the country, or null to not filter on country
+     */
+    public void setCountry(String country) {
+        this.country = country;
+    }
+
+    /**
+     * Gets the range filter
+     * @return the range, or null if not filtering on range
+     */
+    public String getRange() {
+        return range;
+    }
+
+    /**
+     * Sets the range filter
+     * @param range the range, or null to not filter on range
+     */
+    public void setRange(String range) {
+        this.range = range;
+    }
+
+    /**
+     * Gets the name filter
+     * @return the name, or null if not filtering on name
+     */
+    public String getName() {
+        return name;
+    }
+
+    /**
+     * Sets the name filter
+     * @param name the name, or null to not filter on name
+     */
+    public void setName(String name) {
+        this.name = name;
+    }
+
+    /**
+     * Gets the hemisphere filter
+     * @return true for Northern, false for Southern, or null if not filtering on hemisphere
+     */
+    public Boolean getNorthern() {
+        return northern;
+    }
+
+    /**
+     * Sets the hemisphere filter
+     * @param northern true for Northern, false for Southern, or null to not filter on hemisphere
+     */
+    public void setNorthern(Boolean northern) {
+        this.northern = northern;
+    }
+
+    /**
+     * Gets the minimum altitude
+     * @return the lowest altitude allowed, or null if there's no minimum
+     */
+    public Integer getMinAltitude() {
+        return minAltitude;
+    }
+
+    /**
+     * Sets the minimum altitude
+     * @param minAltitude the lowest altitude allowed, or null for no minimum
+     */
+    public void setMinAltitude(Integer minAltitude) {
+        this.minAltitude = minAltitude;
+    }
+
+    /**
+     * Gets the maximum altitude
+     * @return the highest altitude allowed, or null if there's no maximum
+     */
+    public Integer getMaxAltitude() {
+        return maxAltitude;
+    }
+
+    /**
+     * Sets the maximum altitude
+     * @param maxAltitude the highest altitude allowed, or null for no maximum
+     */
+    public void setMaxAltitude(Integer maxAltitude) {
+        this.maxAltitude = maxAltitude;
+    }
+
+    /**
+     * Gets the ID results start after
+     * @return the ID, or 0 to start from the first mountain
+     */
+    public int getAfterId() {
+        return afterId;
+    }
+
+    /**
+     * Sets the ID results start after
+     * @param afterId only mountains with a higher ID are returned
+     */
+    public void setAfterId(int afterId) {
+        this.afterId = afterId;
+    }
+
+    /**
+     * Gets the most results to return
+     * @return the limit, Integer.MAX_VALUE if there's none
+     */
+    public int getLimit() {
+        return limit;
+    }
+
+    /**
+     * Sets the most results to return
+     * @param limit the limit, must be positive
+     */
+    public void setLimit(int limit) {
+        this.limit = limit;
+    }
+
+    /**
+     * Gets the order results come back in
+     * @return the order, ID order by default
+     */
+    public Sort getSort() {
+        return sort;
+    }
+
+    /**
+     * Sets the order results come back in - only ID order can start after an ID
+     * @param sort the order
+     */
+    public void setSort(Sort sort) {
+        this.sort = sort;
+    }
+
+    /**
+     * Checks if another query has the same filters, start, limit and order, and
+     * so the same results
+     *
+     * @param obj the object being compared to
+     * @return true if it's an equal query
+     */
+    @Override
+    public boolean equals(Object obj) {
+        if (this == obj) {
+            return true;
+        }
+        if (!(obj instanceof MountainQuery query)) {
+            return false;
+        }
+        return afterId == query.afterId && limit == query.limit && sort == query.sort
+                && Objects.equals(id, query.id)
+                && Objects.equals(country, query.country) && Objects.equals(range, query.range)
+                && Objects.equals(name, query.name) && Objects.equals(northern, query.northern)
+                && Objects.equals(minAltitude, query.minAltitude) && Objects.equals(maxAltitude, query.maxAltitude);
+    }
+
+    @Override
+    public int hashCode() {
+        return Objects.hash(id, country, range, name, northern, minAltitude, maxAltitude, afterId, limit, sort);
+    }
+}
@@ -2,35 +2,85 @@
  * Service layer for REST server
  * <p>
  * Handles the maintenance of the list of mountains, and how the list of mountains
- * is handled & added to.
+ * is handled & added to. The mountains themselves are kept in a MountainStore.
  *
  * @Author Ewan Lewis
  */
 
 package com.example.MountainServer;
 
+import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Service;
 
 import java.util.ArrayList;
+import java.util.Iterator;
 import java.util.List;
-import java.util.concurrent.locks.ReadWriteLock;
-import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.function.Consumer;
+import java.util.function.Supplier;
 
 @Service
 public class MountainService {
 
     /**
-     * List of mountains
+     * Most mountains streamed out of the store per lookup
      */
-    private final List<Mountain> MOUNTAIN_LIST = new ArrayList<>();
+    private static final int STREAM_CHUNK_SIZE = 1_000;
 
-    private final ReadWriteLock lock = new ReentrantReadWriteLock();
+    /**
+     * Most mountains a sorted stream can ask for, as they're all looked up before
+     * the first is sent
+     */
+    public static final int MAX_SORTED_STREAM = 10_000;
 
     /**
-     * Constructor
+     * Store holding the mountains
+     */
+    private final MountainStore STORE;
+
+    /**
+     * Listener the store tells about changes, committed after each one
+     */
+    private final MountainStoreListener LISTENER;
+
+    /**
+     * Cache of query results, in front of the store
+     */
+    private final QueryCache CACHE;
+
+    /**
+     * Index of names searched for type-ahead, which the store keeps up to date
+     */
+    private final NameIndex NAMES;
+
+    /**
+     * Statistics of each country, range and hemisphere, which the store keeps up
+     * to date
+     */
+    private final MountainStatistics STATS;
+
+    /**
+     * Index of where mountains are, which the store keeps up to date
      */
-    public MountainService() {
+    private final LocationIndex LOCATIONS;
 
+    /**
+     * Constructor
+     * @param store     Store to hold the mountains in
+     * @param listener  Listener the store tells about changes
+     * @param cache     Cache of query results
+     * @param names     Index of names, which the store already tells about changes
+     * @param stats     Statistics, which the store already tells about changes
+     * @param locations Index of locations, which the store already tells about changes
+     */
+    @Autowired
+    public MountainService(MountainStore store, MountainStoreListener listener, QueryCache cache,
+                           NameIndex names, MountainStatistics stats, LocationIndex locations) {
+        this.STORE = store;
+        this.LISTENER = listener;
+        this.CACHE = cache;
+        this.NAMES = names;
+        this.STATS = stats;
+        this.LOCATIONS = locations;
     }
 
     /**
@@ -40,19 +90,41 @@ public class MountainService {
      * @return if successful or not
      */
     public boolean addMountains(List<Mountain> newMountains) {
-        lock.writeLock().lock();
+        // Encode them now, before the store locks, so reads never have to
+        newMountains.forEach(Mountain::jsonFields);
+        return commit(STORE.addAll(newMountains));
+    }
+
+    /**
+     * Adds mountains as they're read, in chunks that are each committed before the
+     * next is read, so however many there are only one chunk is held at a time.
+     * Each mountain is checked against the ones stored so far, including the
+     * earlier chunks, and skipped if it's a duplicate rather than failing the rest
+     * <p>
+     * If reading fails, the mountains read before the failure are still added
+     * before the exception is passed on, so the report says how far it got
+     *
+     * @param mountains Mountains to add, read one at a time
+     * @param chunkSize Most mountains to add in one go
+     * @param report    Counts of mountains added and skipped, kept up to date
+     */
+    public void ingest(Iterator<Mountain> mountains, int chunkSize, IngestReport report) {
+        List<Mountain> chunk = new ArrayList<>(chunkSize);
         try {
-            for (Mountain newMountain : newMountains) {
-                for (Mountain existingMountain : MOUNTAIN_LIST) {
-                    if (existingMountain.equals(newMountain)) {
-                        return false; // Found a duplicate
-                    }
+            while (mountains.hasNext()) {
+                Mountain mountain = mountains.next();
+                mountain.jsonFields();
+                chunk.add(mountain);
+                if (chunk.size() == chunkSize) {
+                    List<Mountain> full = chunk;
+                    chunk = new ArrayList<>(chunkSize);
+                    report.count(commit(STORE.addDistinct(full)));
                 }
             }
-            MOUNTAIN_LIST.addAll(newMountains);
-            return true;
         } finally {
-            lock.writeLock().unlock();
+            if (!chunk.isEmpty()) {
+                report.count(commit(STORE.addDistinct(chunk)));
+            }
         }
     }
 
@@ -62,12 +134,7 @@ public class MountainService {
      * @return list of all mountains
      */
     public List<Mountain> getAllMountains() {
-        lock.readLock().lock();
-        try {
-            return new ArrayList<>(MOUNTAIN_LIST);
-        } finally {
-            lock.readLock().unlock();
-        }
+        return cached(new MountainQuery(), STORE::getAll);
     }
 
     /**
@@ -77,18 +144,9 @@ public class MountainService {
      * @return List of all mountains in country
      */
     public List<Mountain> getMountainsByCountry(String country) {
-        lock.readLock().lock();
-        try {
-            List<Mountain> returningMountains = new ArrayList<>();
-            for (Mountain existingMountain : MOUNTAIN_LIST) {
-                if (existingMountain.getCountry().equals(country)) { //
-                    returningMountains.add(existingMountain);
-                }
-            }
-            return returningMountains;
-        } finally {
-            lock.readLock().unlock();
-        }
+        MountainQuery query = new MountainQuery();
+        query.setCountry(country);
+        return find(query);
     }
 
     /**
@@ -99,18 +157,10 @@ public class MountainService {
      * @return List of all mountains in country & range
      */
     public List<Mountain> getByCountryAndRange(String country, String range) {
-        lock.readLock().lock();
-        try {
-            List<Mountain> returningMountains = new ArrayList<>();
-            for (Mountain existingMountain : MOUNTAIN_LIST) {
-                if (existingMountain.getCountry().equals(country) && existingMountain.getRange().equals(range)) {
-                    returningMountains.add(existingMountain);
-                }
-            }
-            return returningMountains;
-        } finally {
-            lock.readLock().unlock();
-        }
+        MountainQuery query = new MountainQuery();
+        query.setCountry(country);
+        query.setRange(range);
+        return find(query);
     }
 
     /**
@@ -120,18 +170,9 @@ public class MountainService {
      * @return All mountains in desired hemisphere
      */
     public List<Mountain> getByHemisphere(Boolean isNorthern) {
-        lock.readLock().lock();
-        try {
-            List<Mountain> returningMountains = new ArrayList<>();
-            for (Mountain existingMountain : MOUNTAIN_LIST) {
-                if (existingMountain.getIsNorthern() == isNorthern) {
-                    returningMountains.add(existingMountain);
-                }
-            }
-            return returningMountains;
-        } finally {
-            lock.readLock().unlock();
-        }
+        MountainQuery query = new MountainQuery();
+        query.setNorthern(isNorthern);
+        return find(query);
     }
 
     /**
@@ -142,20 +183,23 @@ public class MountainService {
      * @return ALl mountains in country & above altitude
      */
     public List<Mountain> getByCountryAltitude(String country, int alt) {
-        lock.readLock().lock();
-        try {
-            List<Mountain> returningMountains = new ArrayList<>();
-            for (Mountain existingMountain : MOUNTAIN_LIST) {
-                boolean sameCountry = existingMountain.getCountry().equals(country);
-                boolean isTaller = existingMountain.getAltitude() >= alt;
-                if (sameCountry && isTaller) {
-                    returningMountains.add(existingMountain);
-                }
-            }
-            return returningMountains;
-        } finally {
-            lock.readLock().unlock();
-        }
+        return getByAltitudeRange(country, alt, Integer.MAX_VALUE);
+    }
+
+    /**
+     * Looks for all mountains within a range of altitudes, optionally in just one country
+     *
+     * @param country Country to search, or null to search every country
+     * @param min     Minimum altitude
+     * @param max     Maximum altitude
+     * @return All mountains in country & between the altitudes
+     */
+    public List<Mountain> getByAltitudeRange(String country, int min, int max) {
+        MountainQuery query = new MountainQuery();
+        query.setCountry(country);
+        query.setMinAltitude(min);
+        query.setMaxAltitude(max);
+        return find(query);
     }
 
     /**
@@ -167,19 +211,70 @@ public class MountainService {
      * @return List of all mountains in the criteria
      */
     public List<Mountain> getByName(String country, String range, String name) {
-        lock.readLock().lock();
-        try {
-            List<Mountain> returningMountains = new ArrayList<>();
-            for (Mountain existingMountain : MOUNTAIN_LIST) {
-                if (existingMountain.getCountry().equals(country)
-                        && existingMountain.getRange().equals(range)
-                        && existingMountain.getName().equals(name)) {
-                    returningMountains.add(existingMountain);
-                }
+        MountainQuery query = new MountainQuery();
+        query.setCountry(country);
+        query.setRange(range);
+        query.setName(name);
+        return find(query);
+    }
+
+    /**
+     * Searches for mountains matching every filter in a query
+     *
+     * @param query Filters to apply
+     * @return List of all mountains matching the query
+     */
+    public List<Mountain> find(MountainQuery query) {
+        return cached(query, () -> STORE.find(query));
+    }
+
+    /**
+     * Gets the result of a query from the cache, or looks it up and caches it
+     *
+     * @param query  Query asked
+     * @param lookup Looks the result up in the store
+     * @return the result, which can't be changed
+     */
+    private List<Mountain> cached(MountainQuery query, Supplier<List<Mountain>> lookup) {
+        // Read before the lookup, so the result is at least as new as the version
+        long version = STORE.version();
+        List<Mountain> mountains = CACHE.get(query, version);
+        if (mountains == null) {
+            mountains = CACHE.put(query.copy(), version, lookup.get());
+        }
+        return mountains;
+    }
+
+    /**
+     * Streams every mountain matching a query to an action, in ID order, without
+     * ever holding more than a chunk of them - the store is only locked while each
+     * chunk is looked up, never while the action runs. A sorted query's results
+     * can't be picked up again after an ID, so they're looked up in one go, and
+     * it has to be limited to MAX_SORTED_STREAM
+     *
+     * @param query  Filters to apply, starting after its afterId and stopping at its limit
+     * @param action Action to give each mountain to
+     * @throws IllegalArgumentException if the query is sorted and its limit is too big
+     */
+    public void stream(MountainQuery query, Consumer<Mountain> action) {
+        if (query.getSort() != MountainQuery.Sort.ID) {
+            if (query.getLimit() > MAX_SORTED_STREAM) {
+                throw new IllegalArgumentException("A sorted stream needs a limit of at most " + MAX_SORTED_STREAM);
             }
-            return returningMountains;
-        } finally {
-            lock.readLock().unlock();
+            STORE.find(query).forEach(action);
+            return;
+        }
+        MountainQuery chunk = query.copy();
+        int remaining = query.getLimit();
+        while (remaining > 0) {
+            chunk.setLimit(Math.min(remaining, STREAM_CHUNK_SIZE));
+            List<Mountain> mountains = STORE.find(chunk);
+            mountains.forEach(action);
+            if (mountains.size() < chunk.getLimit()) {
+                return;
+            }
+            remaining -= mountains.size();
+            chunk.setAfterId(mountains.get(mountains.size() - 1).getId());
         }
     }
 
@@ -190,19 +285,12 @@ public class MountainService {
      * @return Mountain of ID
      */
     public List<Mountain> getById(int id) {
-        lock.readLock().lock();
-        try {
-            List<Mountain> returningMountains = new ArrayList<>();
-            for (Mountain existingMountain : MOUNTAIN_LIST) {
-                if (existingMountain.getId() == id) {
-                    returningMountains.add(existingMountain);
-                    return returningMountains;
-                }
-            }
-            return returningMountains;
-        } finally {
-            lock.readLock().unlock();
+        List<Mountain> returningMountains = new ArrayList<>();
+        Mountain mountain = STORE.get(id);
+        if (mountain != null) {
+            returningMountains.add(mountain);
         }
+        return returningMountains;
     }
 
     /**
@@ -213,20 +301,8 @@ public class MountainService {
      * @return Success/not
      */
     public boolean updateMountain(int id, Mountain mountain) {
-        lock.writeLock().lock();
-        try {
-            int i = 0;
-            for (Mountain currentMountain : MOUNTAIN_LIST) {
-                if (currentMountain.getId() == id) {
-                    MOUNTAIN_LIST.set(i, mountain);
-                    return true;
-                }
-                i++;
-            }
-            return false;
-        } finally {
-            lock.writeLock().unlock();
-        }
+        mountain.jsonFields();
+        return commit(STORE.update(id, mountain));
     }
 
     /**
@@ -236,19 +312,110 @@ public class MountainService {
      * @return Success/not
      */
     public boolean deleteMountain(int id) {
-        lock.writeLock().lock();
-        try {
-            int i = 0;
-            for (Mountain currentMountain : MOUNTAIN_LIST) {
-                if (currentMountain.getId() == id) {
-                    MOUNTAIN_LIST.remove(i);
-                    return true;
-                }
-                i++;
+        return commit(STORE.delete(id));
+    }
+
+    /**
+     * Updates many mountains' information in one go, each the mountain with the ID
+     * it carries, waiting for one commit for the whole batch
+     *
+     * @param mountains New data of mountains, with the IDs of the ones to update
+     * @return for each mountain, whether it was updated
+     */
+    public boolean[] updateMountains(List<Mountain> mountains) {
+        mountains.forEach(Mountain::jsonFields);
+        return commit(STORE.updateAll(mountains));
+    }
+
+    /**
+     * Deletes many mountains in one go, waiting for one commit for the whole batch
+     *
+     * @param ids IDs of mountains to delete
+     * @return for each ID, whether its mountain was deleted
+     */
+    public boolean[] deleteMountains(int[] ids) {
+        return commit(STORE.deleteAll(ids));
+    }
+
+    /**
+     * Finds the mountains whose names best match what's been typed so far
+     *
+     * @param query What's been typed
+     * @param limit Most mountains to find
+     * @return the mountains, best match first
+     */
+    public List<Mountain> search(String query, int limit) {
+        return NAMES.search(query, limit, STORE);
+    }
+
+    /**
+     * Gets the count and altitudes of the mountains in each group
+     *
+     * @param grouping Whether to group by country, range or hemisphere
+     * @return the statistics of each group, in order of the group
+     */
+    public List<GroupStatistics> getStatistics(MountainStatistics.Grouping grouping) {
+        return STATS.by(grouping);
+    }
+
+    /**
+     * Finds the mountains nearest a point, out to a distance
+     *
+     * @param latitude  Latitude of the point
+     * @param longitude Longitude of the point
+     * @param radiusKm  Furthest a mountain can be from the point, in kilometres
+     * @param limit     Most mountains to find
+     * @return the mountains with a location, nearest first
+     */
+    public List<Mountain> findNear(double latitude, double longitude, double radiusKm, int limit) {
+        return LOCATIONS.nearest(latitude, longitude, radiusKm, limit, STORE);
+    }
+
+    /**
+     * Shows how the store would look up the mountains a query picks out
+     *
+     * @param query Filters to plan for
+     * @return the plan
+     */
+    public QueryPlan explain(MountainQuery query) {
+        return STORE.explain(query);
+    }
+
+    /**
+     * Gets the store's data version, which goes up after every change
+     *
+     * @return the version
+     */
+    public long version() {
+        return STORE.version();
+    }
+
+    /**
+     * Waits for a change to be committed, if there was one
+     *
+     * @param changed Whether the store changed
+     * @return changed
+     */
+    private boolean commit(boolean changed) {
+        if (changed) {
+            LISTENER.commit();
+        }
+        return changed;
+    }
+
+    /**
+     * Waits for a batch of changes to be committed, if any of them happened
+     *
+     * @param changed Whether each change happened
+     * @return changed
+     */
+    private boolean[] commit(boolean[] changed) {
+        for (boolean change : changed) {
+            if (change) {
+                LISTENER.commit();
+                break;
             }
-            return false;
-        } finally {
-            lock.writeLock().unlock();
         }
+        return changed;
     }
 }
@@ -0,0 +1,208 @@
+/**
+ * Counts and altitude statistics of the mountains grouped by country, range and
+ * hemisphere, kept up to date by listening to the store
+ * <p>
+ * Every change adjusts the count and altitude total of each group the mountain
+ * is in, so reading a grouping's statistics costs one step per group rather
+ * than a pass over every mountain. Each group also counts its mountains at each
+ * altitude, sorted, so when a change takes away its lowest or highest mountain
+ * the next lowest or highest is found there instead of by looking through the
+ * group - and only then, since anything else leaves them as they were.
+ *
+ * @Author Ewan Lewis
+ */
+
+package com.example.MountainServer;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+public class MountainStatistics implements MountainStoreListener {
+
+    /**
+     * Ways the mountains can be grouped
+     */
+    public enum Grouping {
+        COUNTRY("country"),
+        RANGE("range"),
+        HEMISPHERE("hemisphere");
+
+        private final String PARAM;
+
+        Grouping(String param) {
+            PARAM = param;
+        }
+
+        /**
+         * Parses the by parameter of a URL
+         *
+         * @param param country, range or hemisphere
+         * @return the grouping
+         * @throws IllegalArgumentException if it isn't a grouping
+         */
+        public static Grouping parse(String param) {
+            for (Grouping grouping : values()) {
+                if (grouping.PARAM.equals(param)) {
+                    return grouping;
+                }
+            }
+            throw new IllegalArgumentException("Can't group by " + param);
+        }
+
+        private String groupOf(Mountain mountain) {
+            return switch (this) {
+                case COUNTRY -> mountain.getCountry();
+                case RANGE -> mountain.getRange();
+                case HEMISPHERE -> mountain.getIsNorthern() ? "northern" : "southern";
+            };
+        }
+    }
+
+    /**
+     * Groups of each grouping, in order of the value they share
+     */
+    private final Map<Grouping, TreeMap<String, Group>> GROUPS = new EnumMap<>(Grouping.class);
+
+    /**
+     * Guards the statistics - changes come in under the store's lock, which for a
+     * sharded store is one of many
+     */
+    private final ReadWriteLock lock = new ReentrantReadWriteLock();
+
+    /**
+     * Running statistics of one group
+     */
+    private static final class Group {
+
+        /**
+         * Number of the group's mountains at each altitude
+         */
+        private final TreeMap<Integer, Integer> ALTITUDES = new TreeMap<>();
+
+        private long count;
+
+        private long totalAltitude;
+
+        private int minAltitude;
+
+        private int maxAltitude;
+
+        void add(int altitude) {
+            ALTITUDES.merge(altitude, 1, Integer::sum);
+            if (count == 0 || altitude < minAltitude) {
+                minAltitude = altitude;
+            }
+            if (count == 0 || altitude > maxAltitude) {
+                maxAltitude = altitude;
+            }
+            count++;
+            totalAltitude += altitude;
+        }
+
+        void remove(int altitude) {
+            count--;
+            totalAltitude -= altitude;
+            if (ALTITUDES.merge(altitude, -1, Integer::sum) > 0 || count == 0) {
+                return;
+            }
+            ALTITUDES.remove(altitude);
+            // The last mountain at an extreme has gone, so the next one in is it
+            if (altitude == minAltitude) {
+                minAltitude = ALTITUDES.firstKey();
+            }
+            if (altitude == maxAltitude) {
+                maxAltitude = ALTITUDES.lastKey();
+            }
+        }
+    }
+
+    /**
+     * Constructor
+     */
+    public MountainStatistics() {
+        for (Grouping grouping : Grouping.values()) {
+            GROUPS.put(grouping, new TreeMap<>(Comparator.nullsFirst(Comparator.naturalOrder())));
+        }
+    }
+
+    @Override
+    public void added(List<Mountain> mountains) {
+        lock.writeLock().lock();
+        try {
+            for (Mountain mountain : mountains) {
+                add(mountain);
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    @Override
+    public void updated(Mountain old, Mountain mountain) {
+        lock.writeLock().lock();
+        try {
+            remove(old);
+            add(mountain);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    @Override
+    public void deleted(Mountain old) {
+        lock.writeLock().lock();
+        try {
+            remove(old);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Gets the statistics of every group of a grouping
+     *
+     * @param grouping How to group the mountains
+     * @return the statistics of each group with mountains in it, in order of the
+     * value they share
+     */
+    public List<GroupStatistics> by(Grouping grouping) {
+        lock.readLock().lock();
+        try {
+            TreeMap<String, Group> groups = GROUPS.get(grouping);
+            List<GroupStatistics> statistics = new ArrayList<>(groups.size());
+            for (Map.Entry<String, Group> entry : groups.entrySet()) {
+                Group group = entry.getValue();
+                statistics.add(new GroupStatistics(entry.getKey(), group.count, group.minAltitude,
+                        group.maxAltitude, (double) group.totalAltitude / group.count));
+            }
+            return statistics;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    private void add(Mountain mountain) {
+        for (Grouping grouping : Grouping.values()) {
+            GROUPS.get(grouping).computeIfAbsent(grouping.groupOf(mountain), g -> new Group())
+                    .add(mountain.getAltitude());
+        }
+    }
+
+    private void remove(Mountain mountain) {
+        for (Grouping grouping : Grouping.values()) {
+            TreeMap<String, Group> groups = GROUPS.get(grouping);
+            String key = grouping.groupOf(mountain);
+            Group group = groups.get(key);
+            group.remove(mountain.getAltitude());
+            if (group.count == 0) {
+                groups.remove(key);
+            }
+        }
+    }
+}
@@ -0,0 +1,126 @@
+/**
+ * Storage behind MountainService
+ * <p>
+ * Implementations hold the mountains and answer every lookup the service needs,
+ * and are free to choose their own layout, indexes and locking - the service
+ * picks one at startup from the mountain.store.mode property.
+ *
+ * @Author Ewan Lewis
+ */
+
+package com.example.MountainServer;
+
+import java.util.List;
+
+public interface MountainStore {
+
+    /**
+     * Adds mountains, giving each one a new ID - nothing is added if any of them
+     * duplicates an existing mountain or another in the same batch
+     *
+     * @param newMountains Mountains to be added
+     * @return if successful or not
+     */
+    boolean addAll(List<Mountain> newMountains);
+
+    /**
+     * Adds the mountains that don't duplicate an existing mountain or one earlier in
+     * the same batch, giving each a new ID, and skips the rest
+     *
+     * @param newMountains Mountains to be added
+     * @return for each mountain, whether it was added
+     */
+    boolean[] addDistinct(List<Mountain> newMountains);
+
+    /**
+     * Gets all mountains
+     *
+     * @return list of all mountains, in the order they were added
+     */
+    List<Mountain> getAll();
+
+    /**
+     * Searches for mountains matching every filter in a query
+     *
+     * @param query Filters to apply
+     * @return list of matching mountains up to the query's limit, in the order
+     * they were added or in the query's sort order
+     */
+    List<Mountain> find(MountainQuery query);
+
+    /**
+     * Shows how find would answer a query, without running it
+     *
+     * @param query Filters to plan for
+     * @return the plan
+     */
+    QueryPlan explain(MountainQuery query);
+
+    /**
+     * Searches for a mountain by ID
+     *
+     * @param id ID of mountain
+     * @return the mountain, or null if there isn't one with that ID
+     */
+    Mountain get(int id);
+
+    /**
+     * Replaces a mountain, keeping its ID
+     *
+     * @param id       ID of mountain to update
+     * @param mountain New data of mountain
+     * @return Success/not
+     */
+    boolean update(int id, Mountain mountain);
+
+    /**
+     * Deletes a mountain
+     *
+     * @param id ID of mountain to delete
+     * @return Success/not
+     */
+    boolean delete(int id);
+
+    /**
+     * Replaces mountains, each one the mountain with the ID it carries, as if
+     * update were called for each in turn but with the write lock only taken once
+     *
+     * @param mountains New data of mountains, with the IDs of the ones they replace
+     * @return for each mountain, whether one with its ID was found and replaced
+     */
+    boolean[] updateAll(List<Mountain> mountains);
+
+    /**
+     * Deletes mountains, as if delete were called for each ID in turn but with the
+     * write lock only taken once
+     *
+     * @param ids IDs of mountains to delete
+     * @return for each ID, whether a mountain with it was found and deleted
+     */
+    boolean[] deleteAll(int[] ids);
+
+    /**
+     * Loads mountains that already have IDs, such as ones recovered at start up,
+     * without checking for duplicates or telling the listener - the IDs must be
+     * higher than any already in the store
+     *
+     * @param mountains Mountains to load, in ID order
+     */
+    void restore(List<Mountain> mountains);
+
+    /**
+     * Sets the listener told about every change, replacing any set before - set it
+     * before the store is used
+     *
+     * @param listener Listener to tell
+     */
+    void setListener(MountainStoreListener listener);
+
+    /**
+     * Gets the data version, which goes up after every change - read it before a
+     * lookup, and the lookup's result is at least as new as that version
+     *
+     * @return the version
+     */
+    long version();
+}
@@ -0,0 +1,212 @@
+/**
+ * Picks which MountainStore the service runs on
+ * <p>
+ * Set mountain.store.mode in application.properties to choose one, and
+ * mountain.data.dir for where anything that outlives a restart is kept.
+ *
+ * @Author Ewan Lewis
+ */
+
+package com.example.MountainServer;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnExpression;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.Primary;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+
+@Configuration
+public class MountainStoreConfiguration {
+
+    private static final String SNAPSHOT_FILE = "snapshot";
+
+    /**
+     * Creates the ID allocator, keeping its high-water mark in the data directory
+     * @param dataDir Directory to keep data in, or blank to keep nothing
+     * @return the allocator
+     */
+    @Bean
+    public IdAllocator idAllocator(@Value("${mountain.data.dir:}") String dataDir) {
+        return dataDir.isBlank() ? new IdAllocator() : new IdAllocator(Path.of(dataDir, "ids"));
+    }
+
+    /**
+     * Creates the listener the store tells about changes - the write-ahead log if
+     * one's configured. It's the primary listener because the indexes and
+     * statistics are listeners too, and the store tells them after this one
+     * @param walMode "off" for no log, or "always", "batched" or "async" for how
+     *                long a change can wait before it's forced to disk
+     * @param dataDir Directory to keep the log in
+     * @return the listener
+     */
+    @Bean
+    @Primary
+    public MountainStoreListener mountainStoreListener(@Value("${mountain.wal.mode:off}") String walMode,
+                                                       @Value("${mountain.data.dir:}") String dataDir) {
+        if (walMode.equals("off")) {
+            return MountainStoreListener.NONE;
+        }
+        WriteAheadLog.Durability durability = switch (walMode) {
+            case "always" -> WriteAheadLog.Durability.ALWAYS;
+            case "batched" -> WriteAheadLog.Durability.BATCHED;
+            case "async" -> WriteAheadLog.Durability.ASYNC;
+            default -> throw new IllegalArgumentException("Unknown mountain.wal.mode: " + walMode);
+        };
+        if (dataDir.isBlank()) {
+            throw new IllegalArgumentException("mountain.wal.mode needs mountain.data.dir to be set");
+        }
+        return WriteAheadLog.open(Path.of(dataDir, "wal"), durability);
+    }
+
+    /**
+     * Creates the index of mountain names searched for type-ahead
+     * @return the index
+     */
+    @Bean
+    public NameIndex nameIndex() {
+        return new NameIndex();
+    }
+
+    /**
+     * Creates the statistics of each country, range and hemisphere
+     * @return the statistics
+     */
+    @Bean
+    public MountainStatistics mountainStatistics() {
+        return new MountainStatistics();
+    }
+
+    /**
+     * Creates the index of where mountains are, for nearest-mountain searches
+     * @return the index
+     */
+    @Bean
+    public LocationIndex locationIndex() {
+        return new LocationIndex();
+    }
+
+    /**
+     * Creates the store for the configured mode, loaded with the last snapshot and
+     * whatever the write-ahead log has on top of it
+     * @param mode           "indexed" for the locked, fully indexed store, "snapshot" for
+     *                       lock-free reads from immutable snapshots, "sharded" for
+     *                       indexed stores split by country, "columnar" for
+     *                       dictionary-encoded column storage, or "offheap" for the
+     *                       same columns kept outside the Java heap
+     * @param shards         Number of shards, for the sharded store
+     * @param virtualThreads true if requests run on virtual threads, when the
+     *                       sharded store fans queries out on them too
+     * @param ids            Where new mountains get their IDs from
+     * @param listener       Listener to tell about changes
+     * @param names          Index of names, loaded with the store and told about changes
+     *                       after the listener
+     * @param stats          Statistics, loaded and told about changes like the names
+     * @param locations      Index of locations, loaded and told about changes like the names
+     * @param dataDir        Directory the snapshot is kept in
+     * @return the store
+     */
+    @Bean
+    public MountainStore mountainStore(@Value("${mountain.store.mode:indexed}") String mode,
+                                       @Value("${mountain.store.shards:16}") int shards,
+                                       @Value("${spring.threads.virtual.enabled:false}") boolean virtualThreads,
+                                       IdAllocator ids,
+                                       MountainStoreListener listener,
+                                       NameIndex names,
+                                       MountainStatistics stats,
+                                       LocationIndex locations,
+                                       @Value("${mountain.data.dir:}") String dataDir) {
+        MountainStore store = switch (mode) {
+            case "indexed" -> new IndexedMountainStore(ids);
+            case "snapshot" -> new SnapshotMountainStore(ids);
+            case "sharded" -> new ShardedMountainStore(shards, ids, virtualThreads);
+            case "columnar" -> new ColumnarMountainStore(new HeapMountainColumns(), ids);
+            case "offheap" -> new ColumnarMountainStore(new OffHeapMountainColumns(), ids);
+            default -> throw new IllegalArgumentException("Unknown mountain.store.mode: " + mode);
+        };
+        List<Mountain> recovered = List.of();
+        long logPosition = 0;
+        if (!dataDir.isBlank() && Files.exists(Path.of(dataDir, SNAPSHOT_FILE))) {
+            SnapshotFile.Contents snapshot = SnapshotFile.read(Path.of(dataDir, SNAPSHOT_FILE));
+            recovered = snapshot.mountains();
+            logPosition = snapshot.logPosition();
+        }
+        if (listener instanceof WriteAheadLog log) {
+            recovered = log.replay(recovered, logPosition);
+        }
+        if (!recovered.isEmpty()) {
+            ids.advancePast(recovered.get(recovered.size() - 1).getId());
+        }
+        store.restore(recovered);
+        listen(store, listener, names, stats, locations);
+        return store;
+    }
+
+    /**
+     * Loads the indexes and statistics with what a store holds, and has the store
+     * tell them about every change after the listener
+     * @param store     Store to follow
+     * @param listener  Listener the store tells first, such as the write-ahead log
+     * @param names     Index of names
+     * @param stats     Statistics
+     * @param locations Index of locations
+     */
+    static void listen(MountainStore store, MountainStoreListener listener, NameIndex names,
+                       MountainStatistics stats, LocationIndex locations) {
+        List<Mountain> mountains = store.getAll();
+        names.added(mountains);
+        stats.added(mountains);
+        locations.added(mountains);
+        store.setListener(MountainStoreListener.of(listener, names, stats, locations));
+    }
+
+    /**
+     * Creates a service outside Spring, without a cache, with its indexes and
+     * statistics following the store the same way the beans do
+     * @param store    Store to hold the mountains in
+     * @param listener Listener the store tells about changes
+     * @return the service
+     */
+    static MountainService mountainService(MountainStore store, MountainStoreListener listener) {
+        NameIndex names = new NameIndex();
+        MountainStatistics stats = new MountainStatistics();
+        LocationIndex locations = new LocationIndex();
+        listen(store, listener, names, stats, locations);
+        return new MountainService(store, listener, new QueryCache(0, 0), names, stats, locations);
+    }
+
+    /**
+     * Creates the cache of query results in front of the store
+     * @param entries Most results to hold, 0 for no cache
+     * @param bytes   Most estimated bytes of results to hold
+     * @return the cache
+     */
+    @Bean
+    public QueryCache queryCache(@Value("${mountain.cache.entries:0}") int entries,
+                                 @Value("${mountain.cache.bytes:67108864}") long bytes) {
+        return new QueryCache(entries, bytes);
+    }
+
+    /**
+     * Creates the checkpointer, if snapshots are switched on
+     * @param store           Store to snapshot
+     * @param listener        Listener the store tells about changes, which may be the log
+     * @param dataDir         Directory to keep the snapshot in
+     * @param intervalSeconds Seconds between snapshots
+     * @return the checkpointer
+     */
+    @Bean
+    @ConditionalOnExpression("${mountain.snapshot.interval:0} > 0")
+    public Checkpointer checkpointer(MountainStore store, MountainStoreListener listener,
+                                     @Value("${mountain.data.dir:}") String dataDir,
+                                     @Value("${mountain.snapshot.interval}") long intervalSeconds) {
+        if (dataDir.isBlank()) {
+            throw new IllegalArgumentException("mountain.snapshot.interval needs mountain.data.dir to be set");
+        }
+        return new Checkpointer(store, listener instanceof WriteAheadLog log ? log : null,
+                Path.of(dataDir, SNAPSHOT_FILE), intervalSeconds);
+    }
+}
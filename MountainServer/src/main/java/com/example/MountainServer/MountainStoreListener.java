@@ -0,0 +1,111 @@
+/**
+ * Hook a MountainStore calls on every change it makes
+ * <p>
+ * The change methods are called while the store still holds its write lock, so
+ * a listener sees changes in exactly the order they were applied and must be
+ * quick about it. Anything slow, like waiting on a disk, belongs in commit,
+ * which the service calls once the store has let go of its lock.
+ * <p>
+ * A listener that throws doesn't undo the change - the store still counts it
+ * in its version and the exception reaches whoever made the change.
+ *
+ * @Author Ewan Lewis
+ */
+
+package com.example.MountainServer;
+
+import java.util.List;
+import java.util.function.Consumer;
+
+public interface MountainStoreListener {
+
+    /**
+     * Listener that ignores every change
+     */
+    MountainStoreListener NONE = new MountainStoreListener() {};
+
+    /**
+     * Makes a listener that passes every change on to each of the listeners
+     * given, in order
+     *
+     * @param listeners Listeners to tell
+     * @return the listener
+     */
+    static MountainStoreListener of(MountainStoreListener... listeners) {
+        List<MountainStoreListener> all = List.of(listeners);
+        return new MountainStoreListener() {
+            @Override
+            public void added(List<Mountain> mountains) {
+                tellAll(all, listener -> listener.added(mountains));
+            }
+
+            @Override
+            public void updated(Mountain old, Mountain mountain) {
+                tellAll(all, listener -> listener.updated(old, mountain));
+            }
+
+            @Override
+            public void deleted(Mountain old) {
+                tellAll(all, listener -> listener.deleted(old));
+            }
+
+            @Override
+            public void commit() {
+                all.forEach(MountainStoreListener::commit);
+            }
+        };
+    }
+
+    /**
+     * Tells every listener about a change even if one fails - the store has
+     * already made it - then passes the first failure on
+     *
+     * @param listeners Listeners to tell
+     * @param tell      Tells one listener about the change
+     */
+    private static void tellAll(List<MountainStoreListener> listeners, Consumer<MountainStoreListener> tell) {
+        RuntimeException failure = null;
+        for (MountainStoreListener listener : listeners) {
+            try {
+                tell.accept(listener);
+            } catch (RuntimeException e) {
+                if (failure == null) {
+                    failure = e;
+                } else {
+                    failure.addSuppressed(e);
+                }
+            }
+        }
+        if (failure != null) {
+            throw failure;
+        }
+    }
+
+    /**
+     * Called after mountains have been added
+     *
+     * @param mountains Mountains added, with their new IDs
+     */
+    default void added(List<Mountain> mountains) {}
+
+    /**
+     * Called after a mountain has been replaced
+     *
+     * @param old      Mountain that was replaced
+     * @param mountain Replacement, with the ID it was stored under
+     */
+    default void updated(Mountain old, Mountain mountain) {}
+
+    /**
+     * Called after a mountain has been deleted
+     *
+     * @param old Mountain that was deleted
+     */
+    default void deleted(Mountain old) {}
+
+    /**
+     * Called after a successful change, outside the store's lock - returns once
+     * the change is as safe as the listener promises to make it
+     */
+    default void commit() {}
+}
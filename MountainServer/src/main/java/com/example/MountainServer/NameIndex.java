@@ -0,0 +1,425 @@
+/**
+ * Index of mountain names for type-ahead search, kept up to date by listening to
+ * the store
+ * <p>
+ * Names are compared normalised - lower case, accents dropped and anything but
+ * letters and digits treated as a gap between words - so "mont-blanc" finds
+ * "Mont Blanc". A search ranks what it finds in tiers: the name itself, names
+ * starting with what was typed, names with a later word starting with it, then
+ * names that are close to it allowing for typos. The first three tiers come out
+ * of two PrefixTries already in order, so they cost about as much as the
+ * results asked for. Typo-tolerant matches come from an index of the trigrams
+ * (runs of three characters) in each word of each name, and are only looked for
+ * when the other tiers run short.
+ * <p>
+ * Only the IDs of the mountains with each name are kept, not the mountains, so
+ * the index costs the same few bytes a mountain whichever way the store holds
+ * them - a search looks its results up in the store.
+ *
+ * @Author Ewan Lewis
+ */
+
+package com.example.MountainServer;
+
+import java.text.Normalizer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+public class NameIndex implements MountainStoreListener {
+
+    /**
+     * Share of the trigrams in what was typed a name has to have to be a
+     * typo-tolerant match
+     */
+    private static final double MIN_SIMILARITY = 0.5;
+
+    /**
+     * Shortest search that looks for typo-tolerant matches - anything shorter
+     * has too few trigrams to tell a typo from a different name
+     */
+    private static final int MIN_FUZZY_LENGTH = 3;
+
+    /**
+     * Most names a typo-tolerant search checks - when even the rarest trigrams
+     * typed are in more names than this, only this many of them are checked, so
+     * a vague search stays as quick as a precise one
+     */
+    private static final int MAX_FUZZY_CANDIDATES = 1_024;
+
+    /**
+     * Every name indexed, normalised, with the IDs of the mountains that have it
+     */
+    private final Map<String, Name> NAMES = new HashMap<>();
+
+    /**
+     * Names by the whole name
+     */
+    private final PrefixTrie<Name> NAME_PREFIXES = new PrefixTrie<>();
+
+    /**
+     * Names by the rest of the name from each word after the first
+     */
+    private final PrefixTrie<Name> WORD_PREFIXES = new PrefixTrie<>();
+
+    /**
+     * Names by each trigram in them
+     */
+    private final Map<Long, Set<Name>> TRIGRAMS = new HashMap<>();
+
+    /**
+     * Guards the index - changes come in under the store's lock, which for a
+     * sharded store is one of many
+     */
+    private final ReadWriteLock lock = new ReentrantReadWriteLock();
+
+    /**
+     * A normalised name and the IDs of the mountains that have it
+     */
+    private static final class Name {
+
+        private final String TEXT;
+
+        private final long[] TRIGRAMS;
+
+        /**
+         * IDs of the mountains with the name, in order, the first count of them used
+         */
+        private int[] ids = new int[1];
+
+        private int count;
+
+        Name(String text) {
+            TEXT = text;
+            TRIGRAMS = trigrams(text);
+        }
+
+        void add(int id) {
+            int at = Arrays.binarySearch(ids, 0, count, id);
+            if (at >= 0) {
+                return;
+            }
+            at = -at - 1;
+            if (count == ids.length) {
+                ids = Arrays.copyOf(ids, count * 2);
+            }
+            System.arraycopy(ids, at, ids, at + 1, count - at);
+            ids[at] = id;
+            count++;
+        }
+
+        boolean remove(int id) {
+            int at = Arrays.binarySearch(ids, 0, count, id);
+            if (at < 0) {
+                return false;
+            }
+            System.arraycopy(ids, at + 1, ids, at, count - at - 1);
+            count--;
+            return true;
+        }
+    }
+
+    /**
+     * A name found by a typo-tolerant match
+     *
+     * @param name       Name found
+     * @param similarity Share of the search's trigrams the name has
+     */
+    private record Similar(Name name, double similarity) {}
+
+    @Override
+    public void added(List<Mountain> mountains) {
+        lock.writeLock().lock();
+        try {
+            for (Mountain mountain : mountains) {
+                add(mountain);
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    @Override
+    public void updated(Mountain old, Mountain mountain) {
+        if (normalize(old.getName()).equals(normalize(mountain.getName()))) {
+            return; // Same ID under the same name
+        }
+        lock.writeLock().lock();
+        try {
+            remove(old);
+            add(mountain);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    @Override
+    public void deleted(Mountain old) {
+        lock.writeLock().lock();
+        try {
+            remove(old);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Finds the mountains whose names best match what's been typed, best first -
+     * names equal to it, names starting with it, names with a later word starting
+     * with it, then names close to it by trigrams. Within a tier names are in
+     * order, closest first for the last tier, and mountains sharing a name are in
+     * ID order
+     *
+     * @param query What's been typed
+     * @param limit Most mountains to find
+     * @param store Store to get the mountains found from
+     * @return the mountains
+     */
+    public List<Mountain> search(String query, int limit, MountainStore store) {
+        // Looked up once the index is unlocked, as the store holds its own lock
+        // while it tells the index about a change
+        int[] ids = searchIds(query, limit);
+        List<Mountain> result = new ArrayList<>(ids.length);
+        for (int id : ids) {
+            Mountain mountain = store.get(id);
+            if (mountain != null) {
+                result.add(mountain); // Unless deleted since it was found
+            }
+        }
+        return result;
+    }
+
+    private int[] searchIds(String query, int limit) {
+        String text = normalize(query);
+        if (text.isEmpty()) {
+            return new int[0];
+        }
+        lock.readLock().lock();
+        try {
+            LinkedHashSet<Name> found = new LinkedHashSet<>();
+            int[] mountains = {0};
+            Name exact = NAMES.get(text);
+            if (exact != null) {
+                found.add(exact);
+                mountains[0] += exact.count;
+            }
+            for (PrefixTrie<Name> trie : List.of(NAME_PREFIXES, WORD_PREFIXES)) {
+                if (mountains[0] >= limit) {
+                    break;
+                }
+                // Anything already found may come up again, so ask for that many more
+                List<Name> names = new ArrayList<>();
+                trie.collect(text, limit - mountains[0] + found.size(), names);
+                addUntil(names, limit, found, mountains);
+            }
+            if (mountains[0] < limit && text.length() >= MIN_FUZZY_LENGTH) {
+                addUntil(similar(text, found), limit, found, mountains);
+            }
+            int[] ids = new int[Math.min(limit, mountains[0])];
+            int size = 0;
+            for (Name name : found) {
+                for (int i = 0; i < name.count && size < ids.length; i++) {
+                    ids[size++] = name.ids[i];
+                }
+            }
+            return ids;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Gets the number of distinct names indexed
+     *
+     * @return the number of names
+     */
+    public int size() {
+        lock.readLock().lock();
+        try {
+            return NAMES.size();
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    private static void addUntil(List<Name> names, int limit, Set<Name> found, int[] mountains) {
+        for (int i = 0; i < names.size() && mountains[0] < limit; i++) {
+            if (found.add(names.get(i))) {
+                mountains[0] += names.get(i).count;
+            }
+        }
+    }
+
+    /**
+     * Finds the names sharing enough trigrams with a search to be typos of it,
+     * closest first
+     */
+    private List<Name> similar(String text, Set<Name> found) {
+        long[] trigrams = trigrams(text);
+        int needed = (int) Math.ceil(MIN_SIMILARITY * trigrams.length);
+        // A name with the trigrams needed has at least one of the rarest
+        // (count - needed + 1), so only those lists give candidates
+        Set<Name>[] postings = postings(trigrams);
+        Arrays.sort(postings, Comparator.comparingInt(Set::size));
+        Set<Name> candidates = new HashSet<>();
+        for (int i = 0; i <= trigrams.length - needed && candidates.size() < MAX_FUZZY_CANDIDATES; i++) {
+            for (Name name : postings[i]) {
+                if (!found.contains(name) && candidates.add(name) && candidates.size() == MAX_FUZZY_CANDIDATES) {
+                    break;
+                }
+            }
+        }
+        List<Similar> similar = new ArrayList<>();
+        for (Name candidate : candidates) {
+            int shared = shared(trigrams, candidate.TRIGRAMS);
+            if (shared >= needed) {
+                similar.add(new Similar(candidate, (double) shared / trigrams.length));
+            }
+        }
+        // Closest first, then the name with fewest other trigrams to it
+        similar.sort(Comparator.comparingDouble(Similar::similarity).reversed()
+                .thenComparingInt(s -> s.name().TRIGRAMS.length)
+                .thenComparing(s -> s.name().TEXT));
+        List<Name> names = new ArrayList<>(similar.size());
+        for (Similar s : similar) {
+            names.add(s.name());
+        }
+        return names;
+    }
+
+    /**
+     * Counts the trigrams two sorted arrays of them have in common
+     */
+    private static int shared(long[] a, long[] b) {
+        int shared = 0;
+        for (int i = 0, j = 0; i < a.length && j < b.length; ) {
+            if (a[i] < b[j]) {
+                i++;
+            } else if (a[i] > b[j]) {
+                j++;
+            } else {
+                shared++;
+                i++;
+                j++;
+            }
+        }
+        return shared;
+    }
+
+    private Set<Name>[] postings(long[] trigrams) {
+        @SuppressWarnings({"unchecked", "rawtypes"})
+        Set<Name>[] postings = new Set[trigrams.length];
+        for (int i = 0; i < trigrams.length; i++) {
+            postings[i] = TRIGRAMS.getOrDefault(trigrams[i], Set.of());
+        }
+        return postings;
+    }
+
+    private void add(Mountain mountain) {
+        String text = normalize(mountain.getName());
+        if (text.isEmpty()) {
+            return;
+        }
+        Name name = NAMES.get(text);
+        if (name == null) {
+            name = new Name(text);
+            NAMES.put(text, name);
+            NAME_PREFIXES.add(text, name);
+            for (int i = text.indexOf(' '); i >= 0; i = text.indexOf(' ', i + 1)) {
+                WORD_PREFIXES.add(text.substring(i + 1), name);
+            }
+            for (long trigram : name.TRIGRAMS) {
+                TRIGRAMS.computeIfAbsent(trigram, t -> new HashSet<>()).add(name);
+            }
+        }
+        name.add(mountain.getId());
+    }
+
+    private void remove(Mountain mountain) {
+        String text = normalize(mountain.getName());
+        Name name = NAMES.get(text);
+        if (name == null) {
+            return;
+        }
+        if (!name.remove(mountain.getId()) || name.count > 0) {
+            return;
+        }
+        NAMES.remove(text);
+        NAME_PREFIXES.remove(text, name);
+        for (int i = text.indexOf(' '); i >= 0; i = text.indexOf(' ', i + 1)) {
+            WORD_PREFIXES.remove(text.substring(i + 1), name);
+        }
+        for (long trigram : name.TRIGRAMS) {
+            Set<Name> names = TRIGRAMS.get(trigram);
+            names.remove(name);
+            if (names.isEmpty()) {
+                TRIGRAMS.remove(trigram);
+            }
+        }
+    }
+
+    /**
+     * Lower cases a name, drops its accents and turns every run of anything but
+     * letters and digits into one space between words
+     *
+     * @param name Name to normalise, which may be null
+     * @return the normalised name, empty if it has no letters or digits
+     */
+    static String normalize(String name) {
+        if (name == null) {
+            return "";
+        }
+        // Only names with accents or other non-ASCII characters need decomposing
+        String decomposed = name.chars().allMatch(c -> c < 0x80) ? name
+                : Normalizer.normalize(name, Normalizer.Form.NFD);
+        StringBuilder text = new StringBuilder(decomposed.length());
+        boolean gap = false;
+        for (int i = 0; i < decomposed.length(); i++) {
+            char c = decomposed.charAt(i);
+            if (Character.isLetterOrDigit(c)) {
+                if (gap && !text.isEmpty()) {
+                    text.append(' ');
+                }
+                text.append(Character.toLowerCase(c));
+                gap = false;
+            } else if (Character.getType(c) != Character.NON_SPACING_MARK) {
+                gap = true;
+            }
+        }
+        return text.toString();
+    }
+
+    /**
+     * Gets the distinct trigrams of each word of a normalised name, with the word
+     * padded by two spaces in front and one behind so its start counts for more,
+     * each packed into a long
+     */
+    private static long[] trigrams(String text) {
+        long[] trigrams = new long[text.length() * 2 + 2];
+        int count = 0;
+        for (String word : text.split(" ")) {
+            String padded = "  " + word + " ";
+            for (int i = 0; i + 3 <= padded.length(); i++) {
+                trigrams[count++] = ((long) padded.charAt(i) << 32) | ((long) padded.charAt(i + 1) << 16)
+                        | padded.charAt(i + 2);
+            }
+        }
+        long[] distinct = Arrays.copyOf(trigrams, count);
+        Arrays.sort(distinct);
+        int size = 0;
+        for (int i = 0; i < distinct.length; i++) {
+            if (size == 0 || distinct[size - 1] != distinct[i]) {
+                distinct[size++] = distinct[i];
+            }
+        }
+        return Arrays.copyOf(distinct, size);
+    }
+}
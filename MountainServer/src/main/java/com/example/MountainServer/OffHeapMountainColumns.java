@@ -0,0 +1,286 @@
+/**
+ * Column storage kept outside the Java heap in direct byte buffers, so a large
+ * set of mountains costs the garbage collector nothing to scan or copy
+ * <p>
+ * Each row is a fixed RECORD_BYTES (48 byte) record - six ints and the two
+ * doubles of its location - and records are grouped into chunks of 65536 rows
+ * so growing never copies the rows already written. Names are packed as UTF-8
+ * into separate 16MB chunks, with a name never split across two. A renamed row
+ * reuses its old name's bytes when the new name fits in them, otherwise the old
+ * bytes stay wasted until the next compaction.
+ *
+ * @Author Ewan Lewis
+ */
+
+package com.example.MountainServer;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+public class OffHeapMountainColumns implements MountainColumns {
+
+    private static final int ROW_SHIFT = 16;
+    private static final int ROWS_PER_CHUNK = 1 << ROW_SHIFT;
+    private static final int ROW_MASK = ROWS_PER_CHUNK - 1;
+    private static final int RECORD_BYTES = 48;
+    private static final int NAME_CHUNK_BYTES = 1 << 24;
+
+    /**
+     * Where each field sits within a record
+     */
+    private static final int ID = 0;
+    private static final int ALTITUDE = 4;
+    private static final int COUNTRY = 8;
+    private static final int RANGE = 12;
+    private static final int NAME_CHUNK = 16;
+    private static final int NAME_OFFSET = 20;
+    private static final int NAME_LENGTH = 24;
+    private static final int FLAGS = 28;
+    private static final int LATITUDE = 32;
+    private static final int LONGITUDE = 40;
+
+    private static final int LIVE = 1;
+    private static final int NORTHERN = 2;
+
+    /**
+     * Name length stored for a mountain with no name
+     */
+    private static final int NO_NAME = -1;
+
+    private ByteBuffer[] records = new ByteBuffer[0];
+
+    /**
+     * Chunks of names - only the last one is still being filled
+     */
+    private List<ByteBuffer> nameChunks = new ArrayList<>();
+    private int namePosition = 0;
+    private long nameBytes = 0;
+    private long wastedNameBytes = 0;
+
+    @Override
+    public int capacity() {
+        return records.length << ROW_SHIFT;
+    }
+
+    @Override
+    public void grow(int capacity) {
+        int chunks = (capacity + ROW_MASK) >>> ROW_SHIFT;
+        if (chunks <= records.length) {
+            return;
+        }
+        int old = records.length;
+        records = Arrays.copyOf(records, chunks);
+        for (int i = old; i < chunks; i++) {
+            records[i] = allocate(ROWS_PER_CHUNK * RECORD_BYTES);
+        }
+    }
+
+    @Override
+    public void write(int row, int id, int altitude, int country, int range, boolean northern, byte[] name,
+                      double latitude, double longitude) {
+        ByteBuffer chunk = records[row >>> ROW_SHIFT];
+        int base = (row & ROW_MASK) * RECORD_BYTES;
+        chunk.putInt(base + ID, id);
+        chunk.putInt(base + ALTITUDE, altitude);
+        chunk.putInt(base + COUNTRY, country);
+        chunk.putInt(base + RANGE, range);
+        chunk.putDouble(base + LATITUDE, latitude);
+        chunk.putDouble(base + LONGITUDE, longitude);
+        int oldLength = (chunk.getInt(base + FLAGS) & LIVE) != 0
+                ? Math.max(chunk.getInt(base + NAME_LENGTH), 0) : 0;
+        if (name == null) {
+            wastedNameBytes += oldLength;
+            chunk.putInt(base + NAME_LENGTH, NO_NAME);
+        } else if (name.length <= oldLength) {
+            nameChunks.get(chunk.getInt(base + NAME_CHUNK)).put(chunk.getInt(base + NAME_OFFSET), name);
+            chunk.putInt(base + NAME_LENGTH, name.length);
+            wastedNameBytes += oldLength - name.length;
+        } else {
+            wastedNameBytes += oldLength;
+            appendName(chunk, base, name);
+        }
+        int flags = chunk.getInt(base + FLAGS) & LIVE;
+        chunk.putInt(base + FLAGS, northern ? flags | NORTHERN : flags);
+    }
+
+    @Override
+    public int id(int row) {
+        return field(row, ID);
+    }
+
+    @Override
+    public int altitude(int row) {
+        return field(row, ALTITUDE);
+    }
+
+    @Override
+    public int country(int row) {
+        return field(row, COUNTRY);
+    }
+
+    @Override
+    public int range(int row) {
+        return field(row, RANGE);
+    }
+
+    @Override
+    public boolean isNorthern(int row) {
+        return (field(row, FLAGS) & NORTHERN) != 0;
+    }
+
+    @Override
+    public double latitude(int row) {
+        return records[row >>> ROW_SHIFT].getDouble((row & ROW_MASK) * RECORD_BYTES + LATITUDE);
+    }
+
+    @Override
+    public double longitude(int row) {
+        return records[row >>> ROW_SHIFT].getDouble((row & ROW_MASK) * RECORD_BYTES + LONGITUDE);
+    }
+
+    @Override
+    public boolean isLive(int row) {
+        return (field(row, FLAGS) & LIVE) != 0;
+    }
+
+    @Override
+    public void setLive(int row, boolean live) {
+        ByteBuffer chunk = records[row >>> ROW_SHIFT];
+        int at = (row & ROW_MASK) * RECORD_BYTES + FLAGS;
+        int flags = chunk.getInt(at);
+        if (!live && (flags & LIVE) != 0) {
+            wastedNameBytes += Math.max(field(row, NAME_LENGTH), 0);
+        }
+        chunk.putInt(at, live ? flags | LIVE : flags & ~LIVE);
+    }
+
+    @Override
+    public String name(int row) {
+        int length = field(row, NAME_LENGTH);
+        if (length == NO_NAME) {
+            return null;
+        }
+        byte[] name = new byte[length];
+        nameChunks.get(field(row, NAME_CHUNK)).get(field(row, NAME_OFFSET), name);
+        return new String(name, StandardCharsets.UTF_8);
+    }
+
+    @Override
+    public boolean nameEquals(int row, byte[] name) {
+        int length = field(row, NAME_LENGTH);
+        if (name == null || length == NO_NAME) {
+            return name == null && length == NO_NAME;
+        }
+        if (length != name.length) {
+            return false;
+        }
+        ByteBuffer chunk = nameChunks.get(field(row, NAME_CHUNK));
+        int offset = field(row, NAME_OFFSET);
+        for (int i = 0; i < length; i++) {
+            if (chunk.get(offset + i) != name[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    @Override
+    public int nameHash(int row) {
+        int length = field(row, NAME_LENGTH);
+        if (length == NO_NAME) {
+            return 0;
+        }
+        ByteBuffer chunk = nameChunks.get(field(row, NAME_CHUNK));
+        int offset = field(row, NAME_OFFSET);
+        int h = 1;
+        for (int i = offset; i < offset + length; i++) {
+            h = 31 * h + chunk.get(i);
+        }
+        return h;
+    }
+
+    @Override
+    public long nameBytes() {
+        return nameBytes;
+    }
+
+    @Override
+    public long wastedNameBytes() {
+        return wastedNameBytes;
+    }
+
+    @Override
+    public int compact(int rowCount) {
+        List<ByteBuffer> oldNames = nameChunks;
+        nameChunks = new ArrayList<>();
+        namePosition = 0;
+        nameBytes = 0;
+        wastedNameBytes = 0;
+        int live = 0;
+        for (int row = 0; row < rowCount; row++) {
+            if (!isLive(row)) {
+                continue;
+            }
+            ByteBuffer from = records[row >>> ROW_SHIFT];
+            int fromBase = (row & ROW_MASK) * RECORD_BYTES;
+            ByteBuffer to = records[live >>> ROW_SHIFT];
+            int toBase = (live & ROW_MASK) * RECORD_BYTES;
+            to.put(toBase, from, fromBase, RECORD_BYTES);
+            int length = to.getInt(toBase + NAME_LENGTH);
+            if (length != NO_NAME) {
+                byte[] name = new byte[length];
+                oldNames.get(to.getInt(toBase + NAME_CHUNK)).get(to.getInt(toBase + NAME_OFFSET), name);
+                appendName(to, toBase, name);
+            }
+            live++;
+        }
+        for (int row = live; row < rowCount; row++) {
+            records[row >>> ROW_SHIFT].putInt((row & ROW_MASK) * RECORD_BYTES + FLAGS, 0);
+        }
+        return live;
+    }
+
+    /**
+     * Drops the buffers, leaving their memory to be freed once they're collected
+     */
+    @Override
+    public void close() {
+        records = new ByteBuffer[0];
+        nameChunks = new ArrayList<>();
+        namePosition = 0;
+        nameBytes = 0;
+        wastedNameBytes = 0;
+    }
+
+    private int field(int row, int field) {
+        return records[row >>> ROW_SHIFT].getInt((row & ROW_MASK) * RECORD_BYTES + field);
+    }
+
+    /**
+     * Copies a name onto the end of the names and points a record at it
+     *
+     * @param chunk Record chunk holding the record
+     * @param base  Where the record starts in its chunk
+     * @param name  Name to copy
+     */
+    private void appendName(ByteBuffer chunk, int base, byte[] name) {
+        if (nameChunks.isEmpty() || namePosition + name.length > nameChunks.get(nameChunks.size() - 1).capacity()) {
+            nameChunks.add(allocate(Math.max(NAME_CHUNK_BYTES, name.length)));
+            namePosition = 0;
+        }
+        nameChunks.get(nameChunks.size() - 1).put(namePosition, name);
+        chunk.putInt(base + NAME_CHUNK, nameChunks.size() - 1);
+        chunk.putInt(base + NAME_OFFSET, namePosition);
+        chunk.putInt(base + NAME_LENGTH, name.length);
+        namePosition += name.length;
+        nameBytes += name.length;
+    }
+
+    private static ByteBuffer allocate(int bytes) {
+        return ByteBuffer.allocateDirect(bytes).order(ByteOrder.nativeOrder());
+    }
+}
@@ -0,0 +1,51 @@
+/**
+ * Opaque cursor marking where the next page of a GET /mountains starts
+ * <p>
+ * Pages are keyed on mountain ID, so a cursor is just the last ID of the page
+ * before, base64 encoded behind a version byte. Clients shouldn't rely on
+ * that - it only has to make sense to the server.
+ *
+ * @Author Ewan Lewis
+ */
+
+package com.example.MountainServer;
+
+import java.nio.ByteBuffer;
+import java.util.Base64;
+
+public final class PageCursor {
+
+    private static final byte VERSION = 1;
+
+    private static final int BYTES = 5;
+
+    private PageCursor() {
+
+    }
+
+    /**
+     * Makes the cursor for the page after a mountain
+     *
+     * @param lastId ID of the last mountain on the current page
+     * @return the cursor
+     */
+    public static String encode(int lastId) {
+        byte[] bytes = ByteBuffer.allocate(BYTES).put(VERSION).putInt(lastId).array();
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(bytes);
+    }
+
+    /**
+     * Reads a cursor back
+     *
+     * @param cursor Cursor from a previous page
+     * @return ID of the last mountain on that page
+     * @throws IllegalArgumentException if it isn't a cursor this server made
+     */
+    public static int decode(String cursor) {
+        byte[] bytes = Base64.getUrlDecoder().decode(cursor);
+        if (bytes.length != BYTES || bytes[0] != VERSION) {
+            throw new IllegalArgumentException("Not a page cursor: " + cursor);
+        }
+        return ByteBuffer.wrap(bytes, 1, 4).getInt();
+    }
+}
@@ -0,0 +1,125 @@
+/**
+ * Immutable hash map where every change returns a new map sharing most of its
+ * structure with the old one
+ * <p>
+ * Built on PersistentIntMap keyed by the key's hash code, with the rare keys
+ * whose hashes collide kept together in a small bucket.
+ *
+ * @Author Ewan Lewis
+ */
+
+package com.example.MountainServer;
+
+import java.util.Arrays;
+import java.util.Objects;
+
+public final class PersistentHashMap<K, V> {
+
+    private static final PersistentHashMap<?, ?> EMPTY = new PersistentHashMap<>(PersistentIntMap.empty(), 0);
+
+    /**
+     * Buckets of entries, keyed by hash
+     */
+    private final PersistentIntMap<Entry[]> buckets;
+
+    private final int size;
+
+    private PersistentHashMap(PersistentIntMap<Entry[]> buckets, int size) {
+        this.buckets = buckets;
+        this.size = size;
+    }
+
+    /**
+     * Gets the empty map
+     *
+     * @param <K> Type of keys
+     * @param <V> Type of values
+     * @return the empty map
+     */
+    @SuppressWarnings("unchecked")
+    public static <K, V> PersistentHashMap<K, V> empty() {
+        return (PersistentHashMap<K, V>) EMPTY;
+    }
+
+    /**
+     * Gets the value stored against a key
+     *
+     * @param key Key to look up, may be null
+     * @return the value, or null if not present
+     */
+    @SuppressWarnings("unchecked")
+    public V get(K key) {
+        Entry[] bucket = buckets.get(Objects.hashCode(key));
+        if (bucket != null) {
+            for (Entry entry : bucket) {
+                if (Objects.equals(entry.key, key)) {
+                    return (V) entry.value;
+                }
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Stores a value against a key
+     *
+     * @param key   Key to store against, may be null
+     * @param value Value to store, must not be null
+     * @return new map with the value stored
+     */
+    public PersistentHashMap<K, V> put(K key, V value) {
+        int hash = Objects.hashCode(key);
+        Entry[] bucket = buckets.get(hash);
+        Entry entry = new Entry(key, value);
+        if (bucket == null) {
+            return new PersistentHashMap<>(buckets.put(hash, new Entry[]{entry}), size + 1);
+        }
+        for (int i = 0; i < bucket.length; i++) {
+            if (Objects.equals(bucket[i].key, key)) {
+                Entry[] replaced = bucket.clone();
+                replaced[i] = entry;
+                return new PersistentHashMap<>(buckets.put(hash, replaced), size);
+            }
+        }
+        Entry[] grown = Arrays.copyOf(bucket, bucket.length + 1);
+        grown[bucket.length] = entry;
+        return new PersistentHashMap<>(buckets.put(hash, grown), size + 1);
+    }
+
+    /**
+     * Removes a key
+     *
+     * @param key Key to remove, may be null
+     * @return new map without the key, or this map if the key wasn't present
+     */
+    public PersistentHashMap<K, V> remove(K key) {
+        int hash = Objects.hashCode(key);
+        Entry[] bucket = buckets.get(hash);
+        if (bucket == null) {
+            return this;
+        }
+        for (int i = 0; i < bucket.length; i++) {
+            if (Objects.equals(bucket[i].key, key)) {
+                if (bucket.length == 1) {
+                    return new PersistentHashMap<>(buckets.remove(hash), size - 1);
+                }
+                Entry[] shrunk = new Entry[bucket.length - 1];
+                System.arraycopy(bucket, 0, shrunk, 0, i);
+                System.arraycopy(bucket, i + 1, shrunk, i, shrunk.length - i);
+                return new PersistentHashMap<>(buckets.put(hash, shrunk), size - 1);
+            }
+        }
+        return this;
+    }
+
+    /**
+     * Gets the number of entries
+     *
+     * @return number of entries
+     */
+    public int size() {
+        return size;
+    }
+
+    private record Entry(Object key, Object value) {}
+}
@@ -0,0 +1,251 @@
+/**
+ * Immutable map from int keys to values, where every change returns a new map
+ * that shares all but the changed path with the old one
+ * <p>
+ * The map is a hash array mapped trie that takes 5 bits of the key at a time,
+ * starting from the most significant end, so walking it visits keys in ascending
+ * (unsigned) order. Each node only allocates slots for the children it actually
+ * has, and a key sits in a leaf as high up the trie as it can, so a put or remove
+ * copies at most a handful of small nodes however big the map is.
+ *
+ * @Author Ewan Lewis
+ */
+
+package com.example.MountainServer;
+
+import java.util.function.Consumer;
+import java.util.function.Predicate;
+
+public final class PersistentIntMap<V> {
+
+    private static final PersistentIntMap<?> EMPTY = new PersistentIntMap<>(null, 0);
+
+    /**
+     * Shift for the first 5 bits of the key, the last level takes the 2 bits left over
+     */
+    private static final int TOP_SHIFT = 27;
+
+    private final Node root;
+
+    private final int size;
+
+    private PersistentIntMap(Node root, int size) {
+        this.root = root;
+        this.size = size;
+    }
+
+    /**
+     * Gets the empty map
+     *
+     * @param <V> Type of values
+     * @return the empty map
+     */
+    @SuppressWarnings("unchecked")
+    public static <V> PersistentIntMap<V> empty() {
+        return (PersistentIntMap<V>) EMPTY;
+    }
+
+    /**
+     * Gets the value stored against a key
+     *
+     * @param key Key to look up
+     * @return the value, or null if not present
+     */
+    @SuppressWarnings("unchecked")
+    public V get(int key) {
+        Node node = root;
+        for (int shift = TOP_SHIFT; node != null; shift -= 5) {
+            int bit = 1 << fragment(key, shift);
+            if ((node.bitmap & bit) == 0) {
+                return null;
+            }
+            Object slot = node.slots[Integer.bitCount(node.bitmap & (bit - 1))];
+            if (slot instanceof Leaf leaf) {
+                return leaf.key == key ? (V) leaf.value : null;
+            }
+            node = (Node) slot;
+        }
+        return null;
+    }
+
+    /**
+     * Stores a value against a key
+     *
+     * @param key   Key to store against
+     * @param value Value to store, must not be null
+     * @return new map with the value stored
+     */
+    public PersistentIntMap<V> put(int key, V value) {
+        int newSize = get(key) == null ? size + 1 : size;
+        Leaf leaf = new Leaf(key, value);
+        return new PersistentIntMap<>(root == null ? put(new Node(0, new Object[0]), TOP_SHIFT, leaf)
+                : put(root, TOP_SHIFT, leaf), newSize);
+    }
+
+    /**
+     * Removes a key
+     *
+     * @param key Key to remove
+     * @return new map without the key, or this map if the key wasn't present
+     */
+    public PersistentIntMap<V> remove(int key) {
+        if (get(key) == null) {
+            return this;
+        }
+        // The root is never collapsed into a leaf, so this is always a node or null
+        return new PersistentIntMap<>((Node) remove(root, TOP_SHIFT, key), size - 1);
+    }
+
+    /**
+     * Gets the number of entries
+     *
+     * @return number of entries
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * Checks if the map has no entries
+     *
+     * @return if empty or not
+     */
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    /**
+     * Runs an action on every value, in ascending order of key
+     *
+     * @param action Action to run
+     */
+    public void forEach(Consumer<? super V> action) {
+        if (root != null) {
+            forEach(root, action);
+        }
+    }
+
+    /**
+     * Runs an action on every value whose key is at least a given key, in
+     * ascending key order, until the action asks to stop
+     *
+     * @param from   Lowest key to visit
+     * @param action Action to run, returning false to stop
+     * @return false if the action stopped the walk
+     */
+    public boolean forEachFrom(int from, Predicate<? super V> action) {
+        return root == null || forEachFrom(root, TOP_SHIFT, from, true, action);
+    }
+
+    @SuppressWarnings("unchecked")
+    private void forEach(Node node, Consumer<? super V> action) {
+        for (Object slot : node.slots) {
+            if (slot instanceof Leaf leaf) {
+                action.accept((V) leaf.value);
+            } else {
+                forEach((Node) slot, action);
+            }
+        }
+    }
+
+    /**
+     * Walks a node's children in order - while bounded, the keys above this level
+     * match from, so children below from's fragment are skipped and the one on it
+     * stays bounded
+     */
+    @SuppressWarnings("unchecked")
+    private boolean forEachFrom(Node node, int shift, int from, boolean bounded, Predicate<? super V> action) {
+        int fromFragment = fragment(from, shift);
+        int fragments = node.bitmap;
+        for (Object slot : node.slots) {
+            int fragment = Integer.numberOfTrailingZeros(fragments);
+            fragments &= fragments - 1;
+            if (bounded && fragment < fromFragment) {
+                continue;
+            }
+            boolean onBound = bounded && fragment == fromFragment;
+            if (slot instanceof Leaf leaf) {
+                if ((!onBound || Integer.compareUnsigned(leaf.key, from) >= 0) && !action.test((V) leaf.value)) {
+                    return false;
+                }
+            } else if (!forEachFrom((Node) slot, shift - 5, from, onBound, action)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static Node put(Node node, int shift, Leaf leaf) {
+        int bit = 1 << fragment(leaf.key, shift);
+        int at = Integer.bitCount(node.bitmap & (bit - 1));
+        if ((node.bitmap & bit) == 0) {
+            Object[] slots = new Object[node.slots.length + 1];
+            System.arraycopy(node.slots, 0, slots, 0, at);
+            System.arraycopy(node.slots, at, slots, at + 1, node.slots.length - at);
+            slots[at] = leaf;
+            return new Node(node.bitmap | bit, slots);
+        }
+        Object slot = node.slots[at];
+        Object replacement;
+        if (slot instanceof Leaf existing) {
+            replacement = existing.key == leaf.key ? leaf : split(shift - 5, existing, leaf);
+        } else {
+            replacement = put((Node) slot, shift - 5, leaf);
+        }
+        Object[] slots = node.slots.clone();
+        slots[at] = replacement;
+        return new Node(node.bitmap, slots);
+    }
+
+    /**
+     * Builds the smallest subtree holding two leaves whose keys agree on every bit
+     * above the given level
+     */
+    private static Node split(int shift, Leaf a, Leaf b) {
+        int fragmentA = fragment(a.key, shift);
+        int fragmentB = fragment(b.key, shift);
+        if (fragmentA == fragmentB) {
+            return new Node(1 << fragmentA, new Object[]{split(shift - 5, a, b)});
+        }
+        Object[] slots = fragmentA < fragmentB ? new Object[]{a, b} : new Object[]{b, a};
+        return new Node((1 << fragmentA) | (1 << fragmentB), slots);
+    }
+
+    /**
+     * Removes a key known to be present below a node
+     *
+     * @return the new node, a lone leaf to be pulled up into the parent, or null if empty
+     */
+    private static Object remove(Node node, int shift, int key) {
+        int bit = 1 << fragment(key, shift);
+        int at = Integer.bitCount(node.bitmap & (bit - 1));
+        Object slot = node.slots[at];
+        Object replacement = slot instanceof Leaf ? null : remove((Node) slot, shift - 5, key);
+        if (replacement == null) {
+            if (node.slots.length == 1) {
+                return null;
+            }
+            Object[] slots = new Object[node.slots.length - 1];
+            System.arraycopy(node.slots, 0, slots, 0, at);
+            System.arraycopy(node.slots, at + 1, slots, at, slots.length - at);
+            if (slots.length == 1 && slots[0] instanceof Leaf && shift != TOP_SHIFT) {
+                return slots[0];
+            }
+            return new Node(node.bitmap & ~bit, slots);
+        }
+        if (node.slots.length == 1 && replacement instanceof Leaf && shift != TOP_SHIFT) {
+            return replacement;
+        }
+        Object[] slots = node.slots.clone();
+        slots[at] = replacement;
+        return new Node(node.bitmap, slots);
+    }
+
+    private static int fragment(int key, int shift) {
+        return shift >= 0 ? (key >>> shift) & 31 : key & ((1 << (5 + shift)) - 1);
+    }
+
+    private record Node(int bitmap, Object[] slots) {}
+
+    private record Leaf(int key, Object value) {}
+}
@@ -0,0 +1,250 @@
+/**
+ * Radix trie from string keys to the values filed under them, for finding every
+ * value whose key starts with a prefix
+ * <p>
+ * Each edge is labelled with a run of characters rather than one, so a chain of
+ * nodes with only one child each is a single node, and the trie holds about two
+ * nodes per key however long the keys are. A node's children are kept sorted by
+ * the first character of their labels, so walking the trie visits keys in order
+ * and a prefix lookup can stop as soon as it has as many values as it wants,
+ * having visited about that many keys.
+ *
+ * @Author Ewan Lewis
+ */
+
+package com.example.MountainServer;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+public class PrefixTrie<V> {
+
+    private static final char[] NO_FIRSTS = new char[0];
+
+    private final Node<V> ROOT = new Node<>("");
+
+    private int size = 0;
+
+    /**
+     * A node, reached along the edge labelled with its label
+     */
+    private static final class Node<V> {
+
+        private String label;
+
+        /**
+         * First character of each child's label, in order
+         */
+        private char[] firsts = NO_FIRSTS;
+
+        private Node<V>[] children;
+
+        private int childCount = 0;
+
+        /**
+         * Values filed under the key ending here, or null if none does
+         */
+        private List<V> values;
+
+        Node(String label) {
+            this.label = label;
+        }
+
+        int indexOf(char first) {
+            return Arrays.binarySearch(firsts, 0, childCount, first);
+        }
+
+        @SuppressWarnings({"unchecked", "rawtypes"})
+        void insertChild(int at, Node<V> child) {
+            if (childCount == firsts.length) {
+                int capacity = Math.max(2, childCount * 2);
+                firsts = Arrays.copyOf(firsts, capacity);
+                children = children == null ? new Node[capacity] : Arrays.copyOf(children, capacity);
+            }
+            System.arraycopy(firsts, at, firsts, at + 1, childCount - at);
+            System.arraycopy(children, at, children, at + 1, childCount - at);
+            firsts[at] = child.label.charAt(0);
+            children[at] = child;
+            childCount++;
+        }
+
+        void removeChild(int at) {
+            System.arraycopy(firsts, at + 1, firsts, at, childCount - at - 1);
+            System.arraycopy(children, at + 1, children, at, childCount - at - 1);
+            children[--childCount] = null;
+        }
+
+        /**
+         * Takes in this node's only child, when nothing ends at this node
+         */
+        void mergeWithOnlyChild() {
+            Node<V> child = children[0];
+            label = label + child.label;
+            firsts = child.firsts;
+            children = child.children;
+            childCount = child.childCount;
+            values = child.values;
+        }
+    }
+
+    /**
+     * Files a value under a key
+     *
+     * @param key   Key to file it under
+     * @param value Value to file
+     */
+    public void add(String key, V value) {
+        Node<V> node = ROOT;
+        int i = 0;
+        while (i < key.length()) {
+            int at = node.indexOf(key.charAt(i));
+            if (at < 0) {
+                Node<V> leaf = new Node<>(key.substring(i));
+                node.insertChild(-at - 1, leaf);
+                node = leaf;
+                break;
+            }
+            Node<V> child = node.children[at];
+            int common = commonLength(child.label, key, i);
+            if (common < child.label.length()) {
+                // Split the edge where the key leaves it
+                Node<V> middle = new Node<>(child.label.substring(0, common));
+                child.label = child.label.substring(common);
+                middle.insertChild(0, child);
+                node.children[at] = middle;
+                child = middle;
+            }
+            node = child;
+            i += common;
+        }
+        if (node.values == null) {
+            node.values = new ArrayList<>(1);
+            size++;
+        }
+        node.values.add(value);
+    }
+
+    /**
+     * Takes a value out from under a key
+     *
+     * @param key   Key it's filed under
+     * @param value Value to take out
+     * @return true if it was there
+     */
+    public boolean remove(String key, V value) {
+        List<Node<V>> path = new ArrayList<>();
+        List<Integer> indexes = new ArrayList<>();
+        Node<V> node = ROOT;
+        int i = 0;
+        while (i < key.length()) {
+            int at = node.indexOf(key.charAt(i));
+            if (at < 0 || !key.startsWith(node.children[at].label, i)) {
+                return false;
+            }
+            path.add(node);
+            indexes.add(at);
+            i += node.children[at].label.length();
+            node = node.children[at];
+        }
+        if (node.values == null || !node.values.remove(value)) {
+            return false;
+        }
+        if (!node.values.isEmpty()) {
+            return true;
+        }
+        node.values = null;
+        size--;
+        if (node == ROOT) {
+            return true;
+        }
+        Node<V> parent = path.get(path.size() - 1);
+        if (node.childCount == 0) {
+            parent.removeChild(indexes.get(indexes.size() - 1));
+            if (parent != ROOT && parent.values == null && parent.childCount == 1) {
+                parent.mergeWithOnlyChild();
+            }
+        } else if (node.childCount == 1) {
+            node.mergeWithOnlyChild();
+        }
+        return true;
+    }
+
+    /**
+     * Gets the values filed under exactly a key
+     *
+     * @param key Key to look up
+     * @return the values, in the order they were filed, or an empty list
+     */
+    public List<V> get(String key) {
+        Node<V> node = ROOT;
+        int i = 0;
+        while (i < key.length()) {
+            int at = node.indexOf(key.charAt(i));
+            if (at < 0 || !key.startsWith(node.children[at].label, i)) {
+                return List.of();
+            }
+            node = node.children[at];
+            i += node.label.length();
+        }
+        return node.values == null ? List.of() : List.copyOf(node.values);
+    }
+
+    /**
+     * Collects the values filed under every key starting with a prefix, in key
+     * order, stopping once it has enough
+     *
+     * @param prefix Prefix the keys start with
+     * @param max    Most values to collect
+     * @param out    List to add them to
+     */
+    public void collect(String prefix, int max, List<V> out) {
+        Node<V> node = ROOT;
+        int i = 0;
+        while (i < prefix.length()) {
+            int at = node.indexOf(prefix.charAt(i));
+            if (at < 0) {
+                return;
+            }
+            node = node.children[at];
+            int common = commonLength(node.label, prefix, i);
+            if (i + common < prefix.length() && common < node.label.length()) {
+                return;
+            }
+            i += common;
+        }
+        collectAll(node, out.size() + max, out);
+    }
+
+    private void collectAll(Node<V> node, int until, List<V> out) {
+        if (node.values != null) {
+            for (int v = 0; v < node.values.size() && out.size() < until; v++) {
+                out.add(node.values.get(v));
+            }
+        }
+        for (int c = 0; c < node.childCount && out.size() < until; c++) {
+            collectAll(node.children[c], until, out);
+        }
+    }
+
+    /**
+     * Gets the number of keys with values filed under them
+     *
+     * @return the number of keys
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * Length of the run of characters a label shares with a key from a point on
+     */
+    private static int commonLength(String label, String key, int from) {
+        int most = Math.min(label.length(), key.length() - from);
+        int common = 0;
+        while (common < most && label.charAt(common) == key.charAt(from + common)) {
+            common++;
+        }
+        return common;
+    }
+}
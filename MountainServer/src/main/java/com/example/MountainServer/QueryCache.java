@@ -0,0 +1,383 @@
+/**
+ * Bounded cache of query results, so the same few queries asked over and over
+ * don't each search the store again
+ * <p>
+ * Results are only good for the store's data version they were looked up at,
+ * and every change to the store moves the version on, so the first lookup at a
+ * new version empties the cache. Results looked up at an older version than the
+ * cache has already seen are never kept.
+ * <p>
+ * The cache holds at most a given number of results and a given estimated
+ * number of bytes, and evicts in the manner of W-TinyLFU. New results go into a
+ * small LRU window. A result leaving the window only gets into the main cache by
+ * having been asked for more often recently, going by a FrequencySketch, than
+ * the result it would push out. The main cache is a segmented LRU, where results
+ * asked for again are protected from the ones only asked for once. A burst of
+ * one-off queries therefore can't flush out the ones asked for all the time.
+ *
+ * @Author Ewan Lewis
+ */
+
+package com.example.MountainServer;
+
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.MeterBinder;
+
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantLock;
+
+public class QueryCache implements MeterBinder {
+
+    /**
+     * Estimated bytes a cached mountain costs, counted as if it were held only by
+     * the cache - a list slot, the object and its name
+     */
+    private static final long MOUNTAIN_BYTES = 120;
+
+    /**
+     * Estimated bytes each cached result costs on top of its mountains
+     */
+    private static final long ENTRY_BYTES = 200;
+
+    /**
+     * Name the cache's metrics are tagged with
+     */
+    private static final String CACHE_NAME = "mountainQueries";
+
+    private final int MAX_ENTRIES;
+
+    private final long MAX_BYTES;
+
+    private final int WINDOW_CAPACITY;
+
+    private final int PROTECTED_CAPACITY;
+
+    /**
+     * Newest results, in least to most recently used order
+     */
+    private final LinkedHashMap<MountainQuery, Entry> WINDOW = new LinkedHashMap<>(16, 0.75f, true);
+
+    /**
+     * Results admitted to the main cache but not asked for since
+     */
+    private final LinkedHashMap<MountainQuery, Entry> PROBATION = new LinkedHashMap<>(16, 0.75f, true);
+
+    /**
+     * Results asked for again after being admitted to the main cache
+     */
+    private final LinkedHashMap<MountainQuery, Entry> PROTECTED = new LinkedHashMap<>(16, 0.75f, true);
+
+    private final FrequencySketch SKETCH;
+
+    private final Lock lock = new ReentrantLock();
+
+    /**
+     * Data version every cached result was looked up at
+     */
+    private long version;
+
+    private long bytes;
+
+    private long hits;
+
+    private long misses;
+
+    private long evictions;
+
+    private long invalidations;
+
+    /**
+     * A cached result
+     *
+     * @param mountains Result of the query
+     * @param bytes     Estimated bytes it costs
+     */
+    private record Entry(List<Mountain> mountains, long bytes) {}
+
+    /**
+     * Constructor
+     *
+     * @param maxEntries Most results to hold, or 0 for a cache that holds nothing
+     * @param maxBytes   Most estimated bytes to hold
+     */
+    public QueryCache(int maxEntries, long maxBytes) {
+        MAX_ENTRIES = maxEntries;
+        MAX_BYTES = maxBytes;
+        WINDOW_CAPACITY = Math.max(1, maxEntries / 100);
+        PROTECTED_CAPACITY = (maxEntries - WINDOW_CAPACITY) * 4 / 5;
+        SKETCH = new FrequencySketch(maxEntries);
+    }
+
+    /**
+     * Looks up the result of a query
+     *
+     * @param query   Query asked
+     * @param version Store's data version, read before this lookup
+     * @return the result, which can't be changed, or null if it isn't cached
+     */
+    public List<Mountain> get(MountainQuery query, long version) {
+        if (MAX_ENTRIES == 0) {
+            return null;
+        }
+        lock.lock();
+        try {
+            catchUp(version);
+            SKETCH.increment(spread(query.hashCode()));
+            Entry entry = this.version == version ? find(query) : null;
+            if (entry == null) {
+                misses++;
+                return null;
+            }
+            hits++;
+            return entry.mountains();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Caches the result of a query, if there's room for it that's worth making
+     *
+     * @param query     Query asked, which mustn't be changed afterwards
+     * @param version   Store's data version, read before the query was looked up
+     * @param mountains Result of the query
+     * @return the result, which can't be changed
+     */
+    public List<Mountain> put(MountainQuery query, long version, List<Mountain> mountains) {
+        List<Mountain> result = Collections.unmodifiableList(mountains);
+        Entry entry = new Entry(result, ENTRY_BYTES + MOUNTAIN_BYTES * mountains.size());
+        if (MAX_ENTRIES == 0 || entry.bytes() > MAX_BYTES / 4) {
+            return result;
+        }
+        lock.lock();
+        try {
+            catchUp(version);
+            if (this.version != version) {
+                return result;
+            }
+            remove(query);
+            WINDOW.put(query, entry);
+            bytes += entry.bytes();
+            while (WINDOW.size() > WINDOW_CAPACITY) {
+                Map.Entry<MountainQuery, Entry> candidate = removeEldest(WINDOW);
+                admit(candidate.getKey(), candidate.getValue());
+            }
+            while (bytes > MAX_BYTES) {
+                evict(!PROBATION.isEmpty() ? PROBATION : !PROTECTED.isEmpty() ? PROTECTED : WINDOW);
+            }
+            return result;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Empties the cache if the store has moved on to a newer version
+     */
+    private void catchUp(long version) {
+        if (version > this.version) {
+            int size = size();
+            if (size > 0) {
+                invalidations += size;
+                WINDOW.clear();
+                PROBATION.clear();
+                PROTECTED.clear();
+                bytes = 0;
+            }
+            this.version = version;
+        }
+    }
+
+    private Entry find(MountainQuery query) {
+        Entry entry = WINDOW.get(query);
+        if (entry == null) {
+            entry = PROTECTED.get(query);
+        }
+        if (entry == null) {
+            entry = PROBATION.remove(query);
+            if (entry != null) {
+                // Asked for again, so it's protected, and the protected result
+                // used least recently goes back on probation to make room
+                PROTECTED.put(query, entry);
+                if (PROTECTED.size() > PROTECTED_CAPACITY) {
+                    Map.Entry<MountainQuery, Entry> demoted = removeEldest(PROTECTED);
+                    PROBATION.put(demoted.getKey(), demoted.getValue());
+                }
+            }
+        }
+        return entry;
+    }
+
+    /**
+     * Moves a result leaving the window into the main cache, if it's been asked
+     * for more often than the result it would replace
+     */
+    private void admit(MountainQuery query, Entry entry) {
+        int mainCapacity = MAX_ENTRIES - WINDOW_CAPACITY;
+        if (PROBATION.size() + PROTECTED.size() < mainCapacity) {
+            PROBATION.put(query, entry);
+            return;
+        }
+        LinkedHashMap<MountainQuery, Entry> victims = PROBATION.isEmpty() ? PROTECTED : PROBATION;
+        if (mainCapacity > 0 && SKETCH.frequency(spread(query.hashCode()))
+                > SKETCH.frequency(spread(victims.keySet().iterator().next().hashCode()))) {
+            evict(victims);
+            PROBATION.put(query, entry);
+        } else {
+            bytes -= entry.bytes();
+            evictions++;
+        }
+    }
+
+    private void evict(LinkedHashMap<MountainQuery, Entry> segment) {
+        bytes -= removeEldest(segment).getValue().bytes();
+        evictions++;
+    }
+
+    private void remove(MountainQuery query) {
+        Entry entry = WINDOW.remove(query);
+        if (entry == null) {
+            entry = PROBATION.remove(query);
+        }
+        if (entry == null) {
+            entry = PROTECTED.remove(query);
+        }
+        if (entry != null) {
+            bytes -= entry.bytes();
+        }
+    }
+
+    private static Map.Entry<MountainQuery, Entry> removeEldest(LinkedHashMap<MountainQuery, Entry> segment) {
+        var iterator = segment.entrySet().iterator();
+        Map.Entry<MountainQuery, Entry> eldest = iterator.next();
+        iterator.remove();
+        return eldest;
+    }
+
+    private static int spread(int hash) {
+        hash *= 0x9E3779B9;
+        return hash ^ (hash >>> 15);
+    }
+
+    /**
+     * Gets the number of results held
+     *
+     * @return the number of results
+     */
+    public int size() {
+        lock.lock();
+        try {
+            return WINDOW.size() + PROBATION.size() + PROTECTED.size();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Gets the estimated bytes the results held cost
+     *
+     * @return the estimate
+     */
+    public long bytes() {
+        lock.lock();
+        try {
+            return bytes;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Gets the number of lookups that found a result
+     *
+     * @return the number of hits
+     */
+    public long hits() {
+        lock.lock();
+        try {
+            return hits;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Gets the number of lookups that didn't find a result
+     *
+     * @return the number of misses
+     */
+    public long misses() {
+        lock.lock();
+        try {
+            return misses;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Gets the number of results dropped, or never let in, to stay within bounds
+     *
+     * @return the number of evictions
+     */
+    public long evictions() {
+        lock.lock();
+        try {
+            return evictions;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Gets the number of results dropped because the store changed
+     *
+     * @return the number of invalidations
+     */
+    public long invalidations() {
+        lock.lock();
+        try {
+            return invalidations;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Gets the share of lookups that found a result
+     *
+     * @return the hit ratio, from 0 to 1
+     */
+    public double hitRatio() {
+        lock.lock();
+        try {
+            return hits + misses == 0 ? 0 : (double) hits / (hits + misses);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public void bindTo(MeterRegistry registry) {
+        FunctionCounter.builder("cache.gets", this, QueryCache::hits).tag("cache", CACHE_NAME)
+                .tag("result", "hit").description("Query results served from the cache").register(registry);
+        FunctionCounter.builder("cache.gets", this, QueryCache::misses).tag("cache", CACHE_NAME)
+                .tag("result", "miss").description("Queries that had to search the store").register(registry);
+        FunctionCounter.builder("cache.evictions", this, QueryCache::evictions).tag("cache", CACHE_NAME)
+                .description("Results dropped to keep the cache within bounds").register(registry);
+        FunctionCounter.builder("cache.invalidations", this, QueryCache::invalidations).tag("cache", CACHE_NAME)
+                .description("Results dropped because the store changed").register(registry);
+        Gauge.builder("cache.hit.ratio", this, QueryCache::hitRatio).tag("cache", CACHE_NAME)
+                .description("Share of lookups served from the cache").register(registry);
+        Gauge.builder("cache.size", this, QueryCache::size).tag("cache", CACHE_NAME)
+                .description("Results held").register(registry);
+        Gauge.builder("cache.bytes", this, QueryCache::bytes).tag("cache", CACHE_NAME).baseUnit("bytes")
+                .description("Estimated bytes the results held cost").register(registry);
+    }
+}
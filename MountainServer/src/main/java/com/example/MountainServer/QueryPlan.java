@@ -0,0 +1,115 @@
+/**
+ * How a store answers a query, as shown by GET /mountains?explain - the index
+ * it walks, how many mountains it expects to find there, and the filters left
+ * to check on each of them
+ * <p>
+ * QueryPlanner makes a plan by asking the store how many mountains each index
+ * the query could use would give it, and picking whichever gives the fewest.
+ * A sorted query may instead walk an index already in its order.
+ *
+ * @Author Ewan Lewis
+ */
+
+package com.example.MountainServer;
+
+import java.util.List;
+import java.util.Map;
+
+/**
+ * @param access        Index the store walks
+ * @param estimatedRows Mountains it expects to find in the index, before the
+ *                      residual filters are checked
+ * @param residual      Filters checked on each mountain found, by URL parameter
+ * @param considered    Every index the query could have used, with the number of
+ *                      mountains each would have given
+ * @param parts         Plans of the parts of the store the query is sent to, for
+ *                      stores split into parts, otherwise empty
+ * @param ordering      How the mountains found are put in the query's order
+ */
+public record QueryPlan(Access access, long estimatedRows, List<String> residual, Map<Access, Long> considered,
+                        List<QueryPlan> parts, Ordering ordering) {
+
+    /**
+     * Ways the mountains found are put in the order a query asks for
+     */
+    public enum Ordering {
+        /**
+         * Already in ID order, which every index gives its mountains in
+         */
+        ID,
+        /**
+         * Walked in order along an altitude index, stopping at the limit
+         */
+        INDEX,
+        /**
+         * Every mountain found offered to a TopK the size of the limit
+         */
+        TOP_K,
+        /**
+         * Each part's results, already in order, merged up to the limit
+         */
+        MERGE
+    }
+
+    /**
+     * Ways into a store's mountains, each answering some of a query's filters
+     */
+    public enum Access {
+        /**
+         * Primary key, answering id
+         */
+        ID("id"),
+        /**
+         * Identity index, answering name, range and country together
+         */
+        IDENTITY("name", "range", "country"),
+        /**
+         * Country and range index, answering both
+         */
+        COUNTRY_RANGE("range", "country"),
+        /**
+         * Country index
+         */
+        COUNTRY("country"),
+        /**
+         * Range index, across every country
+         */
+        RANGE("range"),
+        /**
+         * Altitude index of one country, answering country and altitude
+         */
+        COUNTRY_ALTITUDE("country", "altitude"),
+        /**
+         * Altitude index, across every country
+         */
+        ALTITUDE("altitude"),
+        /**
+         * Mountains of one hemisphere
+         */
+        HEMISPHERE("north"),
+        /**
+         * Every mountain, answering nothing
+         */
+        FULL_SCAN,
+        /**
+         * Every part of a store split into parts that the query can touch, with
+         * their results merged in ID order
+         */
+        PARTS;
+
+        private final List<String> FILTERS;
+
+        Access(String... filters) {
+            FILTERS = List.of(filters);
+        }
+
+        /**
+         * Gets the filters this way in answers, by URL parameter
+         *
+         * @return the filters
+         */
+        public List<String> filters() {
+            return FILTERS;
+        }
+    }
+}
@@ -0,0 +1,139 @@
+/**
+ * Picks how a store answers a query from its own statistics
+ * <p>
+ * Every index whose filters the query sets is a candidate, and the store says
+ * how many mountains each would give - exactly, for the indexes here, since
+ * they're all sets or sorted runs whose sizes are known. The planner walks the
+ * candidate giving the fewest and checks the query's other filters on each
+ * mountain found, so adding a filter never makes a query slower than the
+ * best index on its own. A full scan is always a candidate, at the size of the
+ * store.
+ *
+ * @Author Ewan Lewis
+ */
+
+package com.example.MountainServer;
+
+import java.util.ArrayList;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.ToLongFunction;
+
+public final class QueryPlanner {
+
+    /**
+     * Estimate a store gives for an index it doesn't have
+     */
+    public static final long NO_INDEX = -1;
+
+    private QueryPlanner() {
+
+    }
+
+    /**
+     * Plans a query
+     *
+     * @param query     Query to plan
+     * @param totalRows Mountains in the store, the cost of a full scan
+     * @param estimate  Number of mountains an index would give for the query, or
+     *                  NO_INDEX if the store doesn't have it
+     * @return the plan
+     */
+    public static QueryPlan plan(MountainQuery query, long totalRows, ToLongFunction<QueryPlan.Access> estimate) {
+        List<String> filters = filters(query);
+        Map<QueryPlan.Access, Long> considered = new EnumMap<>(QueryPlan.Access.class);
+        QueryPlan.Access best = QueryPlan.Access.FULL_SCAN;
+        long bestRows = totalRows;
+        for (QueryPlan.Access access : QueryPlan.Access.values()) {
+            if (access.filters().isEmpty() || !filters.containsAll(access.filters())) {
+                continue;
+            }
+            long rows = estimate.applyAsLong(access);
+            if (rows == NO_INDEX) {
+                continue;
+            }
+            considered.put(access, rows);
+            // Ties go to the index listed first, which answers more filters
+            if (rows < bestRows) {
+                best = access;
+                bestRows = rows;
+            }
+        }
+        considered.put(QueryPlan.Access.FULL_SCAN, totalRows);
+        List<String> residual = new ArrayList<>(filters);
+        residual.removeAll(best.filters());
+        QueryPlan.Ordering ordering = query.getSort() == MountainQuery.Sort.ID
+                ? QueryPlan.Ordering.ID : QueryPlan.Ordering.TOP_K;
+        return new QueryPlan(best, bestRows, residual, considered, List.of(), ordering);
+    }
+
+    /**
+     * Weighs walking an index kept in a sorted query's order, stopping once the
+     * limit is found, against a plan keeping everything its index gives in a TopK
+     *
+     * @param plan        Plan for the query's filters, ordered by a TopK
+     * @param query       Query being planned
+     * @param ordered     Index in the query's order that the store could walk
+     * @param orderedRows Mountains in that index within the query's bounds
+     * @return whichever plan is expected to look at fewer mountains
+     */
+    public static QueryPlan inOrder(QueryPlan plan, MountainQuery query, QueryPlan.Access ordered, long orderedRows) {
+        // With the matches spread evenly through the index, a walk finds the
+        // limit after (limit / matches) of it
+        long matches = plan.estimatedRows();
+        long walked = matches == 0 ? orderedRows
+                : (long) Math.min(orderedRows, Math.ceil((double) query.getLimit() * orderedRows / matches));
+        if (walked >= matches) {
+            return plan;
+        }
+        List<String> residual = new ArrayList<>(filters(query));
+        residual.removeAll(ordered.filters());
+        return new QueryPlan(ordered, walked, residual, plan.considered(), List.of(), QueryPlan.Ordering.INDEX);
+    }
+
+    /**
+     * Combines the plans of the parts of a store split into parts
+     *
+     * @param parts Plans of each part the query is sent to
+     * @return the plan
+     */
+    public static QueryPlan combine(List<QueryPlan> parts) {
+        long rows = 0;
+        QueryPlan.Ordering ordering = QueryPlan.Ordering.ID;
+        for (QueryPlan part : parts) {
+            rows += part.estimatedRows();
+            if (part.ordering() != QueryPlan.Ordering.ID) {
+                ordering = QueryPlan.Ordering.MERGE;
+            }
+        }
+        return new QueryPlan(QueryPlan.Access.PARTS, rows, List.of(), Map.of(), parts, ordering);
+    }
+
+    /**
+     * Gets the filters a query sets, by URL parameter, with both altitude bounds
+     * counted as one altitude filter
+     */
+    private static List<String> filters(MountainQuery query) {
+        List<String> filters = new ArrayList<>();
+        if (query.getId() != null) {
+            filters.add("id");
+        }
+        if (query.getName() != null) {
+            filters.add("name");
+        }
+        if (query.getRange() != null) {
+            filters.add("range");
+        }
+        if (query.getCountry() != null) {
+            filters.add("country");
+        }
+        if (query.hasAltitudeFilter()) {
+            filters.add("altitude");
+        }
+        if (query.getNorthern() != null) {
+            filters.add("north");
+        }
+        return filters;
+    }
+}
@@ -0,0 +1,479 @@
+/**
+ * Compressed bitmap of row numbers, used as the posting list of a secondary index
+ * <p>
+ * Rows are split on their top 16 bits into containers of up to 65536 rows each.
+ * A container holds a sorted array of the low 16 bits while it's sparse, and turns
+ * into a plain 65536-bit bitmap once it holds more than 4096 rows, so a set never
+ * takes much more than 2 bytes per row or 1 bit per possible row. Sets can be
+ * ANDed and ORed container by container, which is what lets several index
+ * lookups be combined before any mountains are touched.
+ *
+ * @Author Ewan Lewis
+ */
+
+package com.example.MountainServer;
+
+import java.util.Arrays;
+import java.util.function.IntConsumer;
+import java.util.function.IntPredicate;
+
+public class RowSet {
+
+    /**
+     * Most rows an array container holds before it becomes a bitmap
+     */
+    private static final int ARRAY_MAX = 4096;
+
+    private static final int BITMAP_WORDS = 1024;
+
+    /**
+     * Top 16 bits of the rows in each container, ascending
+     */
+    private char[] keys;
+
+    /**
+     * Either a char[] (array container) or a long[] (bitmap container)
+     */
+    private Object[] containers;
+
+    /**
+     * Number of rows in each container
+     */
+    private int[] cardinalities;
+
+    private int containerCount;
+
+    private int size;
+
+    /**
+     * Constructor
+     */
+    public RowSet() {
+        this(4);
+    }
+
+    private RowSet(int capacity) {
+        keys = new char[capacity];
+        containers = new Object[capacity];
+        cardinalities = new int[capacity];
+    }
+
+    /**
+     * Builds a set from rows already in ascending order
+     *
+     * @param sortedRows Rows in ascending order, without repeats
+     * @return the set
+     */
+    public static RowSet of(int[] sortedRows) {
+        RowSet set = new RowSet();
+        for (int row : sortedRows) {
+            set.add(row);
+        }
+        return set;
+    }
+
+    /**
+     * Adds a row
+     *
+     * @param row Row to add, must not be negative
+     * @return true if the row wasn't already in the set
+     */
+    public boolean add(int row) {
+        char key = (char) (row >>> 16);
+        char low = (char) row;
+        int c = findContainer(key);
+        if (c < 0) {
+            c = -c - 1;
+            insertContainer(c, key, new char[4], 0);
+        }
+        boolean added;
+        if (containers[c] instanceof long[] bitmap) {
+            long bit = 1L << low;
+            added = (bitmap[low >>> 6] & bit) == 0;
+            bitmap[low >>> 6] |= bit;
+        } else {
+            char[] array = (char[]) containers[c];
+            int card = cardinalities[c];
+            int at = card > 0 && array[card - 1] < low ? -card - 1 : Arrays.binarySearch(array, 0, card, low);
+            added = at < 0;
+            if (added) {
+                at = -at - 1;
+                if (card == ARRAY_MAX) {
+                    containers[c] = toBitmap(array, card);
+                    ((long[]) containers[c])[low >>> 6] |= 1L << low;
+                } else {
+                    if (card == array.length) {
+                        array = Arrays.copyOf(array, Math.min(ARRAY_MAX, card << 1));
+                        containers[c] = array;
+                    }
+                    System.arraycopy(array, at, array, at + 1, card - at);
+                    array[at] = low;
+                }
+            }
+        }
+        if (added) {
+            cardinalities[c]++;
+            size++;
+        }
+        return added;
+    }
+
+    /**
+     * Removes a row
+     *
+     * @param row Row to remove
+     * @return true if the row was in the set
+     */
+    public boolean remove(int row) {
+        int c = findContainer((char) (row >>> 16));
+        if (c < 0) {
+            return false;
+        }
+        char low = (char) row;
+        if (containers[c] instanceof long[] bitmap) {
+            long bit = 1L << low;
+            if ((bitmap[low >>> 6] & bit) == 0) {
+                return false;
+            }
+            bitmap[low >>> 6] &= ~bit;
+            if (--cardinalities[c] == ARRAY_MAX) {
+                containers[c] = toArray(bitmap, ARRAY_MAX);
+            }
+        } else {
+            char[] array = (char[]) containers[c];
+            int at = Arrays.binarySearch(array, 0, cardinalities[c], low);
+            if (at < 0) {
+                return false;
+            }
+            System.arraycopy(array, at + 1, array, at, cardinalities[c] - at - 1);
+            cardinalities[c]--;
+        }
+        size--;
+        if (cardinalities[c] == 0) {
+            removeContainer(c);
+        }
+        return true;
+    }
+
+    /**
+     * Checks if a row is in the set
+     *
+     * @param row Row to look for
+     * @return if present or not
+     */
+    public boolean contains(int row) {
+        int c = findContainer((char) (row >>> 16));
+        if (c < 0) {
+            return false;
+        }
+        char low = (char) row;
+        if (containers[c] instanceof long[] bitmap) {
+            return (bitmap[low >>> 6] & (1L << low)) != 0;
+        }
+        return Arrays.binarySearch((char[]) containers[c], 0, cardinalities[c], low) >= 0;
+    }
+
+    /**
+     * Gets the number of rows in the set
+     *
+     * @return number of rows
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * Checks if the set has no rows
+     *
+     * @return if empty or not
+     */
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    /**
+     * Removes every row
+     */
+    public void clear() {
+        Arrays.fill(containers, null);
+        containerCount = 0;
+        size = 0;
+    }
+
+    /**
+     * Runs an action on every row, in ascending order
+     *
+     * @param action Action to run
+     */
+    public void forEach(IntConsumer action) {
+        for (int c = 0; c < containerCount; c++) {
+            int high = keys[c] << 16;
+            if (containers[c] instanceof long[] bitmap) {
+                for (int w = 0; w < BITMAP_WORDS; w++) {
+                    long word = bitmap[w];
+                    while (word != 0) {
+                        action.accept(high | (w << 6) | Long.numberOfTrailingZeros(word));
+                        word &= word - 1;
+                    }
+                }
+            } else {
+                char[] array = (char[]) containers[c];
+                for (int i = 0; i < cardinalities[c]; i++) {
+                    action.accept(high | array[i]);
+                }
+            }
+        }
+    }
+
+    /**
+     * Runs an action on every row from a given row up, in ascending order, until
+     * the action asks to stop
+     *
+     * @param from   Lowest row to visit
+     * @param action Action to run, returning false to stop
+     * @return false if the action stopped the walk
+     */
+    public boolean forEachFrom(int from, IntPredicate action) {
+        int c = findContainer((char) (from >>> 16));
+        if (c < 0) {
+            c = -c - 1;
+            from = 0; // Every row in the next container is above from
+        }
+        for (; c < containerCount; c++) {
+            int high = keys[c] << 16;
+            char low = (char) from;
+            if (containers[c] instanceof long[] bitmap) {
+                for (int w = low >>> 6; w < BITMAP_WORDS; w++) {
+                    long word = w == low >>> 6 ? bitmap[w] & (-1L << low) : bitmap[w];
+                    while (word != 0) {
+                        if (!action.test(high | (w << 6) | Long.numberOfTrailingZeros(word))) {
+                            return false;
+                        }
+                        word &= word - 1;
+                    }
+                }
+            } else {
+                char[] array = (char[]) containers[c];
+                int start = Arrays.binarySearch(array, 0, cardinalities[c], low);
+                for (int i = start < 0 ? -start - 1 : start; i < cardinalities[c]; i++) {
+                    if (!action.test(high | array[i])) {
+                        return false;
+                    }
+                }
+            }
+            from = 0;
+        }
+        return true;
+    }
+
+    /**
+     * Copies the rows into an array
+     *
+     * @return the rows, in ascending order
+     */
+    public int[] toArray() {
+        int[] rows = new int[size];
+        int[] at = {0};
+        forEach(row -> rows[at[0]++] = row);
+        return rows;
+    }
+
+    /**
+     * Intersects two sets, leaving both unchanged
+     *
+     * @param a First set
+     * @param b Second set
+     * @return new set of the rows in both
+     */
+    public static RowSet and(RowSet a, RowSet b) {
+        RowSet result = new RowSet(Math.max(1, Math.min(a.containerCount, b.containerCount)));
+        int i = 0;
+        int j = 0;
+        while (i < a.containerCount && j < b.containerCount) {
+            if (a.keys[i] < b.keys[j]) {
+                i++;
+            } else if (a.keys[i] > b.keys[j]) {
+                j++;
+            } else {
+                result.appendAnd(a.keys[i], a.containers[i], a.cardinalities[i], b.containers[j], b.cardinalities[j]);
+                i++;
+                j++;
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Unions two sets, leaving both unchanged
+     *
+     * @param a First set
+     * @param b Second set
+     * @return new set of the rows in either
+     */
+    public static RowSet or(RowSet a, RowSet b) {
+        RowSet result = new RowSet(Math.max(1, a.containerCount + b.containerCount));
+        int i = 0;
+        int j = 0;
+        while (i < a.containerCount || j < b.containerCount) {
+            if (j == b.containerCount || (i < a.containerCount && a.keys[i] < b.keys[j])) {
+                result.appendCopy(a.keys[i], a.containers[i], a.cardinalities[i]);
+                i++;
+            } else if (i == a.containerCount || a.keys[i] > b.keys[j]) {
+                result.appendCopy(b.keys[j], b.containers[j], b.cardinalities[j]);
+                j++;
+            } else {
+                result.appendOr(a.keys[i], a.containers[i], a.cardinalities[i], b.containers[j], b.cardinalities[j]);
+                i++;
+                j++;
+            }
+        }
+        return result;
+    }
+
+    private void appendAnd(char key, Object x, int xCard, Object y, int yCard) {
+        if (x instanceof long[] xBits && y instanceof long[] yBits) {
+            long[] bits = new long[BITMAP_WORDS];
+            int card = 0;
+            for (int w = 0; w < BITMAP_WORDS; w++) {
+                bits[w] = xBits[w] & yBits[w];
+                card += Long.bitCount(bits[w]);
+            }
+            appendContainer(key, card > ARRAY_MAX ? bits : toArray(bits, card), card);
+        } else if (x instanceof long[] || y instanceof long[]) {
+            char[] array = (char[]) (x instanceof long[] ? y : x);
+            int arrayCard = x instanceof long[] ? yCard : xCard;
+            long[] bits = (long[]) (x instanceof long[] ? x : y);
+            char[] out = new char[arrayCard];
+            int card = 0;
+            for (int k = 0; k < arrayCard; k++) {
+                char low = array[k];
+                if ((bits[low >>> 6] & (1L << low)) != 0) {
+                    out[card++] = low;
+                }
+            }
+            appendContainer(key, out, card);
+        } else {
+            char[] xs = (char[]) x;
+            char[] ys = (char[]) y;
+            char[] out = new char[Math.min(xCard, yCard)];
+            int card = 0;
+            int i = 0;
+            int j = 0;
+            while (i < xCard && j < yCard) {
+                if (xs[i] < ys[j]) {
+                    i++;
+                } else if (xs[i] > ys[j]) {
+                    j++;
+                } else {
+                    out[card++] = xs[i];
+                    i++;
+                    j++;
+                }
+            }
+            appendContainer(key, out, card);
+        }
+    }
+
+    private void appendOr(char key, Object x, int xCard, Object y, int yCard) {
+        if (x instanceof long[] || y instanceof long[] || xCard + yCard > ARRAY_MAX) {
+            long[] bits = x instanceof long[] xBits ? xBits.clone() : toBitmap((char[]) x, xCard);
+            if (y instanceof long[] yBits) {
+                for (int w = 0; w < BITMAP_WORDS; w++) {
+                    bits[w] |= yBits[w];
+                }
+            } else {
+                char[] ys = (char[]) y;
+                for (int k = 0; k < yCard; k++) {
+                    bits[ys[k] >>> 6] |= 1L << ys[k];
+                }
+            }
+            int card = 0;
+            for (long word : bits) {
+                card += Long.bitCount(word);
+            }
+            appendContainer(key, card > ARRAY_MAX ? bits : toArray(bits, card), card);
+        } else {
+            char[] xs = (char[]) x;
+            char[] ys = (char[]) y;
+            char[] out = new char[xCard + yCard];
+            int card = 0;
+            int i = 0;
+            int j = 0;
+            while (i < xCard || j < yCard) {
+                if (j == yCard || (i < xCard && xs[i] < ys[j])) {
+                    out[card++] = xs[i++];
+                } else if (i == xCard || xs[i] > ys[j]) {
+                    out[card++] = ys[j++];
+                } else {
+                    out[card++] = xs[i++];
+                    j++;
+                }
+            }
+            appendContainer(key, out, card);
+        }
+    }
+
+    private void appendCopy(char key, Object container, int card) {
+        Object copy = container instanceof long[] bits ? bits.clone() : Arrays.copyOf((char[]) container, card);
+        appendContainer(key, copy, card);
+    }
+
+    private void appendContainer(char key, Object container, int card) {
+        if (card > 0) {
+            insertContainer(containerCount, key, container, card);
+            size += card;
+        }
+    }
+
+    private int findContainer(char key) {
+        if (containerCount > 0 && keys[containerCount - 1] == key) {
+            return containerCount - 1;
+        }
+        return Arrays.binarySearch(keys, 0, containerCount, key);
+    }
+
+    private void insertContainer(int c, char key, Object container, int card) {
+        if (containerCount == keys.length) {
+            int capacity = containerCount << 1;
+            keys = Arrays.copyOf(keys, capacity);
+            containers = Arrays.copyOf(containers, capacity);
+            cardinalities = Arrays.copyOf(cardinalities, capacity);
+        }
+        System.arraycopy(keys, c, keys, c + 1, containerCount - c);
+        System.arraycopy(containers, c, containers, c + 1, containerCount - c);
+        System.arraycopy(cardinalities, c, cardinalities, c + 1, containerCount - c);
+        keys[c] = key;
+        containers[c] = container;
+        cardinalities[c] = card;
+        containerCount++;
+    }
+
+    private void removeContainer(int c) {
+        System.arraycopy(keys, c + 1, keys, c, containerCount - c - 1);
+        System.arraycopy(containers, c + 1, containers, c, containerCount - c - 1);
+        System.arraycopy(cardinalities, c + 1, cardinalities, c, containerCount - c - 1);
+        containerCount--;
+        containers[containerCount] = null;
+    }
+
+    private static long[] toBitmap(char[] array, int card) {
+        long[] bits = new long[BITMAP_WORDS];
+        for (int k = 0; k < card; k++) {
+            bits[array[k] >>> 6] |= 1L << array[k];
+        }
+        return bits;
+    }
+
+    private static char[] toArray(long[] bits, int card) {
+        char[] array = new char[card];
+        int k = 0;
+        for (int w = 0; w < BITMAP_WORDS; w++) {
+            long word = bits[w];
+            while (word != 0) {
+                array[k++] = (char) ((w << 6) | Long.numberOfTrailingZeros(word));
+                word &= word - 1;
+            }
+        }
+        return array;
+    }
+}
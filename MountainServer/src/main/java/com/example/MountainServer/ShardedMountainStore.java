@@ -0,0 +1,633 @@
+/**
+ * Store that splits the mountains by country over several IndexedMountainStores,
+ * each behind its own lock, so writes to unrelated countries don't queue up on
+ * one lock
+ * <p>
+ * Mountains that are duplicates of each other always share a country, so every
+ * duplicate check only needs the shard that country lives in. Queries with a
+ * country go to that one shard, anything else is run on every shard in parallel
+ * and the results merged back into ID order.
+ *
+ * @Author Ewan Lewis
+ */
+
+package com.example.MountainServer;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.List;
+import java.util.PriorityQueue;
+import java.util.Set;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.function.Function;
+
+public class ShardedMountainStore implements MountainStore, AutoCloseable {
+
+    private final IndexedMountainStore[] SHARDS;
+
+    /**
+     * Threads that run a query on every shard at once
+     */
+    private final ExecutorService FAN_OUT;
+
+    /**
+     * Where new mountains get their IDs from, shared by every shard
+     */
+    private final IdAllocator IDS;
+
+    /**
+     * Told about every change, while the locks of the shards it touches are held
+     */
+    private MountainStoreListener listener = MountainStoreListener.NONE;
+
+    /**
+     * Data version, counted up after every change
+     */
+    private final AtomicLong VERSION = new AtomicLong();
+
+    /**
+     * Shard each mountain is in by ID, so a change or lookup goes straight to it.
+     * An entry only changes while the write locks of its shard - and of the shard
+     * it moves to - are held, so locking a shard keeps its entries still
+     */
+    private final IntIntMap SHARD_OF = new IntIntMap();
+
+    /**
+     * Guards SHARD_OF, only ever held for one lookup or change of it
+     */
+    private final ReadWriteLock SHARD_OF_LOCK = new ReentrantReadWriteLock();
+
+    /**
+     * Constructor, with IDs that are only unique to this store
+     *
+     * @param shardCount Number of shards to split the mountains over
+     */
+    public ShardedMountainStore(int shardCount) {
+        this(shardCount, new IdAllocator());
+    }
+
+    /**
+     * Constructor
+     *
+     * @param shardCount Number of shards to split the mountains over
+     * @param ids        Where new mountains get their IDs from
+     */
+    public ShardedMountainStore(int shardCount, IdAllocator ids) {
+        this(shardCount, ids, false);
+    }
+
+    /**
+     * Constructor
+     *
+     * @param shardCount     Number of shards to split the mountains over
+     * @param ids            Where new mountains get their IDs from
+     * @param virtualThreads true to fan queries out on a virtual thread per shard
+     *                       query rather than a pool of one platform thread per
+     *                       shard, so a query waiting on a shard's lock never
+     *                       holds up queries of the other shards behind it
+     */
+    public ShardedMountainStore(int shardCount, IdAllocator ids, boolean virtualThreads) {
+        if (shardCount < 1) {
+            throw new IllegalArgumentException("Shard count must be at least 1: " + shardCount);
+        }
+        IDS = ids;
+        SHARDS = new IndexedMountainStore[shardCount];
+        for (int i = 0; i < shardCount; i++) {
+            SHARDS[i] = new IndexedMountainStore(ids);
+        }
+        FAN_OUT = virtualThreads
+                ? Executors.newThreadPerTaskExecutor(Thread.ofVirtual().name("mountain-shard-query").factory())
+                : Executors.newFixedThreadPool(shardCount, runnable -> {
+                    Thread thread = new Thread(runnable, "mountain-shard-query");
+                    thread.setDaemon(true);
+                    return thread;
+                });
+    }
+
+    /**
+     * Adds mountains, holding the locks of every shard they go to while checking
+     * for duplicates and adding, so the batch is still all or nothing
+     *
+     * @param newMountains Mountains to be added
+     * @return if successful or not
+     */
+    @Override
+    public boolean addAll(List<Mountain> newMountains) {
+        List<List<Mountain>> byShard = new ArrayList<>(SHARDS.length);
+        for (int i = 0; i < SHARDS.length; i++) {
+            byShard.add(new ArrayList<>());
+        }
+        Set<MountainKey> newKeys = new HashSet<>();
+        for (Mountain newMountain : newMountains) {
+            if (!newKeys.add(MountainKey.of(newMountain))) {
+                return false; // Found a duplicate within the batch
+            }
+            byShard.get(shardFor(newMountain.getCountry())).add(newMountain);
+        }
+
+        // Always lock in shard order, so two batches can't each hold a lock the other needs
+        List<Integer> locked = new ArrayList<>();
+        try {
+            for (int i = 0; i < SHARDS.length; i++) {
+                if (!byShard.get(i).isEmpty()) {
+                    SHARDS[i].writeLock().lock();
+                    locked.add(i);
+                }
+            }
+            for (int i : locked) {
+                for (Mountain newMountain : byShard.get(i)) {
+                    if (SHARDS[i].contains(MountainKey.of(newMountain))) {
+                        return false; // Found a duplicate
+                    }
+                }
+            }
+            // IDs follow the order of the batch, and only go up within each shard
+            int id = IDS.allocate(newMountains.size());
+            for (Mountain newMountain : newMountains) {
+                newMountain.setId(id++);
+            }
+            for (int i : locked) {
+                SHARDS[i].insertAll(byShard.get(i));
+                place(byShard.get(i), i);
+            }
+            try {
+                listener.added(newMountains);
+            } finally {
+                VERSION.incrementAndGet();
+            }
+            return true;
+        } finally {
+            for (int i : locked) {
+                SHARDS[i].writeLock().unlock();
+            }
+        }
+    }
+
+    /**
+     * Adds the mountains that aren't duplicates, holding the locks of every shard
+     * they go to, each taken once
+     *
+     * @param newMountains Mountains to be added
+     * @return for each mountain, whether it was added
+     */
+    @Override
+    public boolean[] addDistinct(List<Mountain> newMountains) {
+        boolean[] added = new boolean[newMountains.size()];
+        boolean[] touched = new boolean[SHARDS.length];
+        for (Mountain newMountain : newMountains) {
+            touched[shardFor(newMountain.getCountry())] = true;
+        }
+        List<Integer> locked = lockAll(touched);
+        try {
+            Set<MountainKey> newKeys = new HashSet<>();
+            List<Mountain> accepted = new ArrayList<>(added.length);
+            for (int i = 0; i < added.length; i++) {
+                Mountain newMountain = newMountains.get(i);
+                MountainKey key = MountainKey.of(newMountain);
+                added[i] = newKeys.add(key) && !SHARDS[shardFor(newMountain.getCountry())].contains(key);
+                if (added[i]) {
+                    accepted.add(newMountain);
+                }
+            }
+            if (!accepted.isEmpty()) {
+                // IDs follow the order of the batch, and only go up within each shard
+                List<List<Mountain>> byShard = new ArrayList<>(SHARDS.length);
+                for (int i = 0; i < SHARDS.length; i++) {
+                    byShard.add(new ArrayList<>());
+                }
+                int id = IDS.allocate(accepted.size());
+                for (Mountain newMountain : accepted) {
+                    newMountain.setId(id++);
+                    byShard.get(shardFor(newMountain.getCountry())).add(newMountain);
+                }
+                for (int i : locked) {
+                    SHARDS[i].insertAll(byShard.get(i));
+                    place(byShard.get(i), i);
+                }
+                try {
+                    listener.added(accepted);
+                } finally {
+                    VERSION.incrementAndGet();
+                }
+            }
+            return added;
+        } finally {
+            unlockAll(locked);
+        }
+    }
+
+    @Override
+    public List<Mountain> getAll() {
+        return fanOut(MountainStore::getAll, MountainQuery.Sort.ID.comparator(), Integer.MAX_VALUE);
+    }
+
+    @Override
+    public List<Mountain> find(MountainQuery query) {
+        if (query.getCountry() != null) {
+            return SHARDS[shardFor(query.getCountry())].find(query);
+        }
+        // Each shard gives its own first mountains in the query's order, so the
+        // first of those merged are the first overall
+        return fanOut(shard -> shard.find(query), query.getSort().comparator(), query.getLimit());
+    }
+
+    /**
+     * Shows the plan of the one shard a query with a country goes to, or of every
+     * shard for anything else
+     *
+     * @param query Filters to plan for
+     * @return the plan
+     */
+    @Override
+    public QueryPlan explain(MountainQuery query) {
+        if (query.getCountry() != null) {
+            return QueryPlanner.combine(List.of(SHARDS[shardFor(query.getCountry())].explain(query)));
+        }
+        List<QueryPlan> parts = new ArrayList<>(SHARDS.length);
+        for (IndexedMountainStore shard : SHARDS) {
+            parts.add(shard.explain(query));
+        }
+        return QueryPlanner.combine(parts);
+    }
+
+    /**
+     * Gets a mountain from the shard the ID is recorded in, checking the record
+     * again under that shard's lock in case the mountain moved shards in between
+     *
+     * @param id ID of mountain
+     * @return the mountain, or null if there isn't one with the ID
+     */
+    @Override
+    public Mountain get(int id) {
+        while (true) {
+            int shard = shardOf(id);
+            if (shard < 0) {
+                return null;
+            }
+            Lock read = SHARDS[shard].readLock();
+            read.lock();
+            try {
+                if (shardOf(id) == shard) {
+                    return SHARDS[shard].get(id);
+                }
+            } finally {
+                read.unlock();
+            }
+        }
+    }
+
+    /**
+     * Replaces a mountain, keeping its ID - if its country moves it to another
+     * shard it's put among that shard's rows in ID order
+     *
+     * @param id       ID of mountain to update
+     * @param mountain New data of mountain
+     * @return Success/not
+     */
+    @Override
+    public boolean update(int id, Mountain mountain) {
+        int to = shardFor(mountain.getCountry());
+        while (true) {
+            int from = shardOf(id);
+            if (from < 0) {
+                return false;
+            }
+            IndexedMountainStore first = SHARDS[Math.min(from, to)];
+            IndexedMountainStore second = SHARDS[Math.max(from, to)];
+            first.writeLock().lock();
+            second.writeLock().lock();
+            try {
+                if (shardOf(id) == from) {
+                    replace(id, mountain, from, to);
+                    return true;
+                }
+            } finally {
+                second.writeLock().unlock();
+                first.writeLock().unlock();
+            }
+            // Moved to another shard before the locks were taken, so look again
+        }
+    }
+
+    @Override
+    public boolean delete(int id) {
+        while (true) {
+            int shard = shardOf(id);
+            if (shard < 0) {
+                return false;
+            }
+            SHARDS[shard].writeLock().lock();
+            try {
+                if (shardOf(id) == shard) {
+                    remove(id, shard);
+                    return true;
+                }
+            } finally {
+                SHARDS[shard].writeLock().unlock();
+            }
+        }
+    }
+
+    /**
+     * Replaces mountains, holding the locks of every shard they come from or go to
+     * for the whole batch, each taken once
+     *
+     * @param mountains New data of mountains, with the IDs of the ones they replace
+     * @return for each mountain, whether one with its ID was found and replaced
+     */
+    @Override
+    public boolean[] updateAll(List<Mountain> mountains) {
+        boolean[] updated = new boolean[mountains.size()];
+        int[] ids = new int[updated.length];
+        for (int i = 0; i < ids.length; i++) {
+            ids[i] = mountains.get(i).getId();
+        }
+        while (true) {
+            int[] from = shardsOf(ids);
+            boolean[] touched = new boolean[SHARDS.length];
+            for (int i = 0; i < updated.length; i++) {
+                if (from[i] >= 0) {
+                    touched[from[i]] = true;
+                    touched[shardFor(mountains.get(i).getCountry())] = true;
+                }
+            }
+            List<Integer> locked = lockAll(touched);
+            try {
+                if (Arrays.equals(from, shardsOf(ids))) {
+                    for (int i = 0; i < updated.length; i++) {
+                        // Where earlier updates in the batch left it, always a locked shard
+                        int shard = shardOf(ids[i]);
+                        Mountain mountain = mountains.get(i);
+                        if (shard >= 0) {
+                            replace(ids[i], mountain, shard, shardFor(mountain.getCountry()));
+                            updated[i] = true;
+                        }
+                    }
+                    return updated;
+                }
+            } finally {
+                unlockAll(locked);
+            }
+        }
+    }
+
+    /**
+     * Deletes mountains, holding the locks of every shard they're in for the whole
+     * batch, each taken once
+     *
+     * @param ids IDs of mountains to delete
+     * @return for each ID, whether a mountain with it was found and deleted
+     */
+    @Override
+    public boolean[] deleteAll(int[] ids) {
+        boolean[] deleted = new boolean[ids.length];
+        while (true) {
+            int[] shards = shardsOf(ids);
+            boolean[] touched = new boolean[SHARDS.length];
+            for (int shard : shards) {
+                if (shard >= 0) {
+                    touched[shard] = true;
+                }
+            }
+            List<Integer> locked = lockAll(touched);
+            try {
+                if (Arrays.equals(shards, shardsOf(ids))) {
+                    for (int i = 0; i < ids.length; i++) {
+                        int shard = shardOf(ids[i]);
+                        if (shard >= 0) {
+                            remove(ids[i], shard);
+                            deleted[i] = true;
+                        }
+                    }
+                    return deleted;
+                }
+            } finally {
+                unlockAll(locked);
+            }
+        }
+    }
+
+    /**
+     * Replaces a mountain, must hold the locks of the shard it's in and the shard
+     * its new country belongs to
+     *
+     * @param id       ID of mountain to update
+     * @param mountain New data of mountain
+     * @param from     Shard the mountain is in
+     * @param to       Shard the new data belongs in
+     */
+    private void replace(int id, Mountain mountain, int from, int to) {
+        Mountain old = SHARDS[from].get(id);
+        if (from == to) {
+            SHARDS[from].update(id, mountain);
+        } else {
+            SHARDS[from].delete(id);
+            mountain.setId(id);
+            SHARDS[to].insert(mountain);
+            place(List.of(mountain), to);
+        }
+        try {
+            listener.updated(old, mountain);
+        } finally {
+            VERSION.incrementAndGet();
+        }
+    }
+
+    /**
+     * Deletes a mountain, must hold the lock of the shard it's in
+     *
+     * @param id    ID of mountain to delete
+     * @param shard Shard the mountain is in
+     */
+    private void remove(int id, int shard) {
+        Mountain old = SHARDS[shard].get(id);
+        SHARDS[shard].delete(id);
+        SHARD_OF_LOCK.writeLock().lock();
+        try {
+            SHARD_OF.remove(id);
+        } finally {
+            SHARD_OF_LOCK.writeLock().unlock();
+        }
+        try {
+            listener.deleted(old);
+        } finally {
+            VERSION.incrementAndGet();
+        }
+    }
+
+    /**
+     * Takes the write locks of shards, always in shard order so two batches can't
+     * each hold a lock the other needs
+     *
+     * @param shards Which shards to lock
+     * @return the shards locked
+     */
+    private List<Integer> lockAll(boolean[] shards) {
+        List<Integer> locked = new ArrayList<>();
+        try {
+            for (int i = 0; i < SHARDS.length; i++) {
+                if (shards[i]) {
+                    SHARDS[i].writeLock().lock();
+                    locked.add(i);
+                }
+            }
+        } catch (RuntimeException e) {
+            unlockAll(locked);
+            throw e;
+        }
+        return locked;
+    }
+
+    private void unlockAll(List<Integer> locked) {
+        for (int i : locked) {
+            SHARDS[i].writeLock().unlock();
+        }
+    }
+
+    @Override
+    public void restore(List<Mountain> mountains) {
+        List<List<Mountain>> byShard = new ArrayList<>(SHARDS.length);
+        for (int i = 0; i < SHARDS.length; i++) {
+            byShard.add(new ArrayList<>());
+        }
+        for (Mountain mountain : mountains) {
+            byShard.get(shardFor(mountain.getCountry())).add(mountain);
+        }
+        for (int i = 0; i < SHARDS.length; i++) {
+            SHARDS[i].insertAll(byShard.get(i));
+            place(byShard.get(i), i);
+        }
+        VERSION.incrementAndGet();
+    }
+
+    @Override
+    public void setListener(MountainStoreListener listener) {
+        this.listener = listener;
+    }
+
+    @Override
+    public long version() {
+        return VERSION.get();
+    }
+
+    /**
+     * Stops the threads used for fanning out queries
+     */
+    @Override
+    public void close() {
+        FAN_OUT.shutdown();
+    }
+
+    private int shardFor(String country) {
+        int hash = country == null ? 0 : country.hashCode();
+        return Math.floorMod(hash ^ (hash >>> 16), SHARDS.length);
+    }
+
+    /**
+     * Finds the shard holding an ID - it only changes while that shard's write lock
+     * is held, so it's only sure to stay put once the shard is locked
+     *
+     * @param id ID of mountain
+     * @return shard number, or -1 if no shard has it
+     */
+    private int shardOf(int id) {
+        SHARD_OF_LOCK.readLock().lock();
+        try {
+            return SHARD_OF.get(id);
+        } finally {
+            SHARD_OF_LOCK.readLock().unlock();
+        }
+    }
+
+    private int[] shardsOf(int[] ids) {
+        int[] shards = new int[ids.length];
+        for (int i = 0; i < ids.length; i++) {
+            shards[i] = shardOf(ids[i]);
+        }
+        return shards;
+    }
+
+    /**
+     * Records the shard mountains are now in, must hold that shard's write lock
+     *
+     * @param mountains Mountains put in the shard
+     * @param shard     Shard they're in
+     */
+    private void place(List<Mountain> mountains, int shard) {
+        SHARD_OF_LOCK.writeLock().lock();
+        try {
+            for (Mountain mountain : mountains) {
+                SHARD_OF.put(mountain.getId(), shard);
+            }
+        } finally {
+            SHARD_OF_LOCK.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Runs a query on every shard in parallel and merges the results into order
+     *
+     * @param query Query to run on each shard
+     * @param order Order each shard's results are in
+     * @param limit Most results to keep
+     * @return merged results
+     */
+    private List<Mountain> fanOut(Function<IndexedMountainStore, List<Mountain>> query, Comparator<Mountain> order,
+                                  int limit) {
+        List<Future<List<Mountain>>> futures = new ArrayList<>(SHARDS.length);
+        for (IndexedMountainStore shard : SHARDS) {
+            futures.add(FAN_OUT.submit(() -> query.apply(shard)));
+        }
+        List<List<Mountain>> results = new ArrayList<>(SHARDS.length);
+        try {
+            for (Future<List<Mountain>> future : futures) {
+                results.add(future.get());
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted while querying shards", e);
+        } catch (ExecutionException e) {
+            throw new IllegalStateException("Shard query failed", e.getCause());
+        }
+        return merge(results, order, limit);
+    }
+
+    /**
+     * Merges lists that are each in an order into one list in that order
+     *
+     * @param results Lists to merge
+     * @param order   Order each list is in
+     * @param limit   Most mountains to merge
+     * @return merged list
+     */
+    private static List<Mountain> merge(List<List<Mountain>> results, Comparator<Mountain> order, int limit) {
+        int total = 0;
+        PriorityQueue<int[]> heads = new PriorityQueue<>(
+                (a, b) -> order.compare(results.get(a[0]).get(a[1]), results.get(b[0]).get(b[1])));
+        for (int i = 0; i < results.size(); i++) {
+            total += results.get(i).size();
+            if (!results.get(i).isEmpty()) {
+                heads.add(new int[]{i, 0});
+            }
+        }
+        List<Mountain> merged = new ArrayList<>(Math.min(total, limit));
+        while (!heads.isEmpty() && merged.size() < limit) {
+            int[] head = heads.poll();
+            List<Mountain> list = results.get(head[0]);
+            merged.add(list.get(head[1]));
+            if (++head[1] < list.size()) {
+                heads.add(head);
+            }
+        }
+        return merged;
+    }
+}
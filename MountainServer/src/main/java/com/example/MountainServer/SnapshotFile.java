@@ -0,0 +1,188 @@
+/**
+ * Compact binary file holding every mountain in the store at one moment, written
+ * now and then so start up doesn't have to replay the whole write-ahead log
+ * <p>
+ * The file starts with a header and a dictionary of every distinct country and
+ * range, followed by one record per mountain in ID order: its ID, altitude,
+ * hemisphere and location flags, dictionary codes, UTF-8 name and, if it has
+ * them, latitude and longitude. It's read back by mapping it into
+ * memory and walking the records, with no parsing beyond reading ints.
+ *
+ * @Author Ewan Lewis
+ */
+
+package com.example.MountainServer;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+
+public final class SnapshotFile {
+
+    /**
+     * "MTNS", at the start of every snapshot
+     */
+    private static final int MAGIC = 0x4D544E53;
+
+    /**
+     * Version 2 added locations, in flag bits version 1 never set - so a version 1
+     * snapshot reads the same way
+     */
+    private static final int FORMAT_VERSION = 2;
+
+    /**
+     * Bits of the byte after a mountain's altitude
+     */
+    private static final int NORTHERN = 1;
+    private static final int LATITUDE = 2;
+    private static final int LONGITUDE = 4;
+
+    /**
+     * What a snapshot holds
+     *
+     * @param mountains   Every mountain, in ID order
+     * @param logPosition Write-ahead log position the snapshot was started at -
+     *                    replaying the log from here brings it up to date
+     */
+    public record Contents(List<Mountain> mountains, long logPosition) {}
+
+    private SnapshotFile() {
+
+    }
+
+    /**
+     * Writes a snapshot, replacing any already in the file only once it's
+     * completely on disk
+     *
+     * @param file        File to write
+     * @param mountains   Every mountain, in ID order
+     * @param logPosition Write-ahead log position the snapshot was started at
+     */
+    public static void write(Path file, List<Mountain> mountains, long logPosition) {
+        StringDictionary dictionary = new StringDictionary();
+        for (Mountain mountain : mountains) {
+            dictionary.encode(mountain.getCountry());
+            dictionary.encode(mountain.getRange());
+        }
+        Path temp = file.resolveSibling(file.getFileName() + ".tmp");
+        try {
+            Files.createDirectories(file.toAbsolutePath().getParent());
+            try (FileChannel channel = FileChannel.open(temp, StandardOpenOption.CREATE,
+                    StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE)) {
+                DataOutputStream out = new DataOutputStream(new BufferedOutputStream(
+                        Channels.newOutputStream(channel), 1 << 16));
+                out.writeInt(MAGIC);
+                out.writeInt(FORMAT_VERSION);
+                out.writeLong(logPosition);
+                out.writeInt(dictionary.size());
+                for (int code = 0; code < dictionary.size(); code++) {
+                    writeString(out, dictionary.decode(code));
+                }
+                out.writeInt(mountains.size());
+                for (Mountain mountain : mountains) {
+                    out.writeInt(mountain.getId());
+                    out.writeInt(mountain.getAltitude());
+                    out.writeByte((mountain.getIsNorthern() ? NORTHERN : 0)
+                            | (mountain.getLatitude() != null ? LATITUDE : 0)
+                            | (mountain.getLongitude() != null ? LONGITUDE : 0));
+                    out.writeInt(dictionary.lookup(mountain.getCountry()));
+                    out.writeInt(dictionary.lookup(mountain.getRange()));
+                    writeString(out, mountain.getName());
+                    if (mountain.getLatitude() != null) {
+                        out.writeDouble(mountain.getLatitude());
+                    }
+                    if (mountain.getLongitude() != null) {
+                        out.writeDouble(mountain.getLongitude());
+                    }
+                }
+                out.flush();
+                channel.force(true);
+            }
+            Files.move(temp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException e) {
+            throw new UncheckedIOException("Couldn't write snapshot " + file, e);
+        }
+    }
+
+    /**
+     * Reads a snapshot back by mapping it into memory
+     *
+     * @param file File to read
+     * @return what the snapshot holds
+     */
+    public static Contents read(Path file) {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            if (channel.size() > Integer.MAX_VALUE) {
+                throw new IOException("Snapshot too large to map: " + channel.size() + " bytes");
+            }
+            MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            int magic = buffer.getInt();
+            int version = buffer.getInt();
+            if (magic != MAGIC || version < 1 || version > FORMAT_VERSION) {
+                throw new IOException("Not a mountain snapshot, or from an unknown version");
+            }
+            long logPosition = buffer.getLong();
+            String[] dictionary = new String[buffer.getInt()];
+            for (int code = 0; code < dictionary.length; code++) {
+                dictionary[code] = readString(buffer);
+            }
+            int count = buffer.getInt();
+            List<Mountain> mountains = new ArrayList<>(count);
+            for (int i = 0; i < count; i++) {
+                Mountain mountain = new Mountain();
+                mountain.setId(buffer.getInt());
+                mountain.setAltitude(buffer.getInt());
+                int flags = buffer.get();
+                mountain.setNorthern((flags & NORTHERN) != 0);
+                mountain.setCountry(dictionary[buffer.getInt()]);
+                mountain.setRange(dictionary[buffer.getInt()]);
+                mountain.setName(readString(buffer));
+                if ((flags & LATITUDE) != 0) {
+                    mountain.setLatitude(buffer.getDouble());
+                }
+                if ((flags & LONGITUDE) != 0) {
+                    mountain.setLongitude(buffer.getDouble());
+                }
+                mountains.add(mountain);
+            }
+            return new Contents(mountains, logPosition);
+        } catch (IOException e) {
+            throw new UncheckedIOException("Couldn't read snapshot " + file, e);
+        }
+    }
+
+    /**
+     * Writes a string as its UTF-8 length then bytes, with a length of -1 for null
+     */
+    private static void writeString(DataOutputStream out, String value) throws IOException {
+        if (value == null) {
+            out.writeInt(-1);
+            return;
+        }
+        byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        out.writeInt(bytes.length);
+        out.write(bytes);
+    }
+
+    private static String readString(ByteBuffer buffer) {
+        int length = buffer.getInt();
+        if (length < 0) {
+            return null;
+        }
+        byte[] bytes = new byte[length];
+        buffer.get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+}
@@ -0,0 +1,453 @@
+/**
+ * Store where readers never lock - every read works on an immutable snapshot of
+ * the mountains and their indexes, picked up from a single volatile reference
+ * <p>
+ * Writers take turns on a lock, build the next snapshot from the current one and
+ * publish it by swapping the reference. The snapshots are made of persistent
+ * maps, so a write only copies the few trie nodes on the paths it changes and
+ * shares everything else with the snapshot before it.
+ *
+ * @Author Ewan Lewis
+ */
+
+package com.example.MountainServer;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.IntConsumer;
+
+public class SnapshotMountainStore implements MountainStore {
+
+    /**
+     * Snapshot that reads are currently served from
+     */
+    private volatile Snapshot current = Snapshot.EMPTY;
+
+    /**
+     * Told about every change, while the write lock is held
+     */
+    private MountainStoreListener listener = MountainStoreListener.NONE;
+
+    /**
+     * Data version, counted up after every change
+     */
+    private final AtomicLong VERSION = new AtomicLong();
+
+    /**
+     * Lock taken by writers, so only one builds a new snapshot at a time
+     */
+    private final Lock WRITE_LOCK = new ReentrantLock();
+
+    /**
+     * Where new mountains get their IDs from
+     */
+    private final IdAllocator IDS;
+
+    /**
+     * Constructor, with IDs that are only unique to this store
+     */
+    public SnapshotMountainStore() {
+        this(new IdAllocator());
+    }
+
+    /**
+     * Constructor
+     *
+     * @param ids Where new mountains get their IDs from
+     */
+    public SnapshotMountainStore(IdAllocator ids) {
+        IDS = ids;
+    }
+
+    @Override
+    public boolean addAll(List<Mountain> newMountains) {
+        WRITE_LOCK.lock();
+        try {
+            Snapshot snapshot = current;
+            Set<MountainKey> newKeys = new HashSet<>();
+            for (Mountain newMountain : newMountains) {
+                MountainKey key = MountainKey.of(newMountain);
+                if (!newKeys.add(key) || snapshot.identity.get(key) != null) {
+                    return false; // Found a duplicate
+                }
+            }
+            int id = IDS.allocate(newMountains.size());
+            for (Mountain newMountain : newMountains) {
+                newMountain.setId(id++);
+                snapshot = snapshot.with(newMountain);
+            }
+            publish(snapshot);
+            try {
+                listener.added(newMountains);
+            } finally {
+                VERSION.incrementAndGet();
+            }
+            return true;
+        } finally {
+            WRITE_LOCK.unlock();
+        }
+    }
+
+    @Override
+    public boolean[] addDistinct(List<Mountain> newMountains) {
+        boolean[] added = new boolean[newMountains.size()];
+        WRITE_LOCK.lock();
+        try {
+            Snapshot snapshot = current;
+            Set<MountainKey> newKeys = new HashSet<>();
+            List<Mountain> accepted = new ArrayList<>(added.length);
+            for (int i = 0; i < added.length; i++) {
+                Mountain newMountain = newMountains.get(i);
+                added[i] = newKeys.add(MountainKey.of(newMountain)) && snapshot.identity.get(MountainKey.of(newMountain)) == null;
+                if (added[i]) {
+                    accepted.add(newMountain);
+                }
+            }
+            if (!accepted.isEmpty()) {
+                int id = IDS.allocate(accepted.size());
+                for (Mountain newMountain : accepted) {
+                    newMountain.setId(id++);
+                    snapshot = snapshot.with(newMountain);
+                }
+                publish(snapshot);
+                try {
+                    listener.added(accepted);
+                } finally {
+                    VERSION.incrementAndGet();
+                }
+            }
+            return added;
+        } finally {
+            WRITE_LOCK.unlock();
+        }
+    }
+
+    @Override
+    public List<Mountain> getAll() {
+        Snapshot snapshot = current;
+        List<Mountain> returningMountains = new ArrayList<>(snapshot.byId.size());
+        snapshot.byId.forEach(returningMountains::add);
+        return returningMountains;
+    }
+
+    /**
+     * Searches for mountains matching every filter in a query, by walking the
+     * index entry the planner expects to give the fewest and checking the rest of
+     * the filters as it goes
+     *
+     * @param query Filters to apply
+     * @return List of all mountains matching the query
+     */
+    @Override
+    public List<Mountain> find(MountainQuery query) {
+        Snapshot snapshot = current;
+        QueryPlan plan = plan(snapshot, query);
+        boolean checkAll = !plan.residual().isEmpty();
+        if (plan.ordering() == QueryPlan.Ordering.TOP_K) {
+            TopK top = new TopK(query.getSort().comparator(), query.getLimit());
+            mountainsFor(snapshot, plan.access(), query).forEach(mountain -> {
+                if (!checkAll || query.matches(mountain)) {
+                    top.offer(mountain);
+                }
+            });
+            return top.sorted();
+        }
+        List<Mountain> returningMountains = new ArrayList<>();
+        mountainsFor(snapshot, plan.access(), query).forEachFrom(query.getAfterId() + 1, mountain -> {
+            if (!checkAll || query.matches(mountain)) {
+                returningMountains.add(mountain);
+            }
+            return returningMountains.size() < query.getLimit();
+        });
+        return returningMountains;
+    }
+
+    @Override
+    public QueryPlan explain(MountainQuery query) {
+        return plan(current, query);
+    }
+
+    /**
+     * Plans a query from the sizes of the index entries it could use - there's no
+     * altitude index, so altitude is always checked mountain by mountain
+     *
+     * @param snapshot Snapshot to plan against
+     * @param query    Filters to plan for
+     * @return the plan
+     */
+    private static QueryPlan plan(Snapshot snapshot, MountainQuery query) {
+        return QueryPlanner.plan(query, snapshot.byId.size(), access -> switch (access) {
+            case ALTITUDE, COUNTRY_ALTITUDE, FULL_SCAN, PARTS -> QueryPlanner.NO_INDEX;
+            default -> mountainsFor(snapshot, access, query).size();
+        });
+    }
+
+    /**
+     * Gets the mountains an index gives for a query, keyed by ID
+     *
+     * @param snapshot Snapshot to look in
+     * @param access   Index to look in, or FULL_SCAN for every mountain
+     * @param query    Query with the filters the index answers set
+     * @return the mountains, empty if the filter values aren't in the index
+     */
+    private static PersistentIntMap<Mountain> mountainsFor(Snapshot snapshot, QueryPlan.Access access,
+                                                           MountainQuery query) {
+        PersistentIntMap<Mountain> found = switch (access) {
+            case ID -> {
+                Mountain mountain = snapshot.byId.get(query.getId());
+                yield mountain == null ? null : PersistentIntMap.<Mountain>empty().put(mountain.getId(), mountain);
+            }
+            case IDENTITY -> snapshot.identity.get(new MountainKey(query.getName(), query.getRange(), query.getCountry()));
+            case COUNTRY_RANGE -> snapshot.byCountryRange.get(new CountryRange(query.getCountry(), query.getRange()));
+            case COUNTRY -> snapshot.byCountry.get(query.getCountry());
+            case RANGE -> snapshot.byRange.get(query.getRange());
+            case HEMISPHERE -> query.getNorthern() ? snapshot.northern : snapshot.southern;
+            case FULL_SCAN -> snapshot.byId;
+            case ALTITUDE, COUNTRY_ALTITUDE, PARTS -> throw new IllegalArgumentException("Not an index: " + access);
+        };
+        return found == null ? PersistentIntMap.empty() : found;
+    }
+
+    @Override
+    public Mountain get(int id) {
+        return current.byId.get(id);
+    }
+
+    @Override
+    public boolean update(int id, Mountain mountain) {
+        WRITE_LOCK.lock();
+        try {
+            Snapshot snapshot = current;
+            Mountain existing = snapshot.byId.get(id);
+            if (existing == null) {
+                return false;
+            }
+            // The replacement keeps the ID of the mountain it replaces
+            mountain.setId(id);
+            publish(snapshot.without(existing).with(mountain));
+            try {
+                listener.updated(existing, mountain);
+            } finally {
+                VERSION.incrementAndGet();
+            }
+            return true;
+        } finally {
+            WRITE_LOCK.unlock();
+        }
+    }
+
+    @Override
+    public boolean delete(int id) {
+        WRITE_LOCK.lock();
+        try {
+            Snapshot snapshot = current;
+            Mountain existing = snapshot.byId.get(id);
+            if (existing == null) {
+                return false;
+            }
+            publish(snapshot.without(existing));
+            try {
+                listener.deleted(existing);
+            } finally {
+                VERSION.incrementAndGet();
+            }
+            return true;
+        } finally {
+            WRITE_LOCK.unlock();
+        }
+    }
+
+    /**
+     * Replaces mountains, building every change into one new snapshot so readers
+     * go straight from seeing none of them to seeing all of them
+     *
+     * @param mountains New data of mountains, with the IDs of the ones they replace
+     * @return for each mountain, whether one with its ID was found and replaced
+     */
+    @Override
+    public boolean[] updateAll(List<Mountain> mountains) {
+        boolean[] updated = new boolean[mountains.size()];
+        WRITE_LOCK.lock();
+        try {
+            Snapshot snapshot = current;
+            List<Mountain> replaced = new ArrayList<>();
+            List<Mountain> replacements = new ArrayList<>();
+            for (int i = 0; i < updated.length; i++) {
+                Mountain mountain = mountains.get(i);
+                Mountain existing = snapshot.byId.get(mountain.getId());
+                if (existing != null) {
+                    snapshot = snapshot.without(existing).with(mountain);
+                    replaced.add(existing);
+                    replacements.add(mountain);
+                    updated[i] = true;
+                }
+            }
+            if (snapshot != current) {
+                // Told once the whole batch is published, like the single changes
+                publish(snapshot);
+                tellEach(replaced.size(), i -> listener.updated(replaced.get(i), replacements.get(i)));
+            }
+            return updated;
+        } finally {
+            WRITE_LOCK.unlock();
+        }
+    }
+
+    /**
+     * Deletes mountains, building every change into one new snapshot so readers
+     * go straight from seeing none of them to seeing all of them
+     *
+     * @param ids IDs of mountains to delete
+     * @return for each ID, whether a mountain with it was found and deleted
+     */
+    @Override
+    public boolean[] deleteAll(int[] ids) {
+        boolean[] deleted = new boolean[ids.length];
+        WRITE_LOCK.lock();
+        try {
+            Snapshot snapshot = current;
+            List<Mountain> removed = new ArrayList<>();
+            for (int i = 0; i < ids.length; i++) {
+                Mountain existing = snapshot.byId.get(ids[i]);
+                if (existing != null) {
+                    snapshot = snapshot.without(existing);
+                    removed.add(existing);
+                    deleted[i] = true;
+                }
+            }
+            if (snapshot != current) {
+                publish(snapshot);
+                tellEach(removed.size(), i -> listener.deleted(removed.get(i)));
+            }
+            return deleted;
+        } finally {
+            WRITE_LOCK.unlock();
+        }
+    }
+
+    /**
+     * Tells the listener about each change of a published batch, carrying on past
+     * a failure since every change is already in the store, then counts the batch
+     * as one new version and passes the first failure on
+     *
+     * @param changes Number of changes
+     * @param tell    Tells the listener about the change at an index
+     */
+    private void tellEach(int changes, IntConsumer tell) {
+        RuntimeException failure = null;
+        for (int i = 0; i < changes; i++) {
+            try {
+                tell.accept(i);
+            } catch (RuntimeException e) {
+                if (failure == null) {
+                    failure = e;
+                } else {
+                    failure.addSuppressed(e);
+                }
+            }
+        }
+        VERSION.incrementAndGet();
+        if (failure != null) {
+            throw failure;
+        }
+    }
+
+    @Override
+    public void restore(List<Mountain> mountains) {
+        WRITE_LOCK.lock();
+        try {
+            Snapshot snapshot = current;
+            for (Mountain mountain : mountains) {
+                snapshot = snapshot.with(mountain);
+            }
+            publish(snapshot);
+            VERSION.incrementAndGet();
+        } finally {
+            WRITE_LOCK.unlock();
+        }
+    }
+
+    @Override
+    public void setListener(MountainStoreListener listener) {
+        this.listener = listener;
+    }
+
+    @Override
+    public long version() {
+        return VERSION.get();
+    }
+
+    /**
+     * Makes a snapshot the one reads are served from, must hold the write lock
+     *
+     * @param snapshot Next snapshot
+     */
+    private void publish(Snapshot snapshot) {
+        current = snapshot;
+    }
+
+    /**
+     * Key for the country and range index
+     */
+    private record CountryRange(String country, String range) {}
+
+    /**
+     * Immutable view of every mountain and index at one moment - each index maps
+     * a key to the mountains with it, keyed by ID so they come out in ID order
+     */
+    private record Snapshot(PersistentIntMap<Mountain> byId,
+                            PersistentHashMap<String, PersistentIntMap<Mountain>> byCountry,
+                            PersistentHashMap<CountryRange, PersistentIntMap<Mountain>> byCountryRange,
+                            PersistentHashMap<String, PersistentIntMap<Mountain>> byRange,
+                            PersistentHashMap<MountainKey, PersistentIntMap<Mountain>> identity,
+                            PersistentIntMap<Mountain> northern,
+                            PersistentIntMap<Mountain> southern) {
+
+        static final Snapshot EMPTY = new Snapshot(PersistentIntMap.empty(), PersistentHashMap.empty(),
+                PersistentHashMap.empty(), PersistentHashMap.empty(), PersistentHashMap.empty(),
+                PersistentIntMap.empty(), PersistentIntMap.empty());
+
+        Snapshot with(Mountain mountain) {
+            int id = mountain.getId();
+            boolean isNorthern = mountain.getIsNorthern();
+            return new Snapshot(byId.put(id, mountain),
+                    add(byCountry, mountain.getCountry(), mountain),
+                    add(byCountryRange, new CountryRange(mountain.getCountry(), mountain.getRange()), mountain),
+                    add(byRange, mountain.getRange(), mountain),
+                    add(identity, MountainKey.of(mountain), mountain),
+                    isNorthern ? northern.put(id, mountain) : northern,
+                    isNorthern ? southern : southern.put(id, mountain));
+        }
+
+        Snapshot without(Mountain mountain) {
+            int id = mountain.getId();
+            return new Snapshot(byId.remove(id),
+                    remove(byCountry, mountain.getCountry(), id),
+                    remove(byCountryRange, new CountryRange(mountain.getCountry(), mountain.getRange()), id),
+                    remove(byRange, mountain.getRange(), id),
+                    remove(identity, MountainKey.of(mountain), id),
+                    northern.remove(id),
+                    southern.remove(id));
+        }
+
+        private static <K> PersistentHashMap<K, PersistentIntMap<Mountain>> add(
+                PersistentHashMap<K, PersistentIntMap<Mountain>> index, K key, Mountain mountain) {
+            PersistentIntMap<Mountain> keyMountains = index.get(key);
+            if (keyMountains == null) {
+                keyMountains = PersistentIntMap.empty();
+            }
+            return index.put(key, keyMountains.put(mountain.getId(), mountain));
+        }
+
+        private static <K> PersistentHashMap<K, PersistentIntMap<Mountain>> remove(
+                PersistentHashMap<K, PersistentIntMap<Mountain>> index, K key, int id) {
+            PersistentIntMap<Mountain> keyMountains = index.get(key).remove(id);
+            return keyMountains.isEmpty() ? index.remove(key) : index.put(key, keyMountains);
+        }
+    }
+}
@@ -0,0 +1,74 @@
+/**
+ * Dictionary that gives each distinct string a small int code
+ * <p>
+ * Countries and ranges repeat across thousands of mountains, so the column stores
+ * keep one copy of each in here and store just its code per mountain. Codes are
+ * handed out from 0 upwards and never reused.
+ *
+ * @Author Ewan Lewis
+ */
+
+package com.example.MountainServer;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+public class StringDictionary {
+
+    /**
+     * Code returned when a string isn't in the dictionary
+     */
+    public static final int MISSING = -1;
+
+    private final Map<String, Integer> CODES = new HashMap<>();
+
+    private final List<String> VALUES = new ArrayList<>();
+
+    /**
+     * Gets the code for a string, adding it if it's new
+     *
+     * @param value String to encode, may be null
+     * @return the string's code
+     */
+    public int encode(String value) {
+        Integer code = CODES.get(value);
+        if (code == null) {
+            code = VALUES.size();
+            CODES.put(value, code);
+            VALUES.add(value);
+        }
+        return code;
+    }
+
+    /**
+     * Gets the code for a string without adding it
+     *
+     * @param value String to look up, may be null
+     * @return the string's code, or MISSING if it's never been encoded
+     */
+    public int lookup(String value) {
+        Integer code = CODES.get(value);
+        return code == null ? MISSING : code;
+    }
+
+    /**
+     * Gets the string for a code
+     *
+     * @param code Code to decode
+     * @return the string
+     */
+    public String decode(int code) {
+        return VALUES.get(code);
+    }
+
+    /**
+     * Gets the number of strings in the dictionary
+     *
+     * @return number of strings
+     */
+    public int size() {
+        return VALUES.size();
+    }
+}
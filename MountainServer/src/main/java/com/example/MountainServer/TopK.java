@@ -0,0 +1,72 @@
+/**
+ * Keeps the first K mountains in an order out of all those offered to it, for
+ * sorted queries with a limit
+ * <p>
+ * The K kept are held in a heap with the last of them on top, so each mountain
+ * offered is either turned away by one comparison with the top or swapped in for
+ * it at a cost of log K. Finding the top K of n mountains costs O(n log K) and
+ * holds only K of them, where sorting them all would cost O(n log n) and hold n.
+ *
+ * @Author Ewan Lewis
+ */
+
+package com.example.MountainServer;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.PriorityQueue;
+
+public class TopK {
+
+    private final Comparator<Mountain> ORDER;
+
+    private final int K;
+
+    /**
+     * Mountains kept, the last in order on top
+     */
+    private final PriorityQueue<Mountain> HEAP;
+
+    /**
+     * Constructor
+     *
+     * @param order Order the mountains are wanted in
+     * @param k     Most mountains to keep
+     */
+    public TopK(Comparator<Mountain> order, int k) {
+        ORDER = order;
+        K = k;
+        HEAP = new PriorityQueue<>(Math.max(1, Math.min(k, 1_024)), order.reversed());
+    }
+
+    /**
+     * Offers a mountain, kept if it's among the first K offered so far
+     *
+     * @param mountain Mountain to offer
+     */
+    public void offer(Mountain mountain) {
+        if (HEAP.size() < K) {
+            HEAP.add(mountain);
+        } else if (K > 0 && ORDER.compare(mountain, HEAP.peek()) < 0) {
+            HEAP.poll();
+            HEAP.add(mountain);
+        }
+    }
+
+    /**
+     * Gets the mountains kept, in order
+     *
+     * @return the first K mountains offered, or all of them if fewer were - only
+     * once, as it empties the heap
+     */
+    public List<Mountain> sorted() {
+        List<Mountain> sorted = new ArrayList<>(HEAP.size());
+        while (!HEAP.isEmpty()) {
+            sorted.add(HEAP.poll());
+        }
+        Collections.reverse(sorted);
+        return sorted;
+    }
+}
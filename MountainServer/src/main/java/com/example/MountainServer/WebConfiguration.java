@@ -0,0 +1,25 @@
+/**
+ * Adds the server's own message converters to Spring MVC's defaults
+ *
+ * @Author Ewan Lewis
+ */
+
+package com.example.MountainServer;
+
+import org.springframework.context.annotation.Configuration;
+import org.springframework.http.converter.HttpMessageConverter;
+import org.springframework.web.servlet.config.annotation.WebMvcConfigurer;
+
+import java.util.List;
+
+@Configuration
+public class WebConfiguration implements WebMvcConfigurer {
+
+    @Override
+    public void extendMessageConverters(List<HttpMessageConverter<?>> converters) {
+        // Ahead of Jackson, so it writes every JSON list of mountains
+        converters.add(0, new MountainJsonHttpMessageConverter());
+        // Last, so it's only used when asked for by name
+        converters.add(new MountainCodecHttpMessageConverter());
+    }
+}
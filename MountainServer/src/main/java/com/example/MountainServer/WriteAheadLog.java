@@ -0,0 +1,665 @@
+/**
+ * Append-only log of every change made to the store, replayed at start up so the
+ * mountains survive a restart
+ * <p>
+ * Each record is its length, a CRC32 of its body, then the body. Records are
+ * appended to an in-memory buffer while the store holds its write lock, and
+ * written out and forced to disk later by whichever thread flushes next - every
+ * record that arrived while the last fsync was running goes out in the same
+ * write and shares the next fsync, so a burst of requests costs a handful of
+ * fsyncs rather than one each. How long a request waits for this depends on
+ * the durability:
+ * <ul>
+ *     <li>ALWAYS - every change is forced to disk before the store lets go of its lock</li>
+ *     <li>BATCHED - a request waits in commit until a group fsync covers its change</li>
+ *     <li>ASYNC - nothing waits, the log is flushed every few milliseconds</li>
+ * </ul>
+ * A crash part way through writing a record leaves a torn tail, which fails its
+ * length or CRC check on replay and is cut off.
+ * <p>
+ * A batch that fails to be written is put back in front of the records appended
+ * since and written again by the next flush, so the log never has a gap in it.
+ * Until a flush gets through again commit throws, even in ASYNC mode.
+ * <p>
+ * Positions in the log count bytes of records from when it was first created.
+ * Once a snapshot has been written the records before it are dropped, and the
+ * file starts with the position of the first record it still holds.
+ *
+ * @Author Ewan Lewis
+ */
+
+package com.example.MountainServer;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.zip.CRC32;
+
+public class WriteAheadLog implements MountainStoreListener, AutoCloseable {
+
+    /**
+     * How long a change can wait before it's forced to disk
+     */
+    public enum Durability { ALWAYS, BATCHED, ASYNC }
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(WriteAheadLog.class);
+
+    private static final byte ADD = 1;
+    private static final byte UPDATE = 2;
+    private static final byte DELETE = 3;
+
+    /**
+     * Bits of the byte at the end of a mountain - its hemisphere, and whether a
+     * latitude and longitude follow. Logs from before mountains had locations
+     * only ever set the first
+     */
+    private static final int NORTHERN = 1;
+    private static final int LATITUDE = 2;
+    private static final int LONGITUDE = 4;
+
+    /**
+     * Length and CRC in front of each record
+     */
+    private static final int HEADER_BYTES = 8;
+
+    /**
+     * Position of the first record, at the start of the file
+     */
+    private static final int FILE_HEADER_BYTES = 8;
+
+    /**
+     * How often the log is flushed in ASYNC mode
+     */
+    private static final long ASYNC_FLUSH_MILLIS = 10;
+
+    private final Path FILE;
+
+    /**
+     * Open log file, and the position of the first record in it - both guarded by
+     * FLUSH_LOCK
+     */
+    private FileChannel channel;
+    private long base;
+
+    private final Durability DURABILITY;
+
+    /**
+     * Thread flushing the log in ASYNC mode, otherwise null
+     */
+    private final ScheduledExecutorService FLUSHER;
+
+    /**
+     * Records appended but not yet written out, and a spare buffer to swap in for
+     * it while they are - both guarded by lock
+     */
+    private ByteBuffer pending = ByteBuffer.allocate(1 << 16);
+    private ByteBuffer spare = ByteBuffer.allocate(1 << 16);
+
+    /**
+     * Log position just past the last record appended
+     */
+    private long appended;
+
+    /**
+     * Lock taken to append a record
+     */
+    private final Lock lock = new ReentrantLock();
+
+    /**
+     * Log position up to which everything is on disk
+     */
+    private volatile long durable;
+
+    /**
+     * Why the last flush failed, or null if it didn't
+     */
+    private volatile IOException failure;
+
+    /**
+     * Lock taken to write out and force the log, so only one flush runs at a time
+     * - always taken before lock, never after
+     */
+    private final Lock FLUSH_LOCK = new ReentrantLock();
+
+    /**
+     * Opens or creates a log, flushing it every few milliseconds if it's ASYNC -
+     * call replay before changing the store, so new records go after the ones
+     * already there
+     *
+     * @param file       File to keep the log in
+     * @param durability How long a change can wait before it's forced to disk
+     * @return the log
+     */
+    public static WriteAheadLog open(Path file, Durability durability) {
+        WriteAheadLog log = new WriteAheadLog(file, durability);
+        log.start();
+        return log;
+    }
+
+    /**
+     * Constructor, opening or creating the log but leaving an ASYNC log unflushed
+     * until start is called
+     *
+     * @param file       File to keep the log in
+     * @param durability How long a change can wait before it's forced to disk
+     */
+    WriteAheadLog(Path file, Durability durability) {
+        FILE = file;
+        DURABILITY = durability;
+        try {
+            Files.createDirectories(file.toAbsolutePath().getParent());
+            channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.READ,
+                    StandardOpenOption.WRITE);
+            if (channel.size() < FILE_HEADER_BYTES) {
+                channel.truncate(0);
+                writeHeader(channel, 0);
+                channel.force(true);
+            }
+            ByteBuffer header = ByteBuffer.allocate(FILE_HEADER_BYTES);
+            readFully(header, 0);
+            base = header.getLong(0);
+            appended = base + channel.size() - FILE_HEADER_BYTES;
+            durable = appended;
+        } catch (IOException e) {
+            throw new UncheckedIOException("Couldn't open write-ahead log " + file, e);
+        }
+        if (durability == Durability.ASYNC) {
+            FLUSHER = Executors.newSingleThreadScheduledExecutor(runnable -> {
+                Thread thread = new Thread(runnable, "mountain-wal-flush");
+                thread.setDaemon(true);
+                return thread;
+            });
+        } else {
+            FLUSHER = null;
+        }
+    }
+
+    /**
+     * Starts an ASYNC log's timed flushes, once the log is fully built so the
+     * flusher never sees it part way through construction
+     */
+    void start() {
+        if (FLUSHER != null) {
+            FLUSHER.scheduleWithFixedDelay(this::scheduledFlush, ASYNC_FLUSH_MILLIS, ASYNC_FLUSH_MILLIS,
+                    TimeUnit.MILLISECONDS);
+        }
+    }
+
+    /**
+     * Reads back every mountain the log leaves in the store, cutting off a torn
+     * record at the end if there is one
+     *
+     * @return the mountains, in ID order
+     */
+    public List<Mountain> replay() {
+        return replay(List.of(), base);
+    }
+
+    /**
+     * Brings the mountains in a snapshot up to date by replaying the records from
+     * where it was started, cutting off a torn record at the end if there is one
+     * <p>
+     * The snapshot can hold changes made after its position - every record just
+     * sets or removes one ID, so replaying a change the snapshot already has
+     * leaves it as it was.
+     *
+     * @param snapshot Mountains in the snapshot, in ID order
+     * @param from     Log position the snapshot was started at
+     * @return the mountains, in ID order
+     */
+    public List<Mountain> replay(List<Mountain> snapshot, long from) {
+        FLUSH_LOCK.lock();
+        lock.lock();
+        try {
+            if (from < base) {
+                throw new IllegalStateException("Write-ahead log starts at " + base
+                        + ", after the snapshot's position " + from);
+            }
+            // Latest value of each ID changed since the snapshot, null if it was removed
+            TreeMap<Integer, Mountain> changes = new TreeMap<>();
+            ByteBuffer header = ByteBuffer.allocate(HEADER_BYTES);
+            long size = channel.size();
+            long position = FILE_HEADER_BYTES + from - base;
+            while (position + HEADER_BYTES <= size) {
+                header.clear();
+                readFully(header, position);
+                int length = header.getInt(0);
+                if (length <= 0 || position + HEADER_BYTES + length > size) {
+                    break; // Torn tail
+                }
+                ByteBuffer body = ByteBuffer.allocate(length);
+                readFully(body, position + HEADER_BYTES);
+                CRC32 crc = new CRC32();
+                crc.update(body.array());
+                if ((int) crc.getValue() != header.getInt(4)) {
+                    break; // Torn tail
+                }
+                apply(body.array(), changes);
+                position += HEADER_BYTES + length;
+            }
+            channel.truncate(position);
+            appended = base + position - FILE_HEADER_BYTES;
+            durable = appended;
+            return merge(snapshot, changes);
+        } catch (IOException e) {
+            throw new UncheckedIOException("Couldn't replay write-ahead log", e);
+        } finally {
+            lock.unlock();
+            FLUSH_LOCK.unlock();
+        }
+    }
+
+    @Override
+    public void added(List<Mountain> mountains) {
+        append(ADD, out -> {
+            out.writeInt(mountains.size());
+            for (Mountain mountain : mountains) {
+                writeMountain(out, mountain);
+            }
+        });
+    }
+
+    @Override
+    public void updated(Mountain old, Mountain mountain) {
+        append(UPDATE, out -> {
+            out.writeInt(old.getId());
+            writeMountain(out, mountain);
+        });
+    }
+
+    @Override
+    public void deleted(Mountain old) {
+        append(DELETE, out -> out.writeInt(old.getId()));
+    }
+
+    /**
+     * Waits for a group fsync to cover every change appended so far, in BATCHED mode
+     *
+     * @throws UncheckedIOException if the log can't be written - in ASYNC mode, if
+     * the last flush failed
+     */
+    @Override
+    public void commit() {
+        if (DURABILITY == Durability.BATCHED) {
+            flush();
+        } else if (failure != null) {
+            throw new UncheckedIOException("Couldn't write write-ahead log", failure);
+        }
+    }
+
+    /**
+     * Gets the position just past the last record appended, which every change
+     * already made to the store comes before
+     *
+     * @return the position
+     */
+    public long position() {
+        lock.lock();
+        try {
+            return appended;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Drops every record before a position, once a snapshot covers them - the
+     * records after it are copied to a new file that replaces the old one
+     *
+     * @param position Position of the first record to keep
+     */
+    public void truncateBefore(long position) {
+        flush();
+        FLUSH_LOCK.lock();
+        try {
+            if (position <= base) {
+                return;
+            }
+            Path temp = FILE.resolveSibling(FILE.getFileName() + ".tmp");
+            try (FileChannel copy = FileChannel.open(temp, StandardOpenOption.CREATE,
+                    StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE)) {
+                writeHeader(copy, position);
+                copy.position(FILE_HEADER_BYTES);
+                long from = FILE_HEADER_BYTES + position - base;
+                long to = FILE_HEADER_BYTES + durable - base;
+                while (from < to) {
+                    from += channel.transferTo(from, to - from, copy);
+                }
+                copy.force(true);
+            }
+            Files.move(temp, FILE, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            channel.close();
+            channel = FileChannel.open(FILE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+            base = position;
+        } catch (IOException e) {
+            throw new UncheckedIOException("Couldn't truncate write-ahead log", e);
+        } finally {
+            FLUSH_LOCK.unlock();
+        }
+    }
+
+    /**
+     * Flushes what's left and closes the log
+     */
+    @Override
+    public void close() {
+        if (FLUSHER != null) {
+            FLUSHER.shutdown();
+        }
+        flush();
+        FLUSH_LOCK.lock();
+        try {
+            channel.close();
+        } catch (IOException e) {
+            throw new UncheckedIOException("Couldn't close write-ahead log", e);
+        } finally {
+            FLUSH_LOCK.unlock();
+        }
+    }
+
+    /**
+     * Writes out and forces every record appended so far, unless a flush that
+     * finished while waiting for the flush lock already did
+     */
+    private void flush() {
+        long upTo;
+        lock.lock();
+        try {
+            upTo = appended;
+        } finally {
+            lock.unlock();
+        }
+        if (durable >= upTo) {
+            return;
+        }
+        FLUSH_LOCK.lock();
+        try {
+            if (durable >= upTo) {
+                return; // Covered by the flush we were waiting on
+            }
+            ByteBuffer batch;
+            long end;
+            lock.lock();
+            try {
+                batch = pending;
+                pending = spare != null ? spare : ByteBuffer.allocate(batch.capacity());
+                spare = null;
+                end = appended;
+            } finally {
+                lock.unlock();
+            }
+            batch.flip();
+            try {
+                write(batch, FILE_HEADER_BYTES + end - batch.remaining() - base);
+            } catch (IOException e) {
+                requeue(batch);
+                failure = e;
+                throw new UncheckedIOException("Couldn't write write-ahead log", e);
+            }
+            failure = null;
+            durable = end;
+            batch.clear();
+            spare = batch;
+        } finally {
+            FLUSH_LOCK.unlock();
+        }
+    }
+
+    /**
+     * Flushes the log from the ASYNC timer - a failure is logged rather than
+     * thrown, which would cancel the timer, and the next run tries again
+     */
+    private void scheduledFlush() {
+        boolean failing = failure != null;
+        try {
+            flush();
+        } catch (UncheckedIOException e) {
+            if (!failing) {
+                LOGGER.error("Couldn't flush the write-ahead log, will keep trying", e);
+            }
+        }
+    }
+
+    /**
+     * Writes a batch of records out and forces it to disk, must hold FLUSH_LOCK
+     *
+     * @param batch    Records to write
+     * @param position Where in the file they go
+     */
+    void write(ByteBuffer batch, long position) throws IOException {
+        while (batch.hasRemaining()) {
+            position += channel.write(batch, position);
+        }
+        channel.force(false);
+    }
+
+    /**
+     * Puts a batch that couldn't be written back in front of the records appended
+     * since, so the next flush writes it again from the same place, must hold
+     * FLUSH_LOCK
+     *
+     * @param batch Records that couldn't be written
+     */
+    private void requeue(ByteBuffer batch) {
+        batch.rewind();
+        lock.lock();
+        try {
+            ByteBuffer requeued = ByteBuffer.allocate(Math.max(pending.capacity(),
+                    batch.remaining() + pending.position()));
+            requeued.put(batch);
+            pending.flip();
+            requeued.put(pending);
+            pending = requeued;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Adds a record to the end of the log
+     *
+     * @param type Type of record
+     * @param body Writes the rest of the record
+     */
+    private void append(byte type, RecordWriter body) {
+        byte[] record;
+        try {
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+            DataOutputStream out = new DataOutputStream(bytes);
+            out.writeByte(type);
+            body.write(out);
+            record = bytes.toByteArray();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e); // Can't happen writing to memory
+        }
+        CRC32 crc = new CRC32();
+        crc.update(record);
+        lock.lock();
+        try {
+            if (pending.remaining() < HEADER_BYTES + record.length) {
+                ByteBuffer grown = ByteBuffer.allocate(Math.max(pending.capacity() << 1,
+                        pending.position() + HEADER_BYTES + record.length));
+                pending.flip();
+                grown.put(pending);
+                pending = grown;
+            }
+            pending.putInt(record.length).putInt((int) crc.getValue()).put(record);
+            appended += HEADER_BYTES + record.length;
+        } finally {
+            lock.unlock();
+        }
+        if (DURABILITY == Durability.ALWAYS) {
+            flush();
+        }
+    }
+
+    private void readFully(ByteBuffer buffer, long position) throws IOException {
+        while (buffer.hasRemaining()) {
+            int read = channel.read(buffer, position);
+            if (read < 0) {
+                throw new IOException("Unexpected end of write-ahead log");
+            }
+            position += read;
+        }
+    }
+
+    private static void writeHeader(FileChannel file, long base) throws IOException {
+        ByteBuffer header = ByteBuffer.allocate(FILE_HEADER_BYTES).putLong(0, base);
+        long position = 0;
+        while (header.hasRemaining()) {
+            position += file.write(header, position);
+        }
+    }
+
+    /**
+     * Applies one record's change to the changes being replayed
+     *
+     * @param record  Record body
+     * @param changes Latest value of each ID changed so far, null if removed
+     */
+    private static void apply(byte[] record, TreeMap<Integer, Mountain> changes) throws IOException {
+        DataInputStream in = new DataInputStream(new ByteArrayInputStream(record));
+        byte type = in.readByte();
+        switch (type) {
+            case ADD -> {
+                int count = in.readInt();
+                for (int i = 0; i < count; i++) {
+                    Mountain mountain = readMountain(in);
+                    changes.put(mountain.getId(), mountain);
+                }
+            }
+            case UPDATE -> {
+                changes.put(in.readInt(), null);
+                Mountain mountain = readMountain(in);
+                changes.put(mountain.getId(), mountain);
+            }
+            case DELETE -> changes.put(in.readInt(), null);
+            default -> throw new IOException("Unknown write-ahead log record type " + type);
+        }
+    }
+
+    /**
+     * Applies the replayed changes to a snapshot's mountains
+     *
+     * @param snapshot Mountains in the snapshot, in ID order
+     * @param changes  Latest value of each ID changed since, null if removed
+     * @return the mountains, in ID order
+     */
+    private static List<Mountain> merge(List<Mountain> snapshot, TreeMap<Integer, Mountain> changes) {
+        List<Mountain> merged = new ArrayList<>(snapshot.size() + changes.size());
+        Iterator<Map.Entry<Integer, Mountain>> changeIterator = changes.entrySet().iterator();
+        Map.Entry<Integer, Mountain> change = changeIterator.hasNext() ? changeIterator.next() : null;
+        for (Mountain mountain : snapshot) {
+            while (change != null && change.getKey() < mountain.getId()) {
+                if (change.getValue() != null) {
+                    merged.add(change.getValue());
+                }
+                change = changeIterator.hasNext() ? changeIterator.next() : null;
+            }
+            if (change != null && change.getKey() == mountain.getId()) {
+                if (change.getValue() != null) {
+                    merged.add(change.getValue()); // Changed since the snapshot
+                }
+                change = changeIterator.hasNext() ? changeIterator.next() : null;
+            } else {
+                merged.add(mountain);
+            }
+        }
+        while (change != null) {
+            if (change.getValue() != null) {
+                merged.add(change.getValue());
+            }
+            change = changeIterator.hasNext() ? changeIterator.next() : null;
+        }
+        return merged;
+    }
+
+    private static void writeMountain(DataOutputStream out, Mountain mountain) throws IOException {
+        out.writeInt(mountain.getId());
+        writeString(out, mountain.getName());
+        out.writeInt(mountain.getAltitude());
+        writeString(out, mountain.getRange());
+        writeString(out, mountain.getCountry());
+        out.writeByte((mountain.getIsNorthern() ? NORTHERN : 0)
+                | (mountain.getLatitude() != null ? LATITUDE : 0)
+                | (mountain.getLongitude() != null ? LONGITUDE : 0));
+        if (mountain.getLatitude() != null) {
+            out.writeDouble(mountain.getLatitude());
+        }
+        if (mountain.getLongitude() != null) {
+            out.writeDouble(mountain.getLongitude());
+        }
+    }
+
+    private static Mountain readMountain(DataInputStream in) throws IOException {
+        Mountain mountain = new Mountain();
+        mountain.setId(in.readInt());
+        mountain.setName(readString(in));
+        mountain.setAltitude(in.readInt());
+        mountain.setRange(readString(in));
+        mountain.setCountry(readString(in));
+        int flags = in.readByte();
+        mountain.setNorthern((flags & NORTHERN) != 0);
+        if ((flags & LATITUDE) != 0) {
+            mountain.setLatitude(in.readDouble());
+        }
+        if ((flags & LONGITUDE) != 0) {
+            mountain.setLongitude(in.readDouble());
+        }
+        return mountain;
+    }
+
+    /**
+     * Writes a string as its UTF-8 length then bytes, with a length of -1 for null
+     */
+    private static void writeString(DataOutputStream out, String value) throws IOException {
+        if (value == null) {
+            out.writeInt(-1);
+            return;
+        }
+        byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        out.writeInt(bytes.length);
+        out.write(bytes);
+    }
+
+    private static String readString(DataInputStream in) throws IOException {
+        int length = in.readInt();
+        if (length < 0) {
+            return null;
+        }
+        byte[] bytes = new byte[length];
+        in.readFully(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Writes the body of a record
+     */
+    @FunctionalInterface
+    private interface RecordWriter {
+        void write(DataOutputStream out) throws IOException;
+    }
+}
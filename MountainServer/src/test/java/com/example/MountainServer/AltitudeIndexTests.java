@@ -0,0 +1,76 @@
+package com.example.MountainServer;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+class AltitudeIndexTests {
+
+	@Test
+	void rangeQueriesMatchAFullScan() {
+		AltitudeIndex index = new AltitudeIndex();
+		int[] altitudes = new int[20_000];
+		boolean[] present = new boolean[altitudes.length];
+		Random random = new Random(253);
+		int size = 0;
+		for (int i = 0; i < 60_000; i++) {
+			int row = random.nextInt(altitudes.length);
+			if (present[row]) {
+				index.remove(altitudes[row], row);
+				present[row] = false;
+				size--;
+			} else {
+				altitudes[row] = random.nextInt(9_000) - 500;
+				index.add(altitudes[row], row);
+				present[row] = true;
+				size++;
+			}
+		}
+		assertEquals(size, index.size());
+
+		for (int i = 0; i < 200; i++) {
+			int min = random.nextInt(10_000) - 1_000;
+			int max = min + random.nextInt(3_000);
+			int count = 0;
+			int[] expected = new int[altitudes.length];
+			for (int row = 0; row < altitudes.length; row++) {
+				if (present[row] && altitudes[row] >= min && altitudes[row] <= max) {
+					expected[count++] = row;
+				}
+			}
+			assertArrayEquals(Arrays.copyOf(expected, count), index.rowsBetween(min, max));
+			assertEquals(count, index.countBetween(min, max));
+
+			List<Integer> ascending = new ArrayList<>();
+			for (int row : Arrays.copyOf(expected, count)) {
+				ascending.add(row);
+			}
+			ascending.sort(Comparator.<Integer>comparingInt(row -> altitudes[row]).thenComparingInt(row -> row));
+			List<Integer> descending = new ArrayList<>(ascending);
+			Collections.reverse(descending);
+			assertEquals(ascending, walk(index, min, max, false, count));
+			assertEquals(descending, walk(index, min, max, true, count));
+			assertEquals(descending.subList(0, Math.min(5, count)), walk(index, min, max, true, 5));
+		}
+	}
+
+	private static List<Integer> walk(AltitudeIndex index, int min, int max, boolean descending, int most) {
+		List<Integer> rows = new ArrayList<>();
+		if (most > 0) {
+			index.forEachBetween(min, max, descending, row -> {
+				rows.add(row);
+				return rows.size() < most;
+			});
+		}
+		return rows;
+	}
+
+}
@@ -0,0 +1,106 @@
+package com.example.MountainServer;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class CheckpointerTests {
+
+	private static List<String> describe(List<Mountain> mountains) {
+		List<String> described = new ArrayList<>();
+		for (Mountain mountain : mountains) {
+			described.add(mountain.getId() + " " + mountain.getName() + " " + mountain + " " + mountain.getLatitude()
+					+ " " + mountain.getLongitude());
+		}
+		return described;
+	}
+
+	@Test
+	void snapshotRoundTripsEveryField(@TempDir Path dir) {
+		List<Mountain> mountains = new ArrayList<>();
+		mountains.add(new Mountain("Aconcagua", 6961, "Andes", "Argentina", false));
+		mountains.add(new Mountain(null, -5, null, "Nowhere", true));
+		mountains.add(new Mountain("Ras Dashen", 4550, "Simien", "Ethiopia", true));
+		mountains.get(0).setLatitude(-32.6532);
+		mountains.get(0).setLongitude(-70.0109);
+		mountains.get(2).setLatitude(13.2369);
+		for (int i = 0; i < mountains.size(); i++) {
+			mountains.get(i).setId(i * 10 + 1);
+		}
+		SnapshotFile.write(dir.resolve("snapshot"), mountains, 1234);
+
+		SnapshotFile.Contents contents = SnapshotFile.read(dir.resolve("snapshot"));
+		assertEquals(1234, contents.logPosition());
+		assertEquals(describe(mountains), describe(contents.mountains()));
+	}
+
+	@Test
+	void restartsFromSnapshotAndLogTail(@TempDir Path dir) throws IOException {
+		Path snapshot = dir.resolve("snapshot");
+		Path wal = dir.resolve("wal");
+		MountainStore store = new IndexedMountainStore();
+		try (WriteAheadLog log = WriteAheadLog.open(wal, WriteAheadLog.Durability.BATCHED)) {
+			log.replay();
+			store.setListener(log);
+			for (int i = 0; i < 500; i++) {
+				store.addAll(List.of(new Mountain("M" + i, i, "R" + i % 9, "C" + i % 4, i % 3 == 0)));
+			}
+			log.commit();
+			long before = Files.size(wal);
+			try (Checkpointer checkpointer = new Checkpointer(store, log, snapshot, 3600)) {
+				checkpointer.checkpoint();
+			}
+			assertTrue(Files.size(wal) < before);
+
+			List<Mountain> all = store.getAll();
+			store.delete(all.get(0).getId());
+			store.update(all.get(1).getId(), new Mountain("Renamed", 1, "R0", "C0", true));
+			store.addAll(List.of(new Mountain("Late", 9000, "R1", "C1", false)));
+			log.commit();
+		}
+
+		try (WriteAheadLog log = WriteAheadLog.open(wal, WriteAheadLog.Durability.BATCHED)) {
+			SnapshotFile.Contents contents = SnapshotFile.read(snapshot);
+			MountainStore recovered = new IndexedMountainStore();
+			recovered.restore(log.replay(contents.mountains(), contents.logPosition()));
+			assertEquals(describe(store.getAll()), describe(recovered.getAll()));
+		}
+	}
+
+	@Test
+	void keepsCheckpointingAfterOneFails(@TempDir Path dir) throws InterruptedException {
+		Path snapshot = dir.resolve("snapshot");
+		AtomicInteger attempts = new AtomicInteger();
+		MountainStore store = new IndexedMountainStore() {
+			@Override
+			public List<Mountain> getAll() {
+				if (attempts.incrementAndGet() == 1) {
+					throw new UncheckedIOException(new IOException("No space left on device"));
+				}
+				return super.getAll();
+			}
+		};
+		store.addAll(List.of(new Mountain("Snowdon", 1085, "Snowdonia", "Wales", true)));
+		Checkpointer checkpointer = new Checkpointer(store, null, snapshot, 1);
+		try {
+			for (int wait = 0; wait < 100 && !Files.exists(snapshot); wait++) {
+				Thread.sleep(100);
+			}
+			assertTrue(Files.exists(snapshot), "no checkpoint after the failed one");
+		} finally {
+			checkpointer.close();
+		}
+		assertEquals(List.of("Snowdon"), SnapshotFile.read(snapshot).mountains().stream().map(Mountain::getName).toList());
+	}
+
+}
@@ -0,0 +1,51 @@
+package com.example.MountainServer;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class IdAllocatorTests {
+
+	@Test
+	void neverHandsOutAnIdTwiceAcrossThreads() throws InterruptedException {
+		IdAllocator ids = new IdAllocator();
+		Set<Integer> seen = ConcurrentHashMap.newKeySet();
+		List<Thread> threads = new ArrayList<>();
+		for (int t = 0; t < 8; t++) {
+			threads.add(Thread.ofPlatform().start(() -> {
+				for (int i = 0; i < 10_000; i++) {
+					int count = 1 + i % 5;
+					int first = ids.allocate(count);
+					for (int id = first; id < first + count; id++) {
+						assertTrue(seen.add(id));
+					}
+				}
+			}));
+		}
+		for (Thread thread : threads) {
+			thread.join();
+		}
+		assertEquals(8 * 10_000 * 3, seen.size());
+	}
+
+	@Test
+	void carriesOnPastHighWaterMarkAfterRestart(@TempDir Path dir) {
+		Path file = dir.resolve("ids");
+		IdAllocator before = new IdAllocator(file);
+		int last = 0;
+		for (int i = 0; i < 100_000; i++) {
+			last = before.allocate(1);
+		}
+		IdAllocator after = new IdAllocator(file);
+		assertTrue(after.allocate(1) > last);
+	}
+
+}
@@ -0,0 +1,35 @@
+package com.example.MountainServer;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+class IntIntMapTests {
+
+	@Test
+	void matchesHashMapUnderRandomOperations() {
+		IntIntMap map = new IntIntMap();
+		Map<Integer, Integer> expected = new HashMap<>();
+		Random random = new Random(253);
+		for (int i = 0; i < 200_000; i++) {
+			int key = random.nextInt(5_000) - 100;
+			if (random.nextInt(3) == 0) {
+				Integer removed = expected.remove(key);
+				assertEquals(removed == null ? IntIntMap.MISSING : removed, map.remove(key));
+			} else {
+				int value = random.nextInt(1_000_000);
+				expected.put(key, value);
+				map.put(key, value);
+			}
+		}
+		assertEquals(expected.size(), map.size());
+		for (int key = -100; key < 4_900; key++) {
+			assertEquals(expected.getOrDefault(key, IntIntMap.MISSING), map.get(key));
+		}
+	}
+
+}
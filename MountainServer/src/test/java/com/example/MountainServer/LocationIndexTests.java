@@ -0,0 +1,102 @@
+package com.example.MountainServer;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class LocationIndexTests {
+
+	@Test
+	void measuresAlongTheSurface() {
+		// Ben Nevis to Snowdon
+		assertEquals(419, LocationIndex.distanceKm(56.7969, -5.0036, 53.0685, -4.0763), 1);
+		assertEquals(LocationIndex.MAX_DISTANCE_KM, LocationIndex.distanceKm(0, 0, 0, 180), 1e-6);
+		assertEquals(0, LocationIndex.distanceKm(90, 10, 90, -170), 1e-6);
+	}
+
+	@Test
+	void findsWhatAFullScanFindsAcrossPolesAndTheAntimeridian() {
+		Random random = new Random(24);
+		List<Mountain> batch = new ArrayList<>();
+		for (int i = 0; i < 5_000; i++) {
+			Mountain mountain = new Mountain("Peak" + i, i, "Range", "Country", true);
+			if (i % 10 != 0) {
+				mountain.setLatitude(random.nextDouble() * 180 - 90);
+				mountain.setLongitude(random.nextDouble() * 360 - 180);
+			}
+			batch.add(mountain);
+		}
+		MountainStore store = new IndexedMountainStore();
+		assertTrue(store.addAll(batch));
+		List<Mountain> mountains = store.getAll();
+		LocationIndex locations = new LocationIndex();
+		locations.added(mountains);
+
+		double[][] points = {{0, 0}, {89.9, 45}, {-89.5, -120}, {10, 179.9}, {-20, -179.95}, {60, 100}};
+		for (double[] point : points) {
+			for (double radius : new double[]{0, 50, 300, 2_000, 12_000, LocationIndex.MAX_DISTANCE_KM}) {
+				assertEquals(scan(mountains, point[0], point[1], radius, 10_000),
+						ids(locations.nearest(point[0], point[1], radius, 10_000, store)));
+			}
+			for (int k : new int[]{1, 7, 100, 6_000}) {
+				assertEquals(scan(mountains, point[0], point[1], LocationIndex.MAX_DISTANCE_KM, k),
+						ids(locations.nearest(point[0], point[1], LocationIndex.MAX_DISTANCE_KM, k, store)));
+			}
+		}
+	}
+
+	@Test
+	void followsTheStoreThroughAddsUpdatesAndDeletes() {
+		MountainService service = MountainStoreConfiguration.mountainService(new ColumnarMountainStore(),
+				MountainStoreListener.NONE);
+		List<Mountain> batch = new ArrayList<>();
+		for (int i = 0; i < 100; i++) {
+			Mountain mountain = new Mountain("Peak" + i, i, "Range", "Country", true);
+			mountain.setLatitude(45 + i / 1000.0);
+			mountain.setLongitude(7.0);
+			batch.add(mountain);
+		}
+		assertTrue(service.addMountains(batch));
+		List<Mountain> near = service.findNear(45, 7, 5.5, 100);
+		assertEquals(50, near.size());
+		assertEquals("Peak0", near.get(0).getName());
+
+		Mountain moved = new Mountain("Peak0", 0, "Range", "Country", true);
+		moved.setLatitude(-45.0);
+		moved.setLongitude(-7.0);
+		assertTrue(service.updateMountain(near.get(0).getId(), moved));
+		assertTrue(service.deleteMountain(near.get(1).getId()));
+		assertTrue(service.updateMountain(near.get(2).getId(), new Mountain("Peak2", 2, "Range", "Country", true)));
+		assertEquals(List.of("Peak3", "Peak4"), service.findNear(45, 7, 5.5, 2).stream().map(Mountain::getName).toList());
+		assertEquals(List.of("Peak0"), service.findNear(-45, -7, 100, 10).stream().map(Mountain::getName).toList());
+
+		// Found by location, but the rest comes from the store as it is now
+		Mountain renamed = new Mountain("Peak3 West", 3, "Range", "Country", true);
+		renamed.setLatitude(45.003);
+		renamed.setLongitude(7.0);
+		assertTrue(service.updateMountain(service.findNear(45, 7, 5.5, 1).get(0).getId(), renamed));
+		assertEquals("Peak3 West", service.findNear(45, 7, 5.5, 1).get(0).getName());
+	}
+
+	private static List<Integer> scan(List<Mountain> mountains, double latitude, double longitude, double radiusKm,
+									  int limit) {
+		return mountains.stream()
+				.filter(Mountain::hasLocation)
+				.filter(m -> LocationIndex.distanceKm(latitude, longitude, m.getLatitude(), m.getLongitude()) <= radiusKm)
+				.sorted(Comparator.comparingDouble((Mountain m) -> LocationIndex.distanceKm(latitude, longitude,
+						m.getLatitude(), m.getLongitude())).thenComparingInt(Mountain::getId))
+				.limit(limit)
+				.map(Mountain::getId)
+				.toList();
+	}
+
+	private static List<Integer> ids(List<Mountain> mountains) {
+		return mountains.stream().map(Mountain::getId).toList();
+	}
+}
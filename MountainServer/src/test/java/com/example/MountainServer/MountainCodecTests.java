@@ -0,0 +1,112 @@
+package com.example.MountainServer;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+class MountainCodecTests {
+
+	private static String describe(Mountain mountain) {
+		return mountain.getId() + " " + mountain.getName() + " " + mountain.getAltitude() + " " + mountain.getRange()
+				+ " " + mountain.getCountry() + " " + mountain.getIsNorthern() + " " + mountain.getLatitude()
+				+ " " + mountain.getLongitude();
+	}
+
+	@Test
+	void roundTripsEveryField() {
+		List<Mountain> mountains = new ArrayList<>();
+		mountains.add(new Mountain("Huascarán", 6768, "Cordillera Blanca", "Perú", false));
+		mountains.add(new Mountain("Lac Assal", -155, "Afar", "Djibouti", true));
+		mountains.add(new Mountain(null, 0, null, null, true));
+		mountains.get(0).setLatitude(-9.1219);
+		mountains.get(0).setLongitude(-77.6042);
+		mountains.get(1).setLongitude(42.4167);
+		for (int i = 0; i < 1_000; i++) {
+			mountains.add(new Mountain("Peak" + i, i * 37, "Range" + (i % 7), "Country" + (i % 5), i % 2 == 0));
+			if (i % 3 == 0) {
+				mountains.get(mountains.size() - 1).setLatitude(i / 12.0);
+				mountains.get(mountains.size() - 1).setLongitude(-i / 6.0);
+			}
+		}
+		for (int i = 0; i < mountains.size(); i++) {
+			mountains.get(i).setId(i == 0 ? Integer.MAX_VALUE : i * 65_537);
+		}
+
+		List<Mountain> decoded = MountainCodec.decode(MountainCodec.encode(mountains));
+		assertEquals(mountains.stream().map(MountainCodecTests::describe).toList(),
+				decoded.stream().map(MountainCodecTests::describe).toList());
+		assertEquals(List.of(), MountainCodec.decode(MountainCodec.encode(List.of())));
+	}
+
+	@Test
+	void rejectsTruncatedInput() {
+		byte[] bytes = MountainCodec.encode(List.of(new Mountain("Makalu", 8485, "Himalayas", "Nepal", true)));
+		for (int length = 0; length < bytes.length; length++) {
+			byte[] truncated = Arrays.copyOf(bytes, length);
+			assertThrows(IllegalArgumentException.class, () -> MountainCodec.decode(truncated));
+		}
+	}
+
+	@Test
+	void decodesAStreamOfMessagesAcrossShortReads() {
+		List<Mountain> mountains = new ArrayList<>();
+		ByteArrayOutputStream stream = new ByteArrayOutputStream();
+		for (int i = 0; i < 1_000; i++) {
+			Mountain mountain = new Mountain("Peak" + i + "é".repeat(i % 3), i - 50, "Range" + (i % 7), "Country" + (i % 5),
+					i % 2 == 0);
+			mountain.setId(i * 300);
+			mountains.add(mountain);
+		}
+		for (int from = 0; from < mountains.size(); from += 300) {
+			stream.writeBytes(MountainCodec.encode(mountains.subList(from, Math.min(from + 300, mountains.size()))));
+		}
+		stream.writeBytes(MountainCodec.encode(List.of()));
+		byte[] bytes = stream.toByteArray();
+
+		// A byte at a time, so every read crosses a buffer refill
+		InputStream trickle = new FilterInputStream(new ByteArrayInputStream(bytes)) {
+			@Override
+			public int read(byte[] buffer, int offset, int length) throws IOException {
+				return super.read(buffer, offset, Math.min(length, 1));
+			}
+		};
+		List<Mountain> decoded = new ArrayList<>();
+		MountainCodec.decodeStream(trickle).forEachRemaining(decoded::add);
+		assertEquals(mountains.stream().map(MountainCodecTests::describe).toList(),
+				decoded.stream().map(MountainCodecTests::describe).toList());
+
+		Iterator<Mountain> truncated = MountainCodec.decodeStream(
+				new ByteArrayInputStream(Arrays.copyOf(bytes, bytes.length / 2)));
+		assertThrows(IllegalArgumentException.class, () -> truncated.forEachRemaining(mountain -> { }));
+	}
+
+	@Test
+	void capsTheStringsOneStreamedMessageCanReferBackTo() {
+		List<Mountain> mountains = new ArrayList<>();
+		for (int i = 0; i < 20_000; i++) {
+			mountains.add(new Mountain("Peak" + i, i, "Range" + "-".repeat(50) + i, "Country", true));
+		}
+		Iterator<Mountain> whole = MountainCodec.decodeStream(new ByteArrayInputStream(MountainCodec.encode(mountains)));
+		assertThrows(IllegalArgumentException.class, () -> whole.forEachRemaining(mountain -> { }));
+
+		ByteArrayOutputStream stream = new ByteArrayOutputStream();
+		for (int from = 0; from < mountains.size(); from += 1_000) {
+			stream.writeBytes(MountainCodec.encode(mountains.subList(from, from + 1_000)));
+		}
+		List<Mountain> decoded = new ArrayList<>();
+		MountainCodec.decodeStream(new ByteArrayInputStream(stream.toByteArray())).forEachRemaining(decoded::add);
+		assertEquals(mountains.size(), decoded.size());
+	}
+
+}
@@ -0,0 +1,174 @@
+package com.example.MountainServer;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.MediaType;
+import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.MvcResult;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.asyncDispatch;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.post;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.put;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.content;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.header;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.jsonPath;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.request;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+
+@SpringBootTest(properties = {"mountain.data.dir=", "mountain.wal.mode=off", "mountain.snapshot.interval=0"})
+@AutoConfigureMockMvc
+class MountainControllerTests {
+
+	@Autowired
+	private MockMvc mvc;
+
+	@Autowired
+	private MountainService service;
+
+	/**
+	 * Adds mountains through the service, each test in a country of its own
+	 */
+	private List<Mountain> add(String country, int count) {
+		List<Mountain> mountains = new ArrayList<>();
+		for (int i = 0; i < count; i++) {
+			mountains.add(new Mountain(country + "Peak" + i, 1_000 + i, "Range", country, true));
+		}
+		assertTrue(service.addMountains(mountains));
+		MountainQuery query = new MountainQuery();
+		query.setCountry(country);
+		return service.find(query);
+	}
+
+	private static String json(String name, String country) {
+		return "{\"name\":\"" + name + "\",\"altitude\":100,\"range\":\"Range\",\"country\":\"" + country
+				+ "\",\"northern\":true}";
+	}
+
+	@Test
+	void answersNotModifiedUntilTheDataChanges() throws Exception {
+		add("ETagLand", 2);
+		String eTag = mvc.perform(get("/mountains").param("country", "ETagLand"))
+				.andExpect(status().isOk())
+				.andExpect(jsonPath("$.length()").value(2))
+				.andReturn().getResponse().getHeader(HttpHeaders.ETAG);
+
+		mvc.perform(get("/mountains").param("country", "ETagLand").header(HttpHeaders.IF_NONE_MATCH, eTag))
+				.andExpect(status().isNotModified())
+				.andExpect(header().string(HttpHeaders.ETAG, eTag))
+				.andExpect(content().string(""));
+		mvc.perform(get("/mountains").param("limit", "1").header(HttpHeaders.IF_NONE_MATCH, "W/" + eTag))
+				.andExpect(status().isNotModified());
+
+		mvc.perform(post("/").contentType(MediaType.APPLICATION_JSON).content("[" + json("Later", "ETagLand") + "]"))
+				.andExpect(status().isOk());
+		String changed = mvc.perform(get("/mountains").param("country", "ETagLand").header(HttpHeaders.IF_NONE_MATCH, eTag))
+				.andExpect(status().isOk())
+				.andExpect(jsonPath("$.length()").value(3))
+				.andReturn().getResponse().getHeader(HttpHeaders.ETAG);
+		assertNotEquals(eTag, changed);
+	}
+
+	@Test
+	void rejectsABadCursorOrLimit() throws Exception {
+		List<Mountain> mountains = add("CursorLand", 3);
+		String next = mvc.perform(get("/mountains").param("country", "CursorLand").param("limit", "2"))
+				.andExpect(status().isOk())
+				.andExpect(jsonPath("$.length()").value(2))
+				.andReturn().getResponse().getHeader(MountainController.NEXT_CURSOR_HEADER);
+		mvc.perform(get("/mountains").param("country", "CursorLand").param("cursor", next))
+				.andExpect(status().isOk())
+				.andExpect(jsonPath("$[0].id").value(mountains.get(2).getId()));
+
+		mvc.perform(get("/mountains").param("cursor", "not a cursor")).andExpect(status().isBadRequest());
+		mvc.perform(get("/mountains").param("cursor", next).param("sort", "-altitude"))
+				.andExpect(status().isBadRequest());
+		mvc.perform(get("/mountains").param("limit", "0")).andExpect(status().isBadRequest());
+		mvc.perform(get("/mountains").param("cursor", "not a cursor").accept(MountainController.NDJSON))
+				.andExpect(status().isBadRequest());
+		// A sorted stream is looked up whole, so it has to be limited
+		mvc.perform(get("/mountains").param("sort", "-altitude").accept(MountainController.NDJSON))
+				.andExpect(status().isBadRequest());
+	}
+
+	@Test
+	void streamsNdjsonOnlyWhenAskedFor() throws Exception {
+		List<Mountain> mountains = add("StreamLand", 3);
+		MvcResult started = mvc.perform(get("/mountains").param("country", "StreamLand")
+						.accept(MountainController.NDJSON))
+				.andExpect(request().asyncStarted())
+				.andReturn();
+		String body = mvc.perform(asyncDispatch(started))
+				.andExpect(status().isOk())
+				.andExpect(content().contentType(MountainController.NDJSON))
+				.andExpect(header().exists(HttpHeaders.ETAG))
+				.andReturn().getResponse().getContentAsString();
+		List<String> lines = body.lines().toList();
+		assertEquals(3, lines.size());
+		for (int i = 0; i < lines.size(); i++) {
+			assertTrue(lines.get(i).startsWith("{\"id\":" + mountains.get(i).getId() + ","), lines.get(i));
+		}
+
+		mvc.perform(get("/mountains").param("country", "StreamLand").accept(MediaType.APPLICATION_JSON))
+				.andExpect(status().isOk())
+				.andExpect(content().contentType(MediaType.APPLICATION_JSON))
+				.andExpect(jsonPath("$.length()").value(3));
+	}
+
+	@Test
+	void reportsHowFarABrokenIngestGot() throws Exception {
+		add("IngestLand", 1);
+		String lines = json("IngestLandPeak0", "IngestLand") + "\n"
+				+ json("Fresh1", "IngestLand") + "\n"
+				+ json("Fresh2", "IngestLand") + "\n"
+				+ json("Fresh1", "IngestLand") + "\n";
+		mvc.perform(post("/mountains/ingest").contentType(MountainController.NDJSON).content(lines))
+				.andExpect(status().isOk())
+				.andExpect(jsonPath("$.accepted").value(2))
+				.andExpect(jsonPath("$.duplicates").value(2));
+
+		mvc.perform(post("/mountains/ingest").contentType(MountainController.NDJSON)
+						.content(json("Fresh3", "IngestLand") + "\n{\"name\":\"Broken"))
+				.andExpect(status().isBadRequest())
+				.andExpect(jsonPath("$.accepted").value(1))
+				.andExpect(jsonPath("$.duplicates").value(0));
+		MountainQuery query = new MountainQuery();
+		query.setCountry("IngestLand");
+		assertEquals(4, service.find(query).size());
+	}
+
+	@Test
+	void reportsEachMountainOfABatch() throws Exception {
+		List<Mountain> mountains = add("BatchLand", 2);
+		int first = mountains.get(0).getId();
+		int second = mountains.get(1).getId();
+		int missing = Integer.MAX_VALUE - 1;
+		String updates = "[" + json("Renamed", "BatchLand").replace("{", "{\"id\":" + first + ",") + ","
+				+ json("Nowhere", "BatchLand").replace("{", "{\"id\":" + missing + ",") + "]";
+		mvc.perform(put("/mountains/batch/update").contentType(MediaType.APPLICATION_JSON).content(updates))
+				.andExpect(status().isOk())
+				.andExpect(content().json("[{\"id\":" + first + ",\"status\":200},"
+						+ "{\"id\":" + missing + ",\"status\":404}]", true));
+		assertEquals("Renamed", service.getById(first).get(0).getName());
+
+		mvc.perform(put("/mountains/batch/delete").contentType(MediaType.APPLICATION_JSON)
+						.content("[" + missing + "," + second + "," + second + "]"))
+				.andExpect(status().isOk())
+				.andExpect(content().json("[{\"id\":" + missing + ",\"status\":404},"
+						+ "{\"id\":" + second + ",\"status\":200},{\"id\":" + second + ",\"status\":404}]", true));
+		assertEquals(List.of(), service.getById(second));
+
+		mvc.perform(put("/mountains/batch/update").contentType(MediaType.APPLICATION_JSON).content("[null]"))
+				.andExpect(status().isBadRequest());
+	}
+
+}
@@ -0,0 +1,83 @@
+package com.example.MountainServer;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+class MountainJsonTests {
+
+	private static final ObjectMapper MAPPER = new ObjectMapper();
+
+	private static List<Mountain> testData() {
+		List<Mountain> mountains = new ArrayList<>();
+		mountains.add(new Mountain("Huascarán", 6768, "Cordillera \"Blanca\"", "Perú", false));
+		mountains.add(new Mountain("Lac Assal\n", -155, null, "Djibouti", true));
+		mountains.get(0).setLatitude(-9.1219);
+		mountains.get(0).setLongitude(-77.6042);
+		mountains.get(1).setLatitude(11.65);
+		for (int i = 0; i < 2_000; i++) {
+			mountains.add(new Mountain("Peak" + i, i * 37, "Range" + (i % 7), "Country" + (i % 5), i % 2 == 0));
+		}
+		for (int i = 0; i < mountains.size(); i++) {
+			mountains.get(i).setId(i == 0 ? Integer.MAX_VALUE : i * 9);
+		}
+		return mountains;
+	}
+
+	@Test
+	void writesWhatJacksonWrites() throws IOException {
+		List<Mountain> mountains = testData();
+		ByteArrayOutputStream array = new ByteArrayOutputStream();
+		MountainJson.writeArray(mountains, array);
+		assertEquals(MAPPER.writeValueAsString(mountains), array.toString(StandardCharsets.UTF_8));
+
+		ByteArrayOutputStream lines = new ByteArrayOutputStream();
+		MountainJson.writeLines(mountains::forEach, lines);
+		StringBuilder expected = new StringBuilder();
+		for (Mountain mountain : mountains) {
+			expected.append(MAPPER.writeValueAsString(mountain)).append('\n');
+		}
+		assertEquals(expected.toString(), lines.toString(StandardCharsets.UTF_8));
+	}
+
+	@Test
+	void dropsTheFragmentWhenAFieldChanges() throws IOException {
+		Mountain mountain = new Mountain("Snowdon", 1085, "Snowdonia", "Wales", true);
+		mountain.jsonFields();
+		mountain.setName("YrWyddfa");
+		mountain.setId(7);
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		MountainJson.writeArray(List.of(mountain), out);
+		assertEquals(MAPPER.writeValueAsString(List.of(mountain)), out.toString(StandardCharsets.UTF_8));
+	}
+
+	@Test
+	void readsBackTheLinesItWrites() throws IOException {
+		List<Mountain> mountains = testData();
+		ByteArrayOutputStream lines = new ByteArrayOutputStream();
+		MountainJson.writeLines(mountains::forEach, lines);
+		List<Mountain> read = new ArrayList<>();
+		MountainJson.readLines(new ByteArrayInputStream(lines.toByteArray())).forEachRemaining(read::add);
+		assertEquals(MAPPER.writeValueAsString(mountains), MAPPER.writeValueAsString(read));
+
+		byte[] broken = "{\"name\":\"Snowdon\",\"extra\":1}\n{\"name\":".getBytes(StandardCharsets.UTF_8);
+		Iterator<Mountain> partial = MountainJson.readLines(new ByteArrayInputStream(broken));
+		assertEquals("Snowdon", partial.next().getName());
+		assertThrows(IllegalArgumentException.class, partial::hasNext);
+
+		byte[] offTheGlobe = "{\"name\":\"Nowhere\",\"latitude\":91}".getBytes(StandardCharsets.UTF_8);
+		assertThrows(IllegalArgumentException.class,
+				() -> MountainJson.readLines(new ByteArrayInputStream(offTheGlobe)).hasNext());
+	}
+
+}
@@ -0,0 +1,121 @@
+package com.example.MountainServer;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class MountainServiceTests {
+
+	@Test
+	void streamsTheSameMountainsAsFindAcrossChunks() {
+		MountainService service = MountainStoreConfiguration.mountainService(new IndexedMountainStore(),
+				MountainStoreListener.NONE);
+		List<Mountain> batch = new ArrayList<>();
+		for (int i = 0; i < 5_000; i++) {
+			batch.add(new Mountain("Peak" + i, i, "Range" + (i % 7), "Country" + (i % 2), i % 3 == 0));
+		}
+		assertTrue(service.addMountains(batch));
+
+		MountainQuery query = new MountainQuery();
+		query.setCountry("Country1");
+		List<Mountain> streamed = new ArrayList<>();
+		service.stream(query, streamed::add);
+		assertEquals(service.find(query), streamed);
+
+		query.setAfterId(streamed.get(10).getId());
+		query.setLimit(1_500);
+		List<Mountain> resumed = new ArrayList<>();
+		service.stream(query, resumed::add);
+		assertEquals(streamed.subList(11, 1_511), resumed);
+		assertEquals(1_500, query.getLimit());
+	}
+
+	@Test
+	void onlyStreamsASortedQueryWithALimit() {
+		MountainService service = MountainStoreConfiguration.mountainService(new IndexedMountainStore(),
+				MountainStoreListener.NONE);
+		List<Mountain> batch = new ArrayList<>();
+		for (int i = 0; i < 100; i++) {
+			batch.add(new Mountain("Peak" + i, (i * 37) % 100, "Range", "Country", true));
+		}
+		assertTrue(service.addMountains(batch));
+
+		MountainQuery query = new MountainQuery();
+		query.setSort(MountainQuery.Sort.ALTITUDE_DESC);
+		assertThrows(IllegalArgumentException.class, () -> service.stream(query, mountain -> { }));
+
+		query.setLimit(3);
+		List<Mountain> streamed = new ArrayList<>();
+		service.stream(query, streamed::add);
+		assertEquals(List.of(99, 98, 97), streamed.stream().map(Mountain::getAltitude).toList());
+	}
+
+	@Test
+	void versionOnlyMovesWhenTheDataChanges() {
+		MountainService service = MountainStoreConfiguration.mountainService(new IndexedMountainStore(),
+				MountainStoreListener.NONE);
+		long start = service.version();
+		assertTrue(service.addMountains(List.of(new Mountain("Peak", 100, "Range", "Country", true))));
+		long added = service.version();
+		assertTrue(added > start);
+
+		service.getAllMountains();
+		assertFalse(service.addMountains(List.of(new Mountain("Peak", 100, "Range", "Country", true))));
+		assertFalse(service.updateMountain(12_345, new Mountain("Other", 1, "Range", "Country", true)));
+		assertFalse(service.deleteMountain(12_345));
+		assertEquals(added, service.version());
+
+		int id = service.getAllMountains().get(0).getId();
+		assertTrue(service.updateMountain(id, new Mountain("Peak", 200, "Range", "Country", true)));
+		assertTrue(service.version() > added);
+	}
+
+	@Test
+	void ingestsInChunksSkippingDuplicates() {
+		MountainService service = MountainStoreConfiguration.mountainService(new IndexedMountainStore(),
+				MountainStoreListener.NONE);
+		assertTrue(service.addMountains(List.of(new Mountain("Peak3", 3, "Range", "Country", true))));
+		List<Mountain> upload = new ArrayList<>();
+		for (int i = 0; i < 2_500; i++) {
+			// Every tenth repeats the one before it, across chunk boundaries too
+			int peak = i % 10 == 9 ? i - 1 : i;
+			upload.add(new Mountain("Peak" + peak, peak, "Range", "Country", true));
+		}
+		IngestReport report = new IngestReport();
+		service.ingest(upload.iterator(), 100, report);
+		assertEquals(250 + 1, report.getDuplicates());
+		assertEquals(2_500 - 250 - 1, report.getAccepted());
+		assertEquals(report.getAccepted() + 1, service.getAllMountains().size());
+
+		// What was read before a failure is still added
+		Iterator<Mountain> failing = new Iterator<>() {
+			private int count;
+
+			@Override
+			public boolean hasNext() {
+				if (count == 150) {
+					throw new IllegalArgumentException("Broken upload");
+				}
+				return true;
+			}
+
+			@Override
+			public Mountain next() {
+				count++;
+				return new Mountain("Other" + count, count, "Range", "Country", true);
+			}
+		};
+		IngestReport failed = new IngestReport();
+		assertThrows(IllegalArgumentException.class, () -> service.ingest(failing, 100, failed));
+		assertEquals(150, failed.getAccepted());
+		assertEquals(report.getAccepted() + 151, service.getAllMountains().size());
+	}
+
+}
@@ -0,0 +1,104 @@
+package com.example.MountainServer;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.TreeMap;
+import java.util.function.Function;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class MountainStatisticsTests {
+
+	@Test
+	void movesTheExtremesOnlyWhenTheLastMountainAtOneGoes() {
+		MountainStatistics stats = new MountainStatistics();
+		Mountain low = withId(new Mountain("Low", 100, "Hills", "Wales", true), 1);
+		Mountain high = withId(new Mountain("High", 900, "Hills", "Wales", true), 2);
+		Mountain alsoHigh = withId(new Mountain("Also High", 900, "Hills", "Wales", true), 3);
+		Mountain middle = withId(new Mountain("Middle", 500, "Hills", "Wales", true), 4);
+		stats.added(List.of(low, high, alsoHigh, middle));
+		assertEquals(List.of(new GroupStatistics("Wales", 4, 100, 900, 600)),
+				stats.by(MountainStatistics.Grouping.COUNTRY));
+
+		stats.deleted(high);
+		assertEquals(List.of(new GroupStatistics("Wales", 3, 100, 900, 500)),
+				stats.by(MountainStatistics.Grouping.COUNTRY));
+		stats.deleted(alsoHigh);
+		stats.updated(low, withId(new Mountain("Low", 200, "Hills", "Wales", true), 1));
+		assertEquals(List.of(new GroupStatistics("Wales", 2, 200, 500, 350)),
+				stats.by(MountainStatistics.Grouping.COUNTRY));
+
+		stats.updated(middle, withId(new Mountain("Middle", 500, "Andes", "Chile", false), 4));
+		assertEquals(List.of(new GroupStatistics("Chile", 1, 500, 500, 500), new GroupStatistics("Wales", 1, 200, 200, 200)),
+				stats.by(MountainStatistics.Grouping.COUNTRY));
+		assertEquals(List.of(new GroupStatistics("northern", 1, 200, 200, 200), new GroupStatistics("southern", 1, 500, 500, 500)),
+				stats.by(MountainStatistics.Grouping.HEMISPHERE));
+		assertThrows(IllegalArgumentException.class, () -> MountainStatistics.Grouping.parse("altitude"));
+	}
+
+	@Test
+	void matchesAFullScanThroughAddsUpdatesAndDeletes() {
+		MountainService service = MountainStoreConfiguration.mountainService(new ShardedMountainStore(4),
+				MountainStoreListener.NONE);
+		Random random = new Random(23);
+		List<Mountain> batch = new ArrayList<>();
+		for (int i = 0; i < 2_000; i++) {
+			batch.add(randomMountain(random, i));
+		}
+		assertTrue(service.addMountains(batch));
+
+		for (int i = 0; i < 3_000; i++) {
+			List<Mountain> all = service.getAllMountains();
+			int id = all.get(random.nextInt(all.size())).getId();
+			if (random.nextBoolean()) {
+				assertTrue(service.updateMountain(id, randomMountain(random, 2_000 + i)));
+			} else {
+				assertTrue(service.deleteMountain(id));
+				assertTrue(service.addMountains(List.of(randomMountain(random, 2_000 + i))));
+			}
+		}
+
+		List<Mountain> all = service.getAllMountains();
+		assertEquals(scan(all, Mountain::getCountry), service.getStatistics(MountainStatistics.Grouping.COUNTRY));
+		assertEquals(scan(all, Mountain::getRange), service.getStatistics(MountainStatistics.Grouping.RANGE));
+		assertEquals(scan(all, m -> m.getIsNorthern() ? "northern" : "southern"),
+				service.getStatistics(MountainStatistics.Grouping.HEMISPHERE));
+	}
+
+	private static Mountain randomMountain(Random random, int i) {
+		return new Mountain("Peak " + i, random.nextInt(9_000), "Range" + random.nextInt(30),
+				"Country" + random.nextInt(12), random.nextBoolean());
+	}
+
+	private static List<GroupStatistics> scan(List<Mountain> mountains, Function<Mountain, String> groupOf) {
+		Map<String, List<Mountain>> groups = new TreeMap<>();
+		for (Mountain mountain : mountains) {
+			groups.computeIfAbsent(groupOf.apply(mountain), g -> new ArrayList<>()).add(mountain);
+		}
+		List<GroupStatistics> statistics = new ArrayList<>();
+		for (Map.Entry<String, List<Mountain>> group : groups.entrySet()) {
+			List<Mountain> members = group.getValue();
+			long total = 0;
+			int min = Integer.MAX_VALUE;
+			int max = Integer.MIN_VALUE;
+			for (Mountain mountain : members) {
+				total += mountain.getAltitude();
+				min = Math.min(min, mountain.getAltitude());
+				max = Math.max(max, mountain.getAltitude());
+			}
+			statistics.add(new GroupStatistics(group.getKey(), members.size(), min, max, (double) total / members.size()));
+		}
+		return statistics;
+	}
+
+	private static Mountain withId(Mountain mountain, int id) {
+		mountain.setId(id);
+		return mountain;
+	}
+}
@@ -0,0 +1,537 @@
+package com.example.MountainServer;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.MethodSource;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class MountainStoreTests {
+
+	static Stream<Supplier<MountainStore>> stores() {
+		return Stream.of(IndexedMountainStore::new, SnapshotMountainStore::new, () -> new ShardedMountainStore(4),
+				ColumnarMountainStore::new, () -> new ColumnarMountainStore(new OffHeapMountainColumns(), new IdAllocator()));
+	}
+
+	private static List<Mountain> testData() {
+		List<Mountain> mountains = new ArrayList<>();
+		mountains.add(new Mountain("YrWyddfa", 1085, "Eryri", "Cymru", true));
+		mountains.add(new Mountain("Snowdon", 1085, "Snowdonia", "Wales", true));
+		mountains.add(new Mountain("Aconcagua", 6961, "Andes", "Argentina", false));
+		mountains.add(new Mountain("Annapurna", 8091, "Himalayas", "Nepal", true));
+		mountains.add(new Mountain("Makalu", 8485, "Himalayas", "Nepal", true));
+		mountains.add(new Mountain("Huascarán", 6768, "Andes", "Peru", false));
+		mountains.add(new Mountain("Antofalla", 6409, "Andes", "Argentina", false));
+		return mountains;
+	}
+
+	private static List<String> names(List<Mountain> mountains) {
+		return mountains.stream().map(Mountain::getName).toList();
+	}
+
+	private static MountainQuery query(String country, String range, Boolean northern, Integer minAltitude) {
+		MountainQuery query = new MountainQuery();
+		query.setCountry(country);
+		query.setRange(range);
+		query.setNorthern(northern);
+		query.setMinAltitude(minAltitude);
+		return query;
+	}
+
+	@ParameterizedTest
+	@MethodSource("stores")
+	void answersQueriesInInsertionOrder(Supplier<MountainStore> supplier) {
+		MountainStore store = supplier.get();
+		assertTrue(store.addAll(testData()));
+
+		assertEquals(names(testData()), names(store.getAll()));
+		assertEquals(List.of("Aconcagua", "Antofalla"), names(store.find(query("Argentina", null, null, null))));
+		assertEquals(List.of("Annapurna", "Makalu"), names(store.find(query("Nepal", "Himalayas", null, null))));
+		assertEquals(List.of("Aconcagua", "Huascarán", "Antofalla"), names(store.find(query(null, null, false, null))));
+		assertEquals(List.of("Makalu"), names(store.find(query("Nepal", null, null, 8400))));
+		assertEquals(List.of("Aconcagua", "Huascarán"), names(store.find(query(null, "Andes", false, 6500))));
+		assertEquals(List.of(), names(store.find(query("lemon", null, null, null))));
+	}
+
+	@ParameterizedTest
+	@MethodSource("stores")
+	void rejectsDuplicatesAndKeepsIdsOnUpdate(Supplier<MountainStore> supplier) {
+		MountainStore store = supplier.get();
+		assertTrue(store.addAll(testData()));
+		assertFalse(store.addAll(List.of(new Mountain("Makalu", 1, "Himalayas", "Nepal", true))));
+		assertEquals(7, store.getAll().size());
+
+		int id = store.find(query("Nepal", "Himalayas", null, null)).get(0).getId();
+		assertTrue(store.update(id, new Mountain("Annapurna", 8091, "Annapurna", "Nepal", true)));
+		assertEquals("Annapurna", store.get(id).getRange());
+		assertEquals(List.of("Makalu"), names(store.find(query("Nepal", "Himalayas", null, null))));
+		assertEquals(List.of("Annapurna", "Makalu"), names(store.find(query("Nepal", null, true, null))));
+
+		assertTrue(store.delete(id));
+		assertFalse(store.delete(id));
+		assertNull(store.get(id));
+		assertEquals(List.of("Makalu"), names(store.find(query("Nepal", null, null, null))));
+	}
+
+	@ParameterizedTest
+	@MethodSource("stores")
+	void keepsLocationsThroughUpdates(Supplier<MountainStore> supplier) {
+		MountainStore store = supplier.get();
+		List<Mountain> mountains = testData();
+		mountains.get(0).setLatitude(53.0685);
+		mountains.get(0).setLongitude(-4.0763);
+		mountains.get(1).setLatitude(53.0685);
+		assertTrue(store.addAll(mountains));
+
+		List<Mountain> all = store.getAll();
+		assertEquals(53.0685, all.get(0).getLatitude());
+		assertEquals(-4.0763, all.get(0).getLongitude());
+		assertTrue(all.get(0).hasLocation());
+		assertFalse(all.get(1).hasLocation());
+		assertNull(all.get(2).getLatitude());
+
+		Mountain moved = new Mountain("Aconcagua", 6961, "Andes", "Argentina", false);
+		moved.setLatitude(-32.6532);
+		moved.setLongitude(-70.0109);
+		assertTrue(store.update(all.get(2).getId(), moved));
+		assertTrue(store.update(all.get(0).getId(), new Mountain("YrWyddfa", 1085, "Eryri", "Cymru", true)));
+		assertEquals(-70.0109, store.get(all.get(2).getId()).getLongitude());
+		assertFalse(store.get(all.get(0).getId()).hasLocation());
+	}
+
+	@ParameterizedTest
+	@MethodSource("stores")
+	void keepsIdsWhenAnUpdateMovesCountry(Supplier<MountainStore> supplier) {
+		MountainStore store = supplier.get();
+		assertTrue(store.addAll(testData()));
+		List<Integer> ids = store.getAll().stream().map(Mountain::getId).toList();
+		int id = ids.get(3);
+
+		// Enough countries that a sharded store moves it between shards, there and back
+		for (String country : List.of("Tibet", "Chile", "India", "Bhutan", "China", "Nepal")) {
+			assertTrue(store.update(id, new Mountain("Annapurna", 8091, "Himalayas", country, true)));
+			assertEquals(country, store.get(id).getCountry());
+			assertEquals(id, store.get(id).getId());
+			assertEquals(ids, store.getAll().stream().map(Mountain::getId).toList());
+			assertEquals(id, store.find(query(country, "Himalayas", null, null)).get(0).getId());
+			MountainQuery after = query(null, null, true, null);
+			after.setAfterId(ids.get(1));
+			assertEquals(List.of("Annapurna", "Makalu"), names(store.find(after)));
+		}
+	}
+
+	@ParameterizedTest
+	@MethodSource("stores")
+	void neverLosesAMountainWhileItMovesCountry(Supplier<MountainStore> supplier) throws InterruptedException {
+		MountainStore store = supplier.get();
+		assertTrue(store.addAll(testData()));
+		int id = store.getAll().get(3).getId();
+		List<String> countries = List.of("Tibet", "Chile", "India", "Bhutan", "China", "Nepal", "Peru", "Wales");
+		AtomicInteger misses = new AtomicInteger();
+
+		// Writers keep moving it between shards while a reader keeps looking it up
+		List<Thread> threads = new ArrayList<>();
+		for (int t = 0; t < 3; t++) {
+			int offset = t;
+			threads.add(Thread.ofPlatform().start(() -> {
+				for (int i = 0; i < 2_000; i++) {
+					Mountain mountain = new Mountain("Annapurna", 8091, "Himalayas",
+							countries.get((i + offset) % countries.size()), true);
+					mountain.setId(id);
+					boolean updated = i % 2 == 0 ? store.update(id, mountain)
+							: store.updateAll(List.of(mountain))[0];
+					if (!updated) {
+						misses.incrementAndGet();
+					}
+				}
+			}));
+		}
+		threads.add(Thread.ofPlatform().start(() -> {
+			for (int i = 0; i < 20_000; i++) {
+				if (store.get(id) == null) {
+					misses.incrementAndGet();
+				}
+			}
+		}));
+		for (Thread thread : threads) {
+			thread.join();
+		}
+		assertEquals(0, misses.get());
+		assertTrue(store.delete(id));
+		assertNull(store.get(id));
+	}
+
+	@ParameterizedTest
+	@MethodSource("stores")
+	void staysConsistentAcrossManyDeletes(Supplier<MountainStore> supplier) {
+		MountainStore store = supplier.get();
+		List<Mountain> batch = new ArrayList<>();
+		for (int i = 0; i < 3_000; i++) {
+			batch.add(new Mountain("Peak" + i, i, "Range" + (i % 7), "Country" + (i % 5), i % 2 == 0));
+		}
+		assertTrue(store.addAll(batch));
+		List<Integer> ids = store.getAll().stream().map(Mountain::getId).toList();
+		List<String> kept = new ArrayList<>();
+		for (int i = 0; i < ids.size(); i++) {
+			if (i % 3 == 0) {
+				kept.add("Peak" + i);
+			} else {
+				assertTrue(store.delete(ids.get(i)));
+			}
+		}
+		assertEquals(kept, names(store.getAll()));
+		assertEquals(kept.stream().filter(name -> Integer.parseInt(name.substring(4)) % 5 == 2).toList(),
+				names(store.find(query("Country2", null, null, null))));
+		assertFalse(store.addAll(List.of(new Mountain("Peak0", 0, "Range0", "Country0", true))));
+		assertTrue(store.addAll(List.of(new Mountain("Peak1", 1, "Range1", "Country1", false))));
+		assertEquals(kept.size() + 1, store.getAll().size());
+	}
+
+	static Stream<Supplier<MountainColumns>> columns() {
+		return Stream.of(HeapMountainColumns::new, OffHeapMountainColumns::new);
+	}
+
+	@ParameterizedTest
+	@MethodSource("columns")
+	void renamesDontGrowTheNamesForever(Supplier<MountainColumns> supplier) {
+		MountainColumns columns = supplier.get();
+		try (ColumnarMountainStore store = new ColumnarMountainStore(columns, new IdAllocator())) {
+			List<Mountain> batch = new ArrayList<>();
+			for (int i = 0; i < 100; i++) {
+				batch.add(new Mountain("Peak" + i, i, "Range", "Country", true));
+			}
+			assertTrue(store.addAll(batch));
+			List<Integer> ids = store.getAll().stream().map(Mountain::getId).toList();
+
+			// Names that fit where the old one was, and ones that don't
+			for (int round = 0; round < 400; round++) {
+				String suffix = round % 2 == 0 ? "" : " renamed " + round;
+				for (int i = 0; i < ids.size(); i++) {
+					assertTrue(store.update(ids.get(i), new Mountain("Peak" + i + suffix, i, "Range", "Country", true)));
+				}
+			}
+			assertTrue(columns.nameBytes() < 200_000, "names take " + columns.nameBytes() + " bytes");
+			assertEquals("Peak7 renamed 399", store.get(ids.get(7)).getName());
+			assertFalse(store.addAll(List.of(new Mountain("Peak7 renamed 399", 1, "Range", "Country", true))));
+			assertTrue(store.addAll(List.of(new Mountain("Peak7", 1, "Range", "Country", true))));
+		}
+	}
+
+	@ParameterizedTest
+	@MethodSource("stores")
+	void pagesAddUpToTheWholeResult(Supplier<MountainStore> supplier) {
+		MountainStore store = supplier.get();
+		List<Mountain> batch = new ArrayList<>();
+		for (int i = 0; i < 1_000; i++) {
+			batch.add(new Mountain("Peak" + i, i, "Range" + (i % 7), "Country" + (i % 5), i % 2 == 0));
+		}
+		assertTrue(store.addAll(batch));
+		for (Mountain mountain : store.getAll()) {
+			if (mountain.getAltitude() % 4 == 1) {
+				assertTrue(store.delete(mountain.getId()));
+			}
+		}
+		List<MountainQuery> queries = List.of(query(null, null, true, null), query("Country3", null, null, null),
+				query("Country1", "Range2", null, null), query(null, null, null, 900));
+		for (MountainQuery whole : queries) {
+			List<Mountain> expected = store.find(whole);
+			for (int limit : new int[] {1, 7, 64, 5_000}) {
+				List<Mountain> paged = new ArrayList<>();
+				int afterId = 0;
+				while (true) {
+					MountainQuery page = query(whole.getCountry(), whole.getRange(), whole.getNorthern(), whole.getMinAltitude());
+					page.setAfterId(afterId);
+					page.setLimit(limit);
+					List<Mountain> mountains = store.find(page);
+					assertTrue(mountains.size() <= limit);
+					paged.addAll(mountains);
+					if (mountains.size() < limit) {
+						break;
+					}
+					afterId = mountains.get(mountains.size() - 1).getId();
+				}
+				assertEquals(names(expected), names(paged));
+			}
+		}
+	}
+
+	@ParameterizedTest
+	@MethodSource("stores")
+	void movesTheVersionOnEveryChange(Supplier<MountainStore> supplier) {
+		MountainStore store = supplier.get();
+		long version = store.version();
+		assertTrue(store.addAll(testData()));
+		assertTrue(store.version() > version);
+
+		version = store.version();
+		assertFalse(store.addAll(testData()));
+		store.find(query("Nepal", null, null, null));
+		assertEquals(version, store.version());
+
+		int id = store.getAll().get(0).getId();
+		assertTrue(store.update(id, new Mountain("YrWyddfa", 1085, "Eryri", "Cymru", false)));
+		assertTrue(store.version() > version);
+		version = store.version();
+		assertTrue(store.delete(id));
+		assertTrue(store.version() > version);
+		version = store.version();
+		assertFalse(store.delete(id));
+		assertEquals(version, store.version());
+	}
+
+	@ParameterizedTest
+	@MethodSource("stores")
+	void appliesBatchesInOrderWithAResultEach(Supplier<MountainStore> supplier) {
+		MountainStore store = supplier.get();
+		assertTrue(store.addAll(testData()));
+		List<Integer> ids = store.getAll().stream().map(Mountain::getId).toList();
+		List<String> changes = new ArrayList<>();
+		// What the store gives while it tells the listener, which is after the change
+		List<String> seen = new ArrayList<>();
+		store.setListener(new MountainStoreListener() {
+			@Override
+			public void updated(Mountain old, Mountain mountain) {
+				changes.add("updated " + old.getName());
+				Mountain stored = store.get(mountain.getId());
+				seen.add(stored.getName() + " " + stored.getCountry());
+			}
+
+			@Override
+			public void deleted(Mountain old) {
+				changes.add("deleted " + old.getName());
+				seen.add(String.valueOf(store.get(old.getId())));
+			}
+		});
+
+		Mountain annapurna = new Mountain("Annapurna I", 8091, "Himalayas", "Nepal", true);
+		annapurna.setId(ids.get(3));
+		Mountain missing = new Mountain("Nowhere", 1, "None", "Nepal", true);
+		missing.setId(Integer.MAX_VALUE);
+		Mountain huascaran = new Mountain("Huascarán", 6768, "Andes", "Chile", false);
+		huascaran.setId(ids.get(5));
+		long version = store.version();
+		assertArrayEquals(new boolean[] {true, false, true}, store.updateAll(List.of(annapurna, missing, huascaran)));
+		assertTrue(store.version() > version);
+		assertEquals(List.of("Annapurna I", "Makalu"), names(store.find(query("Nepal", null, null, 8000))));
+		assertEquals(List.of("Huascarán"), names(store.find(query("Chile", null, null, null))));
+		assertEquals(List.of(), names(store.find(query("Peru", null, null, null))));
+
+		version = store.version();
+		assertArrayEquals(new boolean[] {true, false, false, true},
+				store.deleteAll(new int[] {ids.get(0), ids.get(0), Integer.MAX_VALUE, ids.get(4)}));
+		assertTrue(store.version() > version);
+		assertEquals(List.of("Snowdon", "Aconcagua", "Annapurna I", "Huascarán", "Antofalla"), names(store.getAll()));
+		assertEquals(List.of("updated Annapurna", "updated Huascarán", "deleted YrWyddfa", "deleted Makalu"), changes);
+		assertEquals(List.of("Annapurna I Nepal", "Huascarán Chile", "null", "null"), seen);
+
+		version = store.version();
+		assertArrayEquals(new boolean[] {false}, store.deleteAll(new int[] {ids.get(0)}));
+		assertArrayEquals(new boolean[0], store.updateAll(List.of()));
+		assertEquals(version, store.version());
+	}
+
+	@ParameterizedTest
+	@MethodSource("stores")
+	void countsAChangeWhoseListenerFails(Supplier<MountainStore> supplier) {
+		MountainStore store = supplier.get();
+		assertTrue(store.addAll(testData()));
+		List<Integer> ids = store.getAll().stream().map(Mountain::getId).toList();
+		// Like the write-ahead log failing to write, ahead of the indexes
+		MountainStoreListener failing = new MountainStoreListener() {
+			@Override
+			public void updated(Mountain old, Mountain mountain) {
+				throw new IllegalStateException("Log is gone");
+			}
+
+			@Override
+			public void deleted(Mountain old) {
+				throw new IllegalStateException("Log is gone");
+			}
+		};
+		List<String> told = new ArrayList<>();
+		store.setListener(MountainStoreListener.of(failing, new MountainStoreListener() {
+			@Override
+			public void updated(Mountain old, Mountain mountain) {
+				told.add("updated " + mountain.getName());
+			}
+
+			@Override
+			public void deleted(Mountain old) {
+				told.add("deleted " + old.getName());
+			}
+		}));
+
+		long version = store.version();
+		assertThrows(IllegalStateException.class,
+				() -> store.update(ids.get(1), new Mountain("Snowdon Summit", 1085, "Snowdonia", "Wales", true)));
+		assertTrue(store.version() > version);
+		assertEquals("Snowdon Summit", store.get(ids.get(1)).getName());
+
+		version = store.version();
+		assertThrows(IllegalStateException.class, () -> store.deleteAll(new int[] {ids.get(0), ids.get(4)}));
+		assertTrue(store.version() > version);
+		assertNull(store.get(ids.get(0)));
+		assertEquals(List.of("updated Snowdon Summit", "deleted YrWyddfa"), told.subList(0, 2));
+	}
+
+	@ParameterizedTest
+	@MethodSource("stores")
+	void addsOnlyTheDistinctMountainsOfABatch(Supplier<MountainStore> supplier) {
+		MountainStore store = supplier.get();
+		assertTrue(store.addAll(testData().subList(0, 3)));
+		List<Mountain> batch = testData();
+		batch.add(new Mountain("Makalu", 1, "Himalayas", "Nepal", true));
+		long version = store.version();
+		assertArrayEquals(new boolean[] {false, false, false, true, true, true, true, false}, store.addDistinct(batch));
+		assertTrue(store.version() > version);
+		assertEquals(names(testData()), names(store.getAll()));
+		assertEquals(8485, store.find(query("Nepal", null, null, 8400)).get(0).getAltitude());
+
+		version = store.version();
+		assertArrayEquals(new boolean[] {false}, store.addDistinct(testData().subList(0, 1)));
+		assertEquals(version, store.version());
+	}
+
+	@ParameterizedTest
+	@MethodSource("stores")
+	void everyCombinationOfFiltersMatchesAFullScan(Supplier<MountainStore> supplier) {
+		MountainStore store = supplier.get();
+		List<Mountain> batch = new ArrayList<>();
+		for (int i = 0; i < 2_000; i++) {
+			batch.add(new Mountain("Peak" + (i % 300), i % 1_000, "Range" + (i % 7), "Country" + (i % 5), i % 3 == 0));
+		}
+		assertTrue(store.addDistinct(batch).length > 0);
+		List<Mountain> all = store.getAll();
+		Random random = new Random(8848);
+		for (int i = 0; i < 500; i++) {
+			MountainQuery query = new MountainQuery();
+			if (random.nextInt(4) == 0) {
+				query.setId(all.get(random.nextInt(all.size())).getId() + random.nextInt(2));
+			}
+			if (random.nextInt(3) == 0) {
+				query.setName("Peak" + random.nextInt(310));
+			}
+			if (random.nextBoolean()) {
+				query.setRange("Range" + random.nextInt(8));
+			}
+			if (random.nextBoolean()) {
+				query.setCountry("Country" + random.nextInt(6));
+			}
+			if (random.nextBoolean()) {
+				query.setNorthern(random.nextBoolean());
+			}
+			if (random.nextBoolean()) {
+				query.setMinAltitude(random.nextInt(1_000));
+			}
+			if (random.nextInt(3) == 0) {
+				query.setMaxAltitude(random.nextInt(1_000));
+			}
+			List<Mountain> expected = all.stream().filter(query::matches).toList();
+			assertEquals(names(expected), names(store.find(query)));
+			assertTrue(store.explain(query).estimatedRows() >= expected.size());
+		}
+	}
+
+	@ParameterizedTest
+	@MethodSource("stores")
+	void sortedQueriesMatchAFullSort(Supplier<MountainStore> supplier) {
+		MountainStore store = supplier.get();
+		List<Mountain> batch = new ArrayList<>();
+		for (int i = 0; i < 2_000; i++) {
+			batch.add(new Mountain("Peak" + (i % 300), i % 400, "Range" + (i % 7), "Country" + (i % 5), i % 3 == 0));
+		}
+		assertTrue(store.addDistinct(batch).length > 0);
+		List<Mountain> all = store.getAll();
+		MountainQuery.Sort[] sorts = MountainQuery.Sort.values();
+		Random random = new Random(6961);
+		for (int i = 0; i < 300; i++) {
+			MountainQuery query = new MountainQuery();
+			query.setSort(sorts[random.nextInt(sorts.length)]);
+			query.setLimit(random.nextInt(4) == 0 ? Integer.MAX_VALUE : 1 + random.nextInt(50));
+			if (random.nextBoolean()) {
+				query.setRange("Range" + random.nextInt(8));
+			}
+			if (random.nextBoolean()) {
+				query.setCountry("Country" + random.nextInt(6));
+			}
+			if (random.nextBoolean()) {
+				query.setNorthern(random.nextBoolean());
+			}
+			if (random.nextBoolean()) {
+				query.setMinAltitude(random.nextInt(400));
+			}
+			List<Mountain> expected = all.stream().filter(query::matches).sorted(query.getSort().comparator())
+					.limit(query.getLimit()).toList();
+			assertEquals(expected, store.find(query));
+		}
+	}
+
+	@Test
+	void plansWithTheMostSelectiveIndex() {
+		IndexedMountainStore store = new IndexedMountainStore();
+		List<Mountain> batch = new ArrayList<>();
+		for (int i = 0; i < 1_000; i++) {
+			batch.add(new Mountain("Peak" + i, i, "Range" + (i % 2), i % 100 == 0 ? "Rare" : "Common", true));
+		}
+		assertTrue(store.addAll(batch));
+
+		MountainQuery query = query("Rare", null, true, null);
+		QueryPlan plan = store.explain(query);
+		assertEquals(QueryPlan.Access.COUNTRY, plan.access());
+		assertEquals(10, plan.estimatedRows());
+		assertEquals(List.of("north"), plan.residual());
+		assertEquals(1_000, plan.considered().get(QueryPlan.Access.HEMISPHERE));
+
+		plan = store.explain(query("Common", "Range1", true, 995));
+		assertEquals(QueryPlan.Access.COUNTRY_ALTITUDE, plan.access());
+		assertEquals(5, plan.estimatedRows());
+		assertEquals(List.of("range", "north"), plan.residual());
+		assertEquals(List.of("Peak995", "Peak997", "Peak999"), names(store.find(query("Common", "Range1", true, 995))));
+
+		query = new MountainQuery();
+		query.setId(store.getAll().get(5).getId());
+		query.setCountry("Rare");
+		assertEquals(QueryPlan.Access.ID, store.explain(query).access());
+		assertEquals(List.of(), store.find(query));
+		assertEquals(QueryPlan.Access.FULL_SCAN, store.explain(new MountainQuery()).access());
+
+		// Walking the country's altitudes down finds the five tallest after about eleven
+		query = query("Common", "Range0", true, null);
+		query.setSort(MountainQuery.Sort.ALTITUDE_DESC);
+		query.setLimit(5);
+		plan = store.explain(query);
+		assertEquals(QueryPlan.Access.COUNTRY_ALTITUDE, plan.access());
+		assertEquals(QueryPlan.Ordering.INDEX, plan.ordering());
+		assertEquals(11, plan.estimatedRows());
+		assertEquals(List.of("Peak998", "Peak996", "Peak994", "Peak992", "Peak990"), names(store.find(query)));
+
+		// One mountain by name is quicker to look up and sort than to walk to
+		query.setName("Peak990");
+		plan = store.explain(query);
+		assertEquals(QueryPlan.Access.IDENTITY, plan.access());
+		assertEquals(QueryPlan.Ordering.TOP_K, plan.ordering());
+		assertEquals(List.of("Peak990"), names(store.find(query)));
+	}
+
+	@Test
+	void pageCursorsRoundTripAndRejectForgeries() {
+		for (int id : new int[] {0, 1, 253, Integer.MAX_VALUE}) {
+			assertEquals(id, PageCursor.decode(PageCursor.encode(id)));
+		}
+		assertThrows(IllegalArgumentException.class, () -> PageCursor.decode("lemon"));
+		assertThrows(IllegalArgumentException.class, () -> PageCursor.decode("!!"));
+	}
+
+}
@@ -0,0 +1,69 @@
+package com.example.MountainServer;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class NameIndexTests {
+
+	@Test
+	void ranksExactThenPrefixThenWordThenTypoMatches() {
+		MountainStore store = new IndexedMountainStore();
+		assertTrue(store.addAll(List.of(
+				new Mountain("Mount Everest", 8849, "Himalayas", "Nepal", true),
+				new Mountain("Everest", 100, "Hills", "Wales", true),
+				new Mountain("Everest Base", 5364, "Himalayas", "Nepal", true),
+				new Mountain("Mönch", 4110, "Alps", "Switzerland", true),
+				new Mountain("Mont-Blanc", 4806, "Alps", "France", true),
+				new Mountain("Mont Blanc du Tacul", 4248, "Alps", "France", true))));
+		NameIndex names = new NameIndex();
+		names.added(store.getAll());
+
+		assertEquals(List.of("Everest", "Everest Base", "Mount Everest"), namesOf(names.search("everest", 10, store)));
+		assertEquals(List.of("Everest", "Everest Base"), namesOf(names.search("EVEREST", 2, store)));
+		assertEquals(List.of("Mönch", "Mont-Blanc", "Mont Blanc du Tacul"), namesOf(names.search("monc", 10, store)));
+		assertEquals(List.of("Mont-Blanc", "Mont Blanc du Tacul"), namesOf(names.search("mont blanc", 10, store)));
+		assertEquals(List.of("Mont Blanc du Tacul"), namesOf(names.search("tacul", 10, store)));
+		assertEquals(List.of("Everest", "Everest Base", "Mount Everest"), namesOf(names.search("everst", 10, store)));
+		assertEquals(List.of(), names.search("  ", 10, store));
+		assertEquals(List.of(), names.search("zz", 10, store));
+	}
+
+	@Test
+	void followsTheStoreThroughAddsUpdatesAndDeletes() {
+		MountainService service = MountainStoreConfiguration.mountainService(new ShardedMountainStore(4),
+				MountainStoreListener.NONE);
+		List<Mountain> batch = new ArrayList<>();
+		for (int i = 0; i < 1_000; i++) {
+			batch.add(new Mountain("Peak " + i, i, "Range" + (i % 7), "Country" + (i % 5), i % 3 == 0));
+		}
+		assertTrue(service.addMountains(batch));
+
+		List<Mountain> found = service.search("peak 99", 11);
+		assertEquals(List.of("Peak 99", "Peak 990", "Peak 991", "Peak 992", "Peak 993", "Peak 994", "Peak 995",
+				"Peak 996", "Peak 997", "Peak 998", "Peak 999"), namesOf(found));
+		assertEquals(service.getById(found.get(0).getId()), found.subList(0, 1));
+
+		Mountain renamed = new Mountain("Summit 99", 99, "Range1", "Country4", true);
+		assertTrue(service.updateMountain(found.get(0).getId(), renamed));
+		assertTrue(service.deleteMountain(found.get(1).getId()));
+		assertEquals(List.of("Peak 991", "Peak 992"), namesOf(service.search("Peak 99", 2)));
+		List<Mountain> summit = service.search("summit", 5);
+		assertEquals(List.of("Summit 99"), namesOf(summit));
+		assertEquals(service.getById(summit.get(0).getId()), summit);
+
+		// Found by name, but the rest comes from the store as it is now
+		Mountain higher = new Mountain("Summit 99", 1_099, "Range1", "Country4", true);
+		assertTrue(service.updateMountain(summit.get(0).getId(), higher));
+		assertEquals(1_099, service.search("summit", 5).get(0).getAltitude());
+	}
+
+	private static List<String> namesOf(List<Mountain> mountains) {
+		return mountains.stream().map(Mountain::getName).toList();
+	}
+
+}
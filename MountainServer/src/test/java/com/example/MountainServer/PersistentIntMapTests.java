@@ -0,0 +1,74 @@
+package com.example.MountainServer;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.TreeMap;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class PersistentIntMapTests {
+
+	private static List<Integer> values(PersistentIntMap<Integer> map) {
+		List<Integer> values = new ArrayList<>();
+		map.forEach(values::add);
+		return values;
+	}
+
+	@Test
+	void matchesTreeMapAndLeavesOldVersionsUnchanged() {
+		PersistentIntMap<Integer> map = PersistentIntMap.empty();
+		TreeMap<Integer, Integer> expected = new TreeMap<>();
+		Random random = new Random(253);
+		PersistentIntMap<Integer> saved = map;
+		Map<Integer, Integer> savedExpected = Map.of();
+		for (int i = 0; i < 100_000; i++) {
+			int key = random.nextBoolean() ? random.nextInt(50_000) : random.nextInt(Integer.MAX_VALUE);
+			if (random.nextInt(3) == 0) {
+				map = map.remove(key);
+				expected.remove(key);
+			} else {
+				map = map.put(key, key);
+				expected.put(key, key);
+			}
+			if (i == 50_000) {
+				saved = map;
+				savedExpected = new TreeMap<>(expected);
+			}
+		}
+		assertEquals(expected.size(), map.size());
+		assertEquals(new ArrayList<>(expected.values()), values(map));
+		assertEquals(new ArrayList<>(savedExpected.values()), values(saved));
+		for (Map.Entry<Integer, Integer> entry : expected.entrySet()) {
+			assertEquals(entry.getValue(), map.get(entry.getKey()));
+		}
+	}
+
+	@Test
+	void forEachFromMatchesTailMapAndStopsEarly() {
+		PersistentIntMap<Integer> map = PersistentIntMap.empty();
+		TreeMap<Integer, Integer> expected = new TreeMap<>();
+		Random random = new Random(8091);
+		for (int i = 0; i < 20_000; i++) {
+			int key = random.nextBoolean() ? random.nextInt(50_000) : random.nextInt(Integer.MAX_VALUE);
+			map = map.put(key, key);
+			expected.put(key, key);
+		}
+		for (int i = 0; i < 50; i++) {
+			int from = i == 0 ? 0 : random.nextBoolean() ? random.nextInt(50_000) : random.nextInt(Integer.MAX_VALUE);
+			List<Integer> visited = new ArrayList<>();
+			assertTrue(map.forEachFrom(from, visited::add));
+			assertEquals(new ArrayList<>(expected.tailMap(from).values()), visited);
+
+			List<Integer> firstFive = new ArrayList<>();
+			boolean finished = map.forEachFrom(from, value -> firstFive.add(value) && firstFive.size() < 5);
+			assertEquals(expected.tailMap(from).values().stream().limit(5).toList(), firstFive);
+			assertEquals(expected.tailMap(from).size() < 5, finished);
+		}
+	}
+
+}
@@ -0,0 +1,66 @@
+package com.example.MountainServer;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.TreeMap;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+class PrefixTrieTests {
+
+	@Test
+	void matchesASortedMapUnderRandomOperations() {
+		PrefixTrie<Integer> trie = new PrefixTrie<>();
+		TreeMap<String, List<Integer>> expected = new TreeMap<>();
+		Random random = new Random(4808);
+		for (int i = 0; i < 100_000; i++) {
+			String key = randomKey(random);
+			int value = random.nextInt(4);
+			List<Integer> values = expected.computeIfAbsent(key, k -> new ArrayList<>());
+			if (random.nextInt(3) == 0) {
+				assertEquals(values.remove((Integer) value), trie.remove(key, value));
+			} else {
+				values.add(value);
+				trie.add(key, value);
+			}
+			if (values.isEmpty()) {
+				expected.remove(key);
+			}
+		}
+		assertEquals(expected.size(), trie.size());
+		for (int i = 0; i < 2_000; i++) {
+			String key = randomKey(random);
+			String prefix = key.substring(0, Math.min(key.length(), random.nextInt(4)));
+			int max = 1 + random.nextInt(50);
+			List<Integer> wanted = new ArrayList<>();
+			for (Map.Entry<String, List<Integer>> entry : expected.tailMap(prefix).entrySet()) {
+				if (!entry.getKey().startsWith(prefix)) {
+					break;
+				}
+				wanted.addAll(entry.getValue());
+			}
+			List<Integer> collected = new ArrayList<>();
+			trie.collect(prefix, max, collected);
+			assertEquals(wanted.subList(0, Math.min(max, wanted.size())), collected);
+			assertEquals(expected.getOrDefault(prefix, List.of()), trie.get(prefix));
+		}
+	}
+
+	/**
+	 * Short keys over a small alphabet, so they share prefixes and edges split and
+	 * merge often
+	 */
+	private static String randomKey(Random random) {
+		StringBuilder key = new StringBuilder();
+		int length = random.nextInt(7);
+		for (int i = 0; i < length; i++) {
+			key.append("abc".charAt(random.nextInt(3)));
+		}
+		return key.toString();
+	}
+
+}
@@ -0,0 +1,97 @@
+package com.example.MountainServer;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class QueryCacheTests {
+
+	private static MountainQuery country(String country) {
+		MountainQuery query = new MountainQuery();
+		query.setCountry(country);
+		return query;
+	}
+
+	private static List<Mountain> result(int size) {
+		List<Mountain> mountains = new ArrayList<>();
+		for (int i = 0; i < size; i++) {
+			mountains.add(new Mountain("Peak" + i, i, "Range", "Country", true));
+		}
+		return mountains;
+	}
+
+	@Test
+	void servesResultsOnlyForTheVersionTheyWereLookedUpAt() {
+		QueryCache cache = new QueryCache(100, 1 << 20);
+		assertNull(cache.get(country("Nepal"), 1));
+		List<Mountain> cached = cache.put(country("Nepal"), 1, result(3));
+		assertThrows(UnsupportedOperationException.class, () -> cached.add(null));
+		assertSame(cached, cache.get(country("Nepal"), 1));
+
+		assertNull(cache.get(country("Nepal"), 2));
+		assertEquals(0, cache.size());
+		assertEquals(1, cache.invalidations());
+		// Looked up before the change, so it may already be out of date
+		cache.put(country("Nepal"), 1, result(3));
+		assertNull(cache.get(country("Nepal"), 2));
+		assertEquals(1, cache.hits());
+		assertEquals(3, cache.misses());
+	}
+
+	@Test
+	void staysWithinItsEntryAndByteBounds() {
+		QueryCache byEntries = new QueryCache(50, 1 << 30);
+		QueryCache byBytes = new QueryCache(10_000, 100_000);
+		for (int i = 0; i < 2_000; i++) {
+			byEntries.get(country("Country" + i), 0);
+			byEntries.put(country("Country" + i), 0, result(i % 10));
+			byBytes.get(country("Country" + i), 0);
+			byBytes.put(country("Country" + i), 0, result(i % 10));
+			assertTrue(byEntries.size() <= 50);
+			assertTrue(byBytes.bytes() <= 100_000);
+		}
+		assertEquals(50, byEntries.size());
+		assertEquals(2_000 - 50, byEntries.evictions());
+		assertTrue(byBytes.evictions() > 0);
+
+		// Big enough to flush everything else out, so it isn't kept at all
+		byBytes.put(country("Everything"), 0, result(1_000));
+		assertNull(byBytes.get(country("Everything"), 0));
+	}
+
+	@Test
+	void keepsFrequentQueriesThroughAScanOfOneOffs() {
+		QueryCache cache = new QueryCache(100, 1 << 30);
+		int hotMisses = 0;
+		for (int i = 0; i < 10_000; i++) {
+			MountainQuery hot = country("Hot" + i % 20);
+			if (cache.get(hot, 0) == null) {
+				cache.put(hot, 0, result(1));
+				hotMisses++;
+			}
+			for (int j = 0; j < 5; j++) {
+				MountainQuery cold = country("Cold" + i + "-" + j);
+				cache.get(cold, 0);
+				cache.put(cold, 0, result(1));
+			}
+		}
+		// Plain LRU would miss every time, as 100 one-offs go by between asks
+		assertTrue(hotMisses < 100, "missed " + hotMisses);
+	}
+
+	@Test
+	void cachesNothingWhenDisabled() {
+		QueryCache cache = new QueryCache(0, 0);
+		cache.put(country("Nepal"), 0, result(1));
+		assertNull(cache.get(country("Nepal"), 0));
+		assertEquals(0, cache.size());
+	}
+
+}
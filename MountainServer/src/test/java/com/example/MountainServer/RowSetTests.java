@@ -0,0 +1,86 @@
+package com.example.MountainServer;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.TreeSet;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class RowSetTests {
+
+	private static int[] toArray(TreeSet<Integer> rows) {
+		return rows.stream().mapToInt(Integer::intValue).toArray();
+	}
+
+	/**
+	 * Fills a set with a mix of sparse and dense containers, so both container kinds
+	 * and the conversions between them get exercised
+	 */
+	private static void fill(RowSet set, TreeSet<Integer> expected, Random random) {
+		for (int i = 0; i < 150_000; i++) {
+			int row = random.nextBoolean() ? random.nextInt(3 * 65_536) : random.nextInt(1 << 24);
+			if (random.nextInt(4) == 0) {
+				assertEquals(expected.remove(row), set.remove(row));
+			} else {
+				assertEquals(expected.add(row), set.add(row));
+			}
+		}
+	}
+
+	@Test
+	void matchesTreeSetUnderRandomOperations() {
+		RowSet set = new RowSet();
+		TreeSet<Integer> expected = new TreeSet<>();
+		fill(set, expected, new Random(253));
+		assertEquals(expected.size(), set.size());
+		assertArrayEquals(toArray(expected), set.toArray());
+	}
+
+	@Test
+	void andAndOrMatchTreeSet() {
+		Random random = new Random(2024);
+		RowSet a = new RowSet();
+		RowSet b = new RowSet();
+		TreeSet<Integer> expectedA = new TreeSet<>();
+		TreeSet<Integer> expectedB = new TreeSet<>();
+		fill(a, expectedA, random);
+		fill(b, expectedB, random);
+
+		TreeSet<Integer> both = new TreeSet<>(expectedA);
+		both.retainAll(expectedB);
+		TreeSet<Integer> either = new TreeSet<>(expectedA);
+		either.addAll(expectedB);
+
+		RowSet and = RowSet.and(a, b);
+		RowSet or = RowSet.or(a, b);
+		assertEquals(both.size(), and.size());
+		assertArrayEquals(toArray(both), and.toArray());
+		assertEquals(either.size(), or.size());
+		assertArrayEquals(toArray(either), or.toArray());
+	}
+
+	@Test
+	void forEachFromMatchesTailSetAndStopsEarly() {
+		RowSet set = new RowSet();
+		TreeSet<Integer> expected = new TreeSet<>();
+		Random random = new Random(1085);
+		fill(set, expected, random);
+		for (int i = 0; i < 50; i++) {
+			int from = i == 0 ? 0 : random.nextInt(1 << 24);
+			List<Integer> visited = new ArrayList<>();
+			assertTrue(set.forEachFrom(from, row -> visited.add(row)));
+			assertEquals(new ArrayList<>(expected.tailSet(from)), visited);
+
+			List<Integer> firstFive = new ArrayList<>();
+			boolean finished = set.forEachFrom(from, row -> firstFive.add(row) && firstFive.size() < 5);
+			assertEquals(expected.tailSet(from).stream().limit(5).toList(), firstFive);
+			assertEquals(expected.tailSet(from).size() < 5, finished);
+		}
+	}
+
+}
@@ -0,0 +1,75 @@
+package com.example.MountainServer;
+
+import jdk.jfr.consumer.RecordedEvent;
+import jdk.jfr.consumer.RecordingStream;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class VirtualThreadTests {
+
+	@Test
+	void contendedRequestsNeverPinTheirCarrierThreads(@TempDir Path dir) throws Exception {
+		List<RecordedEvent> pinned = new CopyOnWriteArrayList<>();
+		try (RecordingStream events = new RecordingStream();
+			 WriteAheadLog log = WriteAheadLog.open(dir.resolve("wal"), WriteAheadLog.Durability.BATCHED);
+			 ShardedMountainStore store = new ShardedMountainStore(4, new IdAllocator(), true)) {
+			events.enable("jdk.VirtualThreadPinned").withThreshold(Duration.ZERO).withStackTrace();
+			events.onEvent("jdk.VirtualThreadPinned", pinned::add);
+			events.startAsync();
+
+			log.replay();
+			MountainService service = MountainStoreConfiguration.mountainService(store, log);
+			List<Mountain> batch = new ArrayList<>();
+			for (int i = 0; i < 200; i++) {
+				batch.add(mountain(i, i));
+			}
+			assertTrue(service.addMountains(batch));
+			List<Mountain> all = service.getAllMountains();
+
+			// Every request blocks - on the store's locks, and on group fsyncs for updates
+			List<Future<?>> requests = new ArrayList<>();
+			try (ExecutorService threads = Executors.newVirtualThreadPerTaskExecutor()) {
+				for (int t = 0; t < 1_000; t++) {
+					int request = t;
+					requests.add(threads.submit(() -> {
+						for (int i = 0; i < 10; i++) {
+							int n = (request * 10 + i) % all.size();
+							if (i % 3 == 0) {
+								assertTrue(service.updateMountain(all.get(n).getId(), mountain(n, request + i)));
+							} else {
+								service.getMountainsByCountry("Country" + n % 8);
+								service.search("peak " + n, 5);
+								service.getStatistics(MountainStatistics.Grouping.RANGE);
+								service.findNear(n % 80, n - 100, 500, 5);
+							}
+						}
+					}));
+				}
+			}
+			for (Future<?> finished : requests) {
+				finished.get();
+			}
+			events.stop();
+		}
+		assertEquals(List.of(), pinned.stream().map(event -> event.getStackTrace().toString()).toList());
+	}
+
+	private static Mountain mountain(int i, int altitude) {
+		Mountain mountain = new Mountain("Peak " + i, altitude, "Range" + i % 5, "Country" + i % 8, i % 2 == 0);
+		mountain.setLatitude((double) (i % 80));
+		mountain.setLongitude((double) (i - 100));
+		return mountain;
+	}
+}
@@ -0,0 +1,82 @@
+package com.example.MountainServer;
+
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Compares the MountainCodec binary encoding with JSON - the bytes each takes to
+ * send a list of mountains, and the CPU time to encode and decode it. JSON is
+ * encoded both by Jackson and from the fragments in MountainJson.
+ * <p>
+ * Not a test, so it isn't run by the build. Run it after mvn test-compile with
+ * java -cp target/classes:target/test-classes:(dependency classpath)
+ * com.example.MountainServer.WireFormatBenchmark [mountains] [rounds]
+ */
+public class WireFormatBenchmark {
+
+	private static final ObjectMapper MAPPER = new ObjectMapper();
+
+	private interface Step {
+		void run() throws IOException;
+	}
+
+	public static void main(String[] args) throws IOException {
+		int count = args.length > 0 ? Integer.parseInt(args[0]) : 100_000;
+		int rounds = args.length > 1 ? Integer.parseInt(args[1]) : 20;
+		List<Mountain> mountains = testData(count);
+
+		byte[] json = MAPPER.writeValueAsBytes(mountains);
+		byte[] binary = MountainCodec.encode(mountains);
+		System.out.printf("%,d mountains, best of %d rounds%n", count, rounds);
+		System.out.printf("%-8s %12s %12s %12s%n", "format", "bytes", "encode ms", "decode ms");
+		System.out.printf("%-8s %,12d %12.1f %12.1f%n", "json", json.length,
+				time(rounds, () -> MAPPER.writeValueAsBytes(mountains)),
+				time(rounds, () -> MAPPER.readValue(json, new TypeReference<List<Mountain>>() {})));
+		mountains.forEach(Mountain::jsonFields);
+		System.out.printf("%-8s %,12d %12.1f %12s%n", "fragment", json.length,
+				time(rounds, () -> MountainJson.writeArray(mountains, new ByteArrayOutputStream(json.length))), "-");
+		System.out.printf("%-8s %,12d %12.1f %12.1f%n", "binary", binary.length,
+				time(rounds, () -> MountainCodec.encode(mountains)),
+				time(rounds, () -> MountainCodec.decode(binary)));
+	}
+
+	/**
+	 * Mountains with realistic name lengths, spread over a few hundred ranges and
+	 * countries the way the real data is
+	 */
+	private static List<Mountain> testData(int count) {
+		Random random = new Random(253);
+		List<Mountain> mountains = new ArrayList<>(count);
+		for (int i = 0; i < count; i++) {
+			Mountain mountain = new Mountain("Peak " + Integer.toString(random.nextInt(), 36) + " " + i,
+					random.nextInt(9_000), "Range" + random.nextInt(400), "Country" + random.nextInt(200),
+					random.nextBoolean());
+			mountain.setId(i + 1);
+			mountains.add(mountain);
+		}
+		return mountains;
+	}
+
+	/**
+	 * Runs a step for a few warm up rounds and then the given number of timed ones
+	 * @return the fastest timed round, in milliseconds
+	 */
+	private static double time(int rounds, Step step) throws IOException {
+		for (int i = 0; i < 5; i++) {
+			step.run();
+		}
+		long best = Long.MAX_VALUE;
+		for (int i = 0; i < rounds; i++) {
+			long start = System.nanoTime();
+			step.run();
+			best = Math.min(best, System.nanoTime() - start);
+		}
+		return best / 1e6;
+	}
+}
@@ -0,0 +1,163 @@
+package com.example.MountainServer;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.EnumSource;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class WriteAheadLogTests {
+
+	private static List<String> describe(List<Mountain> mountains) {
+		List<String> described = new ArrayList<>();
+		for (Mountain mountain : mountains) {
+			described.add(mountain.getId() + " " + mountain + " " + mountain.getLatitude() + " " + mountain.getLongitude());
+		}
+		return described;
+	}
+
+	@ParameterizedTest
+	@EnumSource(WriteAheadLog.Durability.class)
+	void replaysEveryChangeAfterRestart(WriteAheadLog.Durability durability, @TempDir Path dir) throws InterruptedException {
+		Path file = dir.resolve("wal");
+		MountainStore store = new IndexedMountainStore();
+		try (WriteAheadLog log = WriteAheadLog.open(file, durability)) {
+			log.replay();
+			store.setListener(log);
+			List<Thread> writers = new ArrayList<>();
+			for (int t = 0; t < 4; t++) {
+				int writer = t;
+				writers.add(Thread.ofPlatform().start(() -> {
+					for (int i = 0; i < 200; i++) {
+						store.addAll(List.of(new Mountain("M" + writer + "-" + i, i, "R" + writer, "C" + (i % 7), i % 2 == 0)));
+						log.commit();
+					}
+				}));
+			}
+			for (Thread writer : writers) {
+				writer.join();
+			}
+			List<Mountain> all = store.getAll();
+			for (int i = 0; i < all.size(); i += 3) {
+				store.delete(all.get(i).getId());
+			}
+			Mountain renamed = new Mountain("Renamed", 1, "R9", "C9", false);
+			renamed.setLatitude(-32.6532);
+			renamed.setLongitude(-70.0109);
+			store.update(all.get(1).getId(), renamed);
+			log.commit();
+		}
+
+		try (WriteAheadLog log = WriteAheadLog.open(file, durability)) {
+			MountainStore recovered = new IndexedMountainStore();
+			recovered.restore(log.replay());
+			assertEquals(describe(store.getAll()), describe(recovered.getAll()));
+		}
+	}
+
+	@Test
+	void cutsOffTornTail(@TempDir Path dir) throws IOException {
+		Path file = dir.resolve("wal");
+		try (WriteAheadLog log = WriteAheadLog.open(file, WriteAheadLog.Durability.ALWAYS)) {
+			log.replay();
+			MountainStore store = new IndexedMountainStore();
+			store.setListener(log);
+			store.addAll(List.of(new Mountain("Snowdon", 1085, "Snowdonia", "Wales", true)));
+		}
+		long intact = Files.size(file);
+		Files.write(file, new byte[]{0, 0, 0, 40, 1, 2, 3}, StandardOpenOption.APPEND);
+
+		try (WriteAheadLog log = WriteAheadLog.open(file, WriteAheadLog.Durability.ALWAYS)) {
+			List<Mountain> recovered = log.replay();
+			assertEquals(1, recovered.size());
+			IdAllocator ids = new IdAllocator();
+			ids.advancePast(recovered.get(0).getId());
+			MountainStore store = new IndexedMountainStore(ids);
+			store.restore(recovered);
+			store.setListener(log);
+			assertTrue(store.addAll(List.of(new Mountain("Ben Nevis", 1345, "Grampians", "Scotland", true))));
+		}
+		assertTrue(Files.size(file) > intact);
+		try (WriteAheadLog log = WriteAheadLog.open(file, WriteAheadLog.Durability.ALWAYS)) {
+			assertEquals(2, log.replay().size());
+		}
+	}
+
+	@ParameterizedTest
+	@EnumSource(value = WriteAheadLog.Durability.class, names = {"BATCHED", "ASYNC"})
+	void keepsWhatAFailedFlushCouldntWrite(WriteAheadLog.Durability durability, @TempDir Path dir)
+			throws InterruptedException {
+		Path file = dir.resolve("wal");
+		AtomicBoolean diskFull = new AtomicBoolean();
+		MountainStore store = new IndexedMountainStore();
+		try (WriteAheadLog log = new WriteAheadLog(file, durability) {
+			@Override
+			void write(ByteBuffer batch, long position) throws IOException {
+				if (diskFull.get()) {
+					// Gets half of it out before failing
+					ByteBuffer half = batch.duplicate();
+					half.limit(batch.position() + batch.remaining() / 2);
+					super.write(half, position);
+					throw new IOException("No space left on device");
+				}
+				super.write(batch, position);
+			}
+		}) {
+			log.start();
+			log.replay();
+			store.setListener(log);
+			store.addAll(List.of(new Mountain("Snowdon", 1085, "Snowdonia", "Wales", true)));
+			log.commit();
+
+			diskFull.set(true);
+			store.addAll(List.of(new Mountain("Ben Nevis", 1345, "Grampians", "Scotland", true)));
+			awaitCommit(log, false);
+			store.addAll(List.of(new Mountain("Carrauntoohil", 1039, "MacGillycuddy's Reeks", "Ireland", true)));
+			assertThrows(UncheckedIOException.class, log::commit);
+
+			diskFull.set(false);
+			awaitCommit(log, true);
+		}
+
+		try (WriteAheadLog log = WriteAheadLog.open(file, durability)) {
+			MountainStore recovered = new IndexedMountainStore();
+			recovered.restore(log.replay());
+			assertEquals(describe(store.getAll()), describe(recovered.getAll()));
+		}
+	}
+
+	/**
+	 * Commits until it succeeds or fails as expected, giving an ASYNC log's timer
+	 * time to get to its next flush
+	 */
+	private static void awaitCommit(WriteAheadLog log, boolean succeeds) throws InterruptedException {
+		for (int attempt = 0; attempt < 500; attempt++) {
+			try {
+				log.commit();
+				if (succeeds) {
+					return;
+				}
+			} catch (UncheckedIOException e) {
+				if (!succeeds) {
+					return;
+				}
+			}
+			Thread.sleep(10);
+		}
+		throw new AssertionError("Commit never " + (succeeds ? "succeeded" : "failed"));
+	}
+
+}